@@ -0,0 +1,42 @@
+#! /usr/bin/bash
+
+# Compares platform thread pool with virtual threads mode under high concurrency.
+# Requires wrk, built jar (./mvnw clean package -DskipTests) and running redis, karma-app-posts and karma-app-users
+# with the environment variables described in README set.
+#
+# usage: scripts/benchmark-threads.sh [connections] [duration] [path]
+
+CONNECTIONS=${1:-5000}
+DURATION=${2:-60s}
+URL_PATH=${3:-/guest/posts?size=100}
+THREADS=$(nproc)
+
+DIR=$(dirname $BASH_SOURCE)
+JAR=$(ls "$DIR"/../target/karma-app-gateway-*.jar | head -n 1)
+
+# default open files limit is too low for thousands of sockets
+ulimit -n 65535
+
+run() {
+    local virtual=$1
+
+    KARMA_APP_GATEWAY_VIRTUAL_THREADS=$virtual java -jar "$JAR" \
+        --server.tomcat.max-connections=$((CONNECTIONS * 2)) \
+        --server.tomcat.accept-count=$CONNECTIONS > /dev/null 2>&1 &
+    local pid=$!
+
+    until curl -s -o /dev/null "http://localhost:8080$URL_PATH"; do
+        sleep 1
+    done
+
+    # warm-up so that JIT and caches do not skew the results
+    wrk -t"$THREADS" -c"$CONNECTIONS" -d15s "http://localhost:8080$URL_PATH" > /dev/null
+
+    echo "virtual threads: $virtual"
+    wrk -t"$THREADS" -c"$CONNECTIONS" -d"$DURATION" --latency "http://localhost:8080$URL_PATH"
+
+    kill $pid && wait $pid
+}
+
+run false
+run true
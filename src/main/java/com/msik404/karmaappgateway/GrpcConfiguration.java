@@ -1,18 +1,41 @@
 package com.msik404.karmaappgateway;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.net.HostAndPort;
+import com.msik404.karmaappgateway.grpc.client.breaker.CircuitBreaker;
+import com.msik404.karmaappgateway.grpc.client.breaker.CircuitBreakerInterceptor;
+import com.msik404.karmaappgateway.grpc.client.channel.ChannelPool;
+import com.msik404.karmaappgateway.grpc.client.config.ServiceConfigFactory;
+import com.msik404.karmaappgateway.grpc.client.metrics.RepeatedAttemptsMetricsInterceptor;
 import com.msik404.karmaappposts.grpc.PostsGrpc;
 import com.msik404.karmaappusers.grpc.UsersGrpc;
 import io.grpc.Channel;
-import io.grpc.Grpc;
+import io.grpc.ClientInterceptor;
 import io.grpc.InsecureChannelCredentials;
+import io.grpc.ManagedChannel;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.NonNull;
 
 @Configuration
 public class GrpcConfiguration {
 
+    public static final String CIRCUIT_STATE_METRIC = "karmaapp.grpc.client.circuit.state";
+    public static final String CIRCUIT_REJECTED_METRIC = "karmaapp.grpc.client.circuit.rejected";
+
     @Value("${KarmaAppPosts.grpc.host}")
     private String postsHostname;
 
@@ -25,14 +48,168 @@ public class GrpcConfiguration {
     @Value("${KarmaAppUsers.grpc.port}")
     private int usersPort;
 
-    @Bean(name = "postsChannel")
-    Channel postsChannel() {
-        return Grpc.newChannelBuilderForAddress(postsHostname, postsPort, InsecureChannelCredentials.create()).build();
+    @Value("${KarmaAppGateway.grpc.read-timeout-ms}")
+    private long readTimeoutMillis;
+
+    @Value("${KarmaAppGateway.grpc.write-timeout-ms}")
+    private long writeTimeoutMillis;
+
+    @Value("${KarmaAppGateway.grpc.stream-timeout-ms}")
+    private long streamTimeoutMillis;
+
+    @Value("${KarmaAppGateway.grpc.max-attempts}")
+    private int maxAttempts;
+
+    @Value("${KarmaAppGateway.grpc.hedging-delay-ms}")
+    private long hedgingDelayMillis;
+
+    @Value("${KarmaAppGateway.grpc.retry-backoff-ms}")
+    private long retryBackoffMillis;
+
+    @Value("${KarmaAppGateway.grpc.circuit-breaker.failure-rate-threshold}")
+    private double failureRateThreshold;
+
+    @Value("${KarmaAppGateway.grpc.circuit-breaker.sliding-window-size}")
+    private int slidingWindowSize;
+
+    @Value("${KarmaAppGateway.grpc.circuit-breaker.minimum-calls}")
+    private int minimumCalls;
+
+    @Value("${KarmaAppGateway.grpc.circuit-breaker.open-duration-ms}")
+    private long openDurationMillis;
+
+    @Value("${KarmaAppGateway.grpc.circuit-breaker.half-open-calls}")
+    private int halfOpenCalls;
+
+    @Value("${KarmaAppGateway.grpc.load-balancing-policy}")
+    private ChannelPool.Policy loadBalancingPolicy;
+
+    @Value("${KarmaAppGateway.grpc.channels-per-backend}")
+    private int channelsPerBackend;
+
+    @Value("${KarmaAppGateway.grpc.flow-control-window-bytes}")
+    private int flowControlWindowBytes;
+
+    @Value("${KarmaAppGateway.grpc.keepalive-time-ms}")
+    private long keepAliveTimeMillis;
+
+    @Value("${KarmaAppGateway.grpc.keepalive-timeout-ms}")
+    private long keepAliveTimeoutMillis;
+
+    /**
+     * @param hosts comma separated list of backend replicas, each one in host or host:port format. IPv6 literal with
+     *              port has to be enclosed in brackets.
+     * @return grpc targets, dns resolver is used so that hostname resolving to many addresses is balanced as well.
+     */
+    @NonNull
+    private static List<String> parseTargets(@NonNull String hosts, int defaultPort) {
+
+        return Arrays.stream(hosts.split(","))
+                .map(String::strip)
+                .filter(host -> !host.isEmpty())
+                .map(host -> HostAndPort.fromString(host).withDefaultPort(defaultPort))
+                .map(address -> "dns:///" + address)
+                .toList();
     }
 
-    @Bean(name = "usersChannel")
-    Channel usersChannel() {
-        return Grpc.newChannelBuilderForAddress(usersHostname, usersPort, InsecureChannelCredentials.create()).build();
+    @NonNull
+    private CircuitBreakerInterceptor createCircuitBreakerInterceptor(
+            @NonNull String backendName,
+            @NonNull MeterRegistry meterRegistry) {
+
+        var circuitBreaker = new CircuitBreaker(
+                backendName,
+                failureRateThreshold,
+                slidingWindowSize,
+                minimumCalls,
+                openDurationMillis,
+                halfOpenCalls
+        );
+
+        // 0 - CLOSED, 1 - OPEN, 2 - HALF_OPEN
+        Gauge.builder(CIRCUIT_STATE_METRIC, circuitBreaker, breaker -> breaker.getState().ordinal())
+                .tag("backend", backendName)
+                .description("State of backend circuit breaker: 0 - closed, 1 - open, 2 - half open")
+                .register(meterRegistry);
+
+        Counter rejectedCalls = meterRegistry.counter(CIRCUIT_REJECTED_METRIC, "backend", backendName);
+
+        return new CircuitBreakerInterceptor(circuitBreaker, rejectedCalls);
+    }
+
+    /**
+     * @param interceptors last one is run first.
+     */
+    @NonNull
+    private ManagedChannel createChannel(
+            @NonNull String target,
+            @NonNull Map<String, ?> serviceConfig,
+            @NonNull ObjectProvider<ExecutorService> executorProvider,
+            @NonNull ClientInterceptor... interceptors) {
+
+        var builder = NettyChannelBuilder.forTarget(target, InsecureChannelCredentials.create())
+                .defaultLoadBalancingPolicy("round_robin")
+                .flowControlWindow(flowControlWindowBytes)
+                .keepAliveTime(keepAliveTimeMillis, TimeUnit.MILLISECONDS)
+                .keepAliveTimeout(keepAliveTimeoutMillis, TimeUnit.MILLISECONDS)
+                .defaultServiceConfig(serviceConfig)
+                .maxRetryAttempts(maxAttempts)
+                .enableRetry()
+                .intercept(interceptors);
+
+        // executor is present only if virtual threads mode is enabled
+        ExecutorService executor = executorProvider.getIfAvailable();
+        if (executor != null) {
+            builder.executor(executor);
+        }
+
+        return builder.build();
+    }
+
+    @NonNull
+    private ChannelPool createChannelPool(
+            @NonNull String backendName,
+            @NonNull String hosts,
+            int defaultPort,
+            @NonNull Map<String, ?> serviceConfig,
+            @NonNull ObjectProvider<ExecutorService> executorProvider,
+            @NonNull MeterRegistry meterRegistry) {
+
+        var metricsInterceptor = new RepeatedAttemptsMetricsInterceptor(meterRegistry);
+        // single breaker is shared by all channels of a backend
+        var circuitBreakerInterceptor = createCircuitBreakerInterceptor(backendName, meterRegistry);
+
+        List<ManagedChannel> channels = new ArrayList<>();
+        for (String target : parseTargets(hosts, defaultPort)) {
+            for (int i = 0; i < channelsPerBackend; i++) {
+                channels.add(createChannel(
+                        target, serviceConfig, executorProvider, metricsInterceptor, circuitBreakerInterceptor));
+            }
+        }
+
+        return new ChannelPool(channels, loadBalancingPolicy);
+    }
+
+    @Bean(name = "postsChannel", destroyMethod = "shutdown")
+    ChannelPool postsChannel(
+            @Qualifier(VirtualThreadsConfiguration.GRPC_EXECUTOR) ObjectProvider<ExecutorService> executorProvider,
+            MeterRegistry meterRegistry) {
+
+        Map<String, ?> serviceConfig = ServiceConfigFactory.createPostsServiceConfig(
+                readTimeoutMillis, writeTimeoutMillis, maxAttempts, hedgingDelayMillis, streamTimeoutMillis);
+
+        return createChannelPool("posts", postsHostname, postsPort, serviceConfig, executorProvider, meterRegistry);
+    }
+
+    @Bean(name = "usersChannel", destroyMethod = "shutdown")
+    ChannelPool usersChannel(
+            @Qualifier(VirtualThreadsConfiguration.GRPC_EXECUTOR) ObjectProvider<ExecutorService> executorProvider,
+            MeterRegistry meterRegistry) {
+
+        Map<String, ?> serviceConfig = ServiceConfigFactory.createUsersServiceConfig(
+                readTimeoutMillis, writeTimeoutMillis, maxAttempts, retryBackoffMillis);
+
+        return createChannelPool("users", usersHostname, usersPort, serviceConfig, executorProvider, meterRegistry);
     }
 
     @Bean
@@ -40,6 +217,16 @@ public class GrpcConfiguration {
         return PostsGrpc.newFutureStub(postsChannel);
     }
 
+    @Bean
+    PostsGrpc.PostsBlockingStub postsBlockingStub(@Qualifier("postsChannel") Channel postsChannel) {
+        return PostsGrpc.newBlockingStub(postsChannel);
+    }
+
+    @Bean
+    PostsGrpc.PostsStub postsAsyncStub(@Qualifier("postsChannel") Channel postsChannel) {
+        return PostsGrpc.newStub(postsChannel);
+    }
+
     @Bean
     UsersGrpc.UsersFutureStub usersStub(@Qualifier("usersChannel") Channel usersChannel) {
         return UsersGrpc.newFutureStub(usersChannel);
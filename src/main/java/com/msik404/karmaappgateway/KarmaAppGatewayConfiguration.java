@@ -1,5 +1,6 @@
 package com.msik404.karmaappgateway;
 
+import com.msik404.karmaappgateway.converter.ImageVariantConverter;
 import com.msik404.karmaappgateway.converter.ObjectIdConverter;
 import com.msik404.karmaappgateway.user.UserDetailsServiceImpl;
 import org.springframework.context.annotation.Bean;
@@ -38,6 +39,7 @@ public class KarmaAppGatewayConfiguration implements WebMvcConfigurer {
     @Override
     public void addFormatters(FormatterRegistry registry) {
         registry.addConverter(new ObjectIdConverter());
+        registry.addConverter(new ImageVariantConverter());
     }
 
 }
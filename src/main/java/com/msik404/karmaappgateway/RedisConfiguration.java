@@ -1,5 +1,6 @@
 package com.msik404.karmaappgateway;
 
+import com.msik404.karmaappgateway.post.cache.DiskImageCacheInvalidator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -7,6 +8,8 @@ import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
 @Configuration
 public class RedisConfiguration {
@@ -31,4 +34,15 @@ public class RedisConfiguration {
         template.setConnectionFactory(redisConnectionFactory);
         return template;
     }
+
+    @Bean
+    RedisMessageListenerContainer redisMessageListenerContainer(
+            RedisConnectionFactory redisConnectionFactory,
+            DiskImageCacheInvalidator diskImageCacheInvalidator) {
+
+        var container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(diskImageCacheInvalidator, new ChannelTopic(DiskImageCacheInvalidator.CHANNEL));
+        return container;
+    }
 }
@@ -2,6 +2,7 @@ package com.msik404.karmaappgateway;
 
 import com.msik404.karmaappgateway.auth.jwt.JwtAuthenticationFilter;
 import com.msik404.karmaappgateway.user.Role;
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -49,7 +50,10 @@ public class SecurityConfiguration {
                 .exceptionHandling(handler -> handler.authenticationEntryPoint(entryPoint))
 
                 .authorizeHttpRequests((authorize) -> authorize
+                        // request was already authorized before async processing has started
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/admin/**").hasAuthority(Role.ADMIN.name())
+                        .requestMatchers("/actuator/**").hasAuthority(Role.ADMIN.name())
                         .requestMatchers("/mod/**").hasAnyAuthority(Role.ADMIN.name(), Role.MOD.name())
                         .requestMatchers("/user/**").hasAnyAuthority(Role.ADMIN.name(), Role.MOD.name(), Role.USER.name())
                         .requestMatchers(
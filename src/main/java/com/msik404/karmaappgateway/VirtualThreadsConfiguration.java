@@ -0,0 +1,37 @@
+package com.msik404.karmaappgateway;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Opt-in execution mode in which each http request and each grpc callback runs on its own virtual thread instead of
+ * bounded platform thread pool. Enabled with KarmaAppGateway.threads.virtual property.
+ * <p>
+ * Classes whose locks are held by request or grpc callback threads use ReentrantLock instead of synchronized, so that
+ * virtual threads waiting for them do not pin their carrier thread.
+ */
+@Configuration
+@ConditionalOnProperty(name = "KarmaAppGateway.threads.virtual", havingValue = "true")
+public class VirtualThreadsConfiguration {
+
+    public static final String GRPC_EXECUTOR = "grpcExecutor";
+
+    @Bean
+    TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * Executor used by grpc channels for running calls callbacks, by default grpc uses cached platform thread pool.
+     */
+    @Bean(name = GRPC_EXECUTOR, destroyMethod = "shutdown")
+    ExecutorService grpcExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+}
@@ -0,0 +1,16 @@
+package com.msik404.karmaappgateway.converter;
+
+import com.msik404.karmaappgateway.post.dto.ImageVariant;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ImageVariantConverter implements Converter<String, ImageVariant> {
+
+    @Override
+    public ImageVariant convert(@NonNull String variant) {
+        return ImageVariant.valueOf(variant.trim().toUpperCase());
+    }
+
+}
@@ -19,6 +19,13 @@ public class KarmaAppEndpointDocs {
     public static final String OP_DESC_FIND_PAGINATED_POSTS = OP_BASE_DESC_FIND_PAGINATED_POSTS + GUEST_ENDPOINT_SUFFIX +
             GUEST_ENDPOINT_POST_VISIBILITY_SUFFIX;
 
+    public static final String OP_SUM_EXPORT_POSTS = "Export active posts as newline delimited json.";
+
+    public static final String OP_DESC_EXPORT_POSTS = OP_SUM_EXPORT_POSTS + """
+             Posts are ordered the same way as in paginated endpoint. They are fetched and written in chunks, next
+            chunk is fetched only after previous one was sent, so this endpoint should be used instead of paginated
+            one for getting more posts than max page size allows.""" + " " + GUEST_ENDPOINT_SUFFIX;
+
     private static final String MOD_ENDPOINT_SUFFIX = " This endpoint requires at least mod privilege.";
 
     private static final String MOD_ENDPOINT_POST_VISIBILITY_SUFFIX = " Active and hidden posts can be returned.";
@@ -90,6 +97,18 @@ public class KarmaAppEndpointDocs {
 
     public static final String OP_DESC_CREATE_POST = OP_SUM_CREATE_POST + USER_ENDPOINT_SUFFIX;
 
+    public static final String OP_SUM_CREATE_POST_ASYNC = "Queue creation of new post.";
+
+    public static final String OP_DESC_CREATE_POST_ASYNC = OP_SUM_CREATE_POST_ASYNC + USER_ENDPOINT_SUFFIX + """
+             Request is validated and stored, post is created in the background. Returned creation id can be used for
+            polling creation status.
+            """;
+
+    public static final String OP_SUM_FIND_POST_CREATION = "Get status of queued post creation.";
+
+    public static final String OP_DESC_FIND_POST_CREATION = OP_SUM_FIND_POST_CREATION + USER_ENDPOINT_SUFFIX +
+            " Status is kept for one day after creation was queued. Only user who queued creation can see it.";
+
     public static final String OP_SUM_RATE_POST = "Rate existing post.";
 
     private static final String IDEMPOTENT_OPERATION_SUFFIX = """ 
@@ -165,7 +184,16 @@ public class KarmaAppEndpointDocs {
     // PARAMETERS
     public static final String PARAM_DESC_SIZE = """
             Amount of posts to be returned. If there are less posts than requested, as many posts as possible are
-            returned.
+            returned. Size must be between 1 and max page size, which is 500 by default.
+            """;
+
+    public static final String PARAM_DESC_LIMIT = """
+            Max amount of posts to be exported. Can be omitted, to export all active posts.
+            """;
+
+    public static final String PARAM_DESC_IMAGE_VARIANT = """
+            Size of returned image: original, medium (at most 640px) or thumb (at most 160px). Variants are generated
+            on first request and cached.
             """;
 
     private static final String PAGINATION_REQUIREMENT = """
@@ -194,6 +222,20 @@ public class KarmaAppEndpointDocs {
     public static final String PARAM_DESC_DELETED = "Post visibility, makes returned post have deleted visibility" +
             OTHER_VISIBILITIES_CAN_BE_SELECTED_SUFFIX;
 
+    public static final String HEADER_DESC_IF_NONE_MATCH = """
+            Entity tag of previously returned response. If it is still current, 304 is returned without body.
+            """;
+
+    public static final String HEADER_DESC_RANGE = """
+            Single byte range of the image to be returned, for example bytes=1024-. Multiple ranges are not supported,
+            whole image is returned instead.
+            """;
+
+    public static final String HEADER_DESC_IF_RANGE = """
+            Entity tag of previously returned image. Range is returned only if it is still current, otherwise whole image
+            is returned.
+            """;
+
     public static final String PARAM_DESC_POST_CREATION_REQUEST = "Json with data for creating new post.";
 
     public static final String PARAM_DESC_IMAGE_DATA = "Binary data of an image. Should be uploaded as a file.";
@@ -218,11 +260,15 @@ public class KarmaAppEndpointDocs {
     // PATH PARAMETERS
     public static final String PATH_DESC_POST_ID = "Id of the post on which specified operation is being performed.";
 
+    public static final String PATH_DESC_CREATION_ID = "Id of the creation returned when post creation was queued.";
+
     public static final String PATH_DESC_USER_ID = "Id of the user on which specified operation is being performed.";
 
     // RESPONSES
     public static final String RESP_OK_DESC_PAGINATED_POSTS = "Returned paginated posts.";
 
+    public static final String RESP_OK_DESC_EXPORT_POSTS = "Streamed posts, one json object per line.";
+
     public static final String RESP_OK_DESC_PAGINATED_POSTS_RATINGS = "Returned paginated posts ratings.";
 
     public static final String RESP_INTERNAL_DESC_PAGINATED_POSTS =
@@ -233,8 +279,21 @@ public class KarmaAppEndpointDocs {
 
     public static final String RESP_OK_DESC_FIND_IMAGE = "Returned post's image data";
 
+    public static final String RESP_PARTIAL_DESC_FIND_IMAGE = "Returned requested range of post's image data";
+
+    public static final String RESP_NOT_MODIFIED_DESC_FIND_IMAGE = "Image matching If-None-Match is still current.";
+
+    public static final String RESP_NOT_MODIFIED_DESC_PAGINATED_POSTS = """
+            Page matching If-None-Match is still current. Only pages served from cache, that is top pages of posts not
+            filtered by username, have entity tags.
+            """;
+
     public static final String RESP_OK_CREATE_POST = "Post was created successfully.";
 
+    public static final String RESP_ACCEPTED_CREATE_POST_ASYNC = "Post creation was queued.";
+
+    public static final String RESP_OK_FIND_POST_CREATION = "Returned post creation status.";
+
     public static final String RESP_OK_RATE_POST = "Post was rated successfully.";
 
     public static final String RESP_INTERNAL_DESC_RATE_POST = "Could not rate post for some reason.";
@@ -271,12 +330,6 @@ public class KarmaAppEndpointDocs {
             hour. JWT has user's id encoded as subject.
             """;
 
-    public static final String USERNAME_FETCH_FAIL_DURING_CACHING_SUFFIX = """
-             This exception might be thrown during caching rated post. This might happen when username
-            for post to be cached is fetched and somehow user who created the post was deleted. This
-            practically cannot happen, because there is no functionality for deleting users.
-            """;
-
     public static final String USER_NOT_FOUND_SUFFIX = """
              This exception might be thrown during failed fetch for user's username, which is required for caching full
             post data.
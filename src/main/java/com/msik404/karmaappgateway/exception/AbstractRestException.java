@@ -1,8 +1,11 @@
 package com.msik404.karmaappgateway.exception;
 
+/**
+ * These exceptions are used for control flow and mapped to responses, so stack trace is not filled in.
+ */
 public abstract class AbstractRestException extends RuntimeException implements RestException {
     public AbstractRestException(String errorMessage) {
-        super(errorMessage);
+        super(errorMessage, null, false, false);
     }
 
 }
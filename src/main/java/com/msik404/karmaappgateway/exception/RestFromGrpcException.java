@@ -8,4 +8,8 @@ public abstract class RestFromGrpcException extends EncodableGrpcStatusException
         super(errorMessage);
     }
 
+    protected RestFromGrpcException(String errorMessage, boolean writableStackTrace) {
+        super(errorMessage, writableStackTrace);
+    }
+
 }
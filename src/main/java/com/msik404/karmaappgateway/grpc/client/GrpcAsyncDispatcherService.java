@@ -0,0 +1,439 @@
+package com.msik404.karmaappgateway.grpc.client;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.google.protobuf.Empty;
+import com.msik404.grpc.mongo.id.ProtoObjectId;
+import com.msik404.karmaappgateway.grpc.client.coalescing.SingleFlight;
+import com.msik404.karmaappgateway.grpc.client.mapper.*;
+import com.msik404.karmaappgateway.grpc.client.zipper.PostViewZipper;
+import com.msik404.karmaappgateway.post.dto.PostRatingResponse;
+import com.msik404.karmaappgateway.post.dto.PostView;
+import com.msik404.karmaappgateway.post.dto.PostWithImageDataDto;
+import com.msik404.karmaappgateway.post.dto.Visibility;
+import com.msik404.karmaappgateway.user.Role;
+import com.msik404.karmaappgateway.user.UserDetailsImpl;
+import com.msik404.karmaappgateway.user.cache.UserIdLocalCache;
+import com.msik404.karmaappposts.grpc.*;
+import com.msik404.karmaappusers.grpc.*;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Service;
+
+import static com.msik404.karmaappgateway.grpc.client.GrpcFutures.*;
+
+/**
+ * This class makes non-blocking requests to microservices. Calling thread is never parked, each returned future
+ * completes on grpc callback thread. If request fails, future completes exceptionally with decoded exception.
+ * <p>
+ * Reads which are popular among concurrent requests go through SingleFlight, so that identical requests in flight
+ * share single backend call.
+ */
+@Service
+@RequiredArgsConstructor
+public class GrpcAsyncDispatcherService {
+
+    private final PostsGrpc.PostsFutureStub postsStub;
+    private final UsersGrpc.UsersFutureStub usersStub;
+
+    private final UserIdLocalCache userIdCache;
+
+    private final SingleFlight singleFlight;
+
+    private volatile boolean isCreatorUsernameQueryImplemented = true;
+
+    @NonNull
+    private CompletableFuture<PostsResponse> findPosts(@NonNull PostsRequest request) {
+
+        return singleFlight.execute(
+                PostsGrpc.getFindPostsMethod(),
+                request,
+                () -> toCompletableFuture(postsStub.findPosts(request))
+        );
+    }
+
+    @NonNull
+    private CompletableFuture<PostsResponse> findPostsWithCreatorId(@NonNull PostsWithCreatorIdRequest request) {
+
+        return singleFlight.execute(
+                PostsGrpc.getFindPostsWithCreatorIdMethod(),
+                request,
+                () -> toCompletableFuture(postsStub.findPostsWithCreatorId(request))
+        );
+    }
+
+    @NonNull
+    private CompletableFuture<UsernamesResponse> findUsernames(@NonNull UsernamesRequest request) {
+
+        return singleFlight.execute(
+                UsersGrpc.getFindUsernamesMethod(),
+                request,
+                () -> toCompletableFuture(usersStub.findUsernames(request))
+        );
+    }
+
+    @NonNull
+    private CompletableFuture<List<PostView>> loadUsernames(@NonNull List<Post> posts) {
+
+        // each distinct creator is requested once, usernameIndices[i] is index of username of i-th post creator
+        int[] usernameIndices = new int[posts.size()];
+        Map<String, Integer> userIdHexStringToUsernameIdx = new HashMap<>();
+
+        var usernamesRequestBuilder = UsernamesRequest.newBuilder();
+        for (int i = 0; i < posts.size(); i++) {
+            String userIdHexString = posts.get(i).getUserId().getHexString();
+
+            Integer usernameIdx = userIdHexStringToUsernameIdx.get(userIdHexString);
+            if (usernameIdx == null) {
+                usernameIdx = usernamesRequestBuilder.getUserIdHexStringsCount();
+                userIdHexStringToUsernameIdx.put(userIdHexString, usernameIdx);
+                usernamesRequestBuilder.addUserIdHexStrings(userIdHexString);
+            }
+            usernameIndices[i] = usernameIdx;
+        }
+
+        // usernamesRequest userId hexString map to usernamesResponse usernames in the same order. If some username for
+        // a given userId was not found an empty string is placed in its place
+        return findUsernames(usernamesRequestBuilder.build()).thenApply(usernamesResponse ->
+                PostViewZipper.zipIntoPostsWithUsernames(posts, usernamesResponse.getUsernamesList(), usernameIndices)
+        );
+    }
+
+    /**
+     * Future completes exceptionally with: InternalServerErrorException, BadEncodingException,
+     * UnsupportedVisibilityException.
+     */
+    @NonNull
+    public CompletableFuture<List<PostView>> fetchPostsWithUsernames(@NonNull PostsRequest request) {
+
+        // get posts by request from posts microservice and then usernames of their creators from users microservice
+        return findPosts(request).thenCompose(postsResponse -> {
+
+            List<Post> posts = postsResponse.getPostsList();
+            if (posts.isEmpty()) {
+                return CompletableFuture.completedFuture(List.of());
+            }
+
+            return loadUsernames(posts);
+        });
+    }
+
+    /**
+     * Runs query with creatorId of a user with a given username. If creatorId is cached, query is issued speculatively
+     * in parallel with creatorId lookup, so that both cost single rpc latency. Query is reissued only if cached
+     * creatorId turns out to be stale.
+     *
+     * @param query function which issues grpc request for a given creatorId. Cancelling returned future should cancel
+     *              the call or at least detach caller from it.
+     */
+    @NonNull
+    private <T> CompletableFuture<T> queryWithCreatorId(
+            @NonNull UserIdRequest creatorIdRequest,
+            @NonNull Function<ProtoObjectId, CompletableFuture<T>> query) {
+
+        String username = creatorIdRequest.getUsername();
+        CompletableFuture<ProtoObjectId> creatorIdFuture = toCompletableFuture(usersStub.findUserId(creatorIdRequest));
+
+        Optional<ProtoObjectId> optionalCachedCreatorId = userIdCache.get(username);
+        if (optionalCachedCreatorId.isEmpty()) {
+            return creatorIdFuture.thenCompose(creatorId -> {
+                userIdCache.put(username, creatorId);
+                return query.apply(creatorId);
+            });
+        }
+
+        ProtoObjectId cachedCreatorId = optionalCachedCreatorId.get();
+        CompletableFuture<T> speculativeFuture = query.apply(cachedCreatorId);
+
+        return creatorIdFuture.whenComplete((creatorId, ex) -> {
+            if (ex != null) {
+                userIdCache.remove(username);
+                speculativeFuture.cancel(true);
+            }
+        }).thenCompose(creatorId -> {
+            if (creatorId.equals(cachedCreatorId)) {
+                return speculativeFuture;
+            }
+            // username was taken over by other user in the meantime
+            speculativeFuture.cancel(true);
+            userIdCache.put(username, creatorId);
+            return query.apply(creatorId);
+        });
+    }
+
+    /**
+     * If ex signals that posts microservice does not implement creator username queries, remembers it and runs
+     * fallback. Otherwise returns future failed with decoded ex.
+     */
+    @NonNull
+    private <T> CompletableFuture<T> fallbackIfUnimplemented(
+            @NonNull Throwable ex,
+            @NonNull Supplier<CompletableFuture<T>> fallback) {
+
+        if (isUnimplemented(ex)) {
+            // older posts microservice, gateway restart is required to pick up upgraded one
+            isCreatorUsernameQueryImplemented = false;
+            return fallback.get();
+        }
+        return CompletableFuture.failedFuture(decodeGrpcException(unwrap(ex)));
+    }
+
+    /**
+     * Future completes exceptionally with: InternalServerErrorException, BadEncodingException,
+     * UnsupportedVisibilityException, UserNotFoundException.
+     */
+    @NonNull
+    public CompletableFuture<List<PostView>> fetchPostsWithUsernames(
+            @NonNull PostsRequest postsRequest,
+            @NonNull UserIdRequest creatorIdRequest) {
+
+        Supplier<CompletableFuture<PostsResponse>> postsByCreatorIdQuery = () -> queryWithCreatorId(
+                creatorIdRequest,
+                creatorId -> findPostsWithCreatorId(
+                        PostsWithCreatorIdRequest.newBuilder()
+                                .setPostsRequest(postsRequest)
+                                .setCreatorId(creatorId)
+                                .build()
+                )
+        );
+
+        CompletableFuture<PostsResponse> postsResponseFuture;
+        if (isCreatorUsernameQueryImplemented) {
+            var request = PostsWithCreatorUsernameRequest.newBuilder()
+                    .setPostsRequest(postsRequest)
+                    .setCreatorUsername(creatorIdRequest.getUsername())
+                    .build();
+
+            // posts microservice resolves username itself, single hop
+            postsResponseFuture = toUndecodedCompletableFuture(postsStub.findPostsWithCreatorUsername(request))
+                    .exceptionallyCompose(ex -> fallbackIfUnimplemented(ex, postsByCreatorIdQuery));
+        } else {
+            postsResponseFuture = postsByCreatorIdQuery.get();
+        }
+
+        return postsResponseFuture.thenApply(response -> {
+
+            List<Post> posts = response.getPostsList();
+            if (posts.isEmpty()) {
+                return List.of();
+            }
+
+            return PostViewZipper.zipIntoPostsWithUsernames(posts, creatorIdRequest.getUsername());
+        });
+    }
+
+    /**
+     * Future completes exceptionally with: InternalServerErrorException, BadEncodingException,
+     * UnsupportedVisibilityException, UserNotFoundException.
+     */
+    @NonNull
+    public CompletableFuture<List<PostView>> fetchPostsWithUsernames(@NonNull PostsWithCreatorIdRequest request) {
+
+        // async request for posts to posts microservice
+        CompletableFuture<PostsResponse> postsResponseFuture = findPostsWithCreatorId(request);
+
+        // async request for username to users microservice
+        CompletableFuture<UsernameResponse> usernameResponseFuture = toCompletableFuture(
+                usersStub.findUsername(request.getCreatorId()));
+
+        return postsResponseFuture.thenCompose(postsResponse -> {
+
+            // if empty return and cancel username request
+            List<Post> posts = postsResponse.getPostsList();
+            if (posts.isEmpty()) {
+                usernameResponseFuture.cancel(true);
+                return CompletableFuture.completedFuture(List.of());
+            }
+
+            return usernameResponseFuture.thenApply(usernameResponse -> PostViewZipper.zipIntoPostsWithUsernames(
+                    posts,
+                    usernameResponse.getUsername()
+            ));
+        });
+    }
+
+    /**
+     * Future completes exceptionally with: InternalServerErrorException, BadEncodingException,
+     * PostNotFoundException, UserNotFoundException.
+     */
+    @NonNull
+    public CompletableFuture<PostWithImageDataDto> fetchPostWithImage(@NonNull ProtoObjectId protoPostId) {
+
+        return toCompletableFuture(postsStub.findPostWithImageData(protoPostId)).thenCompose(post ->
+                toCompletableFuture(usersStub.findUsername(post.getPost().getUserId()))
+                        .thenApply(usernameResponse -> PostDtoMapper.map(post, usernameResponse.getUsername()))
+        );
+    }
+
+    /**
+     * Future completes exceptionally with: InternalServerErrorException, BadEncodingException,
+     * UnsupportedVisibilityException.
+     */
+    @NonNull
+    public CompletableFuture<List<PostRatingResponse>> fetchRatings(@NonNull PostRatingsRequest request) {
+
+        return toCompletableFuture(postsStub.findPostRatings(request)).thenApply(response ->
+                response.getPostRatingsList().stream().map(PostRatingMapper::map).toList()
+        );
+    }
+
+    /**
+     * Future completes exceptionally with: InternalServerErrorException, BadEncodingException,
+     * UnsupportedVisibilityException, UserNotFoundException.
+     */
+    @NonNull
+    public CompletableFuture<List<PostRatingResponse>> fetchRatings(
+            @NonNull PostRatingsRequest ratingsRequest,
+            @NonNull UserIdRequest creatorIdRequest) {
+
+        Supplier<CompletableFuture<PostRatingsResponse>> ratingsByCreatorIdQuery = () -> queryWithCreatorId(
+                creatorIdRequest,
+                creatorId -> toCompletableFuture(postsStub.findPostRatingsWithCreatorId(
+                        PostRatingsWithCreatorIdRequest.newBuilder()
+                                .setPostsRatingsRequest(ratingsRequest)
+                                .setCreatorId(creatorId)
+                                .build()
+                ))
+        );
+
+        CompletableFuture<PostRatingsResponse> ratingsResponseFuture;
+        if (isCreatorUsernameQueryImplemented) {
+            var request = PostRatingsWithCreatorUsernameRequest.newBuilder()
+                    .setPostsRatingsRequest(ratingsRequest)
+                    .setCreatorUsername(creatorIdRequest.getUsername())
+                    .build();
+
+            ratingsResponseFuture = toUndecodedCompletableFuture(postsStub.findPostRatingsWithCreatorUsername(request))
+                    .exceptionallyCompose(ex -> fallbackIfUnimplemented(ex, ratingsByCreatorIdQuery));
+        } else {
+            ratingsResponseFuture = ratingsByCreatorIdQuery.get();
+        }
+
+        return ratingsResponseFuture.thenApply(response ->
+                response.getPostRatingsList().stream().map(PostRatingMapper::map).toList()
+        );
+    }
+
+    /**
+     * Future completes exceptionally with: InternalServerErrorException, BadEncodingException, ImageNotFoundException.
+     */
+    @NonNull
+    public CompletableFuture<byte[]> fetchImage(@NonNull ProtoObjectId protoPostId) {
+
+        CompletableFuture<ImageResponse> imageResponseFuture = singleFlight.execute(
+                PostsGrpc.getFindImageMethod(),
+                protoPostId,
+                () -> toCompletableFuture(postsStub.findImage(protoPostId))
+        );
+
+        return imageResponseFuture.thenApply(imageResponse ->
+                imageResponse.getImageData().toByteArray()
+        );
+    }
+
+    /**
+     * Future completes exceptionally with: InternalServerErrorException, BadEncodingException,
+     * FileProcessingException.
+     */
+    @NonNull
+    public CompletableFuture<Empty> createPost(@NonNull CreatePostRequest request) {
+        return toCompletableFuture(postsStub.createPost(request));
+    }
+
+    /**
+     * Future completes exceptionally with: InternalServerErrorException, BadEncodingException, PostNotFoundException,
+     * RatingNotFoundException.
+     */
+    @NonNull
+    public CompletableFuture<Integer> ratePost(@NonNull RatePostRequest request) {
+        return toCompletableFuture(postsStub.ratePost(request)).thenApply(ChangedRatingResponse::getDelta);
+    }
+
+    /**
+     * Future completes exceptionally with: InternalServerErrorException, BadEncodingException, PostNotFoundException.
+     */
+    @NonNull
+    public CompletableFuture<Integer> unratePost(@NonNull UnratePostRequest request) {
+        return toCompletableFuture(postsStub.unratePost(request)).thenApply(ChangedRatingResponse::getDelta);
+    }
+
+    /**
+     * Future completes exceptionally with: InternalServerErrorException, BadEncodingException,
+     * UnsupportedVisibilityException, PostNotFoundException.
+     */
+    @NonNull
+    public CompletableFuture<Empty> changePostVisibility(@NonNull ChangePostVisibilityRequest request) {
+        return toCompletableFuture(postsStub.changePostVisibility(request));
+    }
+
+    /**
+     * Future completes exceptionally with: InternalServerErrorException, BadEncodingException, PostNotFoundException.
+     */
+    @NonNull
+    public CompletableFuture<ObjectId> fetchPostCreatorId(@NonNull ProtoObjectId protoPostId) {
+
+        return toCompletableFuture(postsStub.findPostCreatorId(protoPostId)).thenApply(creatorId ->
+                new ObjectId(creatorId.getHexString())
+        );
+    }
+
+    /**
+     * Future completes exceptionally with: InternalServerErrorException, BadEncodingException, UserNotFoundException.
+     */
+    @NonNull
+    public CompletableFuture<Role> fetchUserRole(@NonNull ProtoObjectId protoUserId) {
+
+        CompletableFuture<UserRoleResponse> userRoleResponseFuture = singleFlight.execute(
+                UsersGrpc.getFindUserRoleMethod(),
+                protoUserId,
+                () -> toCompletableFuture(usersStub.findUserRole(protoUserId))
+        );
+
+        return userRoleResponseFuture.thenApply(response ->
+                RoleMapper.map(response.getRole())
+        );
+    }
+
+    /**
+     * Future completes exceptionally with: InternalServerErrorException, BadEncodingException,
+     * UnsupportedRoleException, UserNotFoundException.
+     */
+    @NonNull
+    public CompletableFuture<UserDetailsImpl> fetchUserCredentials(@NonNull CredentialsRequest request) {
+        return toCompletableFuture(usersStub.findCredentials(request)).thenApply(CredentialsMapper::map);
+    }
+
+    /**
+     * Future completes exceptionally with: InternalServerErrorException, BadEncodingException,
+     * UnsupportedRoleException, DuplicateUsernameException, DuplicateEmailException, DuplicateUnexpectedFieldException.
+     */
+    @NonNull
+    public CompletableFuture<Empty> createUser(@NonNull CreateUserRequest request) {
+        return toCompletableFuture(usersStub.createUser(request));
+    }
+
+    /**
+     * Future completes exceptionally with: UserNotFoundException, InternalServerErrorException, BadEncodingException,
+     * UnsupportedRoleException, DuplicateUsernameException, DuplicateEmailException, DuplicateUnexpectedFieldException.
+     */
+    @NonNull
+    public CompletableFuture<Empty> updateUser(@NonNull UpdateUserRequest request) {
+        return toCompletableFuture(usersStub.updateUser(request));
+    }
+
+    /**
+     * Future completes exceptionally with: UnsupportedVisibilityException, PostNotFoundException.
+     */
+    @NonNull
+    public CompletableFuture<Visibility> fetchPostVisibility(@NonNull ProtoObjectId protoPostId) {
+
+        return toCompletableFuture(postsStub.findPostVisibility(protoPostId)).thenApply(response ->
+                VisibilityMapper.map(response.getVisibility())
+        );
+    }
+
+}
@@ -1,26 +1,29 @@
 package com.msik404.karmaappgateway.grpc.client;
 
-import java.util.*;
-import java.util.concurrent.ExecutionException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
 
-import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import com.msik404.grpc.mongo.id.ProtoObjectId;
-import com.msik404.karmaappgateway.exception.RestFromGrpcException;
-import com.msik404.karmaappgateway.grpc.client.encoding.ExceptionDecoder;
 import com.msik404.karmaappgateway.grpc.client.encoding.exception.BadEncodingException;
 import com.msik404.karmaappgateway.grpc.client.exception.InternalServerErrorException;
 import com.msik404.karmaappgateway.grpc.client.exception.UnsupportedRoleException;
 import com.msik404.karmaappgateway.grpc.client.exception.UnsupportedVisibilityException;
-import com.msik404.karmaappgateway.grpc.client.mapper.*;
-import com.msik404.karmaappgateway.grpc.client.zipper.PostDtoZipper;
-import com.msik404.karmaappgateway.post.dto.PostDto;
+import com.msik404.karmaappgateway.grpc.client.stream.GrpcImageStream;
+import com.msik404.karmaappgateway.grpc.client.stream.GrpcImageUpload;
 import com.msik404.karmaappgateway.post.dto.PostRatingResponse;
+import com.msik404.karmaappgateway.post.dto.PostView;
 import com.msik404.karmaappgateway.post.dto.PostWithImageDataDto;
 import com.msik404.karmaappgateway.post.dto.Visibility;
 import com.msik404.karmaappgateway.post.exception.FileProcessingException;
 import com.msik404.karmaappgateway.post.exception.ImageNotFoundException;
 import com.msik404.karmaappgateway.post.exception.PostNotFoundException;
 import com.msik404.karmaappgateway.post.exception.RatingNotFoundException;
+import com.msik404.karmaappgateway.post.image.ByteArrayImageStream;
+import com.msik404.karmaappgateway.post.image.ImageStream;
 import com.msik404.karmaappgateway.user.Role;
 import com.msik404.karmaappgateway.user.UserDetailsImpl;
 import com.msik404.karmaappgateway.user.exception.DuplicateEmailException;
@@ -29,165 +32,63 @@ import com.msik404.karmaappgateway.user.exception.DuplicateUsernameException;
 import com.msik404.karmaappgateway.user.exception.UserNotFoundException;
 import com.msik404.karmaappposts.grpc.*;
 import com.msik404.karmaappusers.grpc.*;
+import io.grpc.Context;
+import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
 import lombok.RequiredArgsConstructor;
 import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Service;
 
+import static com.msik404.karmaappgateway.grpc.client.GrpcFutures.await;
+import static com.msik404.karmaappgateway.grpc.client.GrpcFutures.decodeGrpcException;
+
 /**
- * This class makes requests to microservices.
+ * This class makes requests to microservices. Each method blocks calling thread until response arrives, requests
+ * themselves are dispatched by {@link GrpcAsyncDispatcherService}.
  */
 @Service
 @RequiredArgsConstructor
 public class GrpcDispatcherService {
 
-    private final PostsGrpc.PostsFutureStub postsStub;
-    private final UsersGrpc.UsersFutureStub usersStub;
+    private final GrpcAsyncDispatcherService asyncDispatcher;
 
-    @NonNull
-    private static RestFromGrpcException decodeGrpcException(
-            @NonNull ExecutionException ex) throws BadEncodingException {
+    private final PostsGrpc.PostsBlockingStub postsBlockingStub;
 
-        var statusRuntimeException = (StatusRuntimeException) ex.getCause();
-        String encodedException = statusRuntimeException.getMessage();
+    private final PostsGrpc.PostsStub postsAsyncStub;
 
-        return ExceptionDecoder.decodeException(encodedException);
-    }
-
-    @NonNull
-    private List<PostDto> loadUsernames(
-            @NonNull List<Post> posts
-    ) throws ExecutionException, InterruptedException {
-
-        Map<String, List<Integer>> userIdHexStringToPostIndices = new HashMap<>();
-        for (int i = 0; i < posts.size(); i++) {
-            String userIdHexString = posts.get(i).getUserId().getHexString();
-            userIdHexStringToPostIndices
-                    .computeIfAbsent(userIdHexString, key -> new ArrayList<>())
-                    .add(i);
-        }
+    @Value("${KarmaAppGateway.images.upload.chunk-size-bytes}")
+    private int uploadChunkSize;
 
-        var usernamesRequestBuilder = UsernamesRequest.newBuilder();
-        for (Map.Entry<String, List<Integer>> entry : userIdHexStringToPostIndices.entrySet()) {
-            usernamesRequestBuilder.addUserIdHexStrings(entry.getKey());
-        }
+    private volatile boolean isImageChunksQueryImplemented = true;
 
-        // usernamesRequest userId hexString map to usernamesResponse usernames in the same order
-        var usernamesRequest = usernamesRequestBuilder.build();
-
-        UsernamesResponse usernamesResponse = usersStub.findUsernames(usernamesRequest).get();
-        List<String> usernames = usernamesResponse.getUsernamesList();
-
-        // Output is the same size as input. If some username for a given userId was not found an empty string is places in its place
-        List<PostDto> postsWithUsernames = new ArrayList<>(Collections.nCopies(posts.size(), null));
-        for (int i = 0; i < usernamesRequest.getUserIdHexStringsCount(); i++) {
-            String userIdHexString = usernamesRequest.getUserIdHexStrings(i);
-
-            List<Integer> postIndices = userIdHexStringToPostIndices.get(userIdHexString);
-            for (int postIdx : postIndices) {
-                Post post = posts.get(postIdx);
-                postsWithUsernames.set(postIdx, new PostDto(
-                        new ObjectId(post.getPostId().getHexString()),
-                        new ObjectId(post.getUserId().getHexString()),
-                        usernames.get(i),
-                        post.getHeadline(),
-                        post.getText(),
-                        post.getKarmaScore(),
-                        post.getVisibility()
-                ));
-            }
-        }
-        return postsWithUsernames;
-    }
+    private volatile boolean isCreatePostChunksImplemented = true;
 
     @NonNull
-    public List<PostDto> fetchPostsWithUsernames(
+    public List<PostView> fetchPostsWithUsernames(
             @NonNull PostsRequest request
     ) throws InternalServerErrorException, BadEncodingException, UnsupportedVisibilityException {
 
-        try {
-            // get posts by request from posts microservice
-            PostsResponse postsResponse = postsStub.findPosts(request).get();
-            List<Post> posts = postsResponse.getPostsList();
-            if (posts.isEmpty()) {
-                return List.of();
-            }
-
-            return loadUsernames(posts);
-
-        } catch (InterruptedException ex) {
-            throw new InternalServerErrorException(ex.getMessage());
-        } catch (ExecutionException ex) {
-            throw decodeGrpcException(ex);
-        }
+        return await(asyncDispatcher.fetchPostsWithUsernames(request));
     }
 
     @NonNull
-    public List<PostDto> fetchPostsWithUsernames(
+    public List<PostView> fetchPostsWithUsernames(
             @NonNull PostsRequest postsRequest,
             @NonNull UserIdRequest creatorIdRequest
     ) throws InternalServerErrorException, BadEncodingException, UnsupportedVisibilityException, UserNotFoundException {
 
-        try {
-            // get userId by username from users microservice
-            ProtoObjectId protoCreatorId = usersStub.findUserId(creatorIdRequest).get();
-
-            var postsWithCreatorIdRequest = PostsWithCreatorIdRequest.newBuilder()
-                    .setPostsRequest(postsRequest)
-                    .setCreatorId(protoCreatorId)
-                    .build();
-
-            // get posts by PostsRequest and with given creatorId equal to userId
-            PostsResponse response = postsStub.findPostsWithCreatorId(postsWithCreatorIdRequest).get();
-            List<Post> posts = response.getPostsList();
-            if (posts.isEmpty()) {
-                return List.of();
-            }
-
-            return PostDtoZipper.zipIntoPostsWithUsernames(posts, creatorIdRequest.getUsername());
-
-        } catch (InterruptedException ex) {
-            throw new InternalServerErrorException(ex.getMessage());
-        } catch (ExecutionException ex) {
-            throw decodeGrpcException(ex);
-        }
+        return await(asyncDispatcher.fetchPostsWithUsernames(postsRequest, creatorIdRequest));
     }
 
     @NonNull
-    public List<PostDto> fetchPostsWithUsernames(
+    public List<PostView> fetchPostsWithUsernames(
             @NonNull PostsWithCreatorIdRequest request
     ) throws InternalServerErrorException, BadEncodingException, UnsupportedVisibilityException, UserNotFoundException {
 
-        try {
-            // async request for posts to posts microservice
-            ListenableFuture<PostsResponse> postsResponseFuture = postsStub.findPostsWithCreatorId(request);
-
-            // async request for username to users microservice
-            ListenableFuture<UsernameResponse> usernameResponseFuture = usersStub.findUsername(request.getCreatorId());
-
-            // wait for responses
-            PostsResponse postsResponse = postsResponseFuture.get();
-
-            // if empty return and cancel username request
-            List<Post> posts = postsResponse.getPostsList();
-            if (posts.isEmpty()) {
-                usernameResponseFuture.cancel(true);
-                return List.of();
-            }
-
-            UsernameResponse usernameResponse = usernameResponseFuture.get();
-
-            return PostDtoZipper.zipIntoPostsWithUsernames(
-                    posts,
-                    usernameResponse.getUsername()
-            );
-
-        } catch (InterruptedException ex) {
-            throw new InternalServerErrorException(ex.getMessage());
-        } catch (ExecutionException ex) {
-            throw decodeGrpcException(ex);
-        }
+        return await(asyncDispatcher.fetchPostsWithUsernames(request));
     }
 
     @NonNull
@@ -195,18 +96,7 @@ public class GrpcDispatcherService {
             @NonNull ProtoObjectId protoPostId
     ) throws InternalServerErrorException, BadEncodingException, PostNotFoundException, UserNotFoundException {
 
-        try {
-            PostWithImageData post = postsStub.findPostWithImageData(protoPostId).get();
-
-            UsernameResponse usernameResponse = usersStub.findUsername(post.getPost().getUserId()).get();
-
-            return PostDtoMapper.map(post, usernameResponse.getUsername());
-
-        } catch (InterruptedException ex) {
-            throw new InternalServerErrorException(ex.getMessage());
-        } catch (ExecutionException ex) {
-            throw decodeGrpcException(ex);
-        }
+        return await(asyncDispatcher.fetchPostWithImage(protoPostId));
     }
 
     @NonNull
@@ -214,16 +104,7 @@ public class GrpcDispatcherService {
             @NonNull PostRatingsRequest request
     ) throws InternalServerErrorException, BadEncodingException, UnsupportedVisibilityException {
 
-        try {
-            PostRatingsResponse response = postsStub.findPostRatings(request).get();
-
-            return response.getPostRatingsList().stream().map(PostRatingMapper::map).toList();
-
-        } catch (InterruptedException ex) {
-            throw new InternalServerErrorException(ex.getMessage());
-        } catch (ExecutionException ex) {
-            throw decodeGrpcException(ex);
-        }
+        return await(asyncDispatcher.fetchRatings(request));
     }
 
     @NonNull
@@ -232,23 +113,7 @@ public class GrpcDispatcherService {
             @NonNull UserIdRequest creatorIdRequest
     ) throws InternalServerErrorException, BadEncodingException, UnsupportedVisibilityException, UserNotFoundException {
 
-        try {
-            ProtoObjectId protoCreatorId = usersStub.findUserId(creatorIdRequest).get();
-
-            var request = PostRatingsWithCreatorIdRequest.newBuilder()
-                    .setPostsRatingsRequest(ratingsRequest)
-                    .setCreatorId(protoCreatorId)
-                    .build();
-
-            PostRatingsResponse response = postsStub.findPostRatingsWithCreatorId(request).get();
-
-            return response.getPostRatingsList().stream().map(PostRatingMapper::map).toList();
-
-        } catch (InterruptedException ex) {
-            throw new InternalServerErrorException(ex.getMessage());
-        } catch (ExecutionException ex) {
-            throw decodeGrpcException(ex);
-        }
+        return await(asyncDispatcher.fetchRatings(ratingsRequest, creatorIdRequest));
     }
 
     @NonNull
@@ -256,28 +121,119 @@ public class GrpcDispatcherService {
             @NonNull ProtoObjectId protoPostId
     ) throws InternalServerErrorException, BadEncodingException, ImageNotFoundException {
 
-        try {
-            ImageResponse imageResponse = postsStub.findImage(protoPostId).get();
+        return await(asyncDispatcher.fetchImage(protoPostId));
+    }
+
+    /**
+     * Image is streamed by findImageChunks. First chunk is awaited, so that ImageNotFoundException is thrown before
+     * anything is written to the client. Stream can last longer than request deadline, so it is started in forked
+     * grpc Context and bounded only by its method timeout. If posts microservice does not implement streaming, whole
+     * image is fetched with findImage.
+     */
+    @NonNull
+    public ImageStream openImageStream(
+            @NonNull ProtoObjectId protoPostId
+    ) throws InternalServerErrorException, BadEncodingException, ImageNotFoundException {
 
-            return imageResponse.getImageData().toByteArray();
+        if (isImageChunksQueryImplemented) {
+            Context.CancellableContext callContext = Context.current().fork().withCancellation();
+            Context previous = callContext.attach();
+            try {
+                Iterator<ImageChunk> chunks = postsBlockingStub.findImageChunks(protoPostId);
+                if (!chunks.hasNext()) {
+                    callContext.cancel(null);
+                    throw new ImageNotFoundException();
+                }
+                return new GrpcImageStream(callContext, chunks.next(), chunks);
+            } catch (StatusRuntimeException ex) {
+                callContext.cancel(null);
+                if (ex.getStatus().getCode() != Status.Code.UNIMPLEMENTED) {
+                    throw decodeGrpcException(ex);
+                }
+                // older posts microservice, gateway restart is required to pick up upgraded one
+                isImageChunksQueryImplemented = false;
+            } finally {
+                callContext.detach(previous);
+            }
+        }
 
-        } catch (InterruptedException ex) {
-            throw new InternalServerErrorException(ex.getMessage());
-        } catch (ExecutionException ex) {
-            throw decodeGrpcException(ex);
+        byte[] imageData = fetchImage(protoPostId);
+        if (imageData.length == 0) {
+            throw new ImageNotFoundException();
         }
+        return new ByteArrayImageStream(imageData);
     }
 
     public void createPost(
             @NonNull CreatePostRequest request
     ) throws InternalServerErrorException, BadEncodingException, FileProcessingException {
 
-        try {
-            postsStub.createPost(request).get();
-        } catch (InterruptedException ex) {
-            throw new InternalServerErrorException(ex.getMessage());
-        } catch (ExecutionException ex) {
-            throw decodeGrpcException(ex);
+        await(asyncDispatcher.createPost(request));
+    }
+
+    /**
+     * Image is read in chunks and sent by createPostWithImageChunks, so that it is never held in memory as a whole.
+     * Each chunk is read into its own array, which is wrapped by grpc message without copying. Upload can last longer
+     * than request deadline, part of which was already spent on receiving multipart request, so it is started in
+     * forked grpc Context and bounded only by its method timeout. If posts microservice does not implement streaming,
+     * whole image is sent with createPost.
+     *
+     * @param request post to be created, without image data.
+     * @param image   source of image data, it is opened again if upload has to be repeated with createPost.
+     */
+    public void createPost(
+            @NonNull CreatePostRequest request,
+            @NonNull InputStreamSource image
+    ) throws InternalServerErrorException, BadEncodingException, FileProcessingException {
+
+        if (isCreatePostChunksImplemented) {
+            var upload = new GrpcImageUpload();
+            Context uploadContext = Context.current().fork();
+            Context previous = uploadContext.attach();
+            try {
+                postsAsyncStub.createPostWithImageChunks(upload);
+            } finally {
+                uploadContext.detach(previous);
+            }
+
+            try (InputStream imageData = image.getInputStream()) {
+                boolean isCallOpen = upload.send(CreatePostChunk.newBuilder().setPost(request).build());
+                while (isCallOpen) {
+                    byte[] chunk = new byte[uploadChunkSize];
+                    int read = imageData.readNBytes(chunk, 0, chunk.length);
+                    if (read == 0) {
+                        upload.complete();
+                        break;
+                    }
+                    isCallOpen = upload.send(CreatePostChunk.newBuilder()
+                            .setImageData(UnsafeByteOperations.unsafeWrap(chunk, 0, read))
+                            .build());
+                }
+            } catch (IOException ex) {
+                upload.cancel(ex);
+                throw new FileProcessingException();
+            } catch (InterruptedException ex) {
+                upload.cancel(ex);
+                Thread.currentThread().interrupt();
+                throw new InternalServerErrorException(ex.getMessage());
+            }
+
+            try {
+                await(upload.getResponse());
+                return;
+            } catch (StatusRuntimeException ex) {
+                if (ex.getStatus().getCode() != Status.Code.UNIMPLEMENTED) {
+                    throw decodeGrpcException(ex);
+                }
+                // older posts microservice, gateway restart is required to pick up upgraded one
+                isCreatePostChunksImplemented = false;
+            }
+        }
+
+        try (InputStream imageData = image.getInputStream()) {
+            createPost(request.toBuilder().setImageData(ByteString.readFrom(imageData)).build());
+        } catch (IOException ex) {
+            throw new FileProcessingException();
         }
     }
 
@@ -285,45 +241,21 @@ public class GrpcDispatcherService {
             @NonNull RatePostRequest request
     ) throws InternalServerErrorException, BadEncodingException, PostNotFoundException, RatingNotFoundException {
 
-        try {
-            ChangedRatingResponse response = postsStub.ratePost(request).get();
-
-            return response.getDelta();
-
-        } catch (InterruptedException ex) {
-            throw new InternalServerErrorException(ex.getMessage());
-        } catch (ExecutionException ex) {
-            throw decodeGrpcException(ex);
-        }
+        return await(asyncDispatcher.ratePost(request));
     }
 
     public int unratePost(
             @NonNull UnratePostRequest request
     ) throws InternalServerErrorException, BadEncodingException, PostNotFoundException {
 
-        try {
-            ChangedRatingResponse response = postsStub.unratePost(request).get();
-
-            return response.getDelta();
-
-        } catch (InterruptedException ex) {
-            throw new InternalServerErrorException(ex.getMessage());
-        } catch (ExecutionException ex) {
-            throw decodeGrpcException(ex);
-        }
+        return await(asyncDispatcher.unratePost(request));
     }
 
     public void changePostVisibility(
             @NonNull ChangePostVisibilityRequest request
     ) throws InternalServerErrorException, BadEncodingException, UnsupportedVisibilityException, PostNotFoundException {
 
-        try {
-            postsStub.changePostVisibility(request).get();
-        } catch (InterruptedException ex) {
-            throw new InternalServerErrorException(ex.getMessage());
-        } catch (ExecutionException ex) {
-            throw decodeGrpcException(ex);
-        }
+        await(asyncDispatcher.changePostVisibility(request));
     }
 
     @NonNull
@@ -331,16 +263,7 @@ public class GrpcDispatcherService {
             @NonNull ProtoObjectId protoPostId
     ) throws InternalServerErrorException, BadEncodingException, PostNotFoundException {
 
-        try {
-            ProtoObjectId creatorId = postsStub.findPostCreatorId(protoPostId).get();
-
-            return new ObjectId(creatorId.getHexString());
-
-        } catch (InterruptedException ex) {
-            throw new InternalServerErrorException(ex.getMessage());
-        } catch (ExecutionException ex) {
-            throw decodeGrpcException(ex);
-        }
+        return await(asyncDispatcher.fetchPostCreatorId(protoPostId));
     }
 
     @NonNull
@@ -348,16 +271,7 @@ public class GrpcDispatcherService {
             @NonNull ProtoObjectId protoUserId
     ) throws InternalServerErrorException, BadEncodingException, UserNotFoundException {
 
-        try {
-            UserRoleResponse response = usersStub.findUserRole(protoUserId).get();
-
-            return RoleMapper.map(response.getRole());
-
-        } catch (InterruptedException ex) {
-            throw new InternalServerErrorException(ex.getMessage());
-        } catch (ExecutionException ex) {
-            throw decodeGrpcException(ex);
-        }
+        return await(asyncDispatcher.fetchUserRole(protoUserId));
     }
 
     @NonNull
@@ -365,16 +279,7 @@ public class GrpcDispatcherService {
             @NonNull CredentialsRequest request
     ) throws InternalServerErrorException, BadEncodingException, UnsupportedRoleException, UserNotFoundException {
 
-        try {
-            CredentialsResponse response = usersStub.findCredentials(request).get();
-
-            return CredentialsMapper.map(response);
-
-        } catch (InterruptedException ex) {
-            throw new InternalServerErrorException(ex.getMessage());
-        } catch (ExecutionException ex) {
-            throw decodeGrpcException(ex);
-        }
+        return await(asyncDispatcher.fetchUserCredentials(request));
     }
 
     public void createUser(
@@ -382,13 +287,7 @@ public class GrpcDispatcherService {
     ) throws InternalServerErrorException, BadEncodingException, UnsupportedRoleException, DuplicateUsernameException,
             DuplicateEmailException, DuplicateUnexpectedFieldException {
 
-        try {
-            usersStub.createUser(request).get();
-        } catch (InterruptedException ex) {
-            throw new InternalServerErrorException(ex.getMessage());
-        } catch (ExecutionException ex) {
-            throw decodeGrpcException(ex);
-        }
+        await(asyncDispatcher.createUser(request));
     }
 
 
@@ -397,29 +296,14 @@ public class GrpcDispatcherService {
     ) throws UserNotFoundException, InternalServerErrorException, BadEncodingException, UnsupportedRoleException,
             DuplicateUsernameException, DuplicateEmailException, DuplicateUnexpectedFieldException {
 
-        try {
-            usersStub.updateUser(request).get();
-        } catch (InterruptedException ex) {
-            throw new InternalServerErrorException(ex.getMessage());
-        } catch (ExecutionException ex) {
-            throw decodeGrpcException(ex);
-        }
+        await(asyncDispatcher.updateUser(request));
     }
 
     public Visibility fetchPostVisibility(
             @NonNull ProtoObjectId protoPostId
     ) throws UnsupportedVisibilityException, PostNotFoundException {
 
-        try {
-            PostVisibilityResponse response = postsStub.findPostVisibility(protoPostId).get();
-
-            return VisibilityMapper.map(response.getVisibility());
-
-        } catch (InterruptedException ex) {
-            throw new InternalServerErrorException(ex.getMessage());
-        } catch (ExecutionException ex) {
-            throw decodeGrpcException(ex);
-        }
+        return await(asyncDispatcher.fetchPostVisibility(protoPostId));
     }
 
 }
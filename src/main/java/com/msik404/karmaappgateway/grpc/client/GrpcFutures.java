@@ -0,0 +1,148 @@
+package com.msik404.karmaappgateway.grpc.client;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.msik404.karmaappgateway.grpc.client.encoding.ExceptionDecoder;
+import com.msik404.karmaappgateway.grpc.client.encoding.exception.BadEncodingException;
+import com.msik404.karmaappgateway.grpc.client.exception.DeadlineExceededException;
+import com.msik404.karmaappgateway.grpc.client.exception.InternalServerErrorException;
+import com.msik404.karmaappgateway.grpc.client.exception.ServiceUnavailableException;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.springframework.lang.NonNull;
+
+/**
+ * Helpers for bridging grpc ListenableFutures with CompletableFutures.
+ */
+public class GrpcFutures {
+
+    private static final Set<Status.Code> UNAVAILABLE_CODES = EnumSet.of(
+            Status.Code.UNAVAILABLE,
+            Status.Code.RESOURCE_EXHAUSTED
+    );
+
+    @NonNull
+    public static RuntimeException decodeGrpcException(@NonNull Throwable ex) {
+
+        if (ex instanceof StatusRuntimeException statusRuntimeException) {
+            Status.Code code = statusRuntimeException.getStatus().getCode();
+            // this status is produced by grpc itself, so it is not encoded
+            if (code == Status.Code.DEADLINE_EXCEEDED) {
+                return new DeadlineExceededException();
+            }
+            try {
+                return ExceptionDecoder.decodeException(statusRuntimeException);
+            } catch (BadEncodingException badEncodingException) {
+                // not encoded, produced by grpc when backend can not be reached, by overloaded backend or by
+                // circuit breaker, so reads can be served from stale cache
+                if (UNAVAILABLE_CODES.contains(code)) {
+                    return new ServiceUnavailableException();
+                }
+                return badEncodingException;
+            }
+        }
+        return new InternalServerErrorException(ex.getMessage());
+    }
+
+    /**
+     * @param listenableFuture future returned by grpc future stub.
+     * @return CompletableFuture which completes on grpc callback thread. On failure it completes with decoded
+     * exception. Cancelling returned future cancels the grpc call.
+     */
+    @NonNull
+    public static <T> CompletableFuture<T> toCompletableFuture(@NonNull ListenableFuture<T> listenableFuture) {
+        return bridge(listenableFuture, true);
+    }
+
+    /**
+     * Same as {@link #toCompletableFuture(ListenableFuture)} but on failure future completes with original
+     * StatusRuntimeException, so that caller can inspect status code before decoding.
+     */
+    @NonNull
+    public static <T> CompletableFuture<T> toUndecodedCompletableFuture(@NonNull ListenableFuture<T> listenableFuture) {
+        return bridge(listenableFuture, false);
+    }
+
+    @NonNull
+    private static <T> CompletableFuture<T> bridge(@NonNull ListenableFuture<T> listenableFuture, boolean decode) {
+
+        var completableFuture = new CompletableFuture<T>() {
+
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                listenableFuture.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+
+        Futures.addCallback(listenableFuture, new FutureCallback<>() {
+
+            @Override
+            public void onSuccess(T result) {
+                completableFuture.complete(result);
+            }
+
+            @Override
+            public void onFailure(@NonNull Throwable t) {
+                completableFuture.completeExceptionally(decode ? decodeGrpcException(t) : t);
+            }
+
+        }, MoreExecutors.directExecutor());
+
+        return completableFuture;
+    }
+
+    /**
+     * @param ex exception with which some stage of CompletableFuture pipeline has completed.
+     * @return true if remote server does not implement called method.
+     */
+    public static boolean isUnimplemented(@NonNull Throwable ex) {
+        return unwrap(ex) instanceof StatusRuntimeException statusException
+                && statusException.getStatus().getCode() == Status.Code.UNIMPLEMENTED;
+    }
+
+    /**
+     * @param ex exception with which some stage of CompletableFuture pipeline has completed.
+     * @return the actual cause, CompletionException wrappers are removed.
+     */
+    @NonNull
+    public static Throwable unwrap(@NonNull Throwable ex) {
+
+        Throwable cause = ex;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * Blocks current thread until future completes.
+     *
+     * @return value of completed future.
+     * @throws RuntimeException the exception with which future completed exceptionally.
+     */
+    public static <T> T await(@NonNull CompletableFuture<T> future) {
+
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InternalServerErrorException(ex.getMessage());
+        } catch (ExecutionException ex) {
+            Throwable cause = unwrap(ex.getCause());
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new InternalServerErrorException(cause.getMessage());
+        }
+    }
+
+}
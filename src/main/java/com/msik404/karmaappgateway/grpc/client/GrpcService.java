@@ -2,8 +2,8 @@ package com.msik404.karmaappgateway.grpc.client;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
-import com.google.protobuf.ByteString;
 import com.msik404.grpc.mongo.id.ProtoObjectId;
 import com.msik404.karmaappgateway.auth.dto.RegisterRequest;
 import com.msik404.karmaappgateway.grpc.client.exception.UnsupportedRoleException;
@@ -18,6 +18,7 @@ import com.msik404.karmaappgateway.post.exception.FileProcessingException;
 import com.msik404.karmaappgateway.post.exception.ImageNotFoundException;
 import com.msik404.karmaappgateway.post.exception.PostNotFoundException;
 import com.msik404.karmaappgateway.post.exception.RatingNotFoundException;
+import com.msik404.karmaappgateway.post.image.ImageStream;
 import com.msik404.karmaappgateway.user.Role;
 import com.msik404.karmaappgateway.user.UserDetailsImpl;
 import com.msik404.karmaappgateway.user.dto.UserUpdateRequestWithAdminPrivilege;
@@ -31,6 +32,7 @@ import com.msik404.karmaappusers.grpc.CreateUserRequest;
 import com.msik404.karmaappusers.grpc.CredentialsRequest;
 import com.msik404.karmaappusers.grpc.UserIdRequest;
 import org.bson.types.ObjectId;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -38,24 +40,30 @@ import org.springframework.stereotype.Service;
 
 /**
  * This class accepts this microservice specific classes and transforms them into grpc requests and runs them.
+ * Read requests which are served by non-blocking endpoints return CompletableFuture, rest of the methods block.
  */
 @Service
 public class GrpcService {
 
     private final GrpcDispatcherService dispatcher;
+    private final GrpcAsyncDispatcherService asyncDispatcher;
     private final BCryptPasswordEncoder bCryptPasswordEncoder;
     private final UserUpdateMapper userUpdateMapper;
 
-    public GrpcService(GrpcDispatcherService dispatcher, BCryptPasswordEncoder bCryptPasswordEncoder) {
+    public GrpcService(
+            GrpcDispatcherService dispatcher,
+            GrpcAsyncDispatcherService asyncDispatcher,
+            BCryptPasswordEncoder bCryptPasswordEncoder) {
 
         this.dispatcher = dispatcher;
+        this.asyncDispatcher = asyncDispatcher;
         this.bCryptPasswordEncoder = bCryptPasswordEncoder;
 
         this.userUpdateMapper = new UserUpdateMapper(bCryptPasswordEncoder);
     }
 
     @NonNull
-    public List<PostDto> findTopNPosts(
+    public CompletableFuture<List<PostView>> findTopNPosts(
             int size,
             @NonNull Collection<Visibility> visibilities) {
 
@@ -64,11 +72,11 @@ public class GrpcService {
                 .addAllVisibilities(visibilities.stream().map(VisibilityMapper::map).toList())
                 .build();
 
-        return dispatcher.fetchPostsWithUsernames(postsRequest);
+        return asyncDispatcher.fetchPostsWithUsernames(postsRequest);
     }
 
     @NonNull
-    public List<PostDto> findNextNPosts(
+    public CompletableFuture<List<PostView>> findNextNPosts(
             int size,
             @NonNull Collection<Visibility> visibilities,
             @NonNull ScrollPosition scrollPosition) {
@@ -79,11 +87,11 @@ public class GrpcService {
                 .setPosition(ScrollPositionMapper.map(scrollPosition))
                 .build();
 
-        return dispatcher.fetchPostsWithUsernames(postsRequest);
+        return asyncDispatcher.fetchPostsWithUsernames(postsRequest);
     }
 
     @NonNull
-    public List<PostDto> findTopNPostsByCreatorUsername(
+    public CompletableFuture<List<PostView>> findTopNPostsByCreatorUsername(
             int size,
             @NonNull Collection<Visibility> visibilities,
             @NonNull String creatorUsername
@@ -98,11 +106,11 @@ public class GrpcService {
                 .setUsername(creatorUsername)
                 .build();
 
-        return dispatcher.fetchPostsWithUsernames(postsRequest, userIdRequest);
+        return asyncDispatcher.fetchPostsWithUsernames(postsRequest, userIdRequest);
     }
 
     @NonNull
-    public List<PostDto> findNextNPostsByCreatorUsername(
+    public CompletableFuture<List<PostView>> findNextNPostsByCreatorUsername(
             int size,
             @NonNull Collection<Visibility> visibilities,
             @NonNull ScrollPosition scrollPosition,
@@ -119,11 +127,11 @@ public class GrpcService {
                 .setUsername(creatorUsername)
                 .build();
 
-        return dispatcher.fetchPostsWithUsernames(postsRequest, userIdRequest);
+        return asyncDispatcher.fetchPostsWithUsernames(postsRequest, userIdRequest);
     }
 
     @NonNull
-    public List<PostDto> findTopNPostsByCreatorId(
+    public CompletableFuture<List<PostView>> findTopNPostsByCreatorId(
             int size,
             @NonNull Collection<Visibility> visibilities,
             @NonNull ObjectId creatorId
@@ -139,11 +147,11 @@ public class GrpcService {
                 .setCreatorId(ProtoObjectId.newBuilder().setHexString(creatorId.toHexString()).build())
                 .build();
 
-        return dispatcher.fetchPostsWithUsernames(postsWithCreatorIdRequest);
+        return asyncDispatcher.fetchPostsWithUsernames(postsWithCreatorIdRequest);
     }
 
     @NonNull
-    public List<PostDto> findNextNPostsByCreatorId(
+    public CompletableFuture<List<PostView>> findNextNPostsByCreatorId(
             int size,
             @NonNull Collection<Visibility> visibilities,
             @NonNull ObjectId creatorId,
@@ -161,7 +169,7 @@ public class GrpcService {
                 .setCreatorId(ProtoObjectId.newBuilder().setHexString(creatorId.toHexString()).build())
                 .build();
 
-        return dispatcher.fetchPostsWithUsernames(postsWithCreatorIdRequest);
+        return asyncDispatcher.fetchPostsWithUsernames(postsWithCreatorIdRequest);
     }
 
     @NonNull
@@ -175,7 +183,7 @@ public class GrpcService {
     }
 
     @NonNull
-    public List<PostRatingResponse> findTopNRatings(
+    public CompletableFuture<List<PostRatingResponse>> findTopNRatings(
             int size,
             @NonNull Collection<Visibility> visibilities,
             @NonNull ObjectId clientId) {
@@ -190,11 +198,11 @@ public class GrpcService {
                 .setClientId(ProtoObjectId.newBuilder().setHexString(clientId.toHexString()).build())
                 .build();
 
-        return dispatcher.fetchRatings(ratingsRequest);
+        return asyncDispatcher.fetchRatings(ratingsRequest);
     }
 
     @NonNull
-    public List<PostRatingResponse> findNextNRatings(
+    public CompletableFuture<List<PostRatingResponse>> findNextNRatings(
             int size,
             @NonNull Collection<Visibility> visibilities,
             @NonNull ObjectId clientId,
@@ -211,11 +219,11 @@ public class GrpcService {
                 .setClientId(ProtoObjectId.newBuilder().setHexString(clientId.toHexString()).build())
                 .build();
 
-        return dispatcher.fetchRatings(ratingsRequest);
+        return asyncDispatcher.fetchRatings(ratingsRequest);
     }
 
     @NonNull
-    public List<PostRatingResponse> findTopNRatingsByCreatorUsername(
+    public CompletableFuture<List<PostRatingResponse>> findTopNRatingsByCreatorUsername(
             int size,
             @NonNull Collection<Visibility> visibilities,
             @NonNull ObjectId clientId,
@@ -234,11 +242,11 @@ public class GrpcService {
 
         var creatorIdRequest = UserIdRequest.newBuilder().setUsername(creatorUsername).build();
 
-        return dispatcher.fetchRatings(ratingsRequest, creatorIdRequest);
+        return asyncDispatcher.fetchRatings(ratingsRequest, creatorIdRequest);
     }
 
     @NonNull
-    public List<PostRatingResponse> findNextNRatingsByCreatorUsername(
+    public CompletableFuture<List<PostRatingResponse>> findNextNRatingsByCreatorUsername(
             int size,
             @NonNull Collection<Visibility> visibilities,
             @NonNull ObjectId clientId,
@@ -259,23 +267,54 @@ public class GrpcService {
 
         var creatorIdRequest = UserIdRequest.newBuilder().setUsername(creatorUsername).build();
 
-        return dispatcher.fetchRatings(ratingsRequest, creatorIdRequest);
+        return asyncDispatcher.fetchRatings(ratingsRequest, creatorIdRequest);
     }
 
     @NonNull
-    public byte[] findImage(
+    public CompletableFuture<byte[]> findImage(
             @NonNull ObjectId postId
     ) throws ImageNotFoundException {
 
         var protoPostId = ProtoObjectId.newBuilder().setHexString(postId.toHexString()).build();
 
-        return dispatcher.fetchImage(protoPostId);
+        return asyncDispatcher.fetchImage(protoPostId);
     }
 
+    /**
+     * @return image streamed from posts microservice, it must be closed.
+     * @throws ImageNotFoundException thrown before anything is streamed, if image does not exist.
+     */
+    @NonNull
+    public ImageStream openImageStream(
+            @NonNull ObjectId postId
+    ) throws ImageNotFoundException {
+
+        var protoPostId = ProtoObjectId.newBuilder().setHexString(postId.toHexString()).build();
+
+        return dispatcher.openImageStream(protoPostId);
+    }
+
+    /**
+     * @param image source of image data, which is streamed to posts microservice in chunks.
+     */
     public void createPost(
             @NonNull ObjectId clientId,
             @NonNull PostCreationRequest creationRequest,
-            @Nullable byte[] imageData
+            @Nullable InputStreamSource image
+    ) throws FileProcessingException {
+
+        createPost(clientId, creationRequest, image, null);
+    }
+
+    /**
+     * @param idempotencyKey if set, repeated calls with the same key create at most one post, so that call can be
+     *                       retried when its outcome is unknown.
+     */
+    public void createPost(
+            @NonNull ObjectId clientId,
+            @NonNull PostCreationRequest creationRequest,
+            @Nullable InputStreamSource image,
+            @Nullable String idempotencyKey
     ) throws FileProcessingException {
 
         var requestBuilder = CreatePostRequest.newBuilder()
@@ -283,11 +322,17 @@ public class GrpcService {
                 .setHeadline(creationRequest.headline())
                 .setText(creationRequest.text());
 
-        if (imageData != null) {
-            requestBuilder.setImageData(ByteString.copyFrom(imageData));
+        if (idempotencyKey != null) {
+            requestBuilder.setIdempotencyKey(idempotencyKey);
         }
 
-        dispatcher.createPost(requestBuilder.build());
+        var request = requestBuilder.build();
+
+        if (image == null) {
+            dispatcher.createPost(request);
+        } else {
+            dispatcher.createPost(request, image);
+        }
     }
 
     public int ratePost(
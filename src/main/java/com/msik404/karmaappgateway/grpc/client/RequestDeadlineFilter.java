@@ -0,0 +1,71 @@
+package com.msik404.karmaappgateway.grpc.client;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.Context;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Gives each http request a deadline budget. Every grpc call made while handling the request inherits it from grpc
+ * Context, effective deadline of a call is the earlier of the request deadline and method timeout from service config.
+ * Grpc runs call callbacks with the Context of the call attached, so calls chained in CompletableFuture stages
+ * inherit the deadline as well.
+ * <p>
+ * Runs before security filters, because authentication also calls users microservice.
+ */
+@Component
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER - 1)
+public class RequestDeadlineFilter extends OncePerRequestFilter {
+
+    private final long requestDeadlineMillis;
+
+    private final ScheduledExecutorService deadlineScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "grpc-request-deadline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RequestDeadlineFilter(@Value("${KarmaAppGateway.grpc.request-deadline-ms}") long requestDeadlineMillis) {
+        this.requestDeadlineMillis = requestDeadlineMillis;
+    }
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+
+        Context.CancellableContext context = Context.current()
+                .withDeadlineAfter(requestDeadlineMillis, TimeUnit.MILLISECONDS, deadlineScheduler);
+
+        Context previous = context.attach();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            context.detach(previous);
+            // async requests still have calls in flight, their context gets cancelled once deadline passes
+            if (!request.isAsyncStarted()) {
+                context.cancel(null);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        deadlineScheduler.shutdownNow();
+    }
+
+}
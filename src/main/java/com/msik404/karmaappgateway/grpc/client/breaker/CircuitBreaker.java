@@ -0,0 +1,196 @@
+package com.msik404.karmaappgateway.grpc.client.breaker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.lang.NonNull;
+
+/**
+ * Count based circuit breaker. In CLOSED state outcomes of the last slidingWindowSize calls are recorded, if failure
+ * rate reaches threshold breaker goes OPEN and rejects calls for openDuration. After that it goes HALF_OPEN and lets
+ * halfOpenCalls trial calls through: single failure opens it again, all of them succeeding closes it. If trial calls do
+ * not settle the state within openDuration, for example because outcome of some of them was never recorded, new round
+ * of trial calls is let through, so that breaker can not stay HALF_OPEN for good.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String name;
+
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openDurationNanos;
+    private final int halfOpenCalls;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // ring buffer of outcomes of recent calls in CLOSED state, true means failure
+    private final boolean[] outcomes;
+    private int nextOutcomeIdx = 0;
+    private int recordedCalls = 0;
+    private int failedCalls = 0;
+
+    private volatile State state = State.CLOSED;
+    private long openedAtNanos;
+    private long halfOpenedAtNanos;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    public CircuitBreaker(
+            @NonNull String name,
+            double failureRateThreshold,
+            int slidingWindowSize,
+            int minimumCalls,
+            long openDurationMillis,
+            int halfOpenCalls) {
+
+        this.name = name;
+        this.failureRateThreshold = failureRateThreshold;
+        this.outcomes = new boolean[slidingWindowSize];
+        this.minimumCalls = Math.min(minimumCalls, slidingWindowSize);
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    @NonNull
+    public State getState() {
+        return state;
+    }
+
+    private void resetWindow() {
+
+        nextOutcomeIdx = 0;
+        recordedCalls = 0;
+        failedCalls = 0;
+    }
+
+    private void open() {
+
+        state = State.OPEN;
+        openedAtNanos = System.nanoTime();
+        resetWindow();
+    }
+
+    private void recordInWindow(boolean isFailure) {
+
+        if (recordedCalls == outcomes.length) {
+            if (outcomes[nextOutcomeIdx]) {
+                failedCalls--;
+            }
+        } else {
+            recordedCalls++;
+        }
+
+        outcomes[nextOutcomeIdx] = isFailure;
+        if (isFailure) {
+            failedCalls++;
+        }
+        nextOutcomeIdx = (nextOutcomeIdx + 1) % outcomes.length;
+
+        if (recordedCalls >= minimumCalls && (double) failedCalls / recordedCalls >= failureRateThreshold) {
+            open();
+        }
+    }
+
+    private void startTrials() {
+
+        state = State.HALF_OPEN;
+        halfOpenedAtNanos = System.nanoTime();
+        halfOpenPermits = halfOpenCalls;
+        halfOpenSuccesses = 0;
+    }
+
+    /**
+     * Each acquired permission must be followed by exactly one of: onSuccess, onFailure, onIgnored.
+     *
+     * @return true if call can be made, false if it should fail fast.
+     */
+    public boolean tryAcquirePermission() {
+
+        // fast path, no locking while closed
+        if (state == State.CLOSED) {
+            return true;
+        }
+
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openedAtNanos < openDurationNanos) {
+                    return false;
+                }
+                startTrials();
+            } else if (state == State.HALF_OPEN
+                    && halfOpenPermits == 0
+                    && System.nanoTime() - halfOpenedAtNanos >= openDurationNanos) {
+                startTrials();
+            }
+            if (state == State.HALF_OPEN) {
+                if (halfOpenPermits == 0) {
+                    return false;
+                }
+                halfOpenPermits--;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onSuccess() {
+
+        lock.lock();
+        try {
+            if (state == State.CLOSED) {
+                recordInWindow(false);
+            } else if (state == State.HALF_OPEN) {
+                halfOpenSuccesses++;
+                if (halfOpenSuccesses == halfOpenCalls) {
+                    state = State.CLOSED;
+                    resetWindow();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onFailure() {
+
+        lock.lock();
+        try {
+            if (state == State.CLOSED) {
+                recordInWindow(true);
+            } else if (state == State.HALF_OPEN) {
+                open();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Used for calls whose outcome says nothing about backend health, for example cancelled ones.
+     */
+    public void onIgnored() {
+
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) {
+                halfOpenPermits++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
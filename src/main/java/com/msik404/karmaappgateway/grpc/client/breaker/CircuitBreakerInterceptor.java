@@ -0,0 +1,188 @@
+package com.msik404.karmaappgateway.grpc.client.breaker;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.grpc.*;
+import io.micrometer.core.instrument.Counter;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+/**
+ * Guards backend calls with circuit breaker. Only statuses signaling that backend is unhealthy are counted as
+ * failures, application errors encoded by backend mean that it works correctly. While breaker is open calls fail
+ * immediately with UNAVAILABLE status, which is decoded like UNAVAILABLE returned by grpc itself. REJECTED_KEY trailer
+ * is set only to tell rejected calls apart from backend failures, for example when counting them.
+ * <p>
+ * Interceptors run above grpc retry logic, so one logical call is recorded once regardless of attempts made. Call which
+ * is never started, or fails to start, is recorded as ignored, so that its permission is always given back.
+ */
+public class CircuitBreakerInterceptor implements ClientInterceptor {
+
+    public static final Metadata.Key<String> REJECTED_KEY = Metadata.Key.of(
+            "x-circuit-breaker-rejected", Metadata.ASCII_STRING_MARSHALLER);
+
+    private static final Set<Status.Code> FAILURE_CODES = EnumSet.of(
+            Status.Code.UNAVAILABLE,
+            Status.Code.DEADLINE_EXCEEDED,
+            Status.Code.RESOURCE_EXHAUSTED,
+            Status.Code.UNKNOWN
+    );
+
+    private final CircuitBreaker circuitBreaker;
+    private final Counter rejectedCalls;
+
+    public CircuitBreakerInterceptor(@NonNull CircuitBreaker circuitBreaker, @NonNull Counter rejectedCalls) {
+
+        this.circuitBreaker = circuitBreaker;
+        this.rejectedCalls = rejectedCalls;
+    }
+
+    /**
+     * @return true if call was rejected by open circuit breaker without reaching the backend.
+     */
+    public static boolean isRejected(@NonNull StatusRuntimeException ex) {
+
+        Metadata trailers = ex.getTrailers();
+        return ex.getStatus().getCode() == Status.Code.UNAVAILABLE
+                && trailers != null
+                && trailers.containsKey(REJECTED_KEY);
+    }
+
+    private void record(@NonNull Status status) {
+
+        if (status.isOk()) {
+            circuitBreaker.onSuccess();
+        } else if (FAILURE_CODES.contains(status.getCode())) {
+            circuitBreaker.onFailure();
+        } else if (status.getCode() == Status.Code.CANCELLED) {
+            circuitBreaker.onIgnored();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+            MethodDescriptor<ReqT, RespT> method,
+            CallOptions callOptions,
+            Channel next) {
+
+        if (!circuitBreaker.tryAcquirePermission()) {
+            rejectedCalls.increment();
+            return new RejectedCall<>(circuitBreaker.getName());
+        }
+
+        ClientCall<ReqT, RespT> call;
+        try {
+            call = next.newCall(method, callOptions);
+        } catch (RuntimeException ex) {
+            circuitBreaker.onIgnored();
+            throw ex;
+        }
+
+        return new PermittedCall<>(call);
+    }
+
+    /**
+     * Call which holds permission of circuit breaker, outcome of the call is recorded exactly once.
+     */
+    private class PermittedCall<ReqT, RespT> extends ForwardingClientCall.SimpleForwardingClientCall<ReqT, RespT> {
+
+        private final AtomicBoolean isRecorded = new AtomicBoolean(false);
+
+        private volatile boolean isStarted = false;
+
+        PermittedCall(@NonNull ClientCall<ReqT, RespT> delegate) {
+            super(delegate);
+        }
+
+        private void recordOnce(@Nullable Status status) {
+
+            if (!isRecorded.compareAndSet(false, true)) {
+                return;
+            }
+            if (status == null) {
+                circuitBreaker.onIgnored();
+            } else {
+                record(status);
+            }
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+
+            var recordingListener = new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(
+                    responseListener) {
+
+                @Override
+                public void onClose(Status status, Metadata trailers) {
+                    recordOnce(status);
+                    super.onClose(status, trailers);
+                }
+            };
+
+            isStarted = true;
+            try {
+                super.start(recordingListener, headers);
+            } catch (RuntimeException ex) {
+                recordOnce(null);
+                throw ex;
+            }
+        }
+
+        @Override
+        public void cancel(@Nullable String message, @Nullable Throwable cause) {
+
+            // started call is recorded once its listener is closed
+            if (!isStarted) {
+                recordOnce(null);
+            }
+            super.cancel(message, cause);
+        }
+
+    }
+
+    /**
+     * Call which is closed right after being started, without reaching the network.
+     */
+    private static class RejectedCall<ReqT, RespT> extends ClientCall<ReqT, RespT> {
+
+        private final String backendName;
+
+        RejectedCall(@NonNull String backendName) {
+            this.backendName = backendName;
+        }
+
+        @Override
+        public void start(Listener<RespT> responseListener, Metadata headers) {
+
+            var trailers = new Metadata();
+            trailers.put(REJECTED_KEY, backendName);
+
+            responseListener.onClose(
+                    Status.UNAVAILABLE.withDescription("Circuit breaker of " + backendName + " is open"),
+                    trailers
+            );
+        }
+
+        @Override
+        public void request(int numMessages) {
+        }
+
+        @Override
+        public void cancel(@Nullable String message, @Nullable Throwable cause) {
+        }
+
+        @Override
+        public void halfClose() {
+        }
+
+        @Override
+        public void sendMessage(ReqT message) {
+        }
+
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.msik404.karmaappgateway.grpc.client.channel;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import io.grpc.*;
+import org.springframework.lang.NonNull;
+
+/**
+ * Channel which spreads calls over several underlying channels, each of them has its own HTTP/2 connections. This
+ * way single connection stream concurrency and flow-control window do not limit throughput to a backend.
+ */
+public class ChannelPool extends Channel {
+
+    public enum Policy {
+
+        ROUND_ROBIN,
+
+        /**
+         * Power of two choices: out of two random channels the one with fewer calls in flight is picked.
+         */
+        LEAST_REQUEST
+
+    }
+
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    private final List<ManagedChannel> channels;
+    private final Policy policy;
+
+    private final AtomicInteger nextChannelIdx = new AtomicInteger();
+    private final AtomicIntegerArray callsInFlight;
+
+    public ChannelPool(@NonNull List<ManagedChannel> channels, @NonNull Policy policy) {
+
+        if (channels.isEmpty()) {
+            throw new IllegalArgumentException("Channel pool requires at least one channel");
+        }
+
+        this.channels = List.copyOf(channels);
+        this.policy = policy;
+        this.callsInFlight = new AtomicIntegerArray(channels.size());
+    }
+
+    private int pickChannelIdx() {
+
+        int size = channels.size();
+        if (size == 1) {
+            return 0;
+        }
+
+        if (policy == Policy.ROUND_ROBIN) {
+            return Math.floorMod(nextChannelIdx.getAndIncrement(), size);
+        }
+
+        var random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) { // makes sure that two different channels are compared
+            second++;
+        }
+        return callsInFlight.get(first) <= callsInFlight.get(second) ? first : second;
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(
+            MethodDescriptor<ReqT, RespT> methodDescriptor,
+            CallOptions callOptions) {
+
+        int channelIdx = pickChannelIdx();
+        ClientCall<ReqT, RespT> call = channels.get(channelIdx).newCall(methodDescriptor, callOptions);
+
+        if (policy != Policy.LEAST_REQUEST) {
+            return call;
+        }
+
+        return new ForwardingClientCall.SimpleForwardingClientCall<>(call) {
+
+            @Override
+            public void start(Listener<RespT> responseListener, Metadata headers) {
+
+                callsInFlight.incrementAndGet(channelIdx);
+
+                var countingListener = new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(
+                        responseListener) {
+
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        callsInFlight.decrementAndGet(channelIdx);
+                        super.onClose(status, trailers);
+                    }
+                };
+
+                super.start(countingListener, headers);
+            }
+        };
+    }
+
+    @Override
+    public String authority() {
+        return channels.get(0).authority();
+    }
+
+    /**
+     * Lets calls in flight finish, those which do not finish within timeout get cancelled.
+     */
+    public void shutdown() throws InterruptedException {
+
+        for (ManagedChannel channel : channels) {
+            channel.shutdown();
+        }
+        for (ManagedChannel channel : channels) {
+            if (!channel.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                channel.shutdownNow();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.msik404.karmaappgateway.grpc.client.coalescing;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.MessageLite;
+import io.grpc.MethodDescriptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+/**
+ * Coalesces identical concurrent grpc reads. First caller of a given method with a given serialized request sends the
+ * call, callers which come while it is in flight get the same result instead of sending their own calls.
+ * <p>
+ * Each caller gets its own copy of the shared future, so that cancelling it does not affect other callers. Shared
+ * call runs with deadline of the first caller.
+ */
+@Component
+public class SingleFlight {
+
+    public static final String CALLS_METRIC = "karmaapp.grpc.client.singleflight.calls";
+
+    private record Key(@NonNull String fullMethodName, @NonNull ByteString request) {
+    }
+
+    private static class Flight<T> {
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final AtomicInteger waiters = new AtomicInteger();
+
+    }
+
+    private final ConcurrentMap<Key, Flight<?>> inFlight = new ConcurrentHashMap<>();
+
+    private final int maxWaiters;
+    private final MeterRegistry meterRegistry;
+
+    public SingleFlight(
+            @Value("${KarmaAppGateway.grpc.single-flight.max-waiters}") int maxWaiters,
+            @NonNull MeterRegistry meterRegistry) {
+
+        this.maxWaiters = maxWaiters;
+        this.meterRegistry = meterRegistry;
+    }
+
+    private void count(@NonNull String fullMethodName, @NonNull String result) {
+        meterRegistry.counter(CALLS_METRIC, "method", fullMethodName, "result", result).increment();
+    }
+
+    /**
+     * @param method  grpc method which is called.
+     * @param request request of the call.
+     * @param call    sends the call, it is used only if no identical call is in flight.
+     * @return future with the result of shared call.
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(
+            @NonNull MethodDescriptor<?, T> method,
+            @NonNull MessageLite request,
+            @NonNull Supplier<CompletableFuture<T>> call) {
+
+        String fullMethodName = method.getFullMethodName();
+        var key = new Key(fullMethodName, request.toByteString());
+
+        var flight = new Flight<T>();
+        Flight<T> existingFlight = (Flight<T>) inFlight.putIfAbsent(key, flight);
+
+        if (existingFlight != null) {
+            // bounded so that single slow call does not accumulate unlimited amount of waiting requests
+            if (existingFlight.waiters.incrementAndGet() <= maxWaiters) {
+                count(fullMethodName, "deduplicated");
+                return existingFlight.result.copy();
+            }
+            count(fullMethodName, "overflow");
+            return call.get();
+        }
+
+        count(fullMethodName, "sent");
+
+        try {
+            call.get().whenComplete((value, ex) -> {
+                // removed before completion, so that callers coming after completion send a new call
+                inFlight.remove(key, flight);
+                if (ex != null) {
+                    flight.result.completeExceptionally(ex);
+                } else {
+                    flight.result.complete(value);
+                }
+            });
+        } catch (RuntimeException ex) {
+            inFlight.remove(key, flight);
+            flight.result.completeExceptionally(ex);
+        }
+
+        return flight.result.copy();
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.msik404.karmaappgateway.grpc.client.config;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import com.msik404.karmaappposts.grpc.PostsGrpc;
+import com.msik404.karmaappusers.grpc.UsersGrpc;
+import io.grpc.MethodDescriptor;
+import org.springframework.lang.NonNull;
+
+/**
+ * Builds grpc service configs in the map form accepted by ManagedChannelBuilder.defaultServiceConfig().
+ * Numbers must be doubles and durations must be strings in "1.5s" format.
+ * <p>
+ * Each method gets timeout, idempotent reads additionally get retry or hedging policy. Single method can not have both
+ * of them. Transient UNAVAILABLE status is the only one worth repeating, the rest are application errors.
+ */
+public class ServiceConfigFactory {
+
+    /**
+     * Reads which are hedged: after hedging delay without response another attempt is sent and first response wins.
+     */
+    public static final Set<String> HEDGED_METHODS = Set.of(
+            PostsGrpc.getFindPostsMethod().getFullMethodName(),
+            PostsGrpc.getFindImageMethod().getFullMethodName()
+    );
+
+    private static final List<String> REPEATABLE_STATUS_CODES = List.of("UNAVAILABLE");
+
+    @NonNull
+    private static String duration(long millis) {
+        return BigDecimal.valueOf(millis, 3).toPlainString() + "s";
+    }
+
+    @NonNull
+    private static Map<String, Object> name(@NonNull MethodDescriptor<?, ?> method) {
+        return Map.of("service", method.getServiceName(), "method", method.getBareMethodName());
+    }
+
+    @NonNull
+    private static List<Map<String, Object>> names(@NonNull MethodDescriptor<?, ?>... methods) {
+        return Stream.of(methods).map(ServiceConfigFactory::name).toList();
+    }
+
+    @NonNull
+    private static Map<String, Object> retryThrottling() {
+        // throttles retries and hedges when many of the recent calls fail, so that they do not amplify outage
+        return Map.of("maxTokens", 10.0, "tokenRatio", 0.1);
+    }
+
+    @NonNull
+    private static Map<String, Object> retryPolicy(int maxAttempts, long initialBackoffMillis) {
+        return Map.of(
+                "maxAttempts", (double) maxAttempts,
+                "initialBackoff", duration(initialBackoffMillis),
+                "maxBackoff", duration(initialBackoffMillis * 10),
+                "backoffMultiplier", 2.0,
+                "retryableStatusCodes", REPEATABLE_STATUS_CODES
+        );
+    }
+
+    @NonNull
+    private static Map<String, Object> hedgingPolicy(int maxAttempts, long hedgingDelayMillis) {
+        return Map.of(
+                "maxAttempts", (double) maxAttempts,
+                "hedgingDelay", duration(hedgingDelayMillis),
+                "nonFatalStatusCodes", REPEATABLE_STATUS_CODES
+        );
+    }
+
+    /**
+     * @param hedgingDelayMillis  should be set to p95 latency of hedged methods, so that only slowest 5% of calls get
+     *                            hedged.
+     * @param streamTimeoutMillis timeout of streaming reads, which last as long as the client reading streamed data,
+     *                            and of streamed uploads.
+     */
+    @NonNull
+    public static Map<String, Object> createPostsServiceConfig(
+            long readTimeoutMillis,
+            long writeTimeoutMillis,
+            int maxAttempts,
+            long hedgingDelayMillis,
+            long streamTimeoutMillis) {
+
+        Map<String, Object> writes = Map.of(
+                "name", List.of(Map.of("service", PostsGrpc.SERVICE_NAME)),
+                "timeout", duration(writeTimeoutMillis)
+        );
+
+        Map<String, Object> reads = Map.of(
+                "name", names(
+                        PostsGrpc.getFindPostsWithCreatorIdMethod(),
+                        PostsGrpc.getFindPostsWithCreatorUsernameMethod(),
+                        PostsGrpc.getFindPostRatingsMethod(),
+                        PostsGrpc.getFindPostRatingsWithCreatorIdMethod(),
+                        PostsGrpc.getFindPostRatingsWithCreatorUsernameMethod(),
+                        PostsGrpc.getFindPostCreatorIdMethod(),
+                        PostsGrpc.getFindPostWithImageDataMethod(),
+                        PostsGrpc.getFindPostVisibilityMethod()
+                ),
+                "timeout", duration(readTimeoutMillis)
+        );
+
+        Map<String, Object> hedgedReads = Map.of(
+                "name", names(PostsGrpc.getFindPostsMethod(), PostsGrpc.getFindImageMethod()),
+                "timeout", duration(readTimeoutMillis),
+                "hedgingPolicy", hedgingPolicy(maxAttempts, hedgingDelayMillis)
+        );
+
+        Map<String, Object> streamedReads = Map.of(
+                "name", names(PostsGrpc.getFindImageChunksMethod()),
+                "timeout", duration(streamTimeoutMillis)
+        );
+
+        Map<String, Object> streamedWrites = Map.of(
+                "name", names(PostsGrpc.getCreatePostWithImageChunksMethod()),
+                "timeout", duration(streamTimeoutMillis)
+        );
+
+        return Map.of(
+                "methodConfig", List.of(writes, reads, hedgedReads, streamedReads, streamedWrites),
+                "retryThrottling", retryThrottling()
+        );
+    }
+
+    @NonNull
+    public static Map<String, Object> createUsersServiceConfig(
+            long readTimeoutMillis,
+            long writeTimeoutMillis,
+            int maxAttempts,
+            long initialBackoffMillis) {
+
+        Map<String, Object> writes = Map.of(
+                "name", List.of(Map.of("service", UsersGrpc.SERVICE_NAME)),
+                "timeout", duration(writeTimeoutMillis)
+        );
+
+        Map<String, Object> reads = Map.of(
+                "name", names(
+                        UsersGrpc.getFindCredentialsMethod(),
+                        UsersGrpc.getFindUsernameMethod(),
+                        UsersGrpc.getFindUserIdMethod()
+                ),
+                "timeout", duration(readTimeoutMillis)
+        );
+
+        Map<String, Object> retriedReads = Map.of(
+                "name", names(UsersGrpc.getFindUsernamesMethod(), UsersGrpc.getFindUserRoleMethod()),
+                "timeout", duration(readTimeoutMillis),
+                "retryPolicy", retryPolicy(maxAttempts, initialBackoffMillis)
+        );
+
+        return Map.of(
+                "methodConfig", List.of(writes, reads, retriedReads),
+                "retryThrottling", retryThrottling()
+        );
+    }
+
+}
@@ -1,8 +1,13 @@
 package com.msik404.karmaappgateway.grpc.client.encoding;
 
+import java.util.Map;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.google.protobuf.Any;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.rpc.ErrorInfo;
 import com.msik404.karmaappgateway.exception.RestFromGrpcException;
 import com.msik404.karmaappgateway.grpc.client.encoding.exception.BadEncodingException;
 import com.msik404.karmaappgateway.grpc.client.exception.FailedValidationException;
@@ -16,18 +21,44 @@ import com.msik404.karmaappgateway.user.exception.DuplicateEmailException;
 import com.msik404.karmaappgateway.user.exception.DuplicateUnexpectedFieldException;
 import com.msik404.karmaappgateway.user.exception.DuplicateUsernameException;
 import com.msik404.karmaappgateway.user.exception.UserNotFoundException;
+import io.grpc.StatusRuntimeException;
+import io.grpc.protobuf.StatusProto;
 import org.springframework.lang.NonNull;
 
+import static java.util.Map.entry;
+
 public class ExceptionDecoder {
 
+    // this pattern will match only the first occurrence;
+    private static final Pattern EXCEPTION_ID_PATTERN = Pattern.compile(
+            String.format("\\A.*?%s([^ ]+)", Pattern.quote(ExceptionEncoder.EXCEPTION_ID_PREFIX)));
+
+    /**
+     * Maps exception id to function which creates exception out of error message.
+     */
+    private static final Map<String, Function<String, RestFromGrpcException>> EXCEPTION_FACTORIES = Map.ofEntries(
+
+            entry(UnsupportedRoleException.Id, errorMessage -> new UnsupportedRoleException()),
+            entry(UnsupportedVisibilityException.Id, errorMessage -> new UnsupportedVisibilityException()),
+
+            entry(FileProcessingException.Id, errorMessage -> new FileProcessingException()),
+
+            entry(UserNotFoundException.Id, errorMessage -> new UserNotFoundException()),
+            entry(PostNotFoundException.Id, errorMessage -> new PostNotFoundException()),
+            entry(RatingNotFoundException.Id, errorMessage -> new RatingNotFoundException()),
+            entry(ImageNotFoundException.Id, errorMessage -> new ImageNotFoundException()),
+
+            entry(DuplicateEmailException.Id, errorMessage -> new DuplicateEmailException()),
+            entry(DuplicateUsernameException.Id, errorMessage -> new DuplicateUsernameException()),
+            entry(DuplicateUnexpectedFieldException.Id, errorMessage -> new DuplicateUnexpectedFieldException()),
+
+            entry(FailedValidationException.Id, FailedValidationException::new)
+    );
+
     @NonNull
     public static String decodeExceptionId(@NonNull String encodedException) throws BadEncodingException {
 
-        // this pattern will match only the first occurrence;
-        String regex = String.format("\\A.*?%s([^ ]+)", ExceptionEncoder.EXCEPTION_ID_PREFIX);
-        var pattern = Pattern.compile(regex);
-
-        Matcher matcher = pattern.matcher(encodedException);
+        Matcher matcher = EXCEPTION_ID_PATTERN.matcher(encodedException);
 
         if (matcher.find()) {
             return matcher.group(1);
@@ -39,31 +70,19 @@ public class ExceptionDecoder {
     @NonNull
     private static RestFromGrpcException decodeExceptionImpl(
             @NonNull String exceptionId,
-            @NonNull String encodedException
+            @NonNull String errorMessage
     ) throws BadEncodingException {
 
-        return switch (exceptionId) {
-
-            case UnsupportedRoleException.Id -> new UnsupportedRoleException();
-            case UnsupportedVisibilityException.Id -> new UnsupportedVisibilityException();
-
-            case FileProcessingException.Id -> new FileProcessingException();
-
-            case UserNotFoundException.Id -> new UserNotFoundException();
-            case PostNotFoundException.Id -> new PostNotFoundException();
-            case RatingNotFoundException.Id -> new RatingNotFoundException();
-            case ImageNotFoundException.Id -> new ImageNotFoundException();
-
-            case DuplicateEmailException.Id -> new DuplicateEmailException();
-            case DuplicateUsernameException.Id -> new DuplicateUsernameException();
-            case DuplicateUnexpectedFieldException.Id -> new DuplicateUnexpectedFieldException();
-
-            case FailedValidationException.Id -> new FailedValidationException(encodedException);
-
-            default -> throw new BadEncodingException(encodedException);
-        };
+        Function<String, RestFromGrpcException> exceptionFactory = EXCEPTION_FACTORIES.get(exceptionId);
+        if (exceptionFactory == null) {
+            throw new BadEncodingException(errorMessage);
+        }
+        return exceptionFactory.apply(errorMessage);
     }
 
+    /**
+     * Decodes exception encoded in status description. Used for backends which do not send status details.
+     */
     @NonNull
     public static RestFromGrpcException decodeException(
             @NonNull String encodedException
@@ -74,4 +93,40 @@ public class ExceptionDecoder {
         return decodeExceptionImpl(exceptionId, encodedException);
     }
 
+    /**
+     * Decodes exception out of ErrorInfo status detail. If there is no such detail, falls back to decoding status
+     * description.
+     */
+    @NonNull
+    public static RestFromGrpcException decodeException(
+            @NonNull StatusRuntimeException statusException
+    ) throws BadEncodingException {
+
+        com.google.rpc.Status status = StatusProto.fromThrowable(statusException);
+        if (status != null) {
+            for (Any detail : status.getDetailsList()) {
+                if (!detail.is(ErrorInfo.class)) {
+                    continue;
+                }
+                try {
+                    ErrorInfo errorInfo = detail.unpack(ErrorInfo.class);
+                    if (errorInfo.getDomain().equals(ExceptionEncoder.ERROR_DOMAIN)) {
+                        return decodeExceptionImpl(
+                                errorInfo.getReason(),
+                                errorInfo.getMetadataOrDefault(ExceptionEncoder.MESSAGE_METADATA_KEY, status.getMessage())
+                        );
+                    }
+                } catch (InvalidProtocolBufferException ex) {
+                    throw new BadEncodingException(ex.getMessage());
+                }
+            }
+        }
+
+        String encodedException = statusException.getMessage();
+        if (encodedException == null) {
+            throw new BadEncodingException(statusException.getStatus().toString());
+        }
+        return decodeException(encodedException);
+    }
+
 }
@@ -1,14 +1,48 @@
 package com.msik404.karmaappgateway.grpc.client.encoding;
 
+import com.google.protobuf.Any;
+import com.google.rpc.ErrorInfo;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.protobuf.StatusProto;
 import org.springframework.lang.NonNull;
 
 public class ExceptionEncoder {
 
     public final static String EXCEPTION_ID_PREFIX = "exceptionId: ";
 
+    public final static String ERROR_DOMAIN = "karmaapp.msik404.com";
+    public final static String MESSAGE_METADATA_KEY = "message";
+
     @NonNull
     public static String encode(@NonNull String exceptionIdString, @NonNull String errorMessage) {
         return String.format("%s%s %s", EXCEPTION_ID_PREFIX, exceptionIdString, errorMessage);
     }
 
-}
\ No newline at end of file
+    /**
+     * Exception id is carried in ErrorInfo detail of google.rpc.Status, which is sent in grpc-status-details-bin
+     * trailer. Status description is still encoded with {@link #encode(String, String)}, so that clients which do not
+     * read status details can decode it.
+     */
+    @NonNull
+    public static StatusRuntimeException encodeAsStatusRuntimeException(
+            @NonNull Status.Code code,
+            @NonNull String exceptionIdString,
+            @NonNull String errorMessage) {
+
+        var errorInfo = ErrorInfo.newBuilder()
+                .setReason(exceptionIdString)
+                .setDomain(ERROR_DOMAIN)
+                .putMetadata(MESSAGE_METADATA_KEY, errorMessage)
+                .build();
+
+        var status = com.google.rpc.Status.newBuilder()
+                .setCode(code.value())
+                .setMessage(encode(exceptionIdString, errorMessage))
+                .addDetails(Any.pack(errorInfo))
+                .build();
+
+        return StatusProto.toStatusRuntimeException(status);
+    }
+
+}
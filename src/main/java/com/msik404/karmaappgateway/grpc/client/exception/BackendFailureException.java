@@ -0,0 +1,15 @@
+package com.msik404.karmaappgateway.grpc.client.exception;
+
+import com.msik404.karmaappgateway.exception.AbstractRestException;
+
+/**
+ * Base for exceptions caused by backend not being able to serve the request at all, as opposed to application errors
+ * returned by backend. Reads can be served from stale cache when this exception occurs.
+ */
+public abstract class BackendFailureException extends AbstractRestException {
+
+    public BackendFailureException(String errorMessage) {
+        super(errorMessage);
+    }
+
+}
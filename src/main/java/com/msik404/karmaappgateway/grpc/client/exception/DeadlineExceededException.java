@@ -0,0 +1,21 @@
+package com.msik404.karmaappgateway.grpc.client.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.lang.NonNull;
+
+public class DeadlineExceededException extends BackendFailureException {
+
+    public final static String ERROR_MESSAGE = "Backend service did not respond within request deadline";
+
+    public DeadlineExceededException() {
+        super(ERROR_MESSAGE);
+    }
+
+    @NonNull
+    @Override
+    public ProblemDetail getProblemDetail() {
+        return ProblemDetail.forStatusAndDetail(HttpStatus.GATEWAY_TIMEOUT, getMessage());
+    }
+
+}
@@ -2,12 +2,26 @@ package com.msik404.karmaappgateway.grpc.client.exception;
 
 import com.msik404.karmaappgateway.grpc.client.encoding.EncodableException;
 import com.msik404.karmaappgateway.grpc.client.encoding.ExceptionEncoder;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
 import org.springframework.lang.NonNull;
 
+/**
+ * These exceptions are used for control flow, they are decoded from backend errors and mapped to responses.
+ * Stack trace would point to decoder only, so it is not filled in.
+ */
 public abstract class EncodableGrpcStatusException extends RuntimeException implements EncodableException, GrpcStatusException {
 
     public EncodableGrpcStatusException(@NonNull String errorMessage) {
-        super(errorMessage);
+        this(errorMessage, false);
+    }
+
+    /**
+     * @param writableStackTrace Whether stack trace is filled in, as it was before these exceptions were used only for
+     *                           control flow.
+     */
+    protected EncodableGrpcStatusException(@NonNull String errorMessage, boolean writableStackTrace) {
+        super(errorMessage, null, writableStackTrace, writableStackTrace);
     }
 
     @NonNull
@@ -16,4 +30,9 @@ public abstract class EncodableGrpcStatusException extends RuntimeException impl
         return ExceptionEncoder.encode(getExceptionId(), getMessage());
     }
 
+    @NonNull
+    protected StatusRuntimeException toStatusRuntimeException(@NonNull Status.Code code) {
+        return ExceptionEncoder.encodeAsStatusRuntimeException(code, getExceptionId(), getMessage());
+    }
+
 }
@@ -24,9 +24,7 @@ public class FailedValidationException extends RestFromGrpcException {
     @NonNull
     @Override
     public StatusRuntimeException asStatusRuntimeException() {
-        return Status.INVALID_ARGUMENT
-                .withDescription(getEncodedException())
-                .asRuntimeException();
+        return toStatusRuntimeException(Status.Code.INVALID_ARGUMENT);
     }
 
     @NonNull
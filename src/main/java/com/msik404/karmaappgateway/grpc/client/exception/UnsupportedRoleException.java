@@ -25,9 +25,7 @@ public class UnsupportedRoleException extends RestFromGrpcException {
     @NonNull
     @Override
     public StatusRuntimeException asStatusRuntimeException() {
-        return Status.INVALID_ARGUMENT
-                .withDescription(getEncodedException())
-                .asRuntimeException();
+        return toStatusRuntimeException(Status.Code.INVALID_ARGUMENT);
     }
 
     @NonNull
@@ -0,0 +1,61 @@
+package com.msik404.karmaappgateway.grpc.client.metrics;
+
+import com.msik404.karmaappgateway.grpc.client.config.ServiceConfigFactory;
+import io.grpc.*;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.lang.NonNull;
+
+/**
+ * Counts retried and hedged attempts of grpc calls. Interceptors see single logical call, so attempts are observed
+ * with stream tracer which is created for each attempt. Attempt is repeated if grpc-previous-rpc-attempts is non-zero.
+ */
+public class RepeatedAttemptsMetricsInterceptor implements ClientInterceptor {
+
+    public static final String RETRIES_METRIC = "karmaapp.grpc.client.retries";
+    public static final String HEDGES_METRIC = "karmaapp.grpc.client.hedges";
+
+    private static final ClientStreamTracer NOOP_TRACER = new ClientStreamTracer() {
+    };
+
+    private final MeterRegistry meterRegistry;
+
+    public RepeatedAttemptsMetricsInterceptor(@NonNull MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @NonNull
+    private Counter counterFor(@NonNull String fullMethodName) {
+
+        String metricName = ServiceConfigFactory.HEDGED_METHODS.contains(fullMethodName)
+                ? HEDGES_METRIC : RETRIES_METRIC;
+
+        // registry caches meters, so this lookup is cheap
+        return meterRegistry.counter(metricName, "method", fullMethodName);
+    }
+
+    @Override
+    public <ReqT, RespT> ClientCall<ReqT, RespT> interceptCall(
+            MethodDescriptor<ReqT, RespT> method,
+            CallOptions callOptions,
+            Channel next) {
+
+        String fullMethodName = method.getFullMethodName();
+
+        var tracerFactory = new ClientStreamTracer.Factory() {
+
+            @Override
+            public ClientStreamTracer newClientStreamTracer(ClientStreamTracer.StreamInfo info, Metadata headers) {
+
+                // transparent retries happen when request never reached the server, they are not policy driven
+                if (info.getPreviousAttempts() > 0 && !info.isTransparentRetry()) {
+                    counterFor(fullMethodName).increment();
+                }
+                return NOOP_TRACER;
+            }
+        };
+
+        return next.newCall(method, callOptions.withStreamTracerFactory(tracerFactory));
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.msik404.karmaappgateway.grpc.client.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import com.msik404.karmaappgateway.grpc.client.GrpcFutures;
+import com.msik404.karmaappgateway.post.image.ImageStream;
+import com.msik404.karmaappposts.grpc.ImageChunk;
+import io.grpc.Context;
+import io.grpc.StatusRuntimeException;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+/**
+ * Image streamed by findImageChunks call. Blocking stub requests next message only when previous one was consumed,
+ * so backend sends chunks no faster than they are written to the client.
+ * <p>
+ * Chunks are returned as read-only views of grpc messages, without copying their data.
+ */
+public class GrpcImageStream implements ImageStream {
+
+    private final Context.CancellableContext callContext;
+
+    private final Iterator<ImageChunk> chunks;
+
+    @Nullable
+    private ImageChunk firstChunk;
+
+    private final long contentLength;
+
+    /**
+     * @param callContext context in which the call was started, it is cancelled on close.
+     * @param firstChunk  first chunk of the stream, which was already read.
+     * @param chunks      iterator of the remaining chunks.
+     */
+    public GrpcImageStream(
+            @NonNull Context.CancellableContext callContext,
+            @NonNull ImageChunk firstChunk,
+            @NonNull Iterator<ImageChunk> chunks) {
+
+        this.callContext = callContext;
+        this.firstChunk = firstChunk;
+        this.chunks = chunks;
+        this.contentLength = firstChunk.hasTotalSize() ? firstChunk.getTotalSize() : UNKNOWN_LENGTH;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Nullable
+    @Override
+    public String contentHash() {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public ByteBuffer nextChunk() throws IOException {
+
+        ImageChunk chunk;
+        if (firstChunk != null) {
+            chunk = firstChunk;
+            firstChunk = null;
+        } else {
+            try {
+                if (!chunks.hasNext()) {
+                    return null;
+                }
+                chunk = chunks.next();
+            } catch (StatusRuntimeException ex) {
+                // response is already committed, so failure can only abort it
+                throw new IOException(GrpcFutures.decodeGrpcException(ex));
+            }
+        }
+
+        return chunk.getData().asReadOnlyByteBuffer();
+    }
+
+    @Override
+    public void close() {
+        callContext.cancel(null);
+    }
+
+}
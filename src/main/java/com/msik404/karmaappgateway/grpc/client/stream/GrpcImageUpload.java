@@ -0,0 +1,101 @@
+package com.msik404.karmaappgateway.grpc.client.stream;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.google.protobuf.Empty;
+import com.msik404.karmaappposts.grpc.CreatePostChunk;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import org.springframework.lang.NonNull;
+
+/**
+ * Sending side of createPostWithImageChunks call. Chunks are sent by single calling thread, which is blocked while
+ * transport buffers are full, so image is read from the request no faster than backend receives it.
+ */
+public class GrpcImageUpload implements ClientResponseObserver<CreatePostChunk, Empty> {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition readyOrDone = lock.newCondition();
+
+    private final CompletableFuture<Empty> response = new CompletableFuture<>();
+
+    // set by grpc before call is started
+    private ClientCallStreamObserver<CreatePostChunk> requestStream;
+
+    private void signal() {
+
+        lock.lock();
+        try {
+            readyOrDone.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void beforeStart(@NonNull ClientCallStreamObserver<CreatePostChunk> requestStream) {
+
+        this.requestStream = requestStream;
+        requestStream.setOnReadyHandler(this::signal);
+    }
+
+    @Override
+    public void onNext(@NonNull Empty value) {
+    }
+
+    @Override
+    public void onError(@NonNull Throwable t) {
+
+        response.completeExceptionally(t);
+        signal();
+    }
+
+    @Override
+    public void onCompleted() {
+
+        response.complete(Empty.getDefaultInstance());
+        signal();
+    }
+
+    /**
+     * Blocks until transport is ready to accept the chunk.
+     *
+     * @return false if call has already finished, in which case remaining chunks should not be sent.
+     */
+    public boolean send(@NonNull CreatePostChunk chunk) throws InterruptedException {
+
+        lock.lock();
+        try {
+            while (!requestStream.isReady() && !response.isDone()) {
+                readyOrDone.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (response.isDone()) {
+            return false;
+        }
+        requestStream.onNext(chunk);
+        return true;
+    }
+
+    public void complete() {
+        requestStream.onCompleted();
+    }
+
+    public void cancel(@NonNull Throwable cause) {
+        requestStream.cancel(cause.getMessage(), cause);
+    }
+
+    /**
+     * @return future of the call response, it completes with undecoded StatusRuntimeException on failure.
+     */
+    @NonNull
+    public CompletableFuture<Empty> getResponse() {
+        return response;
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.msik404.karmaappgateway.grpc.client.view;
+
+import com.msik404.karmaappgateway.grpc.client.exception.UnsupportedVisibilityException;
+import com.msik404.karmaappgateway.grpc.client.mapper.VisibilityMapper;
+import com.msik404.karmaappgateway.post.dto.PostView;
+import com.msik404.karmaappgateway.post.dto.Visibility;
+import com.msik404.karmaappposts.grpc.Post;
+import org.springframework.lang.NonNull;
+
+/**
+ * PostView backed by grpc Post message. Visibility is mapped eagerly, so that unsupported visibility fails the
+ * request while response is still being assembled.
+ */
+public record ProtoPostView(@NonNull Post post, @NonNull String username, @NonNull Visibility visibility)
+        implements PostView {
+
+    @NonNull
+    public static ProtoPostView of(
+            @NonNull Post post,
+            @NonNull String username
+    ) throws UnsupportedVisibilityException {
+
+        return new ProtoPostView(post, username, VisibilityMapper.map(post.getVisibility()));
+    }
+
+    @NonNull
+    @Override
+    public String idHexString() {
+        return post.getPostId().getHexString();
+    }
+
+    @NonNull
+    @Override
+    public String userIdHexString() {
+        return post.getUserId().getHexString();
+    }
+
+    /**
+     * @return empty string if post has no headline, same as feed responses mapped from grpc messages always did.
+     */
+    @NonNull
+    @Override
+    public String headline() {
+        return post.getHeadline();
+    }
+
+    /**
+     * @return empty string if post has no text.
+     */
+    @NonNull
+    @Override
+    public String text() {
+        return post.getText();
+    }
+
+    @Override
+    public long karmaScore() {
+        return post.getKarmaScore();
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.msik404.karmaappgateway.grpc.client.zipper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.msik404.karmaappgateway.grpc.client.view.ProtoPostView;
+import com.msik404.karmaappgateway.post.dto.PostView;
+import com.msik404.karmaappposts.grpc.Post;
+import org.springframework.lang.NonNull;
+
+public class PostViewZipper {
+
+    /**
+     * @param usernameIndices index of username of each post creator in usernames list.
+     */
+    @NonNull
+    public static List<PostView> zipIntoPostsWithUsernames(
+            @NonNull List<Post> posts,
+            @NonNull List<String> usernames,
+            @NonNull int[] usernameIndices) {
+
+        assert usernameIndices.length == posts.size();
+
+        List<PostView> postsWithUsernames = new ArrayList<>(posts.size());
+        for (int i = 0; i < posts.size(); i++) {
+            postsWithUsernames.add(ProtoPostView.of(posts.get(i), usernames.get(usernameIndices[i])));
+        }
+        return postsWithUsernames;
+    }
+
+    @NonNull
+    public static List<PostView> zipIntoPostsWithUsernames(
+            @NonNull List<Post> posts,
+            @NonNull String username) {
+
+        List<PostView> postsWithUsernames = new ArrayList<>(posts.size());
+        for (Post post : posts) {
+            postsWithUsernames.add(ProtoPostView.of(post, username));
+        }
+        return postsWithUsernames;
+
+    }
+}
@@ -0,0 +1,56 @@
+package com.msik404.karmaappgateway.post;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+/**
+ * Entity tags are checked in controllers before anything is fetched, so that 304 Not Modified can be returned
+ * without fetching image data from cache or rendering posts.
+ */
+public final class ETags {
+
+    private static final String WEAK_PREFIX = "W/";
+    private static final String ANY = "*";
+
+    private ETags() {
+    }
+
+    @NonNull
+    public static String strong(@NonNull String value) {
+        return '"' + value + '"';
+    }
+
+    @NonNull
+    public static String weak(@NonNull String value) {
+        return WEAK_PREFIX + strong(value);
+    }
+
+    @NonNull
+    private static String opaqueTag(@NonNull String eTag) {
+        return eTag.startsWith(WEAK_PREFIX) ? eTag.substring(WEAK_PREFIX.length()) : eTag;
+    }
+
+    /**
+     * If-None-Match uses weak comparison, so weak and strong tags with the same opaque tag match.
+     *
+     * @param ifNoneMatch value of If-None-Match header, can be a list of entity tags.
+     * @param eTag        current entity tag of the resource.
+     * @return true if client already has current representation of the resource.
+     */
+    public static boolean matches(@Nullable String ifNoneMatch, @NonNull String eTag) {
+
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        String currentOpaqueTag = opaqueTag(eTag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmedCandidate = candidate.trim();
+            if (trimmedCandidate.equals(ANY) || opaqueTag(trimmedCandidate).equals(currentOpaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -1,17 +1,30 @@
 package com.msik404.karmaappgateway.post;
 
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
-
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.msik404.karmaappgateway.auth.exception.InsufficientRoleException;
 import com.msik404.karmaappgateway.docs.KarmaAppEndpointDocs;
 import com.msik404.karmaappgateway.docs.SwaggerConfiguration;
+import com.msik404.karmaappgateway.post.converter.PostPageHttpMessageConverter;
 import com.msik404.karmaappgateway.post.dto.*;
 import com.msik404.karmaappgateway.post.exception.FileProcessingException;
 import com.msik404.karmaappgateway.post.exception.ImageNotFoundException;
+import com.msik404.karmaappgateway.post.exception.ImageTooLargeException;
+import com.msik404.karmaappgateway.post.exception.PostCreationNotFoundException;
 import com.msik404.karmaappgateway.post.exception.PostNotFoundException;
 import com.msik404.karmaappgateway.post.exception.RatingNotFoundException;
+import com.msik404.karmaappgateway.post.image.ImageStream;
 import com.msik404.karmaappgateway.user.exception.UserNotFoundException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -21,21 +34,33 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.bson.types.ObjectId;
-import org.springframework.hateoas.EntityModel;
 import org.springframework.http.*;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequiredArgsConstructor
 public class PostController {
 
+    private static final CacheControl IMAGE_CACHE_CONTROL = CacheControl.maxAge(Duration.ofHours(1)).cachePublic();
+
+    private static final String IMAGE_STREAM_INTERCEPTOR_KEY = PostController.class.getName() + ".imageStream";
+
     private final PostService postService;
-    private final PostResponseModelAssembler assembler;
+
+    private final ObjectMapper objectMapper;
 
     @Operation(
             summary = KarmaAppEndpointDocs.OP_SUM_FIND_PAGINATED_POSTS,
@@ -50,6 +75,11 @@ public class PostController {
                             schema = @Schema(implementation = PostResponse.class)
                     )}
             ),
+            @ApiResponse(
+                    responseCode = "304",
+                    description = KarmaAppEndpointDocs.RESP_NOT_MODIFIED_DESC_PAGINATED_POSTS,
+                    content = @Content
+            ),
             @ApiResponse(
                     responseCode = "404",
                     description = UserNotFoundException.ERROR_MESSAGE,
@@ -60,7 +90,7 @@ public class PostController {
             ),
     })
     @GetMapping("guest/posts")
-    public List<EntityModel<PostResponse>> findPaginatedPosts(
+    public CompletableFuture<ResponseEntity<PostPage>> findPaginatedPosts(
 
             @Parameter(description = KarmaAppEndpointDocs.PARAM_DESC_SIZE)
             @RequestParam(value = "size", defaultValue = "100") int size,
@@ -72,7 +102,10 @@ public class PostController {
             @RequestParam(value = "karma_score", required = false) Long karmaScore,
 
             @Parameter(description = KarmaAppEndpointDocs.PARAM_DESC_USERNAME)
-            @RequestParam(value = "username", required = false) String username
+            @RequestParam(value = "username", required = false) String username,
+
+            @Parameter(description = KarmaAppEndpointDocs.HEADER_DESC_IF_NONE_MATCH)
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
     ) throws UserNotFoundException {
 
         ScrollPosition scrollPosition = null;
@@ -80,10 +113,89 @@ public class PostController {
             scrollPosition = new ScrollPosition(postId, karmaScore);
         }
 
+        // only pages served entirely from cache have validator
+        String eTag = null;
+        if (username == null) {
+            OptionalLong feedVersion = postService.findFeedVersion(size, scrollPosition);
+            if (feedVersion.isPresent()) {
+                eTag = ETags.weak(Long.toString(feedVersion.getAsLong()));
+                if (ETags.matches(ifNoneMatch, eTag)) {
+                    return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                            .eTag(eTag)
+                            .cacheControl(CacheControl.noCache())
+                            .varyBy(HttpHeaders.ACCEPT)
+                            .build());
+                }
+            }
+        }
+
+        String pageETag = eTag;
         return postService.findPaginatedPosts(size, List.of(Visibility.ACTIVE), scrollPosition, username)
-                .stream()
-                .map(assembler::toModel)
-                .collect(Collectors.toList());
+                .thenApply(posts -> {
+                    ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                            .cacheControl(CacheControl.noCache())
+                            .varyBy(HttpHeaders.ACCEPT);
+                    if (pageETag != null) {
+                        builder.eTag(pageETag);
+                    }
+                    return builder.body(new PostPage(posts));
+                });
+    }
+
+    @Operation(
+            summary = KarmaAppEndpointDocs.OP_SUM_EXPORT_POSTS,
+            description = KarmaAppEndpointDocs.OP_DESC_EXPORT_POSTS
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = KarmaAppEndpointDocs.RESP_OK_DESC_EXPORT_POSTS,
+                    content = {@Content(
+                            mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            schema = @Schema(implementation = PostResponse.class)
+                    )}
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = UserNotFoundException.ERROR_MESSAGE,
+                    content = {@Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = ProblemDetail.class)
+                    )}
+            ),
+    })
+    @GetMapping(value = "guest/posts/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void exportPosts(
+
+            @Parameter(description = KarmaAppEndpointDocs.PARAM_DESC_LIMIT)
+            @RequestParam(value = "limit", required = false) Long limit,
+
+            @Parameter(description = KarmaAppEndpointDocs.PARAM_DESC_USERNAME)
+            @RequestParam(value = "username", required = false) String username,
+
+            HttpServletResponse response
+    ) throws IOException, UserNotFoundException {
+
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+
+        // output stream is closed by the servlet container
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(
+                StreamUtils.nonClosing(response.getOutputStream()))) {
+
+            // each post is written in separate line
+            generator.setRootValueSeparator(null);
+
+            postService.exportActivePosts(limit == null ? Long.MAX_VALUE : limit, username, chunk -> {
+                for (PostView post : chunk) {
+                    generator.writeStartObject();
+                    PostPageHttpMessageConverter.writePostFields(generator, post);
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                }
+                // blocks while client is not reading, so next chunk is not fetched before this one is sent
+                generator.flush();
+            });
+        }
     }
 
     @Operation(
@@ -110,7 +222,7 @@ public class PostController {
     })
     @SecurityRequirement(name = SwaggerConfiguration.AUTH)
     @GetMapping("user/posts")
-    public List<EntityModel<PostResponse>> findPaginatedOwnedPosts(
+    public CompletableFuture<PostPage> findPaginatedOwnedPosts(
 
             @Parameter(description = KarmaAppEndpointDocs.PARAM_DESC_SIZE)
             @RequestParam(value = "size", defaultValue = "100") int size,
@@ -136,9 +248,7 @@ public class PostController {
         }
 
         return postService.findPaginatedOwnedPosts(size, visibilities, scrollPosition)
-                .stream()
-                .map(assembler::toModel)
-                .collect(Collectors.toList());
+                .thenApply(PostPage::new);
     }
 
     @Operation(
@@ -165,7 +275,7 @@ public class PostController {
     })
     @SecurityRequirement(name = SwaggerConfiguration.AUTH)
     @GetMapping("user/posts/ratings")
-    public List<PostRatingResponse> findPersonalPostRatings(
+    public CompletableFuture<List<PostRatingResponse>> findPersonalPostRatings(
 
             @Parameter(description = KarmaAppEndpointDocs.PARAM_DESC_SIZE)
             @RequestParam(value = "size", defaultValue = "100") int size,
@@ -230,7 +340,7 @@ public class PostController {
     })
     @SecurityRequirement(name = SwaggerConfiguration.AUTH)
     @GetMapping("mod/posts")
-    public List<EntityModel<PostResponse>> findPaginatedPosts(
+    public CompletableFuture<PostPage> findPaginatedPosts(
 
             @Parameter(description = KarmaAppEndpointDocs.PARAM_DESC_SIZE)
             @RequestParam(value = "size", defaultValue = "100") int size,
@@ -259,9 +369,7 @@ public class PostController {
         }
 
         return postService.findPaginatedPosts(size, visibilities, scrollPosition, username)
-                .stream()
-                .map(assembler::toModel)
-                .collect(Collectors.toList());
+                .thenApply(PostPage::new);
     }
 
     @Operation(
@@ -288,7 +396,7 @@ public class PostController {
     })
     @SecurityRequirement(name = SwaggerConfiguration.AUTH)
     @GetMapping("mod/posts/ratings")
-    public List<PostRatingResponse> findPersonalPostRatings(
+    public CompletableFuture<List<PostRatingResponse>> findPersonalPostRatings(
 
             @Parameter(description = KarmaAppEndpointDocs.PARAM_DESC_SIZE)
             @RequestParam(value = "size", defaultValue = "100") int size,
@@ -344,7 +452,7 @@ public class PostController {
     })
     @SecurityRequirement(name = SwaggerConfiguration.AUTH)
     @GetMapping("admin/posts")
-    public List<EntityModel<PostResponse>> findPaginatedPosts(
+    public CompletableFuture<PostPage> findPaginatedPosts(
 
             @Parameter(description = KarmaAppEndpointDocs.PARAM_DESC_SIZE)
             @RequestParam(value = "size", defaultValue = "100") int size,
@@ -376,9 +484,7 @@ public class PostController {
         }
 
         return postService.findPaginatedPosts(size, visibilities, scrollPosition, username)
-                .stream()
-                .map(assembler::toModel)
-                .collect(Collectors.toList());
+                .thenApply(PostPage::new);
     }
 
     @Operation(
@@ -404,7 +510,7 @@ public class PostController {
             ),
     })
     @GetMapping("admin/posts/ratings")
-    public List<PostRatingResponse> findPersonalPostRatings(
+    public CompletableFuture<List<PostRatingResponse>> findPersonalPostRatings(
 
             @Parameter(description = KarmaAppEndpointDocs.PARAM_DESC_SIZE)
             @RequestParam(value = "size", defaultValue = "100") int size,
@@ -438,6 +544,24 @@ public class PostController {
         return postService.findPaginatedPostRatings(size, visibilities, scrollPosition, username);
     }
 
+    /**
+     * Only single byte range is served. Malformed header and multiple ranges are ignored, so whole image is served.
+     */
+    @Nullable
+    private static HttpRange parseSingleRange(@Nullable String rangeHeader) {
+
+        if (rangeHeader == null) {
+            return null;
+        }
+
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
     @Operation(
             summary = KarmaAppEndpointDocs.OP_SUM_FIND_IMAGE_BY_ID,
             description = KarmaAppEndpointDocs.OP_DESC_FIND_IMAGE_BY_ID
@@ -451,6 +575,19 @@ public class PostController {
                             schema = @Schema(type = "string", format = "binary")
                     )}
             ),
+            @ApiResponse(
+                    responseCode = "206",
+                    description = KarmaAppEndpointDocs.RESP_PARTIAL_DESC_FIND_IMAGE,
+                    content = {@Content(
+                            mediaType = MediaType.IMAGE_JPEG_VALUE,
+                            schema = @Schema(type = "string", format = "binary")
+                    )}
+            ),
+            @ApiResponse(
+                    responseCode = "304",
+                    description = KarmaAppEndpointDocs.RESP_NOT_MODIFIED_DESC_FIND_IMAGE,
+                    content = @Content
+            ),
             @ApiResponse(
                     responseCode = "404",
                     description = ImageNotFoundException.ERROR_MESSAGE,
@@ -461,15 +598,113 @@ public class PostController {
             ),
     })
     @GetMapping("guest/posts/{postId}/image")
-    public ResponseEntity<byte[]> findImageById(
+    public ResponseEntity<StreamingResponseBody> findImageById(
             @Parameter(description = KarmaAppEndpointDocs.PATH_DESC_POST_ID)
-            @PathVariable ObjectId postId
+            @PathVariable ObjectId postId,
+
+            @Parameter(description = KarmaAppEndpointDocs.PARAM_DESC_IMAGE_VARIANT)
+            @RequestParam(value = "variant", defaultValue = "original") ImageVariant variant,
+
+            @Parameter(description = KarmaAppEndpointDocs.HEADER_DESC_IF_NONE_MATCH)
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+
+            @Parameter(description = KarmaAppEndpointDocs.HEADER_DESC_RANGE)
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String rangeHeader,
+
+            @Parameter(description = KarmaAppEndpointDocs.HEADER_DESC_IF_RANGE)
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+
+            HttpServletRequest request
     ) throws ImageNotFoundException {
 
-        byte[] imageData = postService.findImageByPostId(postId);
-        var headers = new HttpHeaders();
-        headers.setContentType(MediaType.IMAGE_JPEG);
-        return new ResponseEntity<>(imageData, headers, HttpStatus.OK);
+        // images never change, so only their hash has to be checked
+        if (ifNoneMatch != null) {
+            Optional<String> cachedImageHash = postService.findCachedImageHash(postId, variant);
+            if (cachedImageHash.isPresent()) {
+                String eTag = ETags.strong(cachedImageHash.get());
+                if (ETags.matches(ifNoneMatch, eTag)) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                            .eTag(eTag)
+                            .cacheControl(IMAGE_CACHE_CONTROL)
+                            .build();
+                }
+            }
+        }
+
+        ImageStream openedImage = postService.openImageStream(postId, variant);
+
+        long imageLength = openedImage.contentLength();
+        // hash of image streamed from backend is known only after it is read
+        String eTag = openedImage.contentHash() == null ? null : ETags.strong(openedImage.contentHash());
+
+        HttpRange range = parseSingleRange(rangeHeader);
+        // range can be served only if image length is known and If-Range, if present, matches current image
+        boolean isRangeApplicable = range != null
+                && imageLength != ImageStream.UNKNOWN_LENGTH
+                && (ifRange == null || ifRange.equals(eTag));
+
+        ResponseEntity.BodyBuilder builder;
+        ImageStream image;
+
+        if (isRangeApplicable) {
+            long start = range.getRangeStart(imageLength);
+            long end = range.getRangeEnd(imageLength);
+
+            if (start >= imageLength || start > end) {
+                openedImage.close();
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + imageLength)
+                        .build();
+            }
+
+            image = openedImage.slice(start, end);
+            builder = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .header(HttpHeaders.CONTENT_RANGE, String.format("bytes %d-%d/%d", start, end, imageLength));
+        } else {
+            image = openedImage;
+            builder = ResponseEntity.ok();
+        }
+
+        builder.contentType(MediaType.IMAGE_JPEG).cacheControl(IMAGE_CACHE_CONTROL);
+        if (imageLength != ImageStream.UNKNOWN_LENGTH) {
+            builder.header(HttpHeaders.ACCEPT_RANGES, "bytes");
+            builder.contentLength(image.contentLength());
+        }
+        if (eTag != null) {
+            builder.eTag(eTag);
+        }
+
+        // Body is not run if async request completes before, for example because client disconnected or request timed
+        // out, so image is also closed once async request completes, whichever happens first.
+        var isImageClosed = new AtomicBoolean(false);
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(
+                IMAGE_STREAM_INTERCEPTOR_KEY,
+                new CallableProcessingInterceptor() {
+
+                    @Override
+                    public <T> void afterCompletion(
+                            @NonNull NativeWebRequest webRequest,
+                            @NonNull Callable<T> task) {
+
+                        closeImage(image, isImageClosed);
+                    }
+                });
+
+        // written on async thread, writes block while client is not reading, so chunks are fetched at client's pace
+        return builder.body(outputStream -> {
+            try {
+                image.transferTo(outputStream);
+            } finally {
+                closeImage(image, isImageClosed);
+            }
+        });
+    }
+
+    private static void closeImage(@NonNull ImageStream image, @NonNull AtomicBoolean isClosed) {
+
+        if (isClosed.compareAndSet(false, true)) {
+            image.close();
+        }
     }
 
     @Operation(
@@ -481,6 +716,14 @@ public class PostController {
                     responseCode = "200",
                     description = KarmaAppEndpointDocs.RESP_OK_CREATE_POST
             ),
+            @ApiResponse(
+                    responseCode = "413",
+                    description = ImageTooLargeException.ERROR_MESSAGE,
+                    content = {@Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = ProblemDetail.class)
+                    )}
+            ),
             @ApiResponse(
                     responseCode = "500",
                     description = FileProcessingException.ERROR_MESSAGE,
@@ -508,12 +751,102 @@ public class PostController {
 
             @Parameter(description = KarmaAppEndpointDocs.PARAM_DESC_IMAGE_DATA)
             @RequestPart(value = "image", required = false) MultipartFile image
-    ) throws FileProcessingException {
+    ) throws ImageTooLargeException, FileProcessingException {
 
         postService.create(jsonData, image);
         return ResponseEntity.ok(null);
     }
 
+    @Operation(
+            summary = KarmaAppEndpointDocs.OP_SUM_CREATE_POST_ASYNC,
+            description = KarmaAppEndpointDocs.OP_DESC_CREATE_POST_ASYNC
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "202",
+                    description = KarmaAppEndpointDocs.RESP_ACCEPTED_CREATE_POST_ASYNC,
+                    content = {@Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = PostCreationResponse.class)
+                    )}
+            ),
+            @ApiResponse(
+                    responseCode = "413",
+                    description = ImageTooLargeException.ERROR_MESSAGE,
+                    content = {@Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = ProblemDetail.class)
+                    )}
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = FileProcessingException.ERROR_MESSAGE,
+                    content = {@Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = ProblemDetail.class)
+                    )}
+            ),
+    })
+    @SecurityRequirement(name = SwaggerConfiguration.AUTH)
+    @PostMapping("user/posts/creations")
+    public ResponseEntity<PostCreationResponse> createAsync(
+
+            @Parameter(
+                    description = KarmaAppEndpointDocs.PARAM_DESC_POST_CREATION_REQUEST,
+                    required = true,
+                    content = @Content(
+                            encoding = @Encoding(
+                                    name = "postCreationRequest",
+                                    contentType = MediaType.APPLICATION_JSON_VALUE
+                            )
+                    )
+            )
+            @Valid @RequestPart(value = "postCreationRequest") PostCreationRequest jsonData,
+
+            @Parameter(description = KarmaAppEndpointDocs.PARAM_DESC_IMAGE_DATA)
+            @RequestPart(value = "image", required = false) MultipartFile image
+    ) throws ImageTooLargeException, FileProcessingException {
+
+        ObjectId creationId = postService.createAsync(jsonData, image);
+
+        return ResponseEntity.accepted()
+                .location(URI.create("/user/posts/creations/" + creationId.toHexString()))
+                .body(new PostCreationResponse(creationId, PostCreationStatus.PENDING));
+    }
+
+    @Operation(
+            summary = KarmaAppEndpointDocs.OP_SUM_FIND_POST_CREATION,
+            description = KarmaAppEndpointDocs.OP_DESC_FIND_POST_CREATION
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = KarmaAppEndpointDocs.RESP_OK_FIND_POST_CREATION,
+                    content = {@Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = PostCreationResponse.class)
+                    )}
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = PostCreationNotFoundException.ERROR_MESSAGE,
+                    content = {@Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = ProblemDetail.class)
+                    )}
+            ),
+    })
+    @SecurityRequirement(name = SwaggerConfiguration.AUTH)
+    @GetMapping("user/posts/creations/{creationId}")
+    public PostCreationResponse findCreation(
+
+            @Parameter(description = KarmaAppEndpointDocs.PATH_DESC_CREATION_ID)
+            @PathVariable ObjectId creationId
+    ) throws PostCreationNotFoundException {
+
+        return new PostCreationResponse(creationId, postService.findCreationStatus(creationId));
+    }
+
     @Operation(
             summary = KarmaAppEndpointDocs.OP_SUM_RATE_POST,
             description = KarmaAppEndpointDocs.OP_DESC_RATE_POST
@@ -542,15 +875,6 @@ public class PostController {
                             schema = @Schema(implementation = ProblemDetail.class)
                     )}
             ),
-            @ApiResponse(
-                    responseCode = "404",
-                    description = UserNotFoundException.ERROR_MESSAGE +
-                            KarmaAppEndpointDocs.USERNAME_FETCH_FAIL_DURING_CACHING_SUFFIX,
-                    content = {@Content(
-                            mediaType = MediaType.APPLICATION_JSON_VALUE,
-                            schema = @Schema(implementation = ProblemDetail.class)
-                    )}
-            ),
     })
     @SecurityRequirement(name = SwaggerConfiguration.AUTH)
     @PostMapping("user/posts/{postId}/rate")
@@ -561,7 +885,7 @@ public class PostController {
 
             @Parameter(description = KarmaAppEndpointDocs.PARAM_DESC_IS_POSITIVE)
             @RequestParam("is_positive") boolean isPositive
-    ) throws PostNotFoundException, RatingNotFoundException, UserNotFoundException {
+    ) throws PostNotFoundException, RatingNotFoundException {
 
         postService.rate(postId, isPositive);
         return ResponseEntity.ok(null);
@@ -584,16 +908,6 @@ public class PostController {
                             schema = @Schema(implementation = ProblemDetail.class)
                     )}
             ),
-            @ApiResponse(
-                    responseCode = "404",
-                    description = UserNotFoundException.ERROR_MESSAGE +
-                            KarmaAppEndpointDocs.USERNAME_FETCH_FAIL_DURING_CACHING_SUFFIX,
-                    content = {@Content(
-                            mediaType = MediaType.APPLICATION_JSON_VALUE,
-                            schema = @Schema(implementation = ProblemDetail.class)
-                    )}
-            ),
-
     })
     @SecurityRequirement(name = SwaggerConfiguration.AUTH)
     @PostMapping("user/posts/{postId}/unrate")
@@ -601,7 +915,7 @@ public class PostController {
 
             @Parameter(description = KarmaAppEndpointDocs.PATH_DESC_POST_ID)
             @PathVariable ObjectId postId
-    ) throws PostNotFoundException, UserNotFoundException {
+    ) throws PostNotFoundException {
 
         postService.unrate(postId);
         return ResponseEntity.ok(null);
@@ -3,44 +3,121 @@ package com.msik404.karmaappgateway.post;
 import java.util.ArrayList;
 import java.util.List;
 
-import com.msik404.karmaappgateway.post.dto.PostDto;
 import com.msik404.karmaappgateway.post.dto.PostResponse;
+import com.msik404.karmaappgateway.post.dto.PostView;
 import org.bson.types.ObjectId;
 import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
 import org.springframework.hateoas.Link;
 import org.springframework.hateoas.server.RepresentationModelAssembler;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.MvcUriComponentsBuilder;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
 
-import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
-import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
+import static org.springframework.web.servlet.mvc.method.annotation.MvcUriComponentsBuilder.on;
 
+/**
+ * Links of each post differ only by postId, so they are resolved once at startup into templates. Building them with
+ * linkTo(methodOn()) for each post was costly, because every call creates proxy and introspects controller method.
+ */
 @Component
-public class PostResponseModelAssembler implements RepresentationModelAssembler<PostDto, EntityModel<PostResponse>> {
+public class PostResponseModelAssembler implements RepresentationModelAssembler<PostView, EntityModel<PostResponse>> {
 
-    @Override
-    public EntityModel<PostResponse> toModel(@NonNull PostDto postDto) {
+    private static final String PLACEHOLDER_POST_ID_HEX_STRING = "000000000000000000000000";
+
+    /**
+     * Link path split around postId. Path is relative to base uri of current servlet mapping.
+     */
+    public record LinkTemplate(@NonNull String pathPrefix, @NonNull String pathSuffix) {
+
+        @NonNull
+        public String expand(@NonNull String baseUri, @NonNull String postIdHexString) {
+            return baseUri + pathPrefix + postIdHexString + pathSuffix;
+        }
+
+    }
+
+    private final List<LinkTemplate> linkTemplates;
+
+    public PostResponseModelAssembler() {
+        this.linkTemplates = resolveLinkTemplates();
+    }
+
+    @NonNull
+    private static LinkTemplate resolveLinkTemplate(@NonNull Object invocationInfo) {
+
+        String path = MvcUriComponentsBuilder
+                .fromMethodCall(UriComponentsBuilder.newInstance(), invocationInfo)
+                .toUriString();
+
+        int postIdIdx = path.indexOf(PLACEHOLDER_POST_ID_HEX_STRING);
+        return new LinkTemplate(
+                path.substring(0, postIdIdx),
+                path.substring(postIdIdx + PLACEHOLDER_POST_ID_HEX_STRING.length())
+        );
+    }
+
+    @NonNull
+    private static List<LinkTemplate> resolveLinkTemplates() {
 
-        ObjectId postId = postDto.getId();
-        var postResponse = new PostResponse(postDto);
+        var postId = new ObjectId(PLACEHOLDER_POST_ID_HEX_STRING);
 
-        List<Link> links = new ArrayList<>();
+        List<LinkTemplate> templates = new ArrayList<>();
 
-        links.add(linkTo(methodOn(PostController.class).findImageById(postId)).withSelfRel());
+        templates.add(resolveLinkTemplate(on(PostController.class).findImageById(postId, null, null, null, null, null)));
 
-        links.add(linkTo(methodOn(PostController.class).rate(postId, false)).withSelfRel());
-        links.add(linkTo(methodOn(PostController.class).rate(postId, true)).withSelfRel());
-        links.add(linkTo(methodOn(PostController.class).unrate(postId)).withSelfRel());
+        templates.add(resolveLinkTemplate(on(PostController.class).rate(postId, false)));
+        templates.add(resolveLinkTemplate(on(PostController.class).rate(postId, true)));
+        templates.add(resolveLinkTemplate(on(PostController.class).unrate(postId)));
 
-        links.add(linkTo(methodOn(PostController.class).hideByUser(postId)).withSelfRel());
-        links.add(linkTo(methodOn(PostController.class).unhideByUser(postId)).withSelfRel());
-        links.add(linkTo(methodOn(PostController.class).deleteByUser(postId)).withSelfRel());
+        templates.add(resolveLinkTemplate(on(PostController.class).hideByUser(postId)));
+        templates.add(resolveLinkTemplate(on(PostController.class).unhideByUser(postId)));
+        templates.add(resolveLinkTemplate(on(PostController.class).deleteByUser(postId)));
 
-        links.add(linkTo(methodOn(PostController.class).hideByMod(postId)).withSelfRel());
+        templates.add(resolveLinkTemplate(on(PostController.class).hideByMod(postId)));
+
+        templates.add(resolveLinkTemplate(on(PostController.class).activateByAdmin(postId)));
+        templates.add(resolveLinkTemplate(on(PostController.class).deleteByAdmin(postId)));
+
+        return List.copyOf(templates);
+    }
+
+    /**
+     * @return templates of links to actions which can be performed on a post, all of them have self relation.
+     */
+    @NonNull
+    public List<LinkTemplate> getLinkTemplates() {
+        return linkTemplates;
+    }
+
+    /**
+     * Must be called while handling request. It is enough to call it once per response.
+     *
+     * @return base uri to which link templates are relative.
+     */
+    @NonNull
+    public String getCurrentBaseUri() {
+        return ServletUriComponentsBuilder.fromCurrentServletMapping().toUriString();
+    }
+
+    @NonNull
+    public List<Link> toLinks(@NonNull String baseUri, @NonNull String postIdHexString) {
+
+        List<Link> links = new ArrayList<>(linkTemplates.size());
+        for (LinkTemplate template : linkTemplates) {
+            links.add(Link.of(template.expand(baseUri, postIdHexString), IanaLinkRelations.SELF));
+        }
+        return links;
+    }
+
+    @Override
+    public EntityModel<PostResponse> toModel(@NonNull PostView post) {
 
-        links.add(linkTo(methodOn(PostController.class).activateByAdmin(postId)).withSelfRel());
-        links.add(linkTo(methodOn(PostController.class).deleteByAdmin(postId)).withSelfRel());
+        var postResponse = new PostResponse(post);
+        List<Link> links = toLinks(getCurrentBaseUri(), post.idHexString());
 
-        return EntityModel.of(postResponse, links.toArray(new Link[0]));
+        return EntityModel.of(postResponse, links);
     }
 }
@@ -1,29 +1,53 @@
 package com.msik404.karmaappgateway.post;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.List;
-import java.util.OptionalDouble;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
 
 import com.msik404.karmaappgateway.auth.exception.InsufficientRoleException;
+import com.msik404.karmaappgateway.grpc.client.GrpcFutures;
 import com.msik404.karmaappgateway.grpc.client.GrpcService;
+import com.msik404.karmaappgateway.post.cache.CacheMaintenanceService;
+import com.msik404.karmaappgateway.post.cache.DiskImageCache;
+import com.msik404.karmaappgateway.post.cache.DiskImageCacheInvalidator;
+import com.msik404.karmaappgateway.post.cache.ImageAdmissionFilter;
+import com.msik404.karmaappgateway.post.cache.ImageFillCoalescer;
 import com.msik404.karmaappgateway.post.cache.PostRedisCache;
 import com.msik404.karmaappgateway.post.cache.PostRedisCacheHandlerService;
+import com.msik404.karmaappgateway.post.creation.PostCreationQueue;
 import com.msik404.karmaappgateway.post.dto.*;
 import com.msik404.karmaappgateway.post.exception.FileProcessingException;
 import com.msik404.karmaappgateway.post.exception.ImageNotFoundException;
+import com.msik404.karmaappgateway.post.exception.ImageTooLargeException;
+import com.msik404.karmaappgateway.post.exception.PageSizeOutOfRangeException;
+import com.msik404.karmaappgateway.post.exception.PostCreationNotFoundException;
 import com.msik404.karmaappgateway.post.exception.PostNotFoundException;
 import com.msik404.karmaappgateway.post.exception.RatingNotFoundException;
+import com.msik404.karmaappgateway.post.image.ByteArrayImageStream;
+import com.msik404.karmaappgateway.post.image.CachedImageStream;
+import com.msik404.karmaappgateway.post.image.CachingImageStream;
+import com.msik404.karmaappgateway.post.image.ImageSink;
+import com.msik404.karmaappgateway.post.image.ImageStream;
+import com.msik404.karmaappgateway.post.image.ImageVariantGenerator;
+import com.msik404.karmaappgateway.post.image.InflatingImageStream;
+import com.msik404.karmaappgateway.post.image.RedisImageSink;
 import com.msik404.karmaappgateway.user.Role;
 import com.msik404.karmaappgateway.user.exception.UserNotFoundException;
+import io.grpc.Context;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.lang.NonNull;
 import org.springframework.lang.Nullable;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -31,20 +55,58 @@ import org.springframework.web.multipart.MultipartFile;
 @RequiredArgsConstructor
 public class PostService {
 
+    public static final String IMAGE_REQUESTS_METRIC = "karmaapp.images.requests";
+
     private final GrpcService grpcService;
 
     private final PostRedisCache cache;
     private final PostRedisCacheHandlerService cacheHandler;
+    private final CacheMaintenanceService cacheMaintenance;
+    private final DiskImageCache diskImageCache;
+    private final DiskImageCacheInvalidator diskImageCacheInvalidator;
+    private final ImageAdmissionFilter imageAdmissionFilter;
+    private final ImageFillCoalescer imageFillCoalescer;
+    private final ImageVariantGenerator imageVariantGenerator;
+
+    private final PostCreationQueue creationQueue;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${KarmaAppGateway.posts.max-page-size}")
+    private int maxPageSize;
+
+    @Value("${KarmaAppGateway.images.chunk-size-bytes}")
+    private int imageChunkSize;
+
+    @Value("${KarmaAppGateway.images.redis-max-size-bytes}")
+    private long redisMaxImageSize;
+
+    @Value("${KarmaAppGateway.images.upload.max-size-bytes}")
+    private long maxUploadedImageSize;
+
+    @FunctionalInterface
+    public interface PostChunkConsumer {
+        void accept(@NonNull List<PostView> chunk) throws IOException;
+    }
+
+    private void checkPageSize(int size) throws PageSizeOutOfRangeException {
+
+        if (size < 1 || size > maxPageSize) {
+            throw new PageSizeOutOfRangeException(maxPageSize);
+        }
+    }
 
     @NonNull
-    public List<PostDto> findPaginatedPosts(
+    public CompletableFuture<List<PostView>> findPaginatedPosts(
             int size,
             @NonNull List<Visibility> visibilities,
             @Nullable ScrollPosition scrollPosition,
             @Nullable String creatorUsername
-    ) throws UserNotFoundException {
+    ) throws PageSizeOutOfRangeException, UserNotFoundException {
+
+        checkPageSize(size);
 
-        List<PostDto> results;
+        CompletableFuture<List<PostView>> results;
 
         if (creatorUsername == null) {
             if (scrollPosition == null) {
@@ -65,17 +127,19 @@ public class PostService {
     }
 
     @NonNull
-    public List<PostDto> findPaginatedOwnedPosts(
+    public CompletableFuture<List<PostView>> findPaginatedOwnedPosts(
             int size,
             @NonNull List<Visibility> visibilities,
             @Nullable ScrollPosition scrollPosition
-    ) throws UserNotFoundException {
+    ) throws PageSizeOutOfRangeException, UserNotFoundException {
+
+        checkPageSize(size);
 
         // controller authentication objects come from filter and are UsernamePasswordAuthenticationToken.
         var authentication = SecurityContextHolder.getContext().getAuthentication();
         var clientId = (ObjectId) authentication.getPrincipal();
 
-        List<PostDto> results;
+        CompletableFuture<List<PostView>> results;
 
         if (scrollPosition == null) {
             results = grpcService.findTopNPostsByCreatorId(size, visibilities, clientId);
@@ -87,17 +151,19 @@ public class PostService {
     }
 
     @NonNull
-    public List<PostRatingResponse> findPaginatedPostRatings(
+    public CompletableFuture<List<PostRatingResponse>> findPaginatedPostRatings(
             int size,
             @NonNull List<Visibility> visibilities,
             @Nullable ScrollPosition scrollPosition,
             @Nullable String creatorUsername
-    ) throws UserNotFoundException {
+    ) throws PageSizeOutOfRangeException, UserNotFoundException {
+
+        checkPageSize(size);
 
         var authentication = SecurityContextHolder.getContext().getAuthentication();
         var clientId = (ObjectId) authentication.getPrincipal();
 
-        List<PostRatingResponse> results;
+        CompletableFuture<List<PostRatingResponse>> results;
 
         if (creatorUsername == null) {
             if (scrollPosition == null) {
@@ -118,43 +184,331 @@ public class PostService {
         return results;
     }
 
+    /**
+     * Pages through active posts in chunks of at most max page size and passes each chunk to consumer. Next chunk is
+     * requested only after consumer returns, so if consumer writes to slow client, fetching slows down with it and only
+     * single chunk is held in memory at a time. Chunks of posts not filtered by creator are served from cache if
+     * possible.
+     * <p>
+     * Export can last much longer than request deadline, so it runs in forked grpc Context which does not have it. Each
+     * grpc call is still bounded by method timeout.
+     *
+     * @param limit           max amount of posts to be exported.
+     * @param creatorUsername if not null only posts of this user are exported.
+     * @param consumer        consumer of subsequent chunks.
+     */
+    public void exportActivePosts(
+            long limit,
+            @Nullable String creatorUsername,
+            @NonNull PostChunkConsumer consumer
+    ) throws IOException, UserNotFoundException {
+
+        Context exportContext = Context.current().fork();
+        Context previous = exportContext.attach();
+        try {
+            ScrollPosition scrollPosition = null;
+            long remaining = limit;
+
+            while (remaining > 0) {
+                int chunkSize = (int) Math.min(maxPageSize, remaining);
+
+                List<PostView> chunk = GrpcFutures.await(findPaginatedPosts(
+                        chunkSize, List.of(Visibility.ACTIVE), scrollPosition, creatorUsername));
+
+                if (chunk.isEmpty()) {
+                    return;
+                }
+
+                consumer.accept(chunk);
+                remaining -= chunk.size();
+
+                if (chunk.size() < chunkSize) {
+                    return;
+                }
+
+                PostView lastPost = chunk.get(chunk.size() - 1);
+                scrollPosition = new ScrollPosition(new ObjectId(lastPost.idHexString()), lastPost.karmaScore());
+            }
+        } finally {
+            exportContext.detach(previous);
+        }
+    }
+
+    /**
+     * Feed version changes whenever cached posts change, so it can be used as validator of the page.
+     *
+     * @return OptionalLong of feed version, empty if requested page of active posts would not be served entirely from
+     * cache.
+     */
     @NonNull
-    public byte[] findImageByPostId(
-            @NonNull ObjectId postId
+    public OptionalLong findFeedVersion(
+            int size,
+            @Nullable ScrollPosition scrollPosition
+    ) throws PageSizeOutOfRangeException {
+
+        checkPageSize(size);
+
+        return cache.findFeedVersion(size, scrollPosition);
+    }
+
+    private void countImageRequest(@NonNull String source) {
+        meterRegistry.counter(IMAGE_REQUESTS_METRIC, "source", source).increment();
+    }
+
+    /**
+     * @return Optional of content hash of the variant of the image, Optional empty if it is not cached.
+     */
+    @NonNull
+    public Optional<String> findCachedImageHash(@NonNull ObjectId postId, @NonNull ImageVariant variant) {
+
+        Optional<String> diskCachedImageHash = diskImageCache.findContentHash(postId, variant);
+        if (diskCachedImageHash.isPresent()) {
+            return diskCachedImageHash;
+        }
+        return cache.getCachedImageHash(postId, variant);
+    }
+
+    @NonNull
+    private ImageStream openCachedImage(@NonNull ImageMetadataDto metadata) {
+
+        ImageStream storedImage = new CachedImageStream(cache, metadata, imageChunkSize);
+        if (metadata.encoding() == ImageEncoding.DEFLATE) {
+            return new InflatingImageStream(storedImage, metadata.size(), imageChunkSize);
+        }
+        return storedImage;
+    }
+
+    /**
+     * Image is served from local disk cache first, then from redis, where it is read in chunks of imageChunkSize
+     * bytes and inflated if it is stored compressed. Otherwise image is streamed from backend and cached while it is
+     * being streamed, its hash is computed along the way. Every image is cached on disk, but only images not bigger
+     * than redisMaxImageSize and admitted by imageAdmissionFilter are cached in redis. Missing image is remembered in
+     * redis for a short time, so that backend is not asked for it repeatedly. Requests are counted by source they
+     * were served from.
+     * <p>
+     * Disk tier is filled on the first fetch from backend, before image is usually admitted, so image is also
+     * promoted from disk to redis on disk hit at which it gets admitted.
+     * <p>
+     * Concurrent requests of image which is not cached yet are coalesced by imageFillCoalescer, so that burst of them
+     * opens single backend stream and the rest are served from the caches it fills.
+     *
+     * @return image stream, it must be closed.
+     * @throws ImageNotFoundException thrown before anything is streamed, if image does not exist.
+     */
+    @NonNull
+    public ImageStream openImageStream(@NonNull ObjectId postId) throws ImageNotFoundException {
+
+        boolean isAdmissionReached = imageAdmissionFilter.recordRequest(postId);
+
+        Optional<ImageStream> cachedImage = openCachedImage(postId, isAdmissionReached);
+        if (cachedImage.isEmpty() && imageFillCoalescer.awaitFill(postId)) {
+            cachedImage = openCachedImage(postId, isAdmissionReached);
+        }
+        if (cachedImage.isPresent()) {
+            return cachedImage.get();
+        }
+
+        return imageFillCoalescer.fill(postId, () -> openBackendImage(postId));
+    }
+
+    /**
+     * @return Optional of image cached on disk or in redis, Optional empty if it is not cached.
+     * @throws ImageNotFoundException thrown if image is remembered as missing.
+     */
+    @NonNull
+    private Optional<ImageStream> openCachedImage(
+            @NonNull ObjectId postId,
+            boolean isAdmissionReached
+    ) throws ImageNotFoundException {
+
+        Optional<ImageStream> diskCachedImage = diskImageCache.open(postId);
+        if (diskCachedImage.isPresent()) {
+            countImageRequest("disk");
+            if (isAdmissionReached) {
+                return Optional.of(promoteToRedis(postId, diskCachedImage.get()));
+            }
+            return diskCachedImage;
+        }
+
+        Optional<ImageMetadataDto> cachedImage = cache.getCachedImageMetadata(postId);
+        if (cachedImage.isPresent()) {
+            countImageRequest("redis");
+            return Optional.of(openCachedImage(cachedImage.get()));
+        }
+
+        if (cache.isImageMarkedMissing(postId)) {
+            countImageRequest("negative");
+            throw new ImageNotFoundException();
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * @return image streamed from backend, which is cached while it is being read.
+     */
+    @NonNull
+    private ImageStream openBackendImage(@NonNull ObjectId postId) throws ImageNotFoundException {
+
+        ImageStream backendImage;
+        try {
+            backendImage = grpcService.openImageStream(postId);
+        } catch (ImageNotFoundException ex) {
+            cache.markImageMissing(postId);
+            throw ex;
+        }
+        countImageRequest("backend");
+
+        List<ImageSink> sinks = imageAdmissionFilter.admit(postId)
+                ? List.of(diskImageCache.createSink(postId), new RedisImageSink(cache, postId, redisMaxImageSize))
+                : List.of(diskImageCache.createSink(postId));
+        return new CachingImageStream(backendImage, sinks);
+    }
+
+    /**
+     * @return disk cached image, which is written to redis while it is being streamed, unless it is too big or already
+     * cached there.
+     */
+    @NonNull
+    private ImageStream promoteToRedis(@NonNull ObjectId postId, @NonNull ImageStream diskImage) {
+
+        if (diskImage.contentLength() > redisMaxImageSize || !imageAdmissionFilter.admit(postId)) {
+            return diskImage;
+        }
+
+        try {
+            if (cache.getCachedImageHash(postId).isPresent()) {
+                return diskImage;
+            }
+        } catch (DataAccessException ex) {
+            // image is served from disk anyway
+            return diskImage;
+        }
+
+        return new CachingImageStream(diskImage, List.of(new RedisImageSink(cache, postId, redisMaxImageSize)));
+    }
+
+    /**
+     * Variant is cached in the same tiers as original image, under its own key. If it is not cached, it is generated
+     * from original image by imageVariantGenerator, concurrent requests of the same variant wait for single
+     * generation. If variant can not be generated now, original image is served instead.
+     *
+     * @return stream of variant of the image, it must be closed.
+     * @throws ImageNotFoundException thrown before anything is streamed, if image does not exist.
+     */
+    @NonNull
+    public ImageStream openImageStream(
+            @NonNull ObjectId postId,
+            @NonNull ImageVariant variant
     ) throws ImageNotFoundException {
 
-        return cache.getCachedImage(postId).orElseGet(() -> {
-            byte[] imageData = grpcService.findImage(postId);
-            if (imageData.length == 0) {
-                throw new ImageNotFoundException();
+        if (variant == ImageVariant.ORIGINAL) {
+            return openImageStream(postId);
+        }
+
+        Optional<ImageStream> diskCachedVariant = diskImageCache.open(postId, variant);
+        if (diskCachedVariant.isPresent()) {
+            return diskCachedVariant.get();
+        }
+
+        Optional<ImageMetadataDto> cachedVariant = cache.getCachedImageMetadata(postId, variant);
+        if (cachedVariant.isPresent()) {
+            return openCachedImage(cachedVariant.get());
+        }
+
+        Optional<byte[]> variantData = GrpcFutures.await(imageVariantGenerator.generate(
+                postId,
+                variant,
+                () -> openImageStream(postId),
+                generatedVariant -> cacheImageVariant(postId, variant, generatedVariant)
+        ));
+
+        if (variantData.isEmpty()) {
+            return openImageStream(postId);
+        }
+        return new ByteArrayImageStream(variantData.get());
+    }
+
+    private void cacheImageVariant(@NonNull ObjectId postId, @NonNull ImageVariant variant, @NonNull byte[] data) {
+
+        ImageSink diskSink = diskImageCache.createSink(postId, variant);
+        diskSink.append(ByteBuffer.wrap(data));
+        diskSink.commit(PostRedisCache.computeContentHash(data));
+
+        if (data.length <= redisMaxImageSize) {
+            try {
+                cache.cacheImage(postId, variant, data);
+            } catch (DataAccessException ex) {
+                // caching is best effort, variant is generated again if it is not cached
             }
-            cache.cacheImage(postId, imageData);
-            return imageData;
-        });
+        }
+    }
+
+    /**
+     * @return image which should be uploaded, null if there is none.
+     * @throws ImageTooLargeException thrown when image is bigger than maxUploadedImageSize.
+     */
+    @Nullable
+    private MultipartFile checkUploadedImage(@Nullable MultipartFile image) throws ImageTooLargeException {
+
+        if (image == null || image.isEmpty()) {
+            return null;
+        }
+        if (image.getSize() > maxUploadedImageSize) {
+            throw new ImageTooLargeException(maxUploadedImageSize);
+        }
+        return image;
     }
 
+    /**
+     * Multipart image is spooled to disk by servlet container, from there it is streamed to posts microservice.
+     * Size is checked before anything is sent.
+     */
     public void create(
             @NonNull PostCreationRequest request,
-            @Nullable MultipartFile image) throws FileProcessingException {
+            @Nullable MultipartFile image) throws ImageTooLargeException, FileProcessingException {
+
+        var authentication = SecurityContextHolder.getContext().getAuthentication();
+        var clientId = (ObjectId) authentication.getPrincipal();
+
+        grpcService.createPost(clientId, request, checkUploadedImage(image));
+    }
+
+    /**
+     * Post is created in the background by PostCreationWorker.
+     *
+     * @return id of the creation, which can be used for polling its status.
+     */
+    @NonNull
+    public ObjectId createAsync(
+            @NonNull PostCreationRequest request,
+            @Nullable MultipartFile image) throws ImageTooLargeException, FileProcessingException {
 
         var authentication = SecurityContextHolder.getContext().getAuthentication();
         var clientId = (ObjectId) authentication.getPrincipal();
 
         try {
-            byte[] imageData = null;
-            if (image != null && !image.isEmpty()) {
-                imageData = image.getBytes();
-            }
-            grpcService.createPost(clientId, request, imageData);
+            return creationQueue.enqueue(clientId, request, checkUploadedImage(image));
         } catch (IOException ex) {
             throw new FileProcessingException();
         }
     }
 
+    @NonNull
+    public PostCreationStatus findCreationStatus(
+            @NonNull ObjectId creationId
+    ) throws PostCreationNotFoundException {
+
+        var authentication = SecurityContextHolder.getContext().getAuthentication();
+        var clientId = (ObjectId) authentication.getPrincipal();
+
+        return creationQueue.findStatus(creationId, clientId).orElseThrow(PostCreationNotFoundException::new);
+    }
+
     public void rate(
             @NonNull ObjectId postId,
             boolean isNewRatingPositive
-    ) throws PostNotFoundException, RatingNotFoundException, UserNotFoundException {
+    ) throws PostNotFoundException, RatingNotFoundException {
 
         var authentication = SecurityContextHolder.getContext().getAuthentication();
         var clientId = (ObjectId) authentication.getPrincipal();
@@ -165,15 +519,12 @@ public class PostService {
             return;
         }
 
-        OptionalDouble optionalNewKarmaScore = cache.updateKarmaScoreIfPresent(postId, delta);
-        if (optionalNewKarmaScore.isEmpty()) { // this means that this post is not cached
-            cacheHandler.loadPostDataToCacheIfPossible(postId);
-        }
+        cacheMaintenance.submitScoreChange(postId, delta);
     }
 
     public void unrate(
             @NonNull ObjectId postId
-    ) throws PostNotFoundException, UsernameNotFoundException {
+    ) throws PostNotFoundException {
 
         var authentication = SecurityContextHolder.getContext().getAuthentication();
         var clientId = (ObjectId) authentication.getPrincipal();
@@ -184,10 +535,7 @@ public class PostService {
             return;
         }
 
-        OptionalDouble optionalNewKarmaScore = cache.updateKarmaScoreIfPresent(postId, delta);
-        if (optionalNewKarmaScore.isEmpty()) { // this means that this post is not cached
-            cacheHandler.loadPostDataToCacheIfPossible(postId);
-        }
+        cacheMaintenance.submitScoreChange(postId, delta);
     }
 
     public void changeVisibility(
@@ -212,11 +560,13 @@ public class PostService {
         }
 
         grpcService.changePostVisibility(postId, visibility);
+        cache.clearMissingMarks(postId);
 
         if (visibility.equals(Visibility.ACTIVE)) { // if this post was made active it might be high enough karma score
             cacheHandler.loadPostDataToCacheIfPossible(postId);
         } else {
             cache.deletePostFromCache(postId);
+            diskImageCacheInvalidator.invalidate(postId);
         }
     }
 
@@ -249,12 +599,14 @@ public class PostService {
         }
 
         grpcService.changePostVisibility(postId, visibility);
+        cache.clearMissingMarks(postId);
 
         // if this post was made active it might have high enough karma score to be cached
         if (visibility.equals(Visibility.ACTIVE)) {
             cacheHandler.loadToCacheIfPossible(post);
         } else {
             cache.deletePostFromCache(post.postDto().getId());
+            diskImageCacheInvalidator.invalidate(post.postDto().getId());
         }
 
     }
@@ -0,0 +1,64 @@
+package com.msik404.karmaappgateway.post.cache;
+
+import java.nio.ByteBuffer;
+
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.ToByteBufEncoder;
+import io.netty.buffer.ByteBuf;
+import org.springframework.lang.NonNull;
+
+/**
+ * Lettuce codec of byte array keys and ByteBuffer values. Values are written straight from their buffers to the
+ * output buffer of the connection, so that heap and read-only buffers alike are sent without being copied to heap
+ * array first. Positions of written buffers are not modified.
+ */
+class ByteBufferValueCodec implements RedisCodec<byte[], ByteBuffer>, ToByteBufEncoder<byte[], ByteBuffer> {
+
+    static final ByteBufferValueCodec INSTANCE = new ByteBufferValueCodec();
+
+    @Override
+    public byte[] decodeKey(@NonNull ByteBuffer bytes) {
+
+        byte[] key = new byte[bytes.remaining()];
+        bytes.get(key);
+        return key;
+    }
+
+    @Override
+    public ByteBuffer decodeValue(@NonNull ByteBuffer bytes) {
+
+        ByteBuffer value = ByteBuffer.allocate(bytes.remaining());
+        value.put(bytes);
+        return value.flip();
+    }
+
+    @Override
+    public ByteBuffer encodeKey(@NonNull byte[] key) {
+        return ByteBuffer.wrap(key);
+    }
+
+    @Override
+    public ByteBuffer encodeValue(@NonNull ByteBuffer value) {
+        return value.duplicate();
+    }
+
+    @Override
+    public void encodeKey(@NonNull byte[] key, @NonNull ByteBuf target) {
+        target.writeBytes(key);
+    }
+
+    @Override
+    public void encodeValue(@NonNull ByteBuffer value, @NonNull ByteBuf target) {
+        target.writeBytes(value.duplicate());
+    }
+
+    @Override
+    public int estimateSize(@NonNull Object keyOrValue) {
+
+        if (keyOrValue instanceof byte[] key) {
+            return key.length;
+        }
+        return ((ByteBuffer) keyOrValue).remaining();
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.msik404.karmaappgateway.post.cache;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Service;
+
+/**
+ * Applies karma score changes caused by votes to the cache off the request path, so that vote latency is only the
+ * latency of the grpc call. If rated post is cached its score is incremented, otherwise it is loaded to the cache if
+ * it scores high enough.
+ * <p>
+ * Maintenance is best effort: change which is dropped because queue is full or fails to be applied leaves cached
+ * score behind until cache is reinitialized, which happens every PostRedisCache.TIMEOUT.
+ */
+@Service
+public class CacheMaintenanceService implements SmartLifecycle {
+
+    public static final String LAG_METRIC = "karmaapp.posts.cache.maintenance.lag";
+    public static final String APPLIED_METRIC = "karmaapp.posts.cache.maintenance.applied";
+
+    private final PostRedisCache cache;
+    private final PostRedisCacheHandlerService cacheHandler;
+
+    private final KarmaScoreChangeQueue queue;
+    private final int threads;
+
+    private final Timer lagTimer;
+    private final Counter appliedCounter;
+    private final Counter failedCounter;
+
+    private ExecutorService executor;
+    private volatile boolean isRunning = false;
+
+    public CacheMaintenanceService(
+            @NonNull PostRedisCache cache,
+            @NonNull PostRedisCacheHandlerService cacheHandler,
+            @NonNull MeterRegistry meterRegistry,
+            @Value("${KarmaAppGateway.posts.cache-maintenance.threads}") int threads,
+            @Value("${KarmaAppGateway.posts.cache-maintenance.queue-capacity}") int queueCapacity) {
+
+        this.cache = cache;
+        this.cacheHandler = cacheHandler;
+        this.queue = new KarmaScoreChangeQueue(queueCapacity, meterRegistry);
+        this.threads = threads;
+
+        this.lagTimer = Timer.builder(LAG_METRIC)
+                .description("Time karma score change waited in the queue before being applied to the cache")
+                .register(meterRegistry);
+        this.appliedCounter = meterRegistry.counter(APPLIED_METRIC, "result", "applied");
+        this.failedCounter = meterRegistry.counter(APPLIED_METRIC, "result", "failed");
+    }
+
+    /**
+     * Queues change of karma score of the post, it returns immediately.
+     */
+    public void submitScoreChange(@NonNull ObjectId postId, int delta) {
+        queue.offer(postId, delta);
+    }
+
+    @Override
+    public void start() {
+
+        var threadCounter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            var thread = new Thread(runnable, "cache-maintenance-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        isRunning = true;
+        for (int i = 0; i < threads; i++) {
+            executor.execute(this::work);
+        }
+    }
+
+    @Override
+    public void stop() {
+
+        isRunning = false;
+        executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    private void work() {
+
+        while (isRunning) {
+            KarmaScoreChangeQueue.KarmaScoreChange change;
+            try {
+                change = queue.take();
+            } catch (InterruptedException ex) {
+                return;
+            }
+
+            lagTimer.record(System.nanoTime() - change.enqueuedAtNanos(), TimeUnit.NANOSECONDS);
+            apply(change);
+        }
+    }
+
+    private void apply(@NonNull KarmaScoreChangeQueue.KarmaScoreChange change) {
+
+        // votes which cancelled each other out while queued
+        if (change.delta() == 0) {
+            return;
+        }
+
+        try {
+            if (cache.updateKarmaScoreIfPresent(change.postId(), change.delta()).isEmpty()) {
+                // this means that this post is not cached
+                cacheHandler.loadPostDataToCacheIfPossible(change.postId());
+            }
+            appliedCounter.increment();
+        } catch (RuntimeException ex) {
+            // redis or backend failure, cache catches up once it is reinitialized
+            failedCounter.increment();
+        }
+    }
+
+}
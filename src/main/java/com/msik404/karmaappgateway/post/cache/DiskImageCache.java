@@ -0,0 +1,484 @@
+package com.msik404.karmaappgateway.post.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+import com.msik404.karmaappgateway.post.dto.ImageVariant;
+import com.msik404.karmaappgateway.post.image.DiskImageStream;
+import com.msik404.karmaappgateway.post.image.ImageSink;
+import com.msik404.karmaappgateway.post.image.ImageStream;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+/**
+ * Image cache tier on local disk of each gateway node, it sits in front of redis. Image files are content-addressed,
+ * they are named after hex encoded SHA-256 of their data, so posts with the same image share single file. Post is
+ * mapped to its image with small link file named after post id, which contains image hash. Variants of the image get
+ * their own links, named after post id with variant suffix.
+ * <p>
+ * Files are written to temporary directory first, forced to disk and then atomically moved in place, so after crash
+ * every image and link file is complete. Index is rebuilt from these files on startup: leftover temporary files,
+ * links to missing images and images without links are removed. Least recently used images are evicted once total
+ * size of images exceeds maxSizeBytes, after restart files are ordered by modification time.
+ * <p>
+ * Links are dropped once they are older than maxLinkAge, so that image of post hidden or deleted while this node missed
+ * invalidation message is not served from disk for longer than that.
+ */
+@Service
+public class DiskImageCache {
+
+    private static final String IMAGES_DIR = "images";
+    private static final String LINKS_DIR = "links";
+    private static final String TMP_DIR = "tmp";
+
+    private static final Pattern CONTENT_HASH_PATTERN = Pattern.compile("[0-9a-f]{64}");
+    private static final char VARIANT_SEPARATOR = '.';
+
+    private record Link(String contentHash, long storedAtMillis) {
+    }
+
+    private static final class ImageEntry {
+
+        private final long size;
+        private final Set<String> linkNames = new HashSet<>();
+
+        private ImageEntry(long size) {
+            this.size = size;
+        }
+    }
+
+    private final Path imagesDir;
+    private final Path linksDir;
+    private final Path tmpDir;
+
+    private final long maxSizeBytes;
+    private final int chunkSize;
+    private final long maxLinkAgeMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // access ordered, so that iteration starts from the least recently used image
+    private final LinkedHashMap<String, ImageEntry> images = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Link> links = new HashMap<>();
+    private long totalSize = 0;
+
+    public DiskImageCache(
+            @Value("${KarmaAppGateway.images.disk-cache.directory}") String directory,
+            @Value("${KarmaAppGateway.images.disk-cache.max-size-bytes}") long maxSizeBytes,
+            @Value("${KarmaAppGateway.images.chunk-size-bytes}") int chunkSize,
+            @Value("${KarmaAppGateway.images.disk-cache.max-link-age}") Duration maxLinkAge) throws IOException {
+
+        Path root = Path.of(directory);
+        this.imagesDir = Files.createDirectories(root.resolve(IMAGES_DIR));
+        this.linksDir = Files.createDirectories(root.resolve(LINKS_DIR));
+        this.tmpDir = Files.createDirectories(root.resolve(TMP_DIR));
+
+        this.maxSizeBytes = maxSizeBytes;
+        this.chunkSize = chunkSize;
+        this.maxLinkAgeMillis = maxLinkAge.toMillis();
+
+        rebuildIndex();
+    }
+
+    @NonNull
+    private Path imagePath(@NonNull String contentHash) {
+        return imagesDir.resolve(contentHash);
+    }
+
+    @NonNull
+    private static String getLinkName(@NonNull ObjectId postId, @NonNull ImageVariant variant) {
+
+        if (variant == ImageVariant.ORIGINAL) {
+            return postId.toHexString();
+        }
+        return postId.toHexString() + VARIANT_SEPARATOR + variant.name().toLowerCase();
+    }
+
+    private static boolean isValidLinkName(@NonNull String linkName) {
+
+        int separatorIdx = linkName.indexOf(VARIANT_SEPARATOR);
+        if (separatorIdx == -1) {
+            return ObjectId.isValid(linkName);
+        }
+
+        String variantName = linkName.substring(separatorIdx + 1).toUpperCase();
+        boolean isValidVariant = Arrays.stream(ImageVariant.values())
+                .anyMatch(variant -> variant != ImageVariant.ORIGINAL && variant.name().equals(variantName));
+
+        return isValidVariant && ObjectId.isValid(linkName.substring(0, separatorIdx));
+    }
+
+    @NonNull
+    private Path linkPath(@NonNull String linkName) {
+        return linksDir.resolve(linkName);
+    }
+
+    @NonNull
+    private Path createTmpPath() {
+        return tmpDir.resolve(UUID.randomUUID() + ".tmp");
+    }
+
+    private static void deleteQuietly(@Nullable Path path) {
+
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            // file is removed at latest during next index rebuild
+        }
+    }
+
+    private record ImageFile(String contentHash, long size, FileTime lastModifiedTime) {
+    }
+
+    private boolean isExpired(long storedAtMillis) {
+        return System.currentTimeMillis() - storedAtMillis >= maxLinkAgeMillis;
+    }
+
+    private void rebuildIndex() throws IOException {
+
+        // temporary files are left only by writes interrupted by crash
+        try (DirectoryStream<Path> tmpFiles = Files.newDirectoryStream(tmpDir)) {
+            for (Path tmpFile : tmpFiles) {
+                Files.deleteIfExists(tmpFile);
+            }
+        }
+
+        Map<String, ImageEntry> foundImages = new HashMap<>();
+        List<ImageFile> imageFiles = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(imagesDir)) {
+            for (Path path : paths) {
+                String contentHash = path.getFileName().toString();
+                if (!CONTENT_HASH_PATTERN.matcher(contentHash).matches()) {
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                imageFiles.add(new ImageFile(contentHash, attributes.size(), attributes.lastModifiedTime()));
+                foundImages.put(contentHash, new ImageEntry(attributes.size()));
+            }
+        }
+
+        try (DirectoryStream<Path> linkPaths = Files.newDirectoryStream(linksDir)) {
+            for (Path linkPath : linkPaths) {
+                String linkName = linkPath.getFileName().toString();
+                String contentHash = Files.readString(linkPath, StandardCharsets.US_ASCII);
+                long storedAtMillis = Files.getLastModifiedTime(linkPath).toMillis();
+                ImageEntry entry = foundImages.get(contentHash);
+                if (!isValidLinkName(linkName) || entry == null || isExpired(storedAtMillis)) {
+                    Files.deleteIfExists(linkPath);
+                    continue;
+                }
+                entry.linkNames.add(linkName);
+                links.put(linkName, new Link(contentHash, storedAtMillis));
+            }
+        }
+
+        imageFiles.sort(Comparator.comparing(ImageFile::lastModifiedTime));
+
+        lock.lock();
+        try {
+            for (ImageFile imageFile : imageFiles) {
+                ImageEntry entry = foundImages.get(imageFile.contentHash());
+                // image was written right before crash, before its link
+                if (entry.linkNames.isEmpty()) {
+                    Files.deleteIfExists(imagePath(imageFile.contentHash()));
+                    continue;
+                }
+                images.put(imageFile.contentHash(), entry);
+                totalSize += entry.size;
+            }
+            evictIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called with lock held.
+     */
+    private void evictIfNeeded() {
+
+        Iterator<Map.Entry<String, ImageEntry>> iterator = images.entrySet().iterator();
+        while (totalSize > maxSizeBytes && iterator.hasNext()) {
+            Map.Entry<String, ImageEntry> leastRecentlyUsed = iterator.next();
+            iterator.remove();
+
+            ImageEntry entry = leastRecentlyUsed.getValue();
+            totalSize -= entry.size;
+            for (String linkName : entry.linkNames) {
+                links.remove(linkName);
+                deleteQuietly(linkPath(linkName));
+            }
+            // space of the file is freed once streams which are still reading it are closed
+            deleteQuietly(imagePath(leastRecentlyUsed.getKey()));
+        }
+    }
+
+    /**
+     * Deletes link and its image, if no other link points to it. Must be called with lock held.
+     */
+    private void removeLink(@NonNull String linkName) {
+
+        Link link = links.remove(linkName);
+        if (link == null) {
+            return;
+        }
+        deleteQuietly(linkPath(linkName));
+
+        ImageEntry entry = images.get(link.contentHash());
+        entry.linkNames.remove(linkName);
+        if (entry.linkNames.isEmpty()) {
+            images.remove(link.contentHash());
+            totalSize -= entry.size;
+            deleteQuietly(imagePath(link.contentHash()));
+        }
+    }
+
+    /**
+     * Must be called with lock held.
+     *
+     * @return hex encoded SHA-256 of linked image, null if there is no link or it expired.
+     */
+    @Nullable
+    private String findLinkedContentHash(@NonNull String linkName) {
+
+        Link link = links.get(linkName);
+        if (link == null) {
+            return null;
+        }
+        if (isExpired(link.storedAtMillis())) {
+            removeLink(linkName);
+            return null;
+        }
+        return link.contentHash();
+    }
+
+    /**
+     * Removes image of the post and all of its variants. Image files which are shared with other posts are kept.
+     */
+    public void remove(@NonNull ObjectId postId) {
+
+        lock.lock();
+        try {
+            for (ImageVariant variant : ImageVariant.values()) {
+                removeLink(getLinkName(postId, variant));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Optional of hex encoded SHA-256 of image of the post, Optional empty if it is not cached on disk.
+     */
+    @NonNull
+    public Optional<String> findContentHash(@NonNull ObjectId postId) {
+        return findContentHash(postId, ImageVariant.ORIGINAL);
+    }
+
+    /**
+     * @return Optional of hex encoded SHA-256 of variant of image of the post, Optional empty if it is not cached on
+     * disk.
+     */
+    @NonNull
+    public Optional<String> findContentHash(@NonNull ObjectId postId, @NonNull ImageVariant variant) {
+
+        lock.lock();
+        try {
+            return Optional.ofNullable(findLinkedContentHash(getLinkName(postId, variant)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Optional of image of the post, Optional empty if it is not cached on disk.
+     */
+    @NonNull
+    public Optional<ImageStream> open(@NonNull ObjectId postId) {
+        return open(postId, ImageVariant.ORIGINAL);
+    }
+
+    /**
+     * @return Optional of variant of image of the post, Optional empty if it is not cached on disk.
+     */
+    @NonNull
+    public Optional<ImageStream> open(@NonNull ObjectId postId, @NonNull ImageVariant variant) {
+
+        String contentHash;
+        lock.lock();
+        try {
+            contentHash = findLinkedContentHash(getLinkName(postId, variant));
+            if (contentHash == null) {
+                return Optional.empty();
+            }
+            // marks image as the most recently used
+            images.get(contentHash);
+        } finally {
+            lock.unlock();
+        }
+
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(imagePath(contentHash), StandardOpenOption.READ);
+        } catch (IOException ex) {
+            // image was evicted in the meantime
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(new DiskImageStream(channel, channel.size(), contentHash, chunkSize));
+        } catch (IOException ex) {
+            try {
+                channel.close();
+            } catch (IOException closeEx) {
+                ex.addSuppressed(closeEx);
+            }
+            return Optional.empty();
+        }
+    }
+
+    private void store(
+            @NonNull String linkName,
+            @NonNull String contentHash,
+            @NonNull Path tmpImage,
+            long size) throws IOException {
+
+        Path tmpLink = createTmpPath();
+        try (FileChannel channel = FileChannel.open(tmpLink, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(contentHash.getBytes(StandardCharsets.US_ASCII)));
+            channel.force(false);
+        }
+
+        lock.lock();
+        try {
+            // link may point to other image or be about to expire, it is replaced with fresh one
+            removeLink(linkName);
+
+            // images are content-addressed, so if image is already present, it has the same data
+            Files.move(tmpImage, imagePath(contentHash), StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tmpLink, linkPath(linkName), StandardCopyOption.ATOMIC_MOVE);
+
+            ImageEntry entry = images.get(contentHash);
+            if (entry == null) {
+                entry = new ImageEntry(size);
+                images.put(contentHash, entry);
+                totalSize += size;
+            }
+            entry.linkNames.add(linkName);
+            links.put(linkName, new Link(contentHash, System.currentTimeMillis()));
+
+            evictIfNeeded();
+        } finally {
+            lock.unlock();
+            deleteQuietly(tmpLink);
+        }
+    }
+
+    /**
+     * @return sink which caches image of the post on disk once it is committed.
+     */
+    @NonNull
+    public ImageSink createSink(@NonNull ObjectId postId) {
+        return createSink(postId, ImageVariant.ORIGINAL);
+    }
+
+    /**
+     * @return sink which caches variant of image of the post on disk once it is committed.
+     */
+    @NonNull
+    public ImageSink createSink(@NonNull ObjectId postId, @NonNull ImageVariant variant) {
+        return new DiskImageSink(getLinkName(postId, variant));
+    }
+
+    private class DiskImageSink implements ImageSink {
+
+        private final String linkName;
+
+        private Path tmpImage;
+        private FileChannel channel;
+        private long size = 0;
+        private boolean isDiscarded = false;
+
+        private DiskImageSink(@NonNull String linkName) {
+            this.linkName = linkName;
+        }
+
+        @Override
+        public void append(@NonNull ByteBuffer chunk) {
+
+            if (isDiscarded) {
+                return;
+            }
+            if (size + chunk.remaining() > maxSizeBytes) {
+                discard();
+                return;
+            }
+
+            try {
+                if (channel == null) {
+                    tmpImage = createTmpPath();
+                    channel = FileChannel.open(tmpImage, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                }
+                ByteBuffer view = chunk.duplicate();
+                while (view.hasRemaining()) {
+                    channel.write(view);
+                }
+                size += chunk.remaining();
+            } catch (IOException ex) {
+                discard();
+            }
+        }
+
+        @Override
+        public void commit(@NonNull String contentHash) {
+
+            if (isDiscarded || channel == null) {
+                return;
+            }
+
+            try {
+                channel.force(false);
+                channel.close();
+                store(linkName, contentHash, tmpImage, size);
+            } catch (IOException ex) {
+                discard();
+            }
+        }
+
+        @Override
+        public void discard() {
+
+            if (isDiscarded) {
+                return;
+            }
+            isDiscarded = true;
+
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    // file is deleted anyway
+                }
+            }
+            deleteQuietly(tmpImage);
+        }
+
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.msik404.karmaappgateway.post.cache;
+
+import java.nio.charset.StandardCharsets;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+/**
+ * Removes images of posts from disk caches of all gateway nodes. Node which changes visibility of the post removes the
+ * image from its own disk cache and publishes id of the post on redis channel, every node removes the image once it
+ * receives the message.
+ * <p>
+ * Pub/sub delivery is at most once, node which is disconnected from redis while message is published misses it. Such
+ * node stops serving the image once its link gets older than max link age of DiskImageCache.
+ */
+@Service
+@RequiredArgsConstructor
+public class DiskImageCacheInvalidator implements MessageListener {
+
+    public static final String CHANNEL = "image-invalidations";
+
+    private final DiskImageCache diskImageCache;
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * Removes image of the post and all of its variants from disk cache of this node and of other nodes.
+     */
+    public void invalidate(@NonNull ObjectId postId) {
+
+        diskImageCache.remove(postId);
+        try {
+            redisTemplate.convertAndSend(CHANNEL, postId.toHexString());
+        } catch (DataAccessException ex) {
+            // other nodes drop the image once its link expires
+        }
+    }
+
+    @Override
+    public void onMessage(@NonNull Message message, @Nullable byte[] pattern) {
+
+        String postIdHexString = new String(message.getBody(), StandardCharsets.US_ASCII);
+        if (ObjectId.isValid(postIdHexString)) {
+            diskImageCache.remove(new ObjectId(postIdHexString));
+        }
+    }
+
+}
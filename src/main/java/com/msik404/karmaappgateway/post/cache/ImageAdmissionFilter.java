@@ -0,0 +1,179 @@
+package com.msik404.karmaappgateway.post.cache;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+/**
+ * TinyLFU style admission filter of images cached in redis. Image requests are counted in count-min sketch, image is
+ * admitted only once it was requested at least minRequests times, so that images of old posts which are scrolled
+ * through once do not take redis memory.
+ * <p>
+ * Sketch has DEPTH rows of counters saturating at MAX_COUNT. After sampleSize requests all counters are halved, so
+ * that popularity of images from the past fades away. Sketch is kept per node, sharing it through redis would cost
+ * a round trip per image request.
+ */
+@Component
+public class ImageAdmissionFilter {
+
+    public static final String ADMISSIONS_METRIC = "karmaapp.images.cache.admissions";
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+
+    private final int minRequests;
+    private final int widthMask;
+    private final int sampleSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final byte[][] counters;
+    private int recordedRequests = 0;
+
+    private final Counter admittedCounter;
+    private final Counter rejectedCounter;
+
+    public ImageAdmissionFilter(
+            @Value("${KarmaAppGateway.images.admission.min-requests}") int minRequests,
+            @Value("${KarmaAppGateway.images.admission.sketch-width}") int sketchWidth,
+            @NonNull MeterRegistry meterRegistry) {
+
+        int width = Integer.highestOneBit(Math.max(sketchWidth - 1, 1)) << 1;
+
+        this.minRequests = Math.min(minRequests, MAX_COUNT);
+        this.widthMask = width - 1;
+        this.sampleSize = 10 * width;
+        this.counters = new byte[DEPTH][width];
+
+        this.admittedCounter = meterRegistry.counter(ADMISSIONS_METRIC, "result", "admitted");
+        this.rejectedCounter = meterRegistry.counter(ADMISSIONS_METRIC, "result", "rejected");
+    }
+
+    /**
+     * fmix64 of MurmurHash3.
+     */
+    private static long mix(long value) {
+
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static long hash(@NonNull ObjectId postId) {
+
+        ByteBuffer bytes = ByteBuffer.wrap(postId.toByteArray());
+        return mix(bytes.getLong() ^ mix(bytes.getInt()));
+    }
+
+    /**
+     * Must be called with lock held.
+     */
+    private void age() {
+
+        for (byte[] row : counters) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = (byte) (row[i] >>> 1);
+            }
+        }
+        recordedRequests /= 2;
+    }
+
+    private int[] indexes(@NonNull ObjectId postId) {
+
+        long hash = hash(postId);
+        int firstHash = (int) hash;
+        int secondHash = (int) (hash >>> 32);
+
+        // double hashing, each row gets its own counter
+        int[] indexes = new int[DEPTH];
+        for (int row = 0; row < DEPTH; row++) {
+            indexes[row] = (firstHash + row * secondHash) & widthMask;
+        }
+        return indexes;
+    }
+
+    /**
+     * Must be called with lock held.
+     */
+    private int estimate(@NonNull int[] indexes) {
+
+        int estimate = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, counters[row][indexes[row]]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Counts request of image of the post. Only the smallest counters are incremented, which makes estimates more
+     * accurate.
+     *
+     * @return true if this request made image admissible, that is estimated amount of its requests reached
+     * minRequests. It is true once, until counters are aged below minRequests again.
+     */
+    public boolean recordRequest(@NonNull ObjectId postId) {
+
+        int[] indexes = indexes(postId);
+
+        lock.lock();
+        try {
+            int estimate = estimate(indexes);
+            boolean isAdmissionReached = estimate < minRequests && estimate + 1 >= minRequests;
+            if (estimate < MAX_COUNT) {
+                for (int row = 0; row < DEPTH; row++) {
+                    if (counters[row][indexes[row]] == estimate) {
+                        counters[row][indexes[row]]++;
+                    }
+                }
+            }
+
+            recordedRequests++;
+            if (recordedRequests == sampleSize) {
+                age();
+            }
+
+            return isAdmissionReached;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return estimated amount of recent requests of image of the post.
+     */
+    public int estimateRequests(@NonNull ObjectId postId) {
+
+        int[] indexes = indexes(postId);
+
+        lock.lock();
+        try {
+            return estimate(indexes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if image of the post was requested often enough to be cached in redis.
+     */
+    public boolean admit(@NonNull ObjectId postId) {
+
+        boolean isAdmitted = estimateRequests(postId) >= minRequests;
+        if (isAdmitted) {
+            admittedCounter.increment();
+        } else {
+            rejectedCounter.increment();
+        }
+        return isAdmitted;
+    }
+
+}
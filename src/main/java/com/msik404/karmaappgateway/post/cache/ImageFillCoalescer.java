@@ -0,0 +1,165 @@
+package com.msik404.karmaappgateway.post.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.msik404.karmaappgateway.post.exception.ImageNotFoundException;
+import com.msik404.karmaappgateway.post.image.ImageStream;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Coalesces concurrent backend streams of the same image which is not cached yet. First request opens the stream,
+ * which fills the caches while it is being served. Requests which come meanwhile wait until that stream is closed,
+ * by then image is committed to the caches, and read it from there instead of opening their own streams.
+ * <p>
+ * Wait is bounded by maxWait, because the first stream is read no faster than its client receives it. Requests which
+ * time out, or still find nothing cached, open their own streams, which are not coalesced.
+ */
+@Component
+public class ImageFillCoalescer {
+
+    public static final String FILLS_METRIC = "karmaapp.images.fills";
+
+    @FunctionalInterface
+    public interface ImageOpener {
+
+        @NonNull
+        ImageStream open() throws ImageNotFoundException;
+
+    }
+
+    private final ConcurrentMap<ObjectId, CompletableFuture<Void>> fills = new ConcurrentHashMap<>();
+
+    private final Duration maxWait;
+    private final MeterRegistry meterRegistry;
+
+    public ImageFillCoalescer(
+            @Value("${KarmaAppGateway.images.fill-max-wait-ms}") long maxWaitMillis,
+            @NonNull MeterRegistry meterRegistry) {
+
+        this.maxWait = Duration.ofMillis(maxWaitMillis);
+        this.meterRegistry = meterRegistry;
+    }
+
+    private void count(@NonNull String result) {
+        meterRegistry.counter(FILLS_METRIC, "result", result).increment();
+    }
+
+    /**
+     * Blocks until fill of the image which is in progress finishes, at most for maxWait.
+     *
+     * @return true if there was fill in progress, so caches should be checked again.
+     */
+    public boolean awaitFill(@NonNull ObjectId postId) {
+
+        CompletableFuture<Void> fill = fills.get(postId);
+        if (fill == null) {
+            return false;
+        }
+
+        try {
+            fill.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+            count("awaited");
+        } catch (TimeoutException ex) {
+            count("timeout");
+        } catch (ExecutionException ex) {
+            // fill is never completed exceptionally
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
+    /**
+     * Opens stream which fills the caches. Requests waiting in awaitFill are released once returned stream is closed,
+     * or right away if it could not be opened.
+     *
+     * @param opener opens stream of the image from backend, which fills the caches while it is being read.
+     * @return image stream, it must be closed.
+     * @throws ImageNotFoundException thrown by opener.
+     */
+    @NonNull
+    public ImageStream fill(@NonNull ObjectId postId, @NonNull ImageOpener opener) throws ImageNotFoundException {
+
+        var fill = new CompletableFuture<Void>();
+        if (fills.putIfAbsent(postId, fill) != null) {
+            // request which timed out waiting for other fill
+            count("uncoalesced");
+            return opener.open();
+        }
+        count("sent");
+
+        Runnable finish = () -> {
+            fills.remove(postId, fill);
+            fill.complete(null);
+        };
+
+        try {
+            return new FillingImageStream(opener.open(), finish);
+        } catch (RuntimeException ex) {
+            finish.run();
+            throw ex;
+        }
+    }
+
+    /**
+     * Finishes the fill once it is closed.
+     */
+    private static class FillingImageStream implements ImageStream {
+
+        private final ImageStream source;
+        private final Runnable finish;
+
+        private final AtomicBoolean isClosed = new AtomicBoolean(false);
+
+        private FillingImageStream(@NonNull ImageStream source, @NonNull Runnable finish) {
+
+            this.source = source;
+            this.finish = finish;
+        }
+
+        @Override
+        public long contentLength() {
+            return source.contentLength();
+        }
+
+        @Nullable
+        @Override
+        public String contentHash() {
+            return source.contentHash();
+        }
+
+        @Nullable
+        @Override
+        public ByteBuffer nextChunk() throws IOException {
+            return source.nextChunk();
+        }
+
+        @Override
+        public void close() {
+
+            if (!isClosed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                source.close();
+            } finally {
+                finish.run();
+            }
+        }
+    }
+
+}
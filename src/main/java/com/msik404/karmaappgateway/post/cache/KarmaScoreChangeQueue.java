@@ -0,0 +1,129 @@
+package com.msik404.karmaappgateway.post.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.types.ObjectId;
+import org.springframework.lang.NonNull;
+
+/**
+ * Bounded queue of karma score changes waiting to be applied to the cache. Changes are deduplicated per post: change
+ * of post which is already queued is added to the queued one, so that post voted on many times meanwhile is updated
+ * once. Queued change keeps its place and enqueue time. Once queue is full the oldest change is dropped to make room.
+ */
+public class KarmaScoreChangeQueue {
+
+    public static final String QUEUE_SIZE_METRIC = "karmaapp.posts.cache.maintenance.queue.size";
+    public static final String CHANGES_METRIC = "karmaapp.posts.cache.maintenance.changes";
+
+    /**
+     * @param enqueuedAtNanos System.nanoTime() of the first change of this post since it was last taken.
+     */
+    public record KarmaScoreChange(@NonNull ObjectId postId, double delta, long enqueuedAtNanos) {
+    }
+
+    private static final class PendingChange {
+
+        private double delta;
+        private final long enqueuedAtNanos;
+
+        private PendingChange(double delta, long enqueuedAtNanos) {
+
+            this.delta = delta;
+            this.enqueuedAtNanos = enqueuedAtNanos;
+        }
+    }
+
+    private final int capacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    // insertion ordered, so that the first entry is the oldest one
+    private final LinkedHashMap<ObjectId, PendingChange> pendingChanges = new LinkedHashMap<>();
+
+    private final Counter queuedCounter;
+    private final Counter coalescedCounter;
+    private final Counter droppedCounter;
+
+    public KarmaScoreChangeQueue(int capacity, @NonNull MeterRegistry meterRegistry) {
+
+        this.capacity = capacity;
+
+        Gauge.builder(QUEUE_SIZE_METRIC, this, KarmaScoreChangeQueue::size)
+                .description("Number of posts whose karma score change waits to be applied to the cache")
+                .register(meterRegistry);
+
+        this.queuedCounter = meterRegistry.counter(CHANGES_METRIC, "result", "queued");
+        this.coalescedCounter = meterRegistry.counter(CHANGES_METRIC, "result", "coalesced");
+        this.droppedCounter = meterRegistry.counter(CHANGES_METRIC, "result", "dropped");
+    }
+
+    public void offer(@NonNull ObjectId postId, double delta) {
+
+        lock.lock();
+        try {
+            PendingChange pendingChange = pendingChanges.get(postId);
+            if (pendingChange != null) {
+                pendingChange.delta += delta;
+                coalescedCounter.increment();
+                return;
+            }
+
+            if (pendingChanges.size() >= capacity) {
+                Iterator<ObjectId> oldest = pendingChanges.keySet().iterator();
+                oldest.next();
+                oldest.remove();
+                droppedCounter.increment();
+            }
+
+            pendingChanges.put(postId, new PendingChange(delta, System.nanoTime()));
+            queuedCounter.increment();
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until some change is queued.
+     *
+     * @return the oldest queued change, it is removed from the queue.
+     */
+    @NonNull
+    public KarmaScoreChange take() throws InterruptedException {
+
+        lock.lock();
+        try {
+            while (pendingChanges.isEmpty()) {
+                notEmpty.await();
+            }
+
+            Iterator<Map.Entry<ObjectId, PendingChange>> oldest = pendingChanges.entrySet().iterator();
+            Map.Entry<ObjectId, PendingChange> entry = oldest.next();
+            oldest.remove();
+
+            PendingChange pendingChange = entry.getValue();
+            return new KarmaScoreChange(entry.getKey(), pendingChange.delta, pendingChange.enqueuedAtNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+
+        lock.lock();
+        try {
+            return pendingChanges.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -1,14 +1,35 @@
 package com.msik404.karmaappgateway.post.cache;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.util.*;
+import java.util.zip.DataFormatException;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.msik404.karmaappgateway.post.dto.ImageEncoding;
+import com.msik404.karmaappgateway.post.dto.ImageMetadataDto;
+import com.msik404.karmaappgateway.post.dto.ImageVariant;
 import com.msik404.karmaappgateway.post.dto.PostDto;
+import com.msik404.karmaappgateway.post.dto.PostView;
 import com.msik404.karmaappgateway.post.dto.ScrollPosition;
+import com.msik404.karmaappgateway.post.image.ImageCompression;
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.async.BaseRedisAsyncCommands;
+import io.lettuce.core.output.BooleanOutput;
+import io.lettuce.core.output.IntegerOutput;
+import io.lettuce.core.protocol.CommandArgs;
+import io.lettuce.core.protocol.CommandType;
 import lombok.RequiredArgsConstructor;
 import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.RedisSystemException;
 import org.springframework.data.redis.connection.DefaultStringTuple;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisStringCommands;
 import org.springframework.data.redis.connection.RedisZSetCommands;
 import org.springframework.data.redis.connection.StringRedisConnection;
@@ -27,10 +48,21 @@ public class PostRedisCache {
 
     private static final String KARMA_SCORE_ZSET_KEY = "karma-score-zset";
     private static final String POST_HASH_KEY = "posts-hash";
+    private static final String FRESH_MARKER_KEY = "posts-fresh";
+    // Incremented by every change of cached posts, used as validator of feed pages served from cache.
+    private static final String FEED_VERSION_KEY = "posts-version";
     private static final String POST_PREFIX = "post";
+    private static final String IMAGE_PREFIX = "image";
 
     private static final Duration TIMEOUT = Duration.ofSeconds(3600);
 
+    // Cached posts are considered fresh for TIMEOUT, but are kept for longer so that they can be served as stale
+    // fallback when backend is unavailable.
+    private static final Duration STALE_TIMEOUT = Duration.ofHours(24);
+
+    // Negative entries are short-lived, so that backend is asked again soon if they get out of date.
+    private static final Duration NEGATIVE_TIMEOUT = Duration.ofSeconds(60);
+
     // Maximum amount of initial posts that can have same karmaScore.
     private static final int MAX_INITIAL_SCORE_DUPLICATES = 100;
 
@@ -40,9 +72,14 @@ public class PostRedisCache {
         return MAX_CACHED_POSTS;
     }
 
+    @NonNull
+    private static String getPostKey(@NonNull String postIdHexString) {
+        return String.format("%s:%s", POST_PREFIX, postIdHexString);
+    }
+
     @NonNull
     private static String getPostKey(@NonNull ObjectId postId) {
-        return String.format("%s:%s", POST_PREFIX, postId.toHexString());
+        return getPostKey(postId.toHexString());
     }
 
     @NonNull
@@ -50,10 +87,115 @@ public class PostRedisCache {
         return getPostKey(postId) + ":image";
     }
 
+    @NonNull
+    private static String getPostImageKey(@NonNull ObjectId postId, @NonNull ImageVariant variant) {
+
+        if (variant == ImageVariant.ORIGINAL) {
+            return getPostImageKey(postId);
+        }
+        return getPostImageKey(postId) + ":" + variant.name().toLowerCase();
+    }
+
+    /**
+     * Images are stored once under their content hash, posts point to them with post_image_key.
+     */
+    @NonNull
+    private static String getImageKey(@NonNull String contentHash, @NonNull ImageEncoding encoding) {
+
+        String imageKey = String.format("%s:%s", IMAGE_PREFIX, contentHash);
+        return encoding == ImageEncoding.IDENTITY ? imageKey : imageKey + ":" + encoding.name().toLowerCase();
+    }
+
+    @NonNull
+    private static String getImageKey(@NonNull ImageMetadataDto metadata) {
+        return getImageKey(metadata.contentHash(), metadata.encoding());
+    }
+
+    /**
+     * Pointer from post to its image has format: contentHash:encoding:size.
+     */
+    @NonNull
+    private static String formatImagePointer(
+            @NonNull String contentHash,
+            @NonNull ImageEncoding encoding,
+            long size) {
+
+        return String.format("%s:%s:%d", contentHash, encoding.name(), size);
+    }
+
+    /**
+     * @return Optional of metadata of image without stored size, Optional empty if pointer is missing or malformed.
+     */
+    @NonNull
+    private static Optional<ImageMetadataDto> parseImagePointer(@Nullable String pointer) {
+
+        if (pointer == null) {
+            return Optional.empty();
+        }
+
+        String[] parts = pointer.split(":");
+        if (parts.length != 3) {
+            return Optional.empty();
+        }
+        try {
+            long size = Long.parseLong(parts[2]);
+            return Optional.of(new ImageMetadataDto(size, parts[0], ImageEncoding.valueOf(parts[1]), size));
+        } catch (IllegalArgumentException ex) {
+            return Optional.empty();
+        }
+    }
+
+    @NonNull
+    private static String getPostMissingKey(@NonNull ObjectId postId) {
+        return getPostKey(postId) + ":missing";
+    }
+
+    @NonNull
+    private static String getPostImageMissingKey(@NonNull ObjectId postId) {
+        return getPostImageKey(postId) + ":missing";
+    }
+
+    /**
+     * Each stream gets its own partial image key, so that concurrent streams of the same image do not interleave.
+     */
+    @NonNull
+    public static String createPartialImageKey(@NonNull ObjectId postId) {
+        return String.format("%s:partial:%s", getPostImageKey(postId), UUID.randomUUID());
+    }
+
+    /**
+     * @param data Binary data whose hash is computed.
+     * @return hex encoded SHA-256 of data.
+     */
+    @NonNull
+    public static String computeContentHash(@NonNull byte[] data) {
+
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException ex) {
+            // every java platform is required to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
     private final ObjectMapper objectMapper;
 
     private final StringRedisTemplate redisTemplate;
 
+    @Value("${KarmaAppGateway.images.compression.enabled}")
+    private boolean isCompressionEnabled;
+
+    @Value("${spring.data.redis.timeout:60s}")
+    private Duration commandTimeout;
+
+    /**
+     * @param head first bytes of the image, its position is not modified.
+     * @return true if image should be stored compressed with deflate.
+     */
+    public boolean shouldCompress(@NonNull ByteBuffer head) {
+        return isCompressionEnabled && ImageCompression.isCompressible(head);
+    }
+
     /**
      * Method caches posts in redis. It uses ZSet with key: KARMA_SCORE_ZSET_KEY for keeping the order of post
      * for data retrieval. Posts as stored in Hash with key: POST_HASH_KEY in a form of string key, value pairs,
@@ -62,19 +204,19 @@ public class PostRedisCache {
      *
      * @param posts Collection of posts which should be placed in a cache.
      */
-    public void reinitializeCache(@NonNull Collection<PostDto> posts) {
+    public void reinitializeCache(@NonNull Collection<? extends PostView> posts) {
 
         assert !posts.isEmpty();
 
         Set<StringRedisConnection.StringTuple> tuplesToAdd = new HashSet<>(posts.size());
-        for (PostDto post : posts) {
-            var tuple = new DefaultStringTuple(getPostKey(post.getId()), (double) post.getKarmaScore());
+        for (PostView post : posts) {
+            var tuple = new DefaultStringTuple(getPostKey(post.idHexString()), (double) post.karmaScore());
             tuplesToAdd.add(tuple);
         }
 
         Map<String, String> valuesMap = new HashMap<>(posts.size());
-        for (PostDto post : posts) {
-            valuesMap.put(getPostKey(post.getId()), serialize(post));
+        for (PostView post : posts) {
+            valuesMap.put(getPostKey(post.idHexString()), serialize(PostDto.of(post)));
         }
 
         redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
@@ -85,10 +227,13 @@ public class PostRedisCache {
             stringRedisConn.del(POST_HASH_KEY);
 
             stringRedisConn.zAdd(KARMA_SCORE_ZSET_KEY, tuplesToAdd);
-            stringRedisConn.expire(KARMA_SCORE_ZSET_KEY, TIMEOUT.getSeconds());
+            stringRedisConn.expire(KARMA_SCORE_ZSET_KEY, STALE_TIMEOUT.getSeconds());
 
             stringRedisConn.hMSet(POST_HASH_KEY, valuesMap);
-            stringRedisConn.expire(POST_HASH_KEY, TIMEOUT.getSeconds());
+            stringRedisConn.expire(POST_HASH_KEY, STALE_TIMEOUT.getSeconds());
+
+            stringRedisConn.setEx(FRESH_MARKER_KEY, TIMEOUT.getSeconds(), "");
+            stringRedisConn.incr(FEED_VERSION_KEY);
 
             return null;
         });
@@ -111,17 +256,110 @@ public class PostRedisCache {
         return results.size() == 2 && !(Boolean) results.get(0) && !(Boolean) results.get(1);
     }
 
-    public boolean cacheImage(@NonNull ObjectId postId, @NonNull byte[] imageData) {
+    /**
+     * @return true if cache was reinitialized within TIMEOUT, false if it should be reinitialized.
+     */
+    public boolean isFresh() {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(FRESH_MARKER_KEY));
+    }
 
-        Object results = redisTemplate.execute((RedisCallback<Object>) connection ->
-                connection.stringCommands().set(
-                        getPostImageKey(postId).getBytes(),
-                        imageData,
-                        Expiration.from(TIMEOUT),
-                        RedisStringCommands.SetOption.ifAbsent())
+    /**
+     * Records for NEGATIVE_TIMEOUT that post was not found by backend, so that it is not asked again meanwhile.
+     */
+    public void markPostMissing(@NonNull ObjectId postId) {
+        redisTemplate.opsForValue().set(getPostMissingKey(postId), "", NEGATIVE_TIMEOUT);
+    }
+
+    public boolean isPostMarkedMissing(@NonNull ObjectId postId) {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(getPostMissingKey(postId)));
+    }
+
+    /**
+     * Records for NEGATIVE_TIMEOUT that post has no image, so that backend is not asked again meanwhile.
+     */
+    public void markImageMissing(@NonNull ObjectId postId) {
+        redisTemplate.opsForValue().set(getPostImageMissingKey(postId), "", NEGATIVE_TIMEOUT);
+    }
+
+    public boolean isImageMarkedMissing(@NonNull ObjectId postId) {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(getPostImageMissingKey(postId)));
+    }
+
+    /**
+     * Removes negative entries of the post, used when post state changes.
+     */
+    public void clearMissingMarks(@NonNull ObjectId postId) {
+        redisTemplate.delete(List.of(getPostMissingKey(postId), getPostImageMissingKey(postId)));
+    }
+
+    private record StoredImage(@NonNull byte[] data, @NonNull String pointer, @NonNull String imageKey) {
+    }
+
+    /**
+     * Image is stored under its content hash only if it is not stored yet, its expiration is refreshed either way.
+     * Pointer of the post is set only if it is absent.
+     */
+    private static void setImage(
+            @NonNull RedisConnection connection,
+            @NonNull String pointerKey,
+            @NonNull StoredImage storedImage) {
+
+        connection.stringCommands().set(
+                storedImage.imageKey().getBytes(),
+                storedImage.data(),
+                Expiration.from(TIMEOUT),
+                RedisStringCommands.SetOption.ifAbsent()
         );
+        connection.keyCommands().expire(storedImage.imageKey().getBytes(), TIMEOUT.getSeconds());
 
-        return Boolean.TRUE.equals(results);
+        connection.stringCommands().set(
+                pointerKey.getBytes(),
+                storedImage.pointer().getBytes(StandardCharsets.UTF_8),
+                Expiration.from(TIMEOUT),
+                RedisStringCommands.SetOption.ifAbsent()
+        );
+    }
+
+    @NonNull
+    private StoredImage toStoredImage(@NonNull byte[] imageData) {
+
+        String contentHash = computeContentHash(imageData);
+
+        if (shouldCompress(ByteBuffer.wrap(imageData))) {
+            return new StoredImage(
+                    ImageCompression.deflate(imageData),
+                    formatImagePointer(contentHash, ImageEncoding.DEFLATE, imageData.length),
+                    getImageKey(contentHash, ImageEncoding.DEFLATE)
+            );
+        }
+
+        return new StoredImage(
+                imageData,
+                formatImagePointer(contentHash, ImageEncoding.IDENTITY, imageData.length),
+                getImageKey(contentHash, ImageEncoding.IDENTITY)
+        );
+    }
+
+    /**
+     * @return true if image was cached, false if it was already present.
+     */
+    public boolean cacheImage(@NonNull ObjectId postId, @NonNull byte[] imageData) {
+        return cacheImage(postId, ImageVariant.ORIGINAL, imageData);
+    }
+
+    /**
+     * @return true if variant of image was cached, false if it was already present.
+     */
+    public boolean cacheImage(@NonNull ObjectId postId, @NonNull ImageVariant variant, @NonNull byte[] imageData) {
+
+        StoredImage storedImage = toStoredImage(imageData);
+
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            setImage(connection, getPostImageKey(postId, variant), storedImage);
+            return null;
+        });
+
+        return results.size() == 3 && Boolean.TRUE.equals(results.get(2));
     }
 
     /**
@@ -131,13 +369,229 @@ public class PostRedisCache {
     @NonNull
     public Optional<byte[]> getCachedImage(@NonNull ObjectId postId) {
 
-        Object results = redisTemplate.execute((RedisCallback<Object>) connection ->
-                connection.stringCommands().getEx(
-                        getPostImageKey(postId).getBytes(),
-                        Expiration.from(TIMEOUT))
+        Optional<ImageMetadataDto> optionalMetadata = parseImagePointer(
+                redisTemplate.opsForValue().getAndExpire(getPostImageKey(postId), TIMEOUT));
+        if (optionalMetadata.isEmpty()) {
+            return Optional.empty();
+        }
+        ImageMetadataDto metadata = optionalMetadata.get();
+
+        byte[] storedImageData = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().getEx(getImageKey(metadata).getBytes(), Expiration.from(TIMEOUT))
         );
+        if (storedImageData == null) {
+            return Optional.empty();
+        }
+        if (metadata.encoding() == ImageEncoding.IDENTITY) {
+            return Optional.of(storedImageData);
+        }
+
+        try {
+            return Optional.of(ImageCompression.inflate(storedImageData, (int) metadata.size()));
+        } catch (DataFormatException ex) {
+            return Optional.empty();
+        }
+    }
 
-        return Optional.ofNullable((byte[]) results);
+    /**
+     * @param postId Id of post whose image hash is requested.
+     * @return Optional of hex encoded SHA-256 of cached image, Optional empty if it is not cached.
+     */
+    @NonNull
+    public Optional<String> getCachedImageHash(@NonNull ObjectId postId) {
+        return getCachedImageHash(postId, ImageVariant.ORIGINAL);
+    }
+
+    @NonNull
+    public Optional<String> getCachedImageHash(@NonNull ObjectId postId, @NonNull ImageVariant variant) {
+
+        return parseImagePointer(redisTemplate.opsForValue().get(getPostImageKey(postId, variant)))
+                .map(ImageMetadataDto::contentHash);
+    }
+
+    /**
+     * Pointer is read first, then image it points to. Expiration of both is refreshed, so that image does not expire
+     * while it is being read, and images shared by many posts stay cached as long as any of them is requested.
+     *
+     * @param postId Id of post whose image is requested.
+     * @return Optional of metadata of cached image, Optional empty if image is not cached.
+     */
+    @NonNull
+    public Optional<ImageMetadataDto> getCachedImageMetadata(@NonNull ObjectId postId) {
+        return getCachedImageMetadata(postId, ImageVariant.ORIGINAL);
+    }
+
+    @NonNull
+    public Optional<ImageMetadataDto> getCachedImageMetadata(
+            @NonNull ObjectId postId,
+            @NonNull ImageVariant variant) {
+
+        Optional<ImageMetadataDto> optionalMetadata = parseImagePointer(
+                redisTemplate.opsForValue().getAndExpire(getPostImageKey(postId, variant), TIMEOUT));
+        if (optionalMetadata.isEmpty()) {
+            return Optional.empty();
+        }
+        ImageMetadataDto metadata = optionalMetadata.get();
+
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringRedisConn = (StringRedisConnection) connection;
+
+            stringRedisConn.strLen(getImageKey(metadata));
+            stringRedisConn.expire(getImageKey(metadata), TIMEOUT.getSeconds());
+
+            return null;
+        });
+
+        // STRLEN of missing key is zero, image might have been evicted while its pointer was not
+        long storedSize = (Long) results.get(0);
+        if (storedSize == 0) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new ImageMetadataDto(
+                metadata.size(),
+                metadata.contentHash(),
+                metadata.encoding(),
+                storedSize
+        ));
+    }
+
+    /**
+     * @param metadata metadata of image which is being read.
+     * @param start    index of the first byte of stored image, inclusive.
+     * @param end      index of the last byte of stored image, inclusive.
+     * @return requested range of stored image, it is empty if image is not cached.
+     */
+    @NonNull
+    public byte[] getCachedImageRange(@NonNull ImageMetadataDto metadata, long start, long end) {
+
+        byte[] results = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().getRange(getImageKey(metadata).getBytes(), start, end)
+        );
+
+        return results == null ? new byte[0] : results;
+    }
+
+    /**
+     * Partial image expires after TIMEOUT, in case it is neither committed nor discarded.
+     * <p>
+     * Commands are dispatched on native lettuce connection with ByteBufferValueCodec, because RedisConnection accepts
+     * only byte arrays and every chunk would have to be copied into one.
+     *
+     * @param chunk appended chunk, its position is not modified.
+     */
+    public void appendToPartialImage(@NonNull String partialImageKey, @NonNull ByteBuffer chunk) {
+
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+
+            @SuppressWarnings("unchecked")
+            var commands = (BaseRedisAsyncCommands<byte[], ByteBuffer>) connection.getNativeConnection();
+            var codec = ByteBufferValueCodec.INSTANCE;
+            byte[] partialImageKeyBytes = partialImageKey.getBytes();
+
+            RedisFuture<Long> appended = commands.dispatch(
+                    CommandType.APPEND,
+                    new IntegerOutput<>(codec),
+                    new CommandArgs<>(codec).addKey(partialImageKeyBytes).addValue(chunk)
+            );
+            RedisFuture<Boolean> expired = commands.dispatch(
+                    CommandType.EXPIRE,
+                    new BooleanOutput<>(codec),
+                    new CommandArgs<>(codec).addKey(partialImageKeyBytes).add(TIMEOUT.getSeconds())
+            );
+
+            try {
+                LettuceFutures.awaitAll(commandTimeout, appended, expired);
+            } catch (RedisException ex) {
+                throw new RedisSystemException("Chunk could not be appended to partial image", ex);
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Stores partial image under its content hash and points the post to it. If image with the same hash is already
+     * stored, it has the same data, so partial image is dropped and stored image is kept.
+     *
+     * @param contentHash hash of the whole image computed with the same algorithm as computeContentHash.
+     * @param encoding    encoding in which partial image was written.
+     * @param size        size of the image before encoding.
+     */
+    public void commitPartialImage(
+            @NonNull ObjectId postId,
+            @NonNull String partialImageKey,
+            @NonNull String contentHash,
+            @NonNull ImageEncoding encoding,
+            long size) {
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+
+            byte[] imageKeyBytes = getImageKey(contentHash, encoding).getBytes();
+
+            connection.keyCommands().renameNX(partialImageKey.getBytes(), imageKeyBytes);
+            connection.keyCommands().del(partialImageKey.getBytes());
+            connection.keyCommands().expire(imageKeyBytes, TIMEOUT.getSeconds());
+
+            connection.stringCommands().set(
+                    getPostImageKey(postId).getBytes(),
+                    formatImagePointer(contentHash, encoding, size).getBytes(StandardCharsets.UTF_8),
+                    Expiration.from(TIMEOUT),
+                    RedisStringCommands.SetOption.upsert()
+            );
+
+            return null;
+        });
+    }
+
+    public void discardPartialImage(@NonNull String partialImageKey) {
+        redisTemplate.delete(partialImageKey);
+    }
+
+    /**
+     * Version is read together with cache bounds, so that page which would not be served entirely from cache does not
+     * get validator.
+     *
+     * @param size     Requested amount of posts.
+     * @param position ScrollPosition of lastly returned post, null if top posts are requested.
+     * @return OptionalLong of version of cached posts, empty if cache is not fresh or requested page is not entirely
+     * cached.
+     */
+    @NonNull
+    public OptionalLong findFeedVersion(int size, @Nullable ScrollPosition position) {
+
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringRedisConn = (StringRedisConnection) connection;
+
+            stringRedisConn.exists(FRESH_MARKER_KEY);
+            stringRedisConn.get(FEED_VERSION_KEY);
+            stringRedisConn.zCard(KARMA_SCORE_ZSET_KEY);
+            if (position != null) {
+                stringRedisConn.zRevRank(KARMA_SCORE_ZSET_KEY, getPostKey(position.postId()));
+            }
+
+            return null;
+        });
+
+        if (!Boolean.TRUE.equals(results.get(0)) || results.get(1) == null) {
+            return OptionalLong.empty();
+        }
+
+        long pageEnd = size;
+        if (position != null) {
+            Long positionRank = (Long) results.get(3);
+            if (positionRank == null) {
+                return OptionalLong.empty();
+            }
+            pageEnd += positionRank + 1;
+        }
+
+        long cachedPostsAmount = (Long) results.get(2);
+        if (pageEnd > cachedPostsAmount) {
+            return OptionalLong.empty();
+        }
+
+        return OptionalLong.of(Long.parseLong((String) results.get(1)));
     }
 
     @NonNull
@@ -252,6 +706,60 @@ public class PostRedisCache {
         return Optional.of(findCachedByZSet(results));
     }
 
+    /**
+     * Used in degraded mode when backend is unavailable, cached posts might be expired.
+     *
+     * @param size Requested amount of posts.
+     * @return List of at most size top cached posts, it can be shorter or empty if not enough posts are cached.
+     */
+    @NonNull
+    public List<PostDto> findTopNStale(int size) {
+
+        Set<ZSetOperations.TypedTuple<String>> postIdKeySetWithScores = redisTemplate.opsForZSet()
+                .reverseRangeWithScores(KARMA_SCORE_ZSET_KEY, 0, size - 1);
+
+        return findCachedByZSet(postIdKeySetWithScores);
+    }
+
+    /**
+     * Used in degraded mode when backend is unavailable, cached posts might be expired. If post at position is no
+     * longer cached, posts with the same karmaScore are skipped, because their order relative to it is unknown.
+     *
+     * @param size     Requested amount of posts.
+     * @param position ScrollPosition of lastly returned post.
+     * @return List of at most size cached posts after position, it can be shorter or empty if not enough posts are
+     * cached.
+     */
+    @NonNull
+    public List<PostDto> findNextNStale(int size, @NonNull ScrollPosition position) {
+
+        Set<ZSetOperations.TypedTuple<String>> postIdKeySetWithScores = redisTemplate.opsForZSet()
+                .reverseRangeByScoreWithScores(
+                        KARMA_SCORE_ZSET_KEY,
+                        Double.NEGATIVE_INFINITY,
+                        position.karmaScore(),
+                        0,
+                        size + MAX_INITIAL_SCORE_DUPLICATES
+                );
+
+        List<ZSetOperations.TypedTuple<String>> results = new ArrayList<>(size);
+        String targetKey = getPostKey(position.postId());
+        boolean found = false;
+
+        for (ZSetOperations.TypedTuple<String> tuple : postIdKeySetWithScores) {
+            if (results.size() == size) {
+                break;
+            }
+            if (found || tuple.getScore() < position.karmaScore()) {
+                results.add(tuple);
+            } else if (tuple.getValue().equals(targetKey)) {
+                found = true;
+            }
+        }
+
+        return findCachedByZSet(results);
+    }
+
     /**
      * @param postId Id of post whose score is being updated.
      * @param delta  score delta to be added to cached value.
@@ -270,6 +778,8 @@ public class PostRedisCache {
 
         // opsForZset().incrementScore() cannot be null because it only can if used in transaction|pipeline.
         Double newScore = zSetOps.incrementScore(KARMA_SCORE_ZSET_KEY, postIdKey, delta);
+        redisTemplate.opsForValue().increment(FEED_VERSION_KEY);
+
         return OptionalDouble.of(newScore);
     }
 
@@ -286,12 +796,16 @@ public class PostRedisCache {
 
             stringRedisConn.zRem(KARMA_SCORE_ZSET_KEY, postIdKey);
             stringRedisConn.hDel(POST_HASH_KEY, postIdKey);
-            stringRedisConn.del(getPostImageKey(postId));
+            // image itself may be shared with other posts, it expires once none of them is requested
+            stringRedisConn.del(Arrays.stream(ImageVariant.values())
+                    .map(variant -> getPostImageKey(postId, variant))
+                    .toArray(String[]::new));
+            stringRedisConn.incr(FEED_VERSION_KEY);
 
             return null;
         });
 
-        return results.size() == 3 && (Long) results.get(0) == 1 && (Long) results.get(1) == 1;
+        return results.size() == 4 && (Long) results.get(0) == 1 && (Long) results.get(1) == 1;
     }
 
     /**
@@ -332,6 +846,7 @@ public class PostRedisCache {
     public boolean insertPost(@NonNull PostDto post, @Nullable byte[] imageData) {
 
         String serializedPost = serialize(post);
+        StoredImage storedImage = imageData == null ? null : toStoredImage(imageData);
 
         List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
 
@@ -350,22 +865,19 @@ public class PostRedisCache {
                     serializedPost.getBytes()
             );
 
-            if (imageData != null) {
-                connection.stringCommands().set(
-                        getPostImageKey(post.getId()).getBytes(),
-                        imageData,
-                        Expiration.from(TIMEOUT),
-                        RedisStringCommands.SetOption.ifAbsent()
-                );
+            if (storedImage != null) {
+                setImage(connection, getPostImageKey(post.getId()), storedImage);
             }
 
+            connection.stringCommands().incr(FEED_VERSION_KEY.getBytes());
+
             return null;
         });
 
-        if (imageData == null) {
-            return results.size() == 2 && (Boolean) results.get(0) && (Boolean) results.get(1);
+        if (storedImage == null) {
+            return results.size() == 3 && (Boolean) results.get(0) && (Boolean) results.get(1);
         }
-        return results.size() == 3 && (Boolean) results.get(0) && (Boolean) results.get(1) && (Boolean) results.get(2);
+        return results.size() == 6 && (Boolean) results.get(0) && (Boolean) results.get(1) && (Boolean) results.get(4);
     }
 
     @NonNull
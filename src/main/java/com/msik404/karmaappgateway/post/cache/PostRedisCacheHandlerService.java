@@ -1,12 +1,24 @@
 package com.msik404.karmaappgateway.post.cache;
 
+import java.util.AbstractList;
 import java.util.Collections;
 import java.util.List;
-
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.msik404.karmaappgateway.grpc.client.GrpcFutures;
 import com.msik404.karmaappgateway.grpc.client.GrpcService;
+import com.msik404.karmaappgateway.grpc.client.exception.BackendFailureException;
 import com.msik404.karmaappgateway.post.comparator.BasicComparablePost;
+import com.msik404.karmaappgateway.post.comparator.ComparablePost;
 import com.msik404.karmaappgateway.post.comparator.PostComparator;
-import com.msik404.karmaappgateway.post.dto.PostDto;
+import com.msik404.karmaappgateway.post.dto.PostView;
 import com.msik404.karmaappgateway.post.dto.PostWithImageDataDto;
 import com.msik404.karmaappgateway.post.dto.ScrollPosition;
 import com.msik404.karmaappgateway.post.dto.Visibility;
@@ -14,6 +26,7 @@ import com.msik404.karmaappgateway.post.exception.PostNotFoundException;
 import com.msik404.karmaappgateway.user.exception.UserNotFoundException;
 import lombok.RequiredArgsConstructor;
 import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Service;
 
@@ -25,52 +38,167 @@ public class PostRedisCacheHandlerService {
 
     private final GrpcService grpcService;
 
+    private static final int STALE_READ_THREADS = 4;
+    private static final int STALE_READ_QUEUE_CAPACITY = 1024;
+
+    private final ExecutorService cacheWriteExecutor = createCacheWriteExecutor();
+
+    private final ExecutorService staleReadExecutor = createStaleReadExecutor();
+
+    @Value("${KarmaAppGateway.images.redis-max-size-bytes}")
+    private long redisMaxImageSize;
+
+    /**
+     * Cache is reinitialized on single thread, so that blocking redis writes do not run on grpc callback threads.
+     * Only the latest reinitialization waits in the queue, older one would be overwritten by it anyway.
+     */
+    @NonNull
+    private static ExecutorService createCacheWriteExecutor() {
+
+        return new ThreadPoolExecutor(
+                1,
+                1,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1),
+                runnable -> {
+                    var thread = new Thread(runnable, "post-cache-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.DiscardOldestPolicy()
+        );
+    }
+
+    /**
+     * Stale posts are read from the cache on separate threads, so that blocking redis reads do not run on grpc
+     * callback threads. Reads which do not fit in the queue are rejected, the request fails with the backend error.
+     */
+    @NonNull
+    private static ExecutorService createStaleReadExecutor() {
+
+        var threadCounter = new AtomicInteger();
+        return new ThreadPoolExecutor(
+                STALE_READ_THREADS,
+                STALE_READ_THREADS,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(STALE_READ_QUEUE_CAPACITY),
+                runnable -> {
+                    var thread = new Thread(runnable, "post-cache-stale-reader-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
     private static boolean isOnlyActive(@NonNull List<Visibility> visibilities) {
         return visibilities.size() == 1 && visibilities.contains(Visibility.ACTIVE);
     }
 
     @NonNull
-    public List<PostDto> updateCache() {
+    private static List<PostView> asViews(@NonNull List<? extends PostView> posts) {
+        return Collections.unmodifiableList(posts);
+    }
 
-        List<PostDto> newValuesForCache = grpcService.findTopNPosts(
-                PostRedisCache.getMaxCachedPosts(),
-                List.of(Visibility.ACTIVE)
-        );
+    /**
+     * If backend fails to serve the posts, falls back to whatever is in the cache, even if it is expired or shorter
+     * than requested. Exception is propagated only if there is nothing cached.
+     */
+    @NonNull
+    private CompletableFuture<List<PostView>> withStaleFallback(
+            @NonNull CompletableFuture<List<PostView>> postsFuture,
+            @NonNull Supplier<List<PostView>> staleSupplier) {
+
+        return postsFuture.exceptionallyCompose(ex -> {
+            Throwable cause = GrpcFutures.unwrap(ex);
+            if (!(cause instanceof BackendFailureException)) {
+                return CompletableFuture.failedFuture(cause);
+            }
 
-        if (!newValuesForCache.isEmpty()) {
-            cache.reinitializeCache(newValuesForCache);
-        }
+            CompletableFuture<List<PostView>> staleFuture;
+            try {
+                staleFuture = CompletableFuture.supplyAsync(staleSupplier, staleReadExecutor);
+            } catch (RejectedExecutionException rejectedException) {
+                return CompletableFuture.failedFuture(cause);
+            }
+            // cache which can not be read is treated as empty, so that the backend failure is reported
+            return staleFuture.exceptionally(staleEx -> List.of()).thenCompose(stalePosts -> stalePosts.isEmpty()
+                    ? CompletableFuture.failedFuture(cause)
+                    : CompletableFuture.completedFuture(stalePosts));
+        });
+    }
 
-        return newValuesForCache;
+    /**
+     * Fetched posts are returned without waiting for the cache to be reinitialized with them. Reinitialization is
+     * best effort, if it fails cache stays stale and is updated again by the next request.
+     */
+    @NonNull
+    public CompletableFuture<List<PostView>> updateCache() {
+
+        CompletableFuture<List<PostView>> postsFuture = grpcService.findTopNPosts(
+                PostRedisCache.getMaxCachedPosts(), List.of(Visibility.ACTIVE));
+
+        postsFuture.thenAcceptAsync(newValuesForCache -> {
+            if (!newValuesForCache.isEmpty()) {
+                cache.reinitializeCache(newValuesForCache);
+            }
+        }, cacheWriteExecutor);
+
+        return postsFuture;
     }
 
     @NonNull
-    public List<PostDto> findTopNHandler(
+    public CompletableFuture<List<PostView>> findTopNHandler(
             int size,
             @NonNull List<Visibility> visibilities) {
 
-        List<PostDto> results;
+        if (!isOnlyActive(visibilities)) {
+            return grpcService.findTopNPosts(size, visibilities);
+        }
 
-        if (isOnlyActive(visibilities)) {
-            if (cache.isEmpty()) {
-                List<PostDto> newValuesForCache = updateCache();
+        if (!cache.isFresh()) {
+            CompletableFuture<List<PostView>> postsFuture = updateCache().thenApply(newValuesForCache -> {
                 int endBound = Math.min(size, newValuesForCache.size());
-                results = newValuesForCache.subList(0, endBound);
-            } else {
-                results = cache.findTopNCached(size)
-                        .orElseGet(() -> grpcService.findTopNPosts(size, visibilities));
-            }
-        } else {
-            results = grpcService.findTopNPosts(size, visibilities);
+                return newValuesForCache.subList(0, endBound);
+            });
+            return withStaleFallback(postsFuture, () -> asViews(cache.findTopNStale(size)));
         }
 
-        return results;
+        return cache.findTopNCached(size)
+                .map(posts -> CompletableFuture.completedFuture(asViews(posts)))
+                .orElseGet(() -> withStaleFallback(
+                        grpcService.findTopNPosts(size, visibilities),
+                        () -> asViews(cache.findTopNStale(size))
+                ));
+    }
+
+    /**
+     * Ids are parsed only for posts visited by binary search.
+     */
+    @NonNull
+    private static List<ComparablePost> asComparablePosts(@NonNull List<PostView> posts) {
+
+        return new AbstractList<>() {
+
+            @Override
+            public ComparablePost get(int index) {
+                PostView post = posts.get(index);
+                return new BasicComparablePost(new ObjectId(post.idHexString()), post.karmaScore());
+            }
+
+            @Override
+            public int size() {
+                return posts.size();
+            }
+        };
     }
 
-    private int findNextSmallerThan(@NonNull List<PostDto> topPosts, @NonNull ScrollPosition scrollPosition) {
+    private int findNextSmallerThan(@NonNull List<PostView> topPosts, @NonNull ScrollPosition scrollPosition) {
 
         int value = Collections.binarySearch(
-                topPosts,
+                asComparablePosts(topPosts),
                 new BasicComparablePost(scrollPosition.postId(), scrollPosition.karmaScore()),
                 new PostComparator().reversed()
         );
@@ -84,35 +212,38 @@ public class PostRedisCacheHandlerService {
     }
 
     @NonNull
-    public List<PostDto> findNextNHandler(
+    public CompletableFuture<List<PostView>> findNextNHandler(
             int size,
             @NonNull List<Visibility> visibilities,
             @NonNull ScrollPosition scrollPosition) {
 
-        List<PostDto> results;
+        if (!isOnlyActive(visibilities)) {
+            return grpcService.findNextNPosts(size, visibilities, scrollPosition);
+        }
 
-        if (isOnlyActive(visibilities)) {
-            if (cache.isEmpty()) {
-                List<PostDto> newValuesForCache = updateCache();
+        if (!cache.isFresh()) {
+            CompletableFuture<List<PostView>> postsFuture = updateCache().thenApply(newValuesForCache -> {
                 int firstSmallerElementIdx = findNextSmallerThan(newValuesForCache, scrollPosition);
 
                 int endBound = Math.min(firstSmallerElementIdx + size, newValuesForCache.size());
-                results = newValuesForCache.subList(firstSmallerElementIdx, endBound);
-            } else {
-                results = cache.findNextNCached(size, scrollPosition)
-                        .orElseGet(() -> grpcService.findNextNPosts(size, visibilities, scrollPosition));
-            }
-        } else {
-            results = grpcService.findNextNPosts(size, visibilities, scrollPosition);
+                return newValuesForCache.subList(firstSmallerElementIdx, endBound);
+            });
+            return withStaleFallback(postsFuture, () -> asViews(cache.findNextNStale(size, scrollPosition)));
         }
 
-        return results;
+        return cache.findNextNCached(size, scrollPosition)
+                .map(posts -> CompletableFuture.completedFuture(asViews(posts)))
+                .orElseGet(() -> withStaleFallback(
+                        grpcService.findNextNPosts(size, visibilities, scrollPosition),
+                        () -> asViews(cache.findNextNStale(size, scrollPosition))
+                ));
     }
 
     /**
      * Post will be cached if less than CACHED_POSTS_AMOUNT posts are cached or input post score is higher than
      * the lowest cached post score. Because of this functionality there may be more cached posts than specified
      * amount allows, but I doubt that this would be problematic, because cache gets refreshed every PostRedisCache.TIMEOUT.
+     * Image bigger than redisMaxImageSize is not cached, it is cached on disk once it is requested.
      *
      * @param post Input post with image data to be cached.
      * @return true if cached else false.
@@ -131,10 +262,17 @@ public class PostRedisCacheHandlerService {
             }
         }
 
-        return cache.insertPost(post.postDto(), post.imageData());
+        byte[] imageData = post.imageData();
+        if (imageData != null && imageData.length > redisMaxImageSize) {
+            imageData = null;
+        }
+
+        return cache.insertPost(post.postDto(), imageData);
     }
 
     /**
+     * Posts not found by backend are remembered for a short time, so that backend is not asked for them repeatedly.
+     *
      * @param postId Id of post with image data if found to be cached.
      * @return true if cached else false.
      * @throws PostNotFoundException thrown when post with requested postId is not found.
@@ -143,12 +281,17 @@ public class PostRedisCacheHandlerService {
             @NonNull ObjectId postId
     ) throws PostNotFoundException, UserNotFoundException {
 
+        if (cache.isPostMarkedMissing(postId)) {
+            return false;
+        }
+
         try {
             PostWithImageDataDto post = grpcService.findByPostId(postId);
 
             return loadToCacheIfPossible(post);
 
         } catch (PostNotFoundException ex) {
+            cache.markPostMissing(postId);
             return false;
         }
     }
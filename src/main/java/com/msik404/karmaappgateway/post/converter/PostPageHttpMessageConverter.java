@@ -0,0 +1,183 @@
+package com.msik404.karmaappgateway.post.converter;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.msik404.karmaappgateway.post.PostResponseModelAssembler;
+import com.msik404.karmaappgateway.post.PostResponseModelAssembler.LinkTemplate;
+import com.msik404.karmaappgateway.post.dto.PostPage;
+import com.msik404.karmaappgateway.post.dto.PostView;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Writes PostPage straight to response output stream with single JsonGenerator. Each post is written as soon as it is
+ * visited, without building EntityModel and PostResponse objects for the whole page first, so memory used for writing
+ * does not grow with page size.
+ * <p>
+ * By default output is the same as output of List of EntityModel of PostResponse serialized by Jackson. Clients which
+ * accept COMPACT_JSON media type get link templates once per page, posts carry only their fields. CBOR output has the
+ * same structure as compact one.
+ * <p>
+ * It is ordered before PostPageProtobufHttpMessageConverter, so that clients which accept any media type get JSON.
+ */
+@Component
+@Order(PostPageHttpMessageConverter.ORDER)
+public class PostPageHttpMessageConverter extends AbstractHttpMessageConverter<PostPage> {
+
+    public static final int ORDER = Ordered.HIGHEST_PRECEDENCE;
+
+    public static final String COMPACT_JSON_VALUE = "application/vnd.karmaapp.posts.compact+json";
+    public static final MediaType COMPACT_JSON = MediaType.parseMediaType(COMPACT_JSON_VALUE);
+
+    public static final String POST_ID_TEMPLATE_VARIABLE = "{postId}";
+
+    private static final String SELF_REL = IanaLinkRelations.SELF.value();
+
+    private final ObjectMapper objectMapper;
+    private final JsonFactory cborFactory = new CBORFactory();
+
+    private final PostResponseModelAssembler assembler;
+
+    public PostPageHttpMessageConverter(
+            @NonNull ObjectMapper objectMapper,
+            @NonNull PostResponseModelAssembler assembler) {
+
+        super(
+                MediaType.APPLICATION_JSON,
+                COMPACT_JSON,
+                new MediaType("application", "*+json"),
+                MediaType.APPLICATION_CBOR
+        );
+
+        this.objectMapper = objectMapper;
+        this.assembler = assembler;
+    }
+
+    @Override
+    protected boolean supports(@NonNull Class<?> clazz) {
+        return PostPage.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(@NonNull Class<?> clazz, @Nullable MediaType mediaType) {
+        return false;
+    }
+
+    @NonNull
+    @Override
+    protected PostPage readInternal(
+            @NonNull Class<? extends PostPage> clazz,
+            @NonNull HttpInputMessage inputMessage) {
+
+        throw new HttpMessageNotReadableException("PostPage can not be read", inputMessage);
+    }
+
+    private void writeLinks(
+            @NonNull JsonGenerator generator,
+            @NonNull String baseUri,
+            @NonNull String postIdHexString) throws IOException {
+
+        generator.writeArrayFieldStart("links");
+        for (LinkTemplate template : assembler.getLinkTemplates()) {
+            generator.writeStartObject();
+            generator.writeStringField("rel", SELF_REL);
+            generator.writeStringField("href", template.expand(baseUri, postIdHexString));
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    private void writeLinkTemplates(@NonNull JsonGenerator generator, @NonNull String baseUri) throws IOException {
+
+        generator.writeArrayFieldStart("links");
+        for (LinkTemplate template : assembler.getLinkTemplates()) {
+            generator.writeStartObject();
+            generator.writeStringField("rel", SELF_REL);
+            generator.writeStringField("href", template.expand(baseUri, POST_ID_TEMPLATE_VARIABLE));
+            generator.writeBooleanField("templated", true);
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    public static void writePostFields(@NonNull JsonGenerator generator, @NonNull PostView post) throws IOException {
+
+        generator.writeStringField("id", post.idHexString());
+        generator.writeStringField("username", post.username());
+        generator.writeStringField("headline", post.headline());
+        generator.writeStringField("text", post.text());
+        generator.writeNumberField("karmaScore", post.karmaScore());
+        generator.writeStringField("visibility", post.visibility().name());
+    }
+
+    private void writePosts(
+            @NonNull JsonGenerator generator,
+            @NonNull String baseUri,
+            @NonNull PostPage postPage) throws IOException {
+
+        generator.writeStartArray();
+        for (PostView post : postPage.posts()) {
+            generator.writeStartObject();
+            writePostFields(generator, post);
+            writeLinks(generator, baseUri, post.idHexString());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    private void writeCompactPosts(
+            @NonNull JsonGenerator generator,
+            @NonNull String baseUri,
+            @NonNull PostPage postPage) throws IOException {
+
+        generator.writeStartObject();
+        writeLinkTemplates(generator, baseUri);
+        generator.writeArrayFieldStart("posts");
+        for (PostView post : postPage.posts()) {
+            generator.writeStartObject();
+            writePostFields(generator, post);
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    @Override
+    protected void writeInternal(
+            @NonNull PostPage postPage,
+            @NonNull HttpOutputMessage outputMessage) throws IOException {
+
+        MediaType contentType = outputMessage.getHeaders().getContentType();
+        boolean isCbor = contentType != null && MediaType.APPLICATION_CBOR.isCompatibleWith(contentType);
+        boolean isCompact = isCbor || (contentType != null && COMPACT_JSON.isCompatibleWith(contentType));
+
+        JsonFactory factory = isCbor ? cborFactory : objectMapper.getFactory();
+
+        // output stream is closed by the servlet container
+        try (JsonGenerator generator = factory.createGenerator(StreamUtils.nonClosing(outputMessage.getBody()))) {
+
+            String baseUri = assembler.getCurrentBaseUri();
+
+            if (isCompact) {
+                writeCompactPosts(generator, baseUri, postPage);
+            } else {
+                writePosts(generator, baseUri, postPage);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.msik404.karmaappgateway.post.converter;
+
+import java.io.IOException;
+
+import com.google.protobuf.CodedOutputStream;
+import com.msik404.karmaappgateway.post.PostResponseModelAssembler;
+import com.msik404.karmaappgateway.post.PostResponseModelAssembler.LinkTemplate;
+import com.msik404.karmaappgateway.post.dto.PostPage;
+import com.msik404.karmaappgateway.post.dto.PostView;
+import com.msik404.karmaappgateway.proto.ProtoLinkTemplate;
+import com.msik404.karmaappgateway.proto.ProtoPost;
+import com.msik404.karmaappgateway.proto.ProtoPostPage;
+import org.springframework.core.annotation.Order;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.protobuf.ProtobufHttpMessageConverter;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes PostPage as ProtoPostPage message defined in karma_app_gateway.proto. Repeated fields are written one element
+ * at a time, so that page is never built as a single message in memory.
+ * <p>
+ * Protobuf is written only to clients which ask for it explicitly, so converter is ordered after the JSON one.
+ */
+@Component
+@Order(PostPageHttpMessageConverter.ORDER + 1)
+public class PostPageProtobufHttpMessageConverter extends AbstractHttpMessageConverter<PostPage> {
+
+    private static final String SELF_REL = IanaLinkRelations.SELF.value();
+
+    private final PostResponseModelAssembler assembler;
+
+    public PostPageProtobufHttpMessageConverter(@NonNull PostResponseModelAssembler assembler) {
+
+        super(ProtobufHttpMessageConverter.PROTOBUF);
+
+        this.assembler = assembler;
+    }
+
+    @Override
+    protected boolean supports(@NonNull Class<?> clazz) {
+        return PostPage.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(@NonNull Class<?> clazz, @Nullable MediaType mediaType) {
+        return false;
+    }
+
+    @NonNull
+    @Override
+    protected PostPage readInternal(
+            @NonNull Class<? extends PostPage> clazz,
+            @NonNull HttpInputMessage inputMessage) {
+
+        throw new HttpMessageNotReadableException("PostPage can not be read", inputMessage);
+    }
+
+    @NonNull
+    private static ProtoPost toProto(@NonNull PostView post) {
+
+        var builder = ProtoPost.newBuilder()
+                .setId(post.idHexString())
+                .setUsername(post.username())
+                .setKarmaScore(post.karmaScore())
+                .setVisibility(post.visibility().name());
+
+        String headline = post.headline();
+        if (headline != null) {
+            builder.setHeadline(headline);
+        }
+        String text = post.text();
+        if (text != null) {
+            builder.setText(text);
+        }
+
+        return builder.build();
+    }
+
+    @Override
+    protected void writeInternal(
+            @NonNull PostPage postPage,
+            @NonNull HttpOutputMessage outputMessage) throws IOException {
+
+        CodedOutputStream output = CodedOutputStream.newInstance(outputMessage.getBody());
+
+        String baseUri = assembler.getCurrentBaseUri();
+        for (LinkTemplate template : assembler.getLinkTemplates()) {
+            output.writeMessage(ProtoPostPage.LINK_TEMPLATES_FIELD_NUMBER, ProtoLinkTemplate.newBuilder()
+                    .setRel(SELF_REL)
+                    .setHref(template.expand(baseUri, PostPageHttpMessageConverter.POST_ID_TEMPLATE_VARIABLE))
+                    .build());
+        }
+
+        for (PostView post : postPage.posts()) {
+            output.writeMessage(ProtoPostPage.POSTS_FIELD_NUMBER, toProto(post));
+        }
+
+        output.flush();
+    }
+
+}
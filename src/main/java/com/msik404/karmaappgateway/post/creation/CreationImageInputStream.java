@@ -0,0 +1,97 @@
+package com.msik404.karmaappgateway.post.creation;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.lang.NonNull;
+
+/**
+ * Image of queued creation read from redis with GETRANGE, one chunk at a time, so that it is never held in memory as
+ * a whole.
+ */
+class CreationImageInputStream extends InputStream {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final StringRedisTemplate redisTemplate;
+    private final byte[] imageKey;
+    private final long length;
+    private final int chunkSize;
+
+    // offset of the first byte after current chunk
+    private long offset = 0;
+
+    private byte[] chunk = EMPTY;
+    private int chunkPosition = 0;
+
+    CreationImageInputStream(
+            @NonNull StringRedisTemplate redisTemplate,
+            @NonNull byte[] imageKey,
+            long length,
+            int chunkSize) {
+
+        this.redisTemplate = redisTemplate;
+        this.imageKey = imageKey;
+        this.length = length;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return false if whole image was already read.
+     * @throws EOFException thrown when image has expired or was removed while it was being read.
+     */
+    private boolean fetchNextChunk() throws IOException {
+
+        if (offset >= length) {
+            return false;
+        }
+
+        long start = offset;
+        long end = Math.min(start + chunkSize, length) - 1;
+        byte[] nextChunk = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().getRange(imageKey, start, end));
+
+        if (nextChunk == null || nextChunk.length == 0) {
+            throw new EOFException("Image of the creation is gone");
+        }
+
+        chunk = nextChunk;
+        chunkPosition = 0;
+        offset += nextChunk.length;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        if (chunkPosition == chunk.length && !fetchNextChunk()) {
+            return -1;
+        }
+        return chunk[chunkPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+
+        if (len == 0) {
+            return 0;
+        }
+        if (chunkPosition == chunk.length && !fetchNextChunk()) {
+            return -1;
+        }
+
+        int read = Math.min(len, chunk.length - chunkPosition);
+        System.arraycopy(chunk, chunkPosition, b, off, read);
+        chunkPosition += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return chunk.length - chunkPosition;
+    }
+
+}
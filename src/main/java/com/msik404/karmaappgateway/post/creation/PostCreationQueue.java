@@ -0,0 +1,290 @@
+package com.msik404.karmaappgateway.post.creation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.*;
+
+import com.msik404.karmaappgateway.post.dto.PostCreationRequest;
+import com.msik404.karmaappgateway.post.dto.PostCreationStatus;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Service;
+
+/**
+ * Durable queue of asynchronous post creations, kept in redis stream shared by all gateway instances. Entries are
+ * read by consumer group, so each of them is processed by single worker at a time. Entry stays pending until it is
+ * completed, entries of crashed or failing workers are claimed again once they are pending for too long.
+ * <p>
+ * Status of each creation is kept in separate hash for STATUS_TIMEOUT, so that it can be polled after entry is
+ * completed and removed from the stream. Image is kept under its own key until creation is completed.
+ */
+@Service
+@RequiredArgsConstructor
+public class PostCreationQueue {
+
+    private static final String STREAM_KEY = "post-creations";
+    private static final String GROUP = "post-creators";
+    private static final String CREATION_PREFIX = "post-creation";
+
+    private static final String CREATION_ID_FIELD = "creationId";
+    private static final String USER_ID_FIELD = "userId";
+    private static final String HEADLINE_FIELD = "headline";
+    private static final String TEXT_FIELD = "text";
+    private static final String HAS_IMAGE_FIELD = "hasImage";
+    private static final String STATUS_FIELD = "status";
+
+    private static final Duration STATUS_TIMEOUT = Duration.ofHours(24);
+
+    private static final int IMAGE_CHUNK_SIZE = 65536;
+
+    // pending entries are scanned in pages, because the oldest ones may be in flight or recently failed
+    private static final int PENDING_PAGE_SIZE = 100;
+    private static final int MAX_PENDING_PAGES = 10;
+
+    private final StringRedisTemplate redisTemplate;
+
+    @NonNull
+    private static String getCreationKey(@NonNull ObjectId creationId) {
+        return String.format("%s:%s", CREATION_PREFIX, creationId.toHexString());
+    }
+
+    @NonNull
+    private static String getCreationImageKey(@NonNull ObjectId creationId) {
+        return getCreationKey(creationId) + ":image";
+    }
+
+    @NonNull
+    private StreamOperations<String, String, String> streamOps() {
+        return redisTemplate.opsForStream();
+    }
+
+    /**
+     * Creates consumer group, and stream itself, if they do not exist yet.
+     */
+    public void createGroupIfAbsent() {
+
+        try {
+            redisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands().xGroupCreate(
+                    STREAM_KEY.getBytes(), GROUP, ReadOffset.from("0"), true));
+        } catch (DataAccessException ex) {
+            // BUSYGROUP, group was already created by this or other gateway instance
+        }
+    }
+
+    /**
+     * Image is appended in chunks in single pipeline, so that it is not held in memory as a whole. Entry is added to
+     * the stream last, so workers never see it before image and status are stored.
+     *
+     * @return id of the creation, which is used as idempotency key of createPost call.
+     * @throws IOException thrown when image could not be read.
+     */
+    @NonNull
+    public ObjectId enqueue(
+            @NonNull ObjectId userId,
+            @NonNull PostCreationRequest request,
+            @Nullable InputStreamSource image) throws IOException {
+
+        var creationId = new ObjectId();
+
+        if (image != null) {
+            byte[] imageKey = getCreationImageKey(creationId).getBytes();
+            try (InputStream imageData = image.getInputStream()) {
+                redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    try {
+                        byte[] chunk;
+                        while ((chunk = imageData.readNBytes(IMAGE_CHUNK_SIZE)).length > 0) {
+                            connection.stringCommands().append(imageKey, chunk);
+                        }
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                    connection.keyCommands().expire(imageKey, STATUS_TIMEOUT.getSeconds());
+                    return null;
+                });
+            } catch (UncheckedIOException ex) {
+                redisTemplate.delete(getCreationImageKey(creationId));
+                throw ex.getCause();
+            }
+        }
+
+        Map<String, String> entry = new HashMap<>();
+        entry.put(CREATION_ID_FIELD, creationId.toHexString());
+        entry.put(USER_ID_FIELD, userId.toHexString());
+        entry.put(HEADLINE_FIELD, request.headline());
+        entry.put(TEXT_FIELD, request.text());
+        entry.put(HAS_IMAGE_FIELD, Boolean.toString(image != null));
+
+        String creationKey = getCreationKey(creationId);
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringRedisConn = (StringRedisConnection) connection;
+
+            stringRedisConn.hMSet(creationKey, Map.of(
+                    USER_ID_FIELD, userId.toHexString(),
+                    STATUS_FIELD, PostCreationStatus.PENDING.name()
+            ));
+            stringRedisConn.expire(creationKey, STATUS_TIMEOUT.getSeconds());
+            stringRedisConn.xAdd(STREAM_KEY, entry);
+
+            return null;
+        });
+
+        return creationId;
+    }
+
+    @NonNull
+    private static PostCreationTask toTask(@NonNull MapRecord<String, String, String> record, long deliveryCount) {
+
+        Map<String, String> entry = record.getValue();
+
+        return new PostCreationTask(
+                record.getId().getValue(),
+                new ObjectId(entry.get(CREATION_ID_FIELD)),
+                new ObjectId(entry.get(USER_ID_FIELD)),
+                new PostCreationRequest(entry.get(HEADLINE_FIELD), entry.get(TEXT_FIELD)),
+                Boolean.parseBoolean(entry.get(HAS_IMAGE_FIELD)),
+                deliveryCount
+        );
+    }
+
+    /**
+     * @return at most count entries which were not yet delivered to any worker, they become pending for consumer.
+     */
+    @NonNull
+    public List<PostCreationTask> readNew(@NonNull String consumer, int count) {
+
+        List<MapRecord<String, String, String>> records = streamOps().read(
+                Consumer.from(GROUP, consumer),
+                StreamReadOptions.empty().count(count),
+                StreamOffset.create(STREAM_KEY, ReadOffset.lastConsumed())
+        );
+
+        if (records == null) {
+            return List.of();
+        }
+        return records.stream().map(record -> toTask(record, 1)).toList();
+    }
+
+    /**
+     * Entries pending for at least minIdleTime were delivered to worker which crashed or failed to create the post.
+     * They are claimed by consumer, so that they are retried.
+     * <p>
+     * Pending entries are scanned from the oldest, page after page, until count of them is found idle. Oldest entries
+     * are not necessarily the idle ones, as they may be in flight or were retried recently, so looking only at the
+     * first count of them could leave stalled entries behind them unclaimed. XAUTOCLAIM is not used, because it does
+     * not return delivery counts, which are needed to give up on entries after max attempts.
+     *
+     * @return at most count claimed entries with number of times they were delivered, including this one.
+     */
+    @NonNull
+    public List<PostCreationTask> claimStalled(@NonNull String consumer, int count, @NonNull Duration minIdleTime) {
+
+        Map<String, Long> deliveryCounts = new LinkedHashMap<>();
+        Range<String> range = Range.unbounded();
+
+        for (int page = 0; page < MAX_PENDING_PAGES && deliveryCounts.size() < count; page++) {
+            PendingMessages pendingMessages = streamOps().pending(STREAM_KEY, GROUP, range, PENDING_PAGE_SIZE);
+
+            String lastId = null;
+            for (PendingMessage pendingMessage : pendingMessages) {
+                lastId = pendingMessage.getIdAsString();
+                if (deliveryCounts.size() < count
+                        && pendingMessage.getElapsedTimeSinceLastDelivery().compareTo(minIdleTime) >= 0) {
+                    deliveryCounts.put(lastId, pendingMessage.getTotalDeliveryCount());
+                }
+            }
+            if (pendingMessages.size() < PENDING_PAGE_SIZE) {
+                break;
+            }
+            range = Range.of(Range.Bound.exclusive(lastId), Range.Bound.unbounded());
+        }
+        if (deliveryCounts.isEmpty()) {
+            return List.of();
+        }
+
+        RecordId[] stalledIds = deliveryCounts.keySet().stream().map(RecordId::of).toArray(RecordId[]::new);
+
+        // entries claimed meanwhile by other worker are not idle anymore, so they are not returned
+        List<MapRecord<String, String, String>> records = streamOps().claim(
+                STREAM_KEY, GROUP, consumer, minIdleTime, stalledIds);
+
+        if (records == null) {
+            return List.of();
+        }
+        return records.stream()
+                .map(record -> toTask(record, deliveryCounts.get(record.getId().getValue()) + 1))
+                .toList();
+    }
+
+    /**
+     * Image is not read until returned source is opened. Each opened stream reads it again with GETRANGE in chunks,
+     * so that it is never held in memory as a whole. Stream fails with EOFException if image expires meanwhile.
+     *
+     * @return source of image data of the creation, null if it has expired.
+     */
+    @Nullable
+    public InputStreamSource findImage(@NonNull ObjectId creationId) {
+
+        byte[] imageKey = getCreationImageKey(creationId).getBytes();
+
+        Long length = redisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.stringCommands().strLen(imageKey));
+
+        if (length == null || length == 0) {
+            return null;
+        }
+        return () -> new CreationImageInputStream(redisTemplate, imageKey, length, IMAGE_CHUNK_SIZE);
+    }
+
+    /**
+     * Records final status of the creation and removes its entry and image, so that it is not processed again.
+     */
+    public void complete(@NonNull PostCreationTask task, @NonNull PostCreationStatus status) {
+
+        String creationKey = getCreationKey(task.creationId());
+
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringRedisConn = (StringRedisConnection) connection;
+
+            stringRedisConn.hSet(creationKey, STATUS_FIELD, status.name());
+            stringRedisConn.expire(creationKey, STATUS_TIMEOUT.getSeconds());
+            stringRedisConn.xAck(STREAM_KEY, GROUP, task.recordId());
+            stringRedisConn.xDel(STREAM_KEY, task.recordId());
+            stringRedisConn.del(getCreationImageKey(task.creationId()));
+
+            return null;
+        });
+    }
+
+    /**
+     * @return Optional of creation status, Optional empty if creation does not exist, has expired or was requested
+     * by other user.
+     */
+    @NonNull
+    public Optional<PostCreationStatus> findStatus(@NonNull ObjectId creationId, @NonNull ObjectId userId) {
+
+        HashOperations<String, String, String> hashOps = redisTemplate.opsForHash();
+        List<String> values = hashOps.multiGet(getCreationKey(creationId), List.of(USER_ID_FIELD, STATUS_FIELD));
+
+        String creationUserId = values.get(0);
+        String status = values.get(1);
+        if (creationUserId == null || status == null || !creationUserId.equals(userId.toHexString())) {
+            return Optional.empty();
+        }
+        return Optional.of(PostCreationStatus.valueOf(status));
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.msik404.karmaappgateway.post.creation;
+
+import com.msik404.karmaappgateway.post.dto.PostCreationRequest;
+import org.bson.types.ObjectId;
+import org.springframework.lang.NonNull;
+
+/**
+ * @param recordId      id of the entry in redis stream.
+ * @param deliveryCount number of times entry was delivered to workers, including this one.
+ */
+public record PostCreationTask(
+        @NonNull String recordId,
+        @NonNull ObjectId creationId,
+        @NonNull ObjectId userId,
+        @NonNull PostCreationRequest request,
+        boolean hasImage,
+        long deliveryCount) {
+}
@@ -0,0 +1,184 @@
+package com.msik404.karmaappgateway.post.creation;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.msik404.karmaappgateway.exception.RestException;
+import com.msik404.karmaappgateway.grpc.client.GrpcService;
+import com.msik404.karmaappgateway.grpc.client.exception.BackendFailureException;
+import com.msik404.karmaappgateway.grpc.client.exception.InternalRestException;
+import com.msik404.karmaappgateway.post.dto.PostCreationStatus;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drains PostCreationQueue with fixed number of worker threads. Each worker takes one entry at a time, so that entries
+ * are spread evenly between workers of all gateway instances. Stalled entries are claimed before new ones.
+ * <p>
+ * Entry which failed because backend is unavailable or timed out is left pending and retried after retryAfter, at
+ * most maxAttempts times. Creation id is sent as idempotency key, so retrying call whose outcome is unknown does not
+ * create the post twice. Application errors, like failed validation, are not retried.
+ * <p>
+ * Queue is polled, because blocking stream reads would need dedicated redis connection for each worker.
+ */
+@Component
+public class PostCreationWorker implements SmartLifecycle {
+
+    private static final String CREATIONS_METRIC = "karmaapp.posts.creations";
+
+    private final PostCreationQueue queue;
+    private final GrpcService grpcService;
+    private final MeterRegistry meterRegistry;
+
+    private final int workers;
+    private final int maxAttempts;
+    private final Duration retryAfter;
+    private final Duration pollInterval;
+
+    // each instance has its own consumers, entries of consumers which are gone are claimed by others
+    private final String consumerPrefix = UUID.randomUUID().toString();
+
+    private ExecutorService executor;
+    private volatile boolean isRunning = false;
+
+    public PostCreationWorker(
+            @NonNull PostCreationQueue queue,
+            @NonNull GrpcService grpcService,
+            @NonNull MeterRegistry meterRegistry,
+            @Value("${KarmaAppGateway.posts.async-creation.workers}") int workers,
+            @Value("${KarmaAppGateway.posts.async-creation.max-attempts}") int maxAttempts,
+            @Value("${KarmaAppGateway.posts.async-creation.retry-after-ms}") long retryAfterMillis,
+            @Value("${KarmaAppGateway.posts.async-creation.poll-interval-ms}") long pollIntervalMillis) {
+
+        this.queue = queue;
+        this.grpcService = grpcService;
+        this.meterRegistry = meterRegistry;
+        this.workers = workers;
+        this.maxAttempts = maxAttempts;
+        this.retryAfter = Duration.ofMillis(retryAfterMillis);
+        this.pollInterval = Duration.ofMillis(pollIntervalMillis);
+    }
+
+    @Override
+    public void start() {
+
+        if (workers == 0) {
+            return;
+        }
+
+        var threadCounter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(workers, runnable -> {
+            var thread = new Thread(runnable, "post-creation-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        isRunning = true;
+        for (int i = 0; i < workers; i++) {
+            String consumer = consumerPrefix + "-" + i;
+            executor.execute(() -> work(consumer));
+        }
+    }
+
+    @Override
+    public void stop() {
+
+        isRunning = false;
+        if (executor != null) {
+            // interrupted creations stay pending and are retried
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    private void work(@NonNull String consumer) {
+
+        boolean isGroupCreated = false;
+
+        while (isRunning) {
+            try {
+                if (!isGroupCreated) {
+                    queue.createGroupIfAbsent();
+                    isGroupCreated = true;
+                }
+
+                List<PostCreationTask> tasks = queue.claimStalled(consumer, 1, retryAfter);
+                if (tasks.isEmpty()) {
+                    tasks = queue.readNew(consumer, 1);
+                }
+                if (tasks.isEmpty()) {
+                    Thread.sleep(pollInterval);
+                    continue;
+                }
+
+                for (PostCreationTask task : tasks) {
+                    process(task);
+                }
+            } catch (DataAccessException ex) {
+                // redis is unavailable or stream was removed, group is created again once it is back
+                isGroupCreated = false;
+                try {
+                    Thread.sleep(pollInterval);
+                } catch (InterruptedException interruptedException) {
+                    return;
+                }
+            } catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    private void complete(@NonNull PostCreationTask task, @NonNull PostCreationStatus status) {
+
+        queue.complete(task, status);
+        meterRegistry.counter(CREATIONS_METRIC, "result", status.name().toLowerCase()).increment();
+    }
+
+    private void process(@NonNull PostCreationTask task) {
+
+        if (task.deliveryCount() > maxAttempts) {
+            complete(task, PostCreationStatus.FAILED);
+            return;
+        }
+
+        InputStreamSource image = null;
+        if (task.hasImage()) {
+            image = queue.findImage(task.creationId());
+            if (image == null) {
+                complete(task, PostCreationStatus.FAILED);
+                return;
+            }
+        }
+
+        try {
+            grpcService.createPost(task.userId(), task.request(), image, task.creationId().toHexString());
+        } catch (BackendFailureException | InternalRestException ex) {
+            // left pending, it is claimed again once it is pending for retryAfter
+            meterRegistry.counter(CREATIONS_METRIC, "result", "retried").increment();
+            return;
+        } catch (RuntimeException ex) {
+            if (ex instanceof RestException) {
+                complete(task, PostCreationStatus.FAILED);
+            } else {
+                meterRegistry.counter(CREATIONS_METRIC, "result", "retried").increment();
+            }
+            return;
+        }
+
+        complete(task, PostCreationStatus.CREATED);
+    }
+
+}
@@ -0,0 +1,6 @@
+package com.msik404.karmaappgateway.post.dto;
+
+public enum ImageEncoding {
+    IDENTITY,
+    DEFLATE
+}
@@ -0,0 +1,16 @@
+package com.msik404.karmaappgateway.post.dto;
+
+import org.springframework.lang.NonNull;
+
+/**
+ * @param size        size of the image in bytes.
+ * @param contentHash hex encoded SHA-256 of the image.
+ * @param encoding    encoding in which image is stored in cache.
+ * @param storedSize  size of the stored image in bytes, it differs from size if image is compressed.
+ */
+public record ImageMetadataDto(
+        long size,
+        @NonNull String contentHash,
+        @NonNull ImageEncoding encoding,
+        long storedSize) {
+}
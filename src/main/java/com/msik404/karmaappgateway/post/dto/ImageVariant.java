@@ -0,0 +1,20 @@
+package com.msik404.karmaappgateway.post.dto;
+
+/**
+ * Variants are downscaled so that their longer side is at most maxDimension pixels, original is served as it is.
+ */
+public enum ImageVariant {
+    ORIGINAL(0),
+    THUMB(160),
+    MEDIUM(640);
+
+    private final int maxDimension;
+
+    ImageVariant(int maxDimension) {
+        this.maxDimension = maxDimension;
+    }
+
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+}
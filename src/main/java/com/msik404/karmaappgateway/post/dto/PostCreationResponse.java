@@ -0,0 +1,16 @@
+package com.msik404.karmaappgateway.post.dto;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import org.bson.types.ObjectId;
+import org.springframework.lang.NonNull;
+
+public record PostCreationResponse(
+
+        @NonNull
+        @JsonSerialize(using = ToStringSerializer.class)
+        ObjectId creationId,
+
+        @NonNull
+        PostCreationStatus status) {
+}
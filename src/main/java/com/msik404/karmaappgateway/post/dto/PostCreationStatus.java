@@ -0,0 +1,7 @@
+package com.msik404.karmaappgateway.post.dto;
+
+public enum PostCreationStatus {
+    PENDING,
+    CREATED,
+    FAILED
+}
@@ -17,7 +17,7 @@ import org.springframework.lang.Nullable;
 @AllArgsConstructor
 @NoArgsConstructor
 @Data
-public class PostDto implements ComparablePost {
+public class PostDto implements ComparablePost, PostView {
 
     @JsonSerialize(using = ToStringSerializer.class)
     @JsonDeserialize(using = ToObjectIdDeserializer.class)
@@ -51,4 +51,63 @@ public class PostDto implements ComparablePost {
         this.visibility = VisibilityMapper.map(visibility);
     }
 
+    @NonNull
+    public static PostDto of(@NonNull PostView post) {
+
+        if (post instanceof PostDto postDto) {
+            return postDto;
+        }
+
+        return new PostDto(
+                new ObjectId(post.idHexString()),
+                new ObjectId(post.userIdHexString()),
+                post.username(),
+                post.headline(),
+                post.text(),
+                post.karmaScore(),
+                post.visibility()
+        );
+    }
+
+    @NonNull
+    @Override
+    public String idHexString() {
+        return id.toHexString();
+    }
+
+    @NonNull
+    @Override
+    public String userIdHexString() {
+        return userId.toHexString();
+    }
+
+    @NonNull
+    @Override
+    public String username() {
+        return username;
+    }
+
+    @Nullable
+    @Override
+    public String headline() {
+        return headline;
+    }
+
+    @Nullable
+    @Override
+    public String text() {
+        return text;
+    }
+
+    @Override
+    public long karmaScore() {
+        return karmaScore;
+    }
+
+    @NonNull
+    @Override
+    public Visibility visibility() {
+        return visibility;
+    }
+
 }
@@ -0,0 +1,12 @@
+package com.msik404.karmaappgateway.post.dto;
+
+import java.util.List;
+
+import org.springframework.lang.NonNull;
+
+/**
+ * Page of posts returned by feed endpoints. It is written to response body by PostPageHttpMessageConverter, one post
+ * at a time.
+ */
+public record PostPage(@NonNull List<? extends PostView> posts) {
+}
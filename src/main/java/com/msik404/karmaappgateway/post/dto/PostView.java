@@ -0,0 +1,32 @@
+package com.msik404.karmaappgateway.post.dto;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+/**
+ * Read-only post with creator username. Posts fetched from backend are viewed directly through grpc messages, so
+ * that ids are not parsed into ObjectIds only to be rendered back into hex strings in responses.
+ */
+public interface PostView {
+
+    @NonNull
+    String idHexString();
+
+    @NonNull
+    String userIdHexString();
+
+    @NonNull
+    String username();
+
+    @Nullable
+    String headline();
+
+    @Nullable
+    String text();
+
+    long karmaScore();
+
+    @NonNull
+    Visibility visibility();
+
+}
@@ -25,9 +25,7 @@ public class FileProcessingException extends RestFromGrpcException {
     @NonNull
     @Override
     public StatusRuntimeException asStatusRuntimeException() {
-        return Status.INTERNAL
-                .withDescription(getEncodedException())
-                .asRuntimeException();
+        return toStatusRuntimeException(Status.Code.INTERNAL);
     }
 
     @NonNull
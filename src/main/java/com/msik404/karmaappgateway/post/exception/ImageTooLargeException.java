@@ -0,0 +1,24 @@
+package com.msik404.karmaappgateway.post.exception;
+
+import com.msik404.karmaappgateway.exception.AbstractRestException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.lang.NonNull;
+
+public class ImageTooLargeException extends AbstractRestException {
+
+    public final static String ERROR_MESSAGE = "Image is too large";
+
+    private static final String ERROR_MESSAGE_FORMAT = "Image must not be bigger than %d bytes.";
+
+    public ImageTooLargeException(long maxImageSize) {
+        super(String.format(ERROR_MESSAGE_FORMAT, maxImageSize));
+    }
+
+    @NonNull
+    @Override
+    public ProblemDetail getProblemDetail() {
+        return ProblemDetail.forStatusAndDetail(HttpStatus.PAYLOAD_TOO_LARGE, getMessage());
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.msik404.karmaappgateway.post.exception;
+
+import com.msik404.karmaappgateway.exception.AbstractRestException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.lang.NonNull;
+
+public class PageSizeOutOfRangeException extends AbstractRestException {
+
+    private static final String ERROR_MESSAGE_FORMAT = """
+            Page size must be between 1 and %d. Use export endpoint to get more posts.""";
+
+    public PageSizeOutOfRangeException(int maxPageSize) {
+        super(String.format(ERROR_MESSAGE_FORMAT, maxPageSize));
+    }
+
+    @NonNull
+    @Override
+    public ProblemDetail getProblemDetail() {
+        return ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST, getMessage());
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.msik404.karmaappgateway.post.exception;
+
+import com.msik404.karmaappgateway.exception.AbstractRestException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.lang.NonNull;
+
+public class PostCreationNotFoundException extends AbstractRestException {
+
+    public static final String ERROR_MESSAGE = "Post creation with provided id was not found or has expired.";
+
+    public PostCreationNotFoundException() {
+        super(ERROR_MESSAGE);
+    }
+
+    @NonNull
+    @Override
+    public ProblemDetail getProblemDetail() {
+        return ProblemDetail.forStatusAndDetail(HttpStatus.NOT_FOUND, getMessage());
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.msik404.karmaappgateway.post.image;
+
+import java.nio.ByteBuffer;
+
+import com.msik404.karmaappgateway.post.cache.PostRedisCache;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+/**
+ * Image which is already in memory, it is returned as single chunk.
+ */
+public class ByteArrayImageStream implements ImageStream {
+
+    private final byte[] imageData;
+    private final String contentHash;
+
+    private boolean isRead = false;
+
+    public ByteArrayImageStream(@NonNull byte[] imageData) {
+
+        this.imageData = imageData;
+        this.contentHash = PostRedisCache.computeContentHash(imageData);
+    }
+
+    @Override
+    public long contentLength() {
+        return imageData.length;
+    }
+
+    @NonNull
+    @Override
+    public String contentHash() {
+        return contentHash;
+    }
+
+    @Nullable
+    @Override
+    public ByteBuffer nextChunk() {
+
+        if (isRead) {
+            return null;
+        }
+        isRead = true;
+        return ByteBuffer.wrap(imageData);
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.msik404.karmaappgateway.post.image;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.msik404.karmaappgateway.post.cache.PostRedisCache;
+import com.msik404.karmaappgateway.post.dto.ImageMetadataDto;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+/**
+ * Image cached in redis, it is read with GETRANGE in chunks of chunkSize bytes. Slice of it reads only requested range.
+ * Image is read as it is stored, so compressed image has to be inflated with InflatingImageStream.
+ */
+public class CachedImageStream implements ImageStream {
+
+    private final PostRedisCache cache;
+    private final ImageMetadataDto metadata;
+    private final int chunkSize;
+
+    private final long start;
+    private final long endExclusive;
+
+    private long offset;
+
+    private CachedImageStream(
+            @NonNull PostRedisCache cache,
+            @NonNull ImageMetadataDto metadata,
+            int chunkSize,
+            long start,
+            long endExclusive) {
+
+        this.cache = cache;
+        this.metadata = metadata;
+        this.chunkSize = chunkSize;
+        this.start = start;
+        this.endExclusive = endExclusive;
+        this.offset = start;
+    }
+
+    public CachedImageStream(
+            @NonNull PostRedisCache cache,
+            @NonNull ImageMetadataDto metadata,
+            int chunkSize) {
+
+        this(cache, metadata, chunkSize, 0, metadata.storedSize());
+    }
+
+    @Override
+    public long contentLength() {
+        return endExclusive - start;
+    }
+
+    @Nullable
+    @Override
+    public String contentHash() {
+        return metadata.contentHash();
+    }
+
+    @Nullable
+    @Override
+    public ByteBuffer nextChunk() throws IOException {
+
+        if (offset >= endExclusive) {
+            return null;
+        }
+
+        long end = Math.min(offset + chunkSize, endExclusive) - 1;
+        byte[] chunk = cache.getCachedImageRange(metadata, offset, end);
+        // expiration is refreshed before image is read, so this happens only if image got deleted in the meantime
+        if (chunk.length == 0) {
+            throw new IOException("Cached image was removed while being read");
+        }
+
+        offset += chunk.length;
+        return ByteBuffer.wrap(chunk);
+    }
+
+    @NonNull
+    @Override
+    public ImageStream slice(long start, long end) {
+        return new CachedImageStream(cache, metadata, chunkSize, this.start + start, this.start + end + 1);
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.msik404.karmaappgateway.post.image;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+/**
+ * Passes chunks of source image through and writes them to sinks at the same time. Once source is read to the end,
+ * sinks are committed with image hash computed along the way. If stream is closed earlier, sinks are discarded.
+ */
+public class CachingImageStream implements ImageStream {
+
+    private final ImageStream source;
+
+    private final List<ImageSink> sinks;
+
+    private final MessageDigest digest;
+
+    private long readBytes = 0;
+    private boolean isCommitted = false;
+
+    public CachingImageStream(@NonNull ImageStream source, @NonNull List<ImageSink> sinks) {
+
+        this.source = source;
+        this.sinks = sinks;
+
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // every java platform is required to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public long contentLength() {
+        return source.contentLength();
+    }
+
+    @Nullable
+    @Override
+    public String contentHash() {
+        return source.contentHash();
+    }
+
+    @Nullable
+    @Override
+    public ByteBuffer nextChunk() throws IOException {
+
+        ByteBuffer chunk = source.nextChunk();
+
+        if (chunk == null) {
+            if (!isCommitted && readBytes > 0) {
+                String contentHash = HexFormat.of().formatHex(digest.digest());
+                for (ImageSink sink : sinks) {
+                    sink.commit(contentHash);
+                }
+                isCommitted = true;
+            }
+            return null;
+        }
+
+        digest.update(chunk.duplicate());
+        for (ImageSink sink : sinks) {
+            sink.append(chunk);
+        }
+        readBytes += chunk.remaining();
+
+        return chunk;
+    }
+
+    @Override
+    public void close() {
+
+        source.close();
+        if (!isCommitted) {
+            for (ImageSink sink : sinks) {
+                sink.discard();
+            }
+        }
+    }
+
+}
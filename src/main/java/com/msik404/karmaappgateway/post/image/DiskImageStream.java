@@ -0,0 +1,106 @@
+package com.msik404.karmaappgateway.post.image;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+/**
+ * Image cached on local disk. Chunks are read with positional reads of the open file into single buffer reused for
+ * all of them, so image is never held in heap as a whole.
+ * <p>
+ * File is not memory-mapped, because mapping can not be released explicitly and would hold disk space of evicted
+ * image until it is garbage collected. Open channel keeps file readable even if it gets evicted while it is being
+ * read, its space is freed once the stream is closed.
+ */
+public class DiskImageStream implements ImageStream {
+
+    private final FileChannel channel;
+    private final String contentHash;
+    private final int chunkSize;
+
+    private final long start;
+    private final long endExclusive;
+
+    private long offset;
+
+    @Nullable
+    private ByteBuffer buffer;
+
+    private DiskImageStream(
+            @NonNull FileChannel channel,
+            @NonNull String contentHash,
+            int chunkSize,
+            long start,
+            long endExclusive) {
+
+        this.channel = channel;
+        this.contentHash = contentHash;
+        this.chunkSize = chunkSize;
+        this.start = start;
+        this.endExclusive = endExclusive;
+        this.offset = start;
+    }
+
+    /**
+     * @param channel channel of image file, it is closed together with the stream.
+     * @param size    size of image file.
+     */
+    public DiskImageStream(@NonNull FileChannel channel, long size, @NonNull String contentHash, int chunkSize) {
+        this(channel, contentHash, chunkSize, 0, size);
+    }
+
+    @Override
+    public long contentLength() {
+        return endExclusive - start;
+    }
+
+    @NonNull
+    @Override
+    public String contentHash() {
+        return contentHash;
+    }
+
+    @Nullable
+    @Override
+    public ByteBuffer nextChunk() throws IOException {
+
+        if (offset >= endExclusive) {
+            return null;
+        }
+
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate((int) Math.min(chunkSize, contentLength()));
+        }
+        buffer.clear().limit((int) Math.min(buffer.capacity(), endExclusive - offset));
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) == -1) {
+                throw new EOFException("Cached image file is shorter than expected");
+            }
+        }
+        offset += buffer.position();
+
+        return buffer.flip();
+    }
+
+    @NonNull
+    @Override
+    public ImageStream slice(long start, long end) {
+        return new DiskImageStream(channel, contentHash, chunkSize, this.start + start, this.start + end + 1);
+    }
+
+    @Override
+    public void close() {
+
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            // nothing is left to release
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.msik404.karmaappgateway.post.image;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.springframework.lang.NonNull;
+
+/**
+ * Most image formats are compressed themselves and deflate would only waste cpu on them, so only images which are
+ * not recognized as one of these formats are compressed, for example BMP, TIFF or SVG.
+ */
+public final class ImageCompression {
+
+    // enough to recognize all checked formats
+    private static final int HEAD_SIZE = 12;
+
+    private ImageCompression() {
+    }
+
+    private static boolean startsWith(@NonNull ByteBuffer head, int offset, int... signature) {
+
+        for (int i = 0; i < signature.length; i++) {
+            if ((head.get(head.position() + offset + i) & 0xff) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param head first bytes of the image, its position is not modified.
+     * @return true if image is not of already compressed format.
+     */
+    public static boolean isCompressible(@NonNull ByteBuffer head) {
+
+        if (head.remaining() < HEAD_SIZE) {
+            return false;
+        }
+
+        boolean isJpeg = startsWith(head, 0, 0xff, 0xd8, 0xff);
+        boolean isPng = startsWith(head, 0, 0x89, 'P', 'N', 'G');
+        boolean isGif = startsWith(head, 0, 'G', 'I', 'F', '8');
+        boolean isWebp = startsWith(head, 0, 'R', 'I', 'F', 'F') && startsWith(head, 8, 'W', 'E', 'B', 'P');
+        // AVIF, HEIC and other ISO base media formats
+        boolean isIsoMedia = startsWith(head, 4, 'f', 't', 'y', 'p');
+        boolean isGzip = startsWith(head, 0, 0x1f, 0x8b);
+
+        return !(isJpeg || isPng || isGif || isWebp || isIsoMedia || isGzip);
+    }
+
+    @NonNull
+    public static byte[] deflate(@NonNull byte[] data) {
+
+        var deflater = new Deflater();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            var outputStream = new ByteArrayOutputStream(data.length / 2);
+            byte[] buffer = new byte[ImageStream.TRANSFER_BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                outputStream.write(buffer, 0, length);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @param size size of inflated data.
+     * @throws DataFormatException thrown if data is not valid deflate stream.
+     */
+    @NonNull
+    public static byte[] inflate(@NonNull byte[] data, int size) throws DataFormatException {
+
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+
+            byte[] inflated = new byte[size];
+            int offset = 0;
+            while (!inflater.finished() && offset < size) {
+                int length = inflater.inflate(inflated, offset, size - offset);
+                if (length == 0 && inflater.needsInput()) {
+                    throw new DataFormatException("Deflate stream is truncated");
+                }
+                offset += length;
+            }
+            return inflated;
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.msik404.karmaappgateway.post.image;
+
+import java.nio.ByteBuffer;
+
+import org.springframework.lang.NonNull;
+
+/**
+ * Destination to which image is written chunk by chunk while it is being streamed, for example one of cache tiers.
+ * Image becomes visible only after it is committed. Sink can give up on image at any point, for example if it turns
+ * out to be too big or it could not be written, subsequent calls are then ignored. Caching is best effort, so sink
+ * failures never fail the stream.
+ */
+public interface ImageSink {
+
+    /**
+     * @param chunk next chunk of image data, its position is not modified.
+     */
+    void append(@NonNull ByteBuffer chunk);
+
+    /**
+     * @param contentHash hex encoded SHA-256 of the whole image.
+     */
+    void commit(@NonNull String contentHash);
+
+    /**
+     * Removes everything written so far, it is called if image was not streamed to the end.
+     */
+    void discard();
+
+}
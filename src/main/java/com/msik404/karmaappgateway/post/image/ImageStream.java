@@ -0,0 +1,83 @@
+package com.msik404.karmaappgateway.post.image;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+/**
+ * Image which is read chunk by chunk, so that whole image is never held in memory. Chunk is valid only until the next
+ * one is requested.
+ */
+public interface ImageStream extends Closeable {
+
+    long UNKNOWN_LENGTH = -1;
+
+    int TRANSFER_BUFFER_SIZE = 8192;
+
+    /**
+     * @return size of the whole image in bytes, UNKNOWN_LENGTH if it is not known before image is read.
+     */
+    long contentLength();
+
+    /**
+     * @return hex encoded SHA-256 of the whole image, null if it is not known before image is read.
+     */
+    @Nullable
+    String contentHash();
+
+    /**
+     * @return next chunk of image data, null if whole image was read.
+     * @throws IOException thrown if image could not be read to the end.
+     */
+    @Nullable
+    ByteBuffer nextChunk() throws IOException;
+
+    /**
+     * Must be called before anything is read. Returned stream takes over this one, so only returned stream should be
+     * closed.
+     *
+     * @param start index of the first byte, inclusive.
+     * @param end   index of the last byte, inclusive, it must be smaller than content length.
+     * @return stream of part of this image.
+     */
+    @NonNull
+    default ImageStream slice(long start, long end) {
+        return new SlicedImageStream(this, start, end);
+    }
+
+    /**
+     * Releases resources held by the stream, for example cancels backend call if image was not read to the end.
+     */
+    @Override
+    void close();
+
+    /**
+     * Writes remaining chunks to output stream. Chunks backed by accessible arrays are written directly, the rest, for
+     * example read-only views of grpc messages, are copied through single transfer buffer reused for all of them.
+     */
+    default void transferTo(@NonNull OutputStream outputStream) throws IOException {
+
+        byte[] transferBuffer = null;
+
+        ByteBuffer chunk;
+        while ((chunk = nextChunk()) != null) {
+            if (chunk.hasArray()) {
+                outputStream.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+                continue;
+            }
+            if (transferBuffer == null) {
+                transferBuffer = new byte[TRANSFER_BUFFER_SIZE];
+            }
+            while (chunk.hasRemaining()) {
+                int length = Math.min(chunk.remaining(), transferBuffer.length);
+                chunk.get(transferBuffer, 0, length);
+                outputStream.write(transferBuffer, 0, length);
+            }
+        }
+    }
+
+}
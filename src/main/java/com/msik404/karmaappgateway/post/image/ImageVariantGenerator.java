@@ -0,0 +1,244 @@
+package com.msik404.karmaappgateway.post.image;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import com.msik404.karmaappgateway.post.dto.ImageVariant;
+import com.msik404.karmaappgateway.post.exception.ImageNotFoundException;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Generates downscaled variants of images with java image io. Scaling is cpu bound, so it runs on fixed pool of
+ * worker threads with bounded queue. Concurrent requests of the same variant share single generation, like in
+ * SingleFlight.
+ * <p>
+ * Images which can not be decoded, are too big to be decoded or are not bigger than the variant become variants as
+ * they are, so that they are not decoded again. Variant can not be generated if pool is saturated or original is
+ * bigger than maxSourceSize, original should be served then.
+ */
+@Component
+public class ImageVariantGenerator {
+
+    // decoded image takes four bytes per pixel
+    private static final long MAX_SOURCE_PIXELS = 40_000_000;
+
+    private static final String FORMAT = "jpeg";
+
+    static {
+        // images are decoded from memory, there is no need for temporary files
+        ImageIO.setUseCache(false);
+    }
+
+    @FunctionalInterface
+    public interface ImageSource {
+        @NonNull
+        ImageStream open() throws ImageNotFoundException;
+    }
+
+    private record Key(@NonNull ObjectId postId, @NonNull ImageVariant variant) {
+    }
+
+    private final ConcurrentMap<Key, CompletableFuture<Optional<byte[]>>> inFlight = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor;
+    private final long maxSourceSize;
+
+    public ImageVariantGenerator(
+            @Value("${KarmaAppGateway.images.variants.threads}") int threads,
+            @Value("${KarmaAppGateway.images.variants.queue-capacity}") int queueCapacity,
+            @Value("${KarmaAppGateway.images.variants.max-source-size-bytes}") long maxSourceSize) {
+
+        var threadCounter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    var thread = new Thread(runnable, "image-variant-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        this.maxSourceSize = maxSourceSize;
+    }
+
+    /**
+     * @param source      opens original image, it is called on worker thread.
+     * @param onGenerated called with generated variant before future completes, for example to cache it.
+     * @return future of encoded variant, Optional empty if it can not be generated now and original should be served.
+     * Future completes exceptionally with exceptions thrown by source.
+     */
+    @NonNull
+    public CompletableFuture<Optional<byte[]>> generate(
+            @NonNull ObjectId postId,
+            @NonNull ImageVariant variant,
+            @NonNull ImageSource source,
+            @NonNull Consumer<byte[]> onGenerated) {
+
+        var key = new Key(postId, variant);
+        var future = new CompletableFuture<Optional<byte[]>>();
+
+        CompletableFuture<Optional<byte[]>> inFlightFuture = inFlight.putIfAbsent(key, future);
+        if (inFlightFuture != null) {
+            return inFlightFuture;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    Optional<byte[]> variantData = generate(source, variant);
+                    variantData.ifPresent(onGenerated);
+                    future.complete(variantData);
+                } catch (Throwable ex) {
+                    future.completeExceptionally(ex);
+                } finally {
+                    inFlight.remove(key, future);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            inFlight.remove(key, future);
+            future.complete(Optional.empty());
+        }
+
+        return future;
+    }
+
+    @NonNull
+    private Optional<byte[]> generate(
+            @NonNull ImageSource source,
+            @NonNull ImageVariant variant) throws IOException {
+
+        byte[] imageData;
+        try (ImageStream image = source.open()) {
+            if (image.contentLength() > maxSourceSize) {
+                return Optional.empty();
+            }
+            imageData = readAll(image);
+        }
+        if (imageData == null) {
+            return Optional.empty();
+        }
+
+        BufferedImage decodedImage = decode(imageData);
+        if (decodedImage == null) {
+            return Optional.of(imageData);
+        }
+
+        int maxDimension = variant.getMaxDimension();
+        if (decodedImage.getWidth() <= maxDimension && decodedImage.getHeight() <= maxDimension) {
+            return Optional.of(imageData);
+        }
+
+        var outputStream = new ByteArrayOutputStream();
+        ImageIO.write(scale(decodedImage, maxDimension), FORMAT, outputStream);
+        return Optional.of(outputStream.toByteArray());
+    }
+
+    /**
+     * @return image data, null if image turned out to be bigger than maxSourceSize.
+     */
+    @Nullable
+    private byte[] readAll(@NonNull ImageStream image) throws IOException {
+
+        var outputStream = new ByteArrayOutputStream();
+        byte[] transferBuffer = new byte[ImageStream.TRANSFER_BUFFER_SIZE];
+
+        ByteBuffer chunk;
+        while ((chunk = image.nextChunk()) != null) {
+            if (outputStream.size() + chunk.remaining() > maxSourceSize) {
+                return null;
+            }
+            while (chunk.hasRemaining()) {
+                int length = Math.min(chunk.remaining(), transferBuffer.length);
+                chunk.get(transferBuffer, 0, length);
+                outputStream.write(transferBuffer, 0, length);
+            }
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Dimensions are read from the header first, so that small file declaring huge image is not decoded.
+     *
+     * @return decoded image, null if format is not supported or image has too many pixels.
+     */
+    @Nullable
+    private static BufferedImage decode(@NonNull byte[] imageData) {
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(imageData))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                if ((long) reader.getWidth(0) * reader.getHeight(0) > MAX_SOURCE_PIXELS) {
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException ex) {
+            // corrupted or partially supported image is served as it is
+            return null;
+        }
+    }
+
+    /**
+     * Image is halved with bilinear interpolation until it reaches target size, single bilinear step would skip
+     * pixels when scaling down more than twice. Transparent pixels are drawn over white background, because jpeg has
+     * no alpha channel.
+     */
+    @NonNull
+    private static BufferedImage scale(@NonNull BufferedImage image, int maxDimension) {
+
+        double ratio = (double) maxDimension / Math.max(image.getWidth(), image.getHeight());
+        int targetWidth = Math.max(1, (int) Math.round(image.getWidth() * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * ratio));
+
+        BufferedImage current = image;
+        while (current.getWidth() != targetWidth || current.getHeight() != targetHeight) {
+            int nextWidth = Math.max(targetWidth, current.getWidth() / 2);
+            int nextHeight = Math.max(targetHeight, current.getHeight() / 2);
+
+            var next = new BufferedImage(nextWidth, nextHeight, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(
+                        RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, nextWidth, nextHeight);
+                graphics.drawImage(current, 0, 0, nextWidth, nextHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        }
+        return current;
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.msik404.karmaappgateway.post.image;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+/**
+ * Inflates image which is stored compressed with deflate. Compressed chunks are read from source as inflater needs
+ * them and inflated into single buffer of chunkSize bytes, which is reused for all chunks.
+ */
+public class InflatingImageStream implements ImageStream {
+
+    private final ImageStream source;
+    private final long size;
+
+    private final Inflater inflater = new Inflater();
+    private final byte[] buffer;
+
+    public InflatingImageStream(@NonNull ImageStream source, long size, int chunkSize) {
+
+        this.source = source;
+        this.size = size;
+        this.buffer = new byte[chunkSize];
+    }
+
+    @Override
+    public long contentLength() {
+        return size;
+    }
+
+    @Nullable
+    @Override
+    public String contentHash() {
+        return source.contentHash();
+    }
+
+    @Nullable
+    @Override
+    public ByteBuffer nextChunk() throws IOException {
+
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    ByteBuffer compressedChunk = source.nextChunk();
+                    if (compressedChunk == null) {
+                        throw new IOException("Compressed image is truncated");
+                    }
+                    // compressed chunk stays valid until next one is requested, which happens only once it is consumed
+                    inflater.setInput(compressedChunk);
+                }
+                int length = inflater.inflate(buffer);
+                if (length > 0) {
+                    return ByteBuffer.wrap(buffer, 0, length);
+                }
+            }
+            return null;
+        } catch (DataFormatException ex) {
+            throw new IOException("Compressed image is corrupted", ex);
+        }
+    }
+
+    @Override
+    public void close() {
+
+        inflater.end();
+        source.close();
+    }
+
+}
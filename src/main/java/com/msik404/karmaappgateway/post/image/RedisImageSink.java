@@ -0,0 +1,143 @@
+package com.msik404.karmaappgateway.post.image;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+import com.msik404.karmaappgateway.post.cache.PostRedisCache;
+import com.msik404.karmaappgateway.post.dto.ImageEncoding;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DataAccessException;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+/**
+ * Appends chunks to partial image in redis, which is stored under image content hash on commit. Images bigger than
+ * maxImageSize are discarded as soon as they exceed it, because they would take too much of redis memory.
+ * <p>
+ * Whether image is compressed is decided by its first chunk, compressible images are deflated chunk by chunk while
+ * they are being appended.
+ */
+public class RedisImageSink implements ImageSink {
+
+    private final PostRedisCache cache;
+    private final ObjectId postId;
+    private final String partialImageKey;
+
+    private final long maxImageSize;
+
+    @Nullable
+    private Deflater deflater;
+    @Nullable
+    private byte[] deflateBuffer;
+
+    private ImageEncoding encoding;
+    private long size = 0;
+    private boolean isAppended = false;
+    private boolean isDiscarded = false;
+
+    public RedisImageSink(@NonNull PostRedisCache cache, @NonNull ObjectId postId, long maxImageSize) {
+
+        this.cache = cache;
+        this.postId = postId;
+        this.partialImageKey = PostRedisCache.createPartialImageKey(postId);
+        this.maxImageSize = maxImageSize;
+    }
+
+    private void appendToPartialImage(@NonNull ByteBuffer data) {
+
+        if (data.hasRemaining()) {
+            cache.appendToPartialImage(partialImageKey, data);
+            isAppended = true;
+        }
+    }
+
+    /**
+     * Deflated output of each chunk is appended at once, so that chunk costs single round trip to redis.
+     *
+     * @param isFinished true if all input was given to deflater, then deflater is drained completely.
+     */
+    private void appendDeflated(boolean isFinished) {
+
+        assert deflater != null && deflateBuffer != null;
+
+        var deflated = new ByteArrayOutputStream();
+        while (isFinished ? !deflater.finished() : !deflater.needsInput()) {
+            int length = deflater.deflate(deflateBuffer);
+            deflated.write(deflateBuffer, 0, length);
+        }
+        appendToPartialImage(ByteBuffer.wrap(deflated.toByteArray()));
+    }
+
+    @Override
+    public void append(@NonNull ByteBuffer chunk) {
+
+        if (isDiscarded) {
+            return;
+        }
+        if (size + chunk.remaining() > maxImageSize) {
+            discard();
+            return;
+        }
+
+        if (encoding == null) {
+            encoding = cache.shouldCompress(chunk) ? ImageEncoding.DEFLATE : ImageEncoding.IDENTITY;
+            if (encoding == ImageEncoding.DEFLATE) {
+                deflater = new Deflater();
+                deflateBuffer = new byte[ImageStream.TRANSFER_BUFFER_SIZE];
+            }
+        }
+
+        try {
+            if (deflater != null) {
+                // deflater buffers part of the input, it is flushed when deflater is finished
+                deflater.setInput(chunk.duplicate());
+                appendDeflated(false);
+            } else {
+                // chunk is sent as it is, without being copied to heap array
+                appendToPartialImage(chunk);
+            }
+            size += chunk.remaining();
+        } catch (DataAccessException ex) {
+            discard();
+        }
+    }
+
+    @Override
+    public void commit(@NonNull String contentHash) {
+
+        if (isDiscarded || size == 0) {
+            return;
+        }
+        try {
+            if (deflater != null) {
+                deflater.finish();
+                appendDeflated(true);
+                deflater.end();
+            }
+            cache.commitPartialImage(postId, partialImageKey, contentHash, encoding, size);
+        } catch (DataAccessException ex) {
+            discard();
+        }
+    }
+
+    @Override
+    public void discard() {
+
+        if (isDiscarded) {
+            return;
+        }
+        isDiscarded = true;
+        if (deflater != null) {
+            deflater.end();
+        }
+        if (isAppended) {
+            try {
+                cache.discardPartialImage(partialImageKey);
+            } catch (DataAccessException ex) {
+                // partial image expires on its own
+            }
+        }
+    }
+
+}
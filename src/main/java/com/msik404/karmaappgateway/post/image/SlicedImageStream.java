@@ -0,0 +1,76 @@
+package com.msik404.karmaappgateway.post.image;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+/**
+ * Part of source image from start to end inclusive. Chunks before start are read and skipped, because source can only
+ * be read sequentially, source is not read beyond end. Returned chunks are views of source chunks.
+ */
+public class SlicedImageStream implements ImageStream {
+
+    private final ImageStream source;
+
+    private final long start;
+    private final long end;
+
+    // position in source image of the first byte of the next source chunk
+    private long position = 0;
+
+    public SlicedImageStream(@NonNull ImageStream source, long start, long end) {
+
+        this.source = source;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public long contentLength() {
+        return end - start + 1;
+    }
+
+    @Nullable
+    @Override
+    public String contentHash() {
+        return source.contentHash();
+    }
+
+    @Nullable
+    @Override
+    public ByteBuffer nextChunk() throws IOException {
+
+        while (position <= end) {
+            ByteBuffer chunk = source.nextChunk();
+            if (chunk == null) {
+                return null;
+            }
+
+            long chunkStart = position;
+            position += chunk.remaining();
+            if (position <= start) {
+                continue;
+            }
+
+            ByteBuffer slice = chunk.slice();
+            slice.limit((int) Math.min(slice.limit(), end - chunkStart + 1));
+            slice.position((int) Math.max(0, start - chunkStart));
+            return slice;
+        }
+
+        // if source was read exactly to its end, it is read once more so that it can notice it, caching stream
+        // commits cached image only then
+        if (position == source.contentLength()) {
+            source.nextChunk();
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        source.close();
+    }
+
+}
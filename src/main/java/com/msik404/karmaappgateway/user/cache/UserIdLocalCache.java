@@ -0,0 +1,45 @@
+package com.msik404.karmaappgateway.user.cache;
+
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.msik404.grpc.mongo.id.ProtoObjectId;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory username to userId mapping. Usernames can change, so cached values are only hints, callers must verify
+ * them against users microservice.
+ */
+@Component
+public class UserIdLocalCache {
+
+    private static final int MAX_CACHED_USERS = 10_000;
+
+    private final ConcurrentMap<String, ProtoObjectId> usernameToUserId = new ConcurrentHashMap<>();
+
+    @NonNull
+    public Optional<ProtoObjectId> get(@NonNull String username) {
+        return Optional.ofNullable(usernameToUserId.get(username));
+    }
+
+    public void put(@NonNull String username, @NonNull ProtoObjectId userId) {
+
+        // evict some arbitrary entry, exact LRU order is not worth the locking on this path
+        if (usernameToUserId.size() >= MAX_CACHED_USERS && !usernameToUserId.containsKey(username)) {
+            Iterator<String> iterator = usernameToUserId.keySet().iterator();
+            if (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        usernameToUserId.put(username, userId);
+    }
+
+    public void remove(@NonNull String username) {
+        usernameToUserId.remove(username);
+    }
+
+}
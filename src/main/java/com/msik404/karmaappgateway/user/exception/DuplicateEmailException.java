@@ -25,9 +25,7 @@ public class DuplicateEmailException extends RestFromGrpcException {
     @NonNull
     @Override
     public StatusRuntimeException asStatusRuntimeException() {
-        return Status.ALREADY_EXISTS
-                .withDescription(getEncodedException())
-                .asRuntimeException();
+        return toStatusRuntimeException(Status.Code.ALREADY_EXISTS);
     }
 
     @NonNull
@@ -25,9 +25,7 @@ public class UserNotFoundException extends RestFromGrpcException {
     @NonNull
     @Override
     public StatusRuntimeException asStatusRuntimeException() {
-        return Status.NOT_FOUND
-                .withDescription(getEncodedException())
-                .asRuntimeException();
+        return toStatusRuntimeException(Status.Code.NOT_FOUND);
     }
 
     @NonNull
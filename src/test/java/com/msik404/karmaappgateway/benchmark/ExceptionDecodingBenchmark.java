@@ -0,0 +1,110 @@
+package com.msik404.karmaappgateway.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.msik404.karmaappgateway.exception.RestFromGrpcException;
+import com.msik404.karmaappgateway.grpc.client.encoding.ExceptionDecoder;
+import com.msik404.karmaappgateway.grpc.client.encoding.ExceptionEncoder;
+import com.msik404.karmaappgateway.post.exception.PostNotFoundException;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ProblemDetail;
+import org.springframework.lang.NonNull;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures cost of decoding single PostNotFound error received from backend.
+ * <p>
+ * legacyDecoding reproduces decoding as it was before status details were introduced: regex compiled per error and
+ * PostNotFoundException with filled in stack trace. Stack of benchmark thread is shallower than stack of request
+ * handling thread, so legacy cost of filling it in is understated.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExceptionDecodingBenchmark {
+
+    /**
+     * PostNotFoundException as it was built before control-flow exceptions stopped filling in stack traces.
+     */
+    private static class LegacyPostNotFoundException extends RestFromGrpcException {
+
+        private LegacyPostNotFoundException() {
+            super(PostNotFoundException.ERROR_MESSAGE, true);
+        }
+
+        @NonNull
+        @Override
+        public String getExceptionId() {
+            return PostNotFoundException.Id;
+        }
+
+        @NonNull
+        @Override
+        public StatusRuntimeException asStatusRuntimeException() {
+            return toStatusRuntimeException(Status.Code.NOT_FOUND);
+        }
+
+        @NonNull
+        @Override
+        public ProblemDetail getProblemDetail() {
+            return ProblemDetail.forStatusAndDetail(HttpStatus.NOT_FOUND, getMessage());
+        }
+    }
+
+    private StatusRuntimeException descriptionEncodedException;
+    private StatusRuntimeException detailsEncodedException;
+
+    @Setup
+    public void setup() {
+
+        descriptionEncodedException = Status.NOT_FOUND
+                .withDescription(ExceptionEncoder.encode(PostNotFoundException.Id, PostNotFoundException.ERROR_MESSAGE))
+                .asRuntimeException();
+
+        detailsEncodedException = new PostNotFoundException().asStatusRuntimeException();
+    }
+
+    @Benchmark
+    public RestFromGrpcException legacyDecoding() {
+
+        String encodedException = descriptionEncodedException.getMessage();
+
+        String regex = String.format("\\A.*?%s([^ ]+)", ExceptionEncoder.EXCEPTION_ID_PREFIX);
+        Matcher matcher = Pattern.compile(regex).matcher(encodedException);
+
+        if (matcher.find() && matcher.group(1).equals(PostNotFoundException.Id)) {
+            return new LegacyPostNotFoundException();
+        }
+        throw new IllegalStateException(encodedException);
+    }
+
+    @Benchmark
+    public RestFromGrpcException descriptionDecoding() {
+        return ExceptionDecoder.decodeException(descriptionEncodedException.getMessage());
+    }
+
+    @Benchmark
+    public RestFromGrpcException statusDetailsDecoding() {
+        return ExceptionDecoder.decodeException(detailsEncodedException);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+
+        var options = new OptionsBuilder()
+                .include(ExceptionDecodingBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(options).run();
+    }
+
+}
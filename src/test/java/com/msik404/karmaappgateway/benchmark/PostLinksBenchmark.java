@@ -0,0 +1,107 @@
+package com.msik404.karmaappgateway.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.msik404.karmaappgateway.post.PostController;
+import com.msik404.karmaappgateway.post.PostResponseModelAssembler;
+import com.msik404.karmaappgateway.post.PostResponseModelAssembler.LinkTemplate;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.hateoas.Link;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
+
+/**
+ * Measures cost of building links of single page of 100 posts.
+ * <p>
+ * methodOnLinks reproduces link building as it was before link templates were introduced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PostLinksBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    private final PostResponseModelAssembler assembler = new PostResponseModelAssembler();
+
+    private List<ObjectId> postIds;
+
+    @Setup
+    public void setup() {
+
+        // state has thread scope, so request is bound to the thread which runs benchmark
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        postIds = new ArrayList<>(PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            postIds.add(new ObjectId());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Benchmark
+    public List<Link> methodOnLinks() {
+
+        List<Link> links = new ArrayList<>(PAGE_SIZE * 10);
+        for (ObjectId postId : postIds) {
+
+            links.add(linkTo(methodOn(PostController.class).findImageById(postId, null, null, null, null, null)).withSelfRel());
+
+            links.add(linkTo(methodOn(PostController.class).rate(postId, false)).withSelfRel());
+            links.add(linkTo(methodOn(PostController.class).rate(postId, true)).withSelfRel());
+            links.add(linkTo(methodOn(PostController.class).unrate(postId)).withSelfRel());
+
+            links.add(linkTo(methodOn(PostController.class).hideByUser(postId)).withSelfRel());
+            links.add(linkTo(methodOn(PostController.class).unhideByUser(postId)).withSelfRel());
+            links.add(linkTo(methodOn(PostController.class).deleteByUser(postId)).withSelfRel());
+
+            links.add(linkTo(methodOn(PostController.class).hideByMod(postId)).withSelfRel());
+
+            links.add(linkTo(methodOn(PostController.class).activateByAdmin(postId)).withSelfRel());
+            links.add(linkTo(methodOn(PostController.class).deleteByAdmin(postId)).withSelfRel());
+        }
+        return links;
+    }
+
+    @Benchmark
+    public List<String> templateLinks() {
+
+        String baseUri = assembler.getCurrentBaseUri();
+
+        List<String> hrefs = new ArrayList<>(PAGE_SIZE * 10);
+        for (ObjectId postId : postIds) {
+            String postIdHexString = postId.toHexString();
+            for (LinkTemplate template : assembler.getLinkTemplates()) {
+                hrefs.add(template.expand(baseUri, postIdHexString));
+            }
+        }
+        return hrefs;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+
+        var options = new OptionsBuilder()
+                .include(PostLinksBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.msik404.karmaappgateway.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.msik404.grpc.mongo.id.ProtoObjectId;
+import com.msik404.karmaappgateway.grpc.client.view.ProtoPostView;
+import com.msik404.karmaappgateway.post.PostResponseModelAssembler;
+import com.msik404.karmaappgateway.post.converter.PostPageHttpMessageConverter;
+import com.msik404.karmaappgateway.post.converter.PostPageProtobufHttpMessageConverter;
+import com.msik404.karmaappgateway.post.dto.PostPage;
+import com.msik404.karmaappgateway.post.dto.PostView;
+import com.msik404.karmaappposts.grpc.Post;
+import com.msik404.karmaappposts.grpc.PostVisibility;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.protobuf.ProtobufHttpMessageConverter;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Measures time of encoding single page of 100 posts in each supported format. Payload sizes are printed before
+ * benchmarks are run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PostPageEncodingBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    private PostPageHttpMessageConverter jsonConverter;
+    private PostPageProtobufHttpMessageConverter protobufConverter;
+
+    private PostPage postPage;
+
+    @Setup
+    public void setup() {
+
+        // state has thread scope, so request is bound to the thread which runs benchmark
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        var assembler = new PostResponseModelAssembler();
+        jsonConverter = new PostPageHttpMessageConverter(new ObjectMapper(), assembler);
+        protobufConverter = new PostPageProtobufHttpMessageConverter(assembler);
+
+        List<PostView> posts = new ArrayList<>(PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            var post = Post.newBuilder()
+                    .setPostId(ProtoObjectId.newBuilder().setHexString(new ObjectId().toHexString()).build())
+                    .setUserId(ProtoObjectId.newBuilder().setHexString(new ObjectId().toHexString()).build())
+                    .setHeadline("Some basic headline number " + i)
+                    .setText("Some basic text of the post number " + i + " which is a bit longer than headline")
+                    .setKarmaScore(PAGE_SIZE - i)
+                    .setVisibility(PostVisibility.VIS_ACTIVE)
+                    .build();
+            posts.add(ProtoPostView.of(post, "username" + i));
+        }
+        postPage = new PostPage(posts);
+    }
+
+    @TearDown
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    private byte[] writeJson(MediaType mediaType) throws IOException {
+
+        var outputMessage = new MockHttpOutputMessage();
+        jsonConverter.write(postPage, mediaType, outputMessage);
+        return outputMessage.getBodyAsBytes();
+    }
+
+    @Benchmark
+    public byte[] json() throws IOException {
+        return writeJson(MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public byte[] compactJson() throws IOException {
+        return writeJson(PostPageHttpMessageConverter.COMPACT_JSON);
+    }
+
+    @Benchmark
+    public byte[] cbor() throws IOException {
+        return writeJson(MediaType.APPLICATION_CBOR);
+    }
+
+    @Benchmark
+    public byte[] protobuf() throws IOException {
+
+        var outputMessage = new MockHttpOutputMessage();
+        protobufConverter.write(postPage, ProtobufHttpMessageConverter.PROTOBUF, outputMessage);
+        return outputMessage.getBodyAsBytes();
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+
+        var benchmark = new PostPageEncodingBenchmark();
+        benchmark.setup();
+        System.out.printf("Payload of %d posts in bytes%n", PAGE_SIZE);
+        System.out.printf("json: %d%n", benchmark.json().length);
+        System.out.printf("compact json: %d%n", benchmark.compactJson().length);
+        System.out.printf("cbor: %d%n", benchmark.cbor().length);
+        System.out.printf("protobuf: %d%n", benchmark.protobuf().length);
+        benchmark.tearDown();
+
+        var options = new OptionsBuilder()
+                .include(PostPageEncodingBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,187 @@
+package com.msik404.karmaappgateway.benchmark;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import com.msik404.grpc.mongo.id.ProtoObjectId;
+import com.msik404.karmaappgateway.grpc.client.zipper.PostViewZipper;
+import com.msik404.karmaappgateway.post.PostResponseModelAssembler;
+import com.msik404.karmaappgateway.post.dto.PostDto;
+import com.msik404.karmaappgateway.post.dto.PostResponse;
+import com.msik404.karmaappgateway.post.dto.PostView;
+import com.msik404.karmaappgateway.post.dto.Visibility;
+import com.msik404.karmaappposts.grpc.Post;
+import com.msik404.karmaappposts.grpc.PostVisibility;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Measures cost of turning single page of 100 posts received from backend into JSON response body, starting after
+ * posts response is received, including username join and links of each post.
+ * <p>
+ * legacyMapping reproduces mapping as it was before PostView was introduced: posts were copied into PostDto with
+ * parsed ObjectIds and usernames were joined through map of boxed post indices. Both mappings build links the same way,
+ * with PostResponseModelAssembler, so that they differ only by the way posts are viewed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PostPageMappingBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+    private static final int CREATORS_AMOUNT = 20;
+
+    private record LegacyPostResponse(
+            @JsonSerialize(using = ToStringSerializer.class) ObjectId id,
+            String username,
+            String headline,
+            String text,
+            long karmaScore,
+            Visibility visibility) {
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PostResponseModelAssembler assembler = new PostResponseModelAssembler();
+
+    private List<Post> posts;
+    private Map<String, String> userIdHexStringToUsername;
+
+    @Setup
+    public void setup() {
+
+        // state has thread scope, so request is bound to the thread which runs benchmark
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        userIdHexStringToUsername = new HashMap<>(CREATORS_AMOUNT);
+        List<String> creatorIds = new ArrayList<>(CREATORS_AMOUNT);
+        for (int i = 0; i < CREATORS_AMOUNT; i++) {
+            String creatorId = new ObjectId().toHexString();
+            creatorIds.add(creatorId);
+            userIdHexStringToUsername.put(creatorId, "username" + i);
+        }
+
+        posts = new ArrayList<>(PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            posts.add(Post.newBuilder()
+                    .setPostId(ProtoObjectId.newBuilder().setHexString(new ObjectId().toHexString()).build())
+                    .setUserId(ProtoObjectId.newBuilder().setHexString(creatorIds.get(i % CREATORS_AMOUNT)).build())
+                    .setHeadline("headline" + i)
+                    .setText("text" + i)
+                    .setKarmaScore(PAGE_SIZE - i)
+                    .setVisibility(PostVisibility.VIS_ACTIVE)
+                    .build());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    private List<String> findUsernames(List<String> userIdHexStrings) {
+        return userIdHexStrings.stream().map(userIdHexStringToUsername::get).toList();
+    }
+
+    @Benchmark
+    public byte[] legacyMapping() throws JsonProcessingException {
+
+        Map<String, List<Integer>> userIdHexStringToPostIndices = new HashMap<>();
+        for (int i = 0; i < posts.size(); i++) {
+            userIdHexStringToPostIndices
+                    .computeIfAbsent(posts.get(i).getUserId().getHexString(), key -> new ArrayList<>())
+                    .add(i);
+        }
+
+        List<String> userIdHexStrings = new ArrayList<>(userIdHexStringToPostIndices.keySet());
+        List<String> usernames = findUsernames(userIdHexStrings);
+
+        List<PostDto> postsWithUsernames = new ArrayList<>(Collections.nCopies(posts.size(), null));
+        for (int i = 0; i < userIdHexStrings.size(); i++) {
+            for (int postIdx : userIdHexStringToPostIndices.get(userIdHexStrings.get(i))) {
+                Post post = posts.get(postIdx);
+                postsWithUsernames.set(postIdx, new PostDto(
+                        new ObjectId(post.getPostId().getHexString()),
+                        new ObjectId(post.getUserId().getHexString()),
+                        usernames.get(i),
+                        post.getHeadline(),
+                        post.getText(),
+                        post.getKarmaScore(),
+                        post.getVisibility()
+                ));
+            }
+        }
+
+        String baseUri = assembler.getCurrentBaseUri();
+
+        List<EntityModel<LegacyPostResponse>> responses = new ArrayList<>(postsWithUsernames.size());
+        for (PostDto post : postsWithUsernames) {
+            var response = new LegacyPostResponse(
+                    post.getId(),
+                    post.getUsername(),
+                    post.getHeadline(),
+                    post.getText(),
+                    post.getKarmaScore(),
+                    post.getVisibility()
+            );
+            responses.add(EntityModel.of(response, assembler.toLinks(baseUri, post.getId().toHexString())));
+        }
+
+        return objectMapper.writeValueAsBytes(responses);
+    }
+
+    @Benchmark
+    public byte[] viewMapping() throws JsonProcessingException {
+
+        int[] usernameIndices = new int[posts.size()];
+        Map<String, Integer> userIdHexStringToUsernameIdx = new HashMap<>();
+        List<String> userIdHexStrings = new ArrayList<>();
+        for (int i = 0; i < posts.size(); i++) {
+            String userIdHexString = posts.get(i).getUserId().getHexString();
+            Integer usernameIdx = userIdHexStringToUsernameIdx.get(userIdHexString);
+            if (usernameIdx == null) {
+                usernameIdx = userIdHexStrings.size();
+                userIdHexStringToUsernameIdx.put(userIdHexString, usernameIdx);
+                userIdHexStrings.add(userIdHexString);
+            }
+            usernameIndices[i] = usernameIdx;
+        }
+
+        List<String> usernames = findUsernames(userIdHexStrings);
+
+        List<PostView> postsWithUsernames = PostViewZipper.zipIntoPostsWithUsernames(
+                posts, usernames, usernameIndices);
+
+        String baseUri = assembler.getCurrentBaseUri();
+
+        List<EntityModel<PostResponse>> responses = new ArrayList<>(postsWithUsernames.size());
+        for (PostView post : postsWithUsernames) {
+            responses.add(EntityModel.of(new PostResponse(post), assembler.toLinks(baseUri, post.idHexString())));
+        }
+
+        return objectMapper.writeValueAsBytes(responses);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+
+        var options = new OptionsBuilder()
+                .include(PostPageMappingBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.msik404.karmaappgateway.grpc.client;
+
+import com.msik404.karmaappgateway.grpc.client.encoding.exception.BadEncodingException;
+import com.msik404.karmaappgateway.grpc.client.exception.BackendFailureException;
+import com.msik404.karmaappgateway.grpc.client.exception.DeadlineExceededException;
+import com.msik404.karmaappgateway.grpc.client.exception.ServiceUnavailableException;
+import io.grpc.Status;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GrpcFuturesTest {
+
+    @Test
+    void decodeGrpcException_UnencodedUnavailable_ServiceUnavailableException() {
+
+        // when
+        RuntimeException ex = GrpcFutures.decodeGrpcException(
+                Status.UNAVAILABLE.withDescription("Connection refused").asRuntimeException());
+
+        // then
+        assertInstanceOf(ServiceUnavailableException.class, ex);
+        assertInstanceOf(BackendFailureException.class, ex);
+    }
+
+    @Test
+    void decodeGrpcException_UnencodedResourceExhausted_ServiceUnavailableException() {
+
+        // when
+        RuntimeException ex = GrpcFutures.decodeGrpcException(Status.RESOURCE_EXHAUSTED.asRuntimeException());
+
+        // then
+        assertInstanceOf(ServiceUnavailableException.class, ex);
+    }
+
+    @Test
+    void decodeGrpcException_DeadlineExceeded_DeadlineExceededException() {
+
+        // when
+        RuntimeException ex = GrpcFutures.decodeGrpcException(Status.DEADLINE_EXCEEDED.asRuntimeException());
+
+        // then
+        assertInstanceOf(DeadlineExceededException.class, ex);
+    }
+
+    @Test
+    void decodeGrpcException_OtherUnencodedStatus_BadEncodingException() {
+
+        // when
+        RuntimeException ex = GrpcFutures.decodeGrpcException(Status.INTERNAL.asRuntimeException());
+
+        // then
+        assertInstanceOf(BadEncodingException.class, ex);
+    }
+
+}
@@ -0,0 +1,184 @@
+package com.msik404.karmaappgateway.grpc.client.breaker;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.msik404.grpc.mongo.id.ProtoObjectId;
+import com.msik404.karmaappposts.grpc.ImageResponse;
+import com.msik404.karmaappposts.grpc.PostsGrpc;
+import io.grpc.*;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private static final String BACKEND_NAME = "posts";
+
+    private static final double FAILURE_RATE_THRESHOLD = 0.5;
+    private static final int SLIDING_WINDOW_SIZE = 4;
+    private static final int MINIMUM_CALLS = 2;
+    private static final long OPEN_DURATION_MILLIS = 50;
+    private static final int HALF_OPEN_CALLS = 1;
+
+    private static CircuitBreaker createBreaker(long openDurationMillis) {
+
+        return new CircuitBreaker(
+                BACKEND_NAME,
+                FAILURE_RATE_THRESHOLD,
+                SLIDING_WINDOW_SIZE,
+                MINIMUM_CALLS,
+                openDurationMillis,
+                HALF_OPEN_CALLS
+        );
+    }
+
+    private static void open(CircuitBreaker circuitBreaker) {
+
+        for (int i = 0; i < MINIMUM_CALLS; i++) {
+            assertTrue(circuitBreaker.tryAcquirePermission());
+            circuitBreaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    /**
+     * Channel whose calls never reach the network.
+     */
+    private static class NoopChannel extends Channel {
+
+        @Override
+        public <ReqT, RespT> ClientCall<ReqT, RespT> newCall(
+                MethodDescriptor<ReqT, RespT> methodDescriptor,
+                CallOptions callOptions) {
+
+            return new ClientCall<>() {
+
+                @Override
+                public void start(Listener<RespT> responseListener, Metadata headers) {
+                }
+
+                @Override
+                public void request(int numMessages) {
+                }
+
+                @Override
+                public void cancel(String message, Throwable cause) {
+                }
+
+                @Override
+                public void halfClose() {
+                }
+
+                @Override
+                public void sendMessage(ReqT message) {
+                }
+            };
+        }
+
+        @Override
+        public String authority() {
+            return BACKEND_NAME;
+        }
+    }
+
+    @Test
+    void tryAcquirePermission_FailureRateReachedThreshold_CallIsRejected() {
+
+        // given
+        CircuitBreaker circuitBreaker = createBreaker(60_000);
+
+        // when
+        open(circuitBreaker);
+
+        // then
+        assertFalse(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    void onSuccess_TrialCallSucceeded_BreakerIsClosed() throws InterruptedException {
+
+        // given
+        CircuitBreaker circuitBreaker = createBreaker(OPEN_DURATION_MILLIS);
+        open(circuitBreaker);
+        Thread.sleep(OPEN_DURATION_MILLIS + 10);
+
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+        // when
+        circuitBreaker.onSuccess();
+
+        // then
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    void tryAcquirePermission_TrialOutcomeWasNeverRecorded_NewTrialIsLetThroughAfterOpenDuration()
+            throws InterruptedException {
+
+        // given
+        CircuitBreaker circuitBreaker = createBreaker(OPEN_DURATION_MILLIS);
+        open(circuitBreaker);
+        Thread.sleep(OPEN_DURATION_MILLIS + 10);
+
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+
+        // when
+        Thread.sleep(OPEN_DURATION_MILLIS + 10);
+
+        // then
+        assertTrue(circuitBreaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    void interceptCall_TrialCallIsCancelledBeforeStart_PermissionIsGivenBack() throws InterruptedException {
+
+        // given
+        CircuitBreaker circuitBreaker = createBreaker(OPEN_DURATION_MILLIS);
+        var interceptor = new CircuitBreakerInterceptor(circuitBreaker, new SimpleMeterRegistry().counter("rejected"));
+        open(circuitBreaker);
+        Thread.sleep(OPEN_DURATION_MILLIS + 10);
+
+        ClientCall<ProtoObjectId, ImageResponse> call = interceptor.interceptCall(
+                PostsGrpc.getFindImageMethod(), CallOptions.DEFAULT, new NoopChannel());
+        assertFalse(circuitBreaker.tryAcquirePermission());
+
+        // when
+        call.cancel("client is gone", null);
+
+        // then
+        assertTrue(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    void interceptCall_BreakerIsOpen_CallIsClosedWithRejectedStatus() {
+
+        // given
+        CircuitBreaker circuitBreaker = createBreaker(60_000);
+        var interceptor = new CircuitBreakerInterceptor(circuitBreaker, new SimpleMeterRegistry().counter("rejected"));
+        open(circuitBreaker);
+
+        var closingStatus = new AtomicReference<StatusRuntimeException>();
+
+        // when
+        ClientCall<ProtoObjectId, ImageResponse> call = interceptor.interceptCall(
+                PostsGrpc.getFindImageMethod(), CallOptions.DEFAULT, new NoopChannel());
+
+        call.start(new ClientCall.Listener<>() {
+
+            @Override
+            public void onClose(Status status, Metadata trailers) {
+                closingStatus.set(status.asRuntimeException(trailers));
+            }
+        }, new Metadata());
+
+        // then
+        assertNotNull(closingStatus.get());
+        assertTrue(CircuitBreakerInterceptor.isRejected(closingStatus.get()));
+        assertFalse(CircuitBreakerInterceptor.isRejected(Status.UNAVAILABLE.asRuntimeException(new Metadata())));
+    }
+
+}
@@ -0,0 +1,190 @@
+package com.msik404.karmaappgateway.grpc.client.stream;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Empty;
+import com.msik404.karmaappposts.grpc.CreatePostChunk;
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.lang.Nullable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GrpcImageUploadTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private static final CreatePostChunk CHUNK = CreatePostChunk.newBuilder()
+            .setImageData(ByteString.copyFromUtf8("chunk"))
+            .build();
+
+    /**
+     * Request stream whose readiness is controlled by the test, as transport would do it.
+     */
+    private static class FakeRequestStream extends ClientCallStreamObserver<CreatePostChunk> {
+
+        private final List<CreatePostChunk> sentChunks = new CopyOnWriteArrayList<>();
+
+        private volatile boolean isReady = false;
+        private volatile boolean isCompleted = false;
+        private volatile Runnable onReadyHandler;
+
+        void becomeReady() {
+
+            isReady = true;
+            onReadyHandler.run();
+        }
+
+        @Override
+        public boolean isReady() {
+            return isReady;
+        }
+
+        @Override
+        public void setOnReadyHandler(Runnable onReadyHandler) {
+            this.onReadyHandler = onReadyHandler;
+        }
+
+        @Override
+        public void cancel(@Nullable String message, @Nullable Throwable cause) {
+        }
+
+        @Override
+        public void disableAutoInboundFlowControl() {
+        }
+
+        @Override
+        public void request(int count) {
+        }
+
+        @Override
+        public void setMessageCompression(boolean enable) {
+        }
+
+        @Override
+        public void onNext(CreatePostChunk value) {
+            sentChunks.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+            isCompleted = true;
+        }
+    }
+
+    private FakeRequestStream requestStream;
+    private GrpcImageUpload upload;
+
+    @BeforeEach
+    void setUp() {
+
+        requestStream = new FakeRequestStream();
+        upload = new GrpcImageUpload();
+        upload.beforeStart(requestStream);
+    }
+
+    private CompletableFuture<Boolean> sendAsync() {
+
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return upload.send(CHUNK);
+            } catch (InterruptedException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+    }
+
+    @Test
+    void send_TransportIsReady_ChunkIsSentWithoutWaiting() throws InterruptedException {
+
+        // given
+        requestStream.becomeReady();
+
+        // when
+        boolean isSent = upload.send(CHUNK);
+
+        // then
+        assertTrue(isSent);
+        assertEquals(List.of(CHUNK), requestStream.sentChunks);
+    }
+
+    @Test
+    void send_TransportIsNotReady_ChunkIsSentOnlyAfterOnReadyHandlerRuns() throws Exception {
+
+        // given
+        CompletableFuture<Boolean> sending = sendAsync();
+        Thread.sleep(100);
+
+        assertFalse(sending.isDone());
+        assertTrue(requestStream.sentChunks.isEmpty());
+
+        // when
+        requestStream.becomeReady();
+
+        // then
+        assertTrue(sending.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(List.of(CHUNK), requestStream.sentChunks);
+    }
+
+    @Test
+    void send_CallFailsWhileWaitingForTransport_SendingIsStoppedAndResponseFails() throws Exception {
+
+        // given
+        CompletableFuture<Boolean> sending = sendAsync();
+        Thread.sleep(100);
+
+        // when
+        upload.onError(Status.DEADLINE_EXCEEDED.asRuntimeException());
+
+        // then
+        assertFalse(sending.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(requestStream.sentChunks.isEmpty());
+
+        var ex = assertThrows(ExecutionException.class, () -> upload.getResponse().get());
+        assertEquals(Status.Code.DEADLINE_EXCEEDED, Status.fromThrowable(ex.getCause()).getCode());
+    }
+
+    @Test
+    void send_CallHasAlreadyCompleted_ChunkIsNotSent() throws InterruptedException {
+
+        // given
+        requestStream.becomeReady();
+        upload.onCompleted();
+
+        // when
+        boolean isSent = upload.send(CHUNK);
+
+        // then
+        assertFalse(isSent);
+        assertTrue(requestStream.sentChunks.isEmpty());
+    }
+
+    @Test
+    void complete_AllChunksAreSent_RequestStreamIsCompletedAndResponseArrives() throws Exception {
+
+        // given
+        requestStream.becomeReady();
+        assertTrue(upload.send(CHUNK));
+
+        // when
+        upload.complete();
+        upload.onNext(Empty.getDefaultInstance());
+        upload.onCompleted();
+
+        // then
+        assertTrue(requestStream.isCompleted);
+        assertEquals(Empty.getDefaultInstance(), upload.getResponse().get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+}
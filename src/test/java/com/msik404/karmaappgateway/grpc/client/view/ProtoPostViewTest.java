@@ -0,0 +1,55 @@
+package com.msik404.karmaappgateway.grpc.client.view;
+
+import com.msik404.grpc.mongo.id.ProtoObjectId;
+import com.msik404.karmaappgateway.post.dto.PostDto;
+import com.msik404.karmaappposts.grpc.Post;
+import com.msik404.karmaappposts.grpc.PostVisibility;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProtoPostViewTest {
+
+    private static Post.Builder createPostBuilder() {
+
+        return Post.newBuilder()
+                .setPostId(ProtoObjectId.newBuilder().setHexString(new ObjectId().toHexString()).build())
+                .setUserId(ProtoObjectId.newBuilder().setHexString(new ObjectId().toHexString()).build())
+                .setKarmaScore(0)
+                .setVisibility(PostVisibility.VIS_ACTIVE);
+    }
+
+    @Test
+    void headlineAndText_FieldsAreNotSet_EmptyStringsAsInFeedResponses() {
+
+        // given
+        Post post = createPostBuilder().build();
+
+        // when
+        var view = ProtoPostView.of(post, "username");
+
+        // then
+        assertEquals("", view.headline());
+        assertEquals("", view.text());
+
+        PostDto postDto = PostDto.of(view);
+        assertEquals("", postDto.getHeadline());
+        assertEquals("", postDto.getText());
+    }
+
+    @Test
+    void headlineAndText_FieldsAreSet_ValuesAreReturned() {
+
+        // given
+        Post post = createPostBuilder().setHeadline("headline").setText("text").build();
+
+        // when
+        var view = ProtoPostView.of(post, "username");
+
+        // then
+        assertEquals("headline", view.headline());
+        assertEquals("text", view.text());
+    }
+
+}
@@ -0,0 +1,292 @@
+package com.msik404.karmaappgateway.post;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.msik404.karmaappgateway.converter.ImageVariantConverter;
+import com.msik404.karmaappgateway.converter.ObjectIdConverter;
+import com.msik404.karmaappgateway.post.cache.PostRedisCache;
+import com.msik404.karmaappgateway.post.dto.ImageVariant;
+import com.msik404.karmaappgateway.post.dto.ScrollPosition;
+import com.msik404.karmaappgateway.post.image.ByteArrayImageStream;
+import com.msik404.karmaappgateway.post.image.ImageStream;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.format.support.FormattingConversionService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@ExtendWith(MockitoExtension.class)
+class PostControllerTest {
+
+    private static final byte[] IMAGE_DATA = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+    private static final String IMAGE_ETAG = ETags.strong(PostRedisCache.computeContentHash(IMAGE_DATA));
+
+    private static final int FEED_SIZE = 10;
+    private static final long FEED_VERSION = 42;
+    private static final String FEED_ETAG = ETags.weak(Long.toString(FEED_VERSION));
+
+    @Mock
+    private PostService postService;
+
+    private MockMvc mockMvc;
+
+    private final ObjectId postId = ObjectId.get();
+
+    @BeforeEach
+    void setUp() {
+
+        var conversionService = new FormattingConversionService();
+        conversionService.addConverter(new ObjectIdConverter());
+        conversionService.addConverter(new ImageVariantConverter());
+
+        mockMvc = MockMvcBuilders.standaloneSetup(new PostController(postService, new ObjectMapper()))
+                .setConversionService(conversionService)
+                .build();
+    }
+
+    private String imagePath() {
+        return String.format("/guest/posts/%s/image", postId.toHexString());
+    }
+
+    private void givenImage() {
+        when(postService.openImageStream(postId, ImageVariant.ORIGINAL)).thenReturn(new ByteArrayImageStream(IMAGE_DATA));
+    }
+
+    /**
+     * Image body is streamed and feed page is completed asynchronously, so request is dispatched again once response
+     * is ready.
+     */
+    private ResultActions performAsync(RequestBuilder requestBuilder) throws Exception {
+
+        MvcResult result = mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        return mockMvc.perform(asyncDispatch(result));
+    }
+
+    @Test
+    void findImageById_NoRange_WholeImageIsServed() throws Exception {
+
+        // given
+        givenImage();
+
+        // when
+        performAsync(get(imagePath()))
+
+                // then
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().string(HttpHeaders.ETAG, IMAGE_ETAG))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, IMAGE_DATA.length))
+                .andExpect(content().bytes(IMAGE_DATA));
+    }
+
+    @Test
+    void findImageById_SatisfiableRange_PartialContentIsServed() throws Exception {
+
+        // given
+        givenImage();
+
+        // when
+        performAsync(get(imagePath()).header(HttpHeaders.RANGE, "bytes=2-5"))
+
+                // then
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 4))
+                .andExpect(content().bytes(Arrays.copyOfRange(IMAGE_DATA, 2, 6)));
+    }
+
+    @Test
+    void findImageById_SuffixRange_LastBytesAreServed() throws Exception {
+
+        // given
+        givenImage();
+
+        // when
+        performAsync(get(imagePath()).header(HttpHeaders.RANGE, "bytes=-3"))
+
+                // then
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 7-9/10"))
+                .andExpect(content().bytes(Arrays.copyOfRange(IMAGE_DATA, 7, 10)));
+    }
+
+    @Test
+    void findImageById_RangeStartsBeyondImage_RangeNotSatisfiableAndImageIsClosed() throws Exception {
+
+        // given
+        ImageStream image = spy(new ByteArrayImageStream(IMAGE_DATA));
+        when(postService.openImageStream(postId, ImageVariant.ORIGINAL)).thenReturn(image);
+
+        // when
+        mockMvc.perform(get(imagePath()).header(HttpHeaders.RANGE, "bytes=10-20"))
+
+                // then
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+
+        verify(image).close();
+    }
+
+    @Test
+    void findImageById_IfRangeMatchesImage_PartialContentIsServed() throws Exception {
+
+        // given
+        givenImage();
+
+        // when
+        performAsync(get(imagePath())
+                .header(HttpHeaders.RANGE, "bytes=0-1")
+                .header(HttpHeaders.IF_RANGE, IMAGE_ETAG))
+
+                // then
+                .andExpect(status().isPartialContent())
+                .andExpect(content().bytes(Arrays.copyOfRange(IMAGE_DATA, 0, 2)));
+    }
+
+    @Test
+    void findImageById_IfRangeDoesNotMatchImage_WholeImageIsServed() throws Exception {
+
+        // given
+        givenImage();
+
+        // when
+        performAsync(get(imagePath())
+                .header(HttpHeaders.RANGE, "bytes=0-1")
+                .header(HttpHeaders.IF_RANGE, ETags.strong("other-image")))
+
+                // then
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+                .andExpect(content().bytes(IMAGE_DATA));
+    }
+
+    @Test
+    void findImageById_MultipleRanges_WholeImageIsServed() throws Exception {
+
+        // given
+        givenImage();
+
+        // when
+        performAsync(get(imagePath()).header(HttpHeaders.RANGE, "bytes=0-1,4-5"))
+
+                // then
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(IMAGE_DATA));
+    }
+
+    @Test
+    void findPaginatedPosts_IfNoneMatchesTopPageVersion_NotModifiedWithoutPostsLookup() throws Exception {
+
+        // given
+        when(postService.findFeedVersion(FEED_SIZE, null)).thenReturn(OptionalLong.of(FEED_VERSION));
+
+        // when
+        performAsync(get("/guest/posts")
+                .param("size", Integer.toString(FEED_SIZE))
+                .header(HttpHeaders.IF_NONE_MATCH, FEED_ETAG))
+
+                // then
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, FEED_ETAG))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"));
+
+        verify(postService, never()).findPaginatedPosts(anyInt(), anyList(), any(), any());
+    }
+
+    @Test
+    void findPaginatedPosts_IfNoneMatchesNextPageVersion_NotModifiedWithoutPostsLookup() throws Exception {
+
+        // given
+        var position = new ScrollPosition(ObjectId.get(), 5L);
+        when(postService.findFeedVersion(FEED_SIZE, position)).thenReturn(OptionalLong.of(FEED_VERSION));
+
+        // when
+        performAsync(get("/guest/posts")
+                .param("size", Integer.toString(FEED_SIZE))
+                .param("post_id", position.postId().toHexString())
+                .param("karma_score", Long.toString(position.karmaScore()))
+                .header(HttpHeaders.IF_NONE_MATCH, "W/\"1\", " + FEED_ETAG))
+
+                // then
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, FEED_ETAG));
+
+        verify(postService, never()).findPaginatedPosts(anyInt(), anyList(), any(), any());
+    }
+
+    @Test
+    void findPaginatedPosts_CreatorPostsAreRequested_FeedVersionIsNotChecked() throws Exception {
+
+        // given
+        when(postService.findPaginatedPosts(anyInt(), anyList(), any(), eq("username")))
+                .thenReturn(new CompletableFuture<>());
+
+        // when
+        mockMvc.perform(get("/guest/posts")
+                        .param("username", "username")
+                        .header(HttpHeaders.IF_NONE_MATCH, FEED_ETAG))
+
+                // then
+                .andExpect(request().asyncStarted());
+
+        verify(postService, never()).findFeedVersion(anyInt(), any());
+    }
+
+    @Test
+    void findImageById_IfNoneMatchesCachedImage_NotModifiedWithoutOpeningImage() throws Exception {
+
+        // given
+        when(postService.findCachedImageHash(postId, ImageVariant.ORIGINAL))
+                .thenReturn(Optional.of(PostRedisCache.computeContentHash(IMAGE_DATA)));
+
+        // when
+        mockMvc.perform(get(imagePath()).header(HttpHeaders.IF_NONE_MATCH, IMAGE_ETAG))
+
+                // then
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, IMAGE_ETAG));
+
+        verify(postService, never()).openImageStream(any(), any());
+    }
+
+    @Test
+    void findImageById_IfNoneDoesNotMatchCachedImage_WholeImageIsServed() throws Exception {
+
+        // given
+        when(postService.findCachedImageHash(postId, ImageVariant.ORIGINAL))
+                .thenReturn(Optional.of(PostRedisCache.computeContentHash(IMAGE_DATA)));
+        givenImage();
+
+        // when
+        performAsync(get(imagePath()).header(HttpHeaders.IF_NONE_MATCH, ETags.strong("other-image")))
+
+                // then
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, IMAGE_ETAG))
+                .andExpect(content().bytes(IMAGE_DATA));
+    }
+
+}
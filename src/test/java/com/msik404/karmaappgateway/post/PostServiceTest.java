@@ -0,0 +1,248 @@
+package com.msik404.karmaappgateway.post;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.msik404.karmaappgateway.grpc.client.GrpcService;
+import com.msik404.karmaappgateway.post.cache.*;
+import com.msik404.karmaappgateway.post.creation.PostCreationQueue;
+import com.msik404.karmaappgateway.post.dto.ImageEncoding;
+import com.msik404.karmaappgateway.post.exception.ImageNotFoundException;
+import com.msik404.karmaappgateway.post.image.ByteArrayImageStream;
+import com.msik404.karmaappgateway.post.image.ImageStream;
+import com.msik404.karmaappgateway.post.image.ImageVariantGenerator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PostServiceTest {
+
+    private static final int MIN_REQUESTS = 2;
+    private static final int SKETCH_WIDTH = 1024;
+    private static final int CHUNK_SIZE = 4;
+    private static final long REDIS_MAX_IMAGE_SIZE = 1024;
+    private static final long FILL_MAX_WAIT_MILLIS = 10_000;
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private static final byte[] IMAGE_DATA = "image-data".getBytes();
+
+    @TempDir
+    Path directory;
+
+    @Mock
+    private GrpcService grpcService;
+    @Mock
+    private PostRedisCache cache;
+    @Mock
+    private PostRedisCacheHandlerService cacheHandler;
+    @Mock
+    private CacheMaintenanceService cacheMaintenance;
+    @Mock
+    private DiskImageCacheInvalidator diskImageCacheInvalidator;
+    @Mock
+    private ImageVariantGenerator imageVariantGenerator;
+    @Mock
+    private PostCreationQueue creationQueue;
+
+    private PostService postService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+
+        postService = new PostService(
+                grpcService,
+                cache,
+                cacheHandler,
+                cacheMaintenance,
+                new DiskImageCache(directory.toString(), 1024 * 1024, CHUNK_SIZE, Duration.ofHours(1)),
+                diskImageCacheInvalidator,
+                new ImageAdmissionFilter(MIN_REQUESTS, SKETCH_WIDTH, new SimpleMeterRegistry()),
+                new ImageFillCoalescer(FILL_MAX_WAIT_MILLIS, new SimpleMeterRegistry()),
+                imageVariantGenerator,
+                creationQueue,
+                new SimpleMeterRegistry()
+        );
+        ReflectionTestUtils.setField(postService, "imageChunkSize", CHUNK_SIZE);
+        ReflectionTestUtils.setField(postService, "redisMaxImageSize", REDIS_MAX_IMAGE_SIZE);
+    }
+
+    private static byte[] readAll(ImageStream imageStream) throws IOException {
+
+        try (imageStream) {
+            var outputStream = new ByteArrayOutputStream();
+            imageStream.transferTo(outputStream);
+            return outputStream.toByteArray();
+        }
+    }
+
+    private void fetchFromBackend(ObjectId postId) throws ImageNotFoundException, IOException {
+
+        when(cache.getCachedImageMetadata(postId)).thenReturn(Optional.empty());
+        when(grpcService.openImageStream(postId)).thenReturn(new ByteArrayImageStream(IMAGE_DATA));
+
+        assertArrayEquals(IMAGE_DATA, readAll(postService.openImageStream(postId)));
+    }
+
+    @Test
+    void openImageStream_ImageIsRequestedWhileItIsBeingFetched_BackendStreamIsOpenedOnce() throws Exception {
+
+        // given
+        ObjectId postId = ObjectId.get();
+        when(cache.getCachedImageMetadata(postId)).thenReturn(Optional.empty());
+        when(grpcService.openImageStream(postId)).thenReturn(new ByteArrayImageStream(IMAGE_DATA));
+
+        ImageStream firstImage = postService.openImageStream(postId);
+
+        // when
+        CompletableFuture<byte[]> secondImageData = CompletableFuture.supplyAsync(() -> {
+            try {
+                return readAll(postService.openImageStream(postId));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(secondImageData.isDone());
+
+        assertArrayEquals(IMAGE_DATA, readAll(firstImage));
+
+        // then
+        assertArrayEquals(IMAGE_DATA, secondImageData.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        verify(grpcService, times(1)).openImageStream(postId);
+    }
+
+    @Test
+    void openImageStream_ImageIsNotFoundWhileOtherRequestWaits_WaitingRequestGetsImageNotFound() throws Exception {
+
+        // given
+        ObjectId postId = ObjectId.get();
+        var backendCalled = new CountDownLatch(1);
+        var backendReleased = new CountDownLatch(1);
+
+        when(cache.getCachedImageMetadata(postId)).thenReturn(Optional.empty());
+        when(cache.isImageMarkedMissing(postId)).thenReturn(false, true);
+        when(grpcService.openImageStream(postId)).thenAnswer(invocation -> {
+            backendCalled.countDown();
+            backendReleased.await();
+            throw new ImageNotFoundException();
+        });
+
+        CompletableFuture<ImageStream> firstImage = CompletableFuture.supplyAsync(
+                () -> postService.openImageStream(postId));
+        assertTrue(backendCalled.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // when
+        CompletableFuture<ImageStream> secondImage = CompletableFuture.supplyAsync(
+                () -> postService.openImageStream(postId));
+        Thread.sleep(100);
+        backendReleased.countDown();
+
+        // then
+        var firstEx = assertThrows(ExecutionException.class, () -> firstImage.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertInstanceOf(ImageNotFoundException.class, firstEx.getCause());
+        var secondEx = assertThrows(ExecutionException.class, () -> secondImage.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertInstanceOf(ImageNotFoundException.class, secondEx.getCause());
+        verify(grpcService, times(1)).openImageStream(postId);
+    }
+
+    @Test
+    void openImageStream_ImageIsFetchedFromBackendOnce_ImageIsCachedOnlyOnDisk()
+            throws ImageNotFoundException, IOException {
+
+        // given
+        ObjectId postId = ObjectId.get();
+
+        // when
+        fetchFromBackend(postId);
+
+        // then
+        verify(cache, never()).appendToPartialImage(anyString(), any(ByteBuffer.class));
+        verify(cache, never()).commitPartialImage(any(), anyString(), anyString(), any(), anyLong());
+    }
+
+    @Test
+    void openImageStream_DiskHitReachesMinRequests_ImageIsPromotedFromDiskToRedis()
+            throws ImageNotFoundException, IOException {
+
+        // given
+        ObjectId postId = ObjectId.get();
+        fetchFromBackend(postId);
+
+        when(cache.getCachedImageHash(postId)).thenReturn(Optional.empty());
+
+        // when
+        byte[] servedImageData = readAll(postService.openImageStream(postId));
+
+        // then
+        assertArrayEquals(IMAGE_DATA, servedImageData);
+        verify(grpcService, times(1)).openImageStream(postId);
+        verify(cache, atLeastOnce()).appendToPartialImage(anyString(), any(ByteBuffer.class));
+        verify(cache).commitPartialImage(
+                eq(postId),
+                anyString(),
+                eq(PostRedisCache.computeContentHash(IMAGE_DATA)),
+                eq(ImageEncoding.IDENTITY),
+                eq((long) IMAGE_DATA.length)
+        );
+    }
+
+    @Test
+    void openImageStream_ImageIsAlreadyInRedis_ImageIsServedFromDiskWithoutPromotion()
+            throws ImageNotFoundException, IOException {
+
+        // given
+        ObjectId postId = ObjectId.get();
+        fetchFromBackend(postId);
+
+        when(cache.getCachedImageHash(postId)).thenReturn(Optional.of(PostRedisCache.computeContentHash(IMAGE_DATA)));
+
+        // when
+        byte[] servedImageData = readAll(postService.openImageStream(postId));
+
+        // then
+        assertArrayEquals(IMAGE_DATA, servedImageData);
+        verify(cache, never()).appendToPartialImage(anyString(), any(ByteBuffer.class));
+    }
+
+    @Test
+    void openImageStream_ImageWasAlreadyAdmittedOnDiskHit_RedisIsNotAskedAgain()
+            throws ImageNotFoundException, IOException {
+
+        // given
+        ObjectId postId = ObjectId.get();
+        fetchFromBackend(postId);
+
+        when(cache.getCachedImageHash(postId)).thenReturn(Optional.empty());
+        readAll(postService.openImageStream(postId));
+
+        // when
+        byte[] servedImageData = readAll(postService.openImageStream(postId));
+
+        // then
+        assertArrayEquals(IMAGE_DATA, servedImageData);
+        verify(cache, times(1)).getCachedImageHash(postId);
+        verify(cache, times(1)).commitPartialImage(any(), anyString(), anyString(), any(), anyLong());
+    }
+
+}
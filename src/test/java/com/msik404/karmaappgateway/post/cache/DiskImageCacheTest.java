@@ -0,0 +1,320 @@
+package com.msik404.karmaappgateway.post.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import com.msik404.karmaappgateway.post.dto.ImageVariant;
+import com.msik404.karmaappgateway.post.image.ImageSink;
+import com.msik404.karmaappgateway.post.image.ImageStream;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiskImageCacheTest {
+
+    private static final int CHUNK_SIZE = 4;
+    private static final Duration MAX_LINK_AGE = Duration.ofHours(1);
+
+    @TempDir
+    Path directory;
+
+    private static void store(DiskImageCache diskCache, ObjectId postId, byte[] imageData) {
+
+        ImageSink sink = diskCache.createSink(postId);
+        sink.append(ByteBuffer.wrap(imageData, 0, imageData.length / 2));
+        sink.append(ByteBuffer.wrap(imageData, imageData.length / 2, imageData.length - imageData.length / 2));
+        sink.commit(PostRedisCache.computeContentHash(imageData));
+    }
+
+    private static byte[] readAll(ImageStream imageStream) throws IOException {
+
+        try (imageStream) {
+            var outputStream = new ByteArrayOutputStream();
+            imageStream.transferTo(outputStream);
+            return outputStream.toByteArray();
+        }
+    }
+
+    @Test
+    void open_ImageWasCommitted_ImageWithItsHashIsReturned() throws IOException {
+
+        // given
+        var diskCache = new DiskImageCache(directory.toString(), 1024, CHUNK_SIZE, MAX_LINK_AGE);
+        ObjectId postId = ObjectId.get();
+        byte[] imageData = "image-data".getBytes();
+
+        store(diskCache, postId, imageData);
+
+        // when
+        Optional<ImageStream> optionalImage = diskCache.open(postId);
+
+        // then
+        assertTrue(optionalImage.isPresent());
+        ImageStream image = optionalImage.get();
+        assertEquals(imageData.length, image.contentLength());
+        assertEquals(PostRedisCache.computeContentHash(imageData), image.contentHash());
+        assertArrayEquals(imageData, readAll(image));
+        assertEquals(Optional.of(PostRedisCache.computeContentHash(imageData)), diskCache.findContentHash(postId));
+    }
+
+    @Test
+    void open_ImageWasDiscarded_EmptyOptional() throws IOException {
+
+        // given
+        var diskCache = new DiskImageCache(directory.toString(), 1024, CHUNK_SIZE, MAX_LINK_AGE);
+        ObjectId postId = ObjectId.get();
+
+        ImageSink sink = diskCache.createSink(postId);
+        sink.append(ByteBuffer.wrap("image-data".getBytes()));
+        sink.discard();
+
+        // when
+        Optional<ImageStream> optionalImage = diskCache.open(postId);
+
+        // then
+        assertTrue(optionalImage.isEmpty());
+        try (var tmpFiles = Files.list(directory.resolve("tmp"))) {
+            assertEquals(0, tmpFiles.count());
+        }
+    }
+
+    @Test
+    void createSink_TwoPostsWithTheSameImage_ImageIsStoredOnce() throws IOException {
+
+        // given
+        var diskCache = new DiskImageCache(directory.toString(), 1024, CHUNK_SIZE, MAX_LINK_AGE);
+        ObjectId firstPostId = ObjectId.get();
+        ObjectId secondPostId = ObjectId.get();
+        byte[] imageData = "image-data".getBytes();
+
+        // when
+        store(diskCache, firstPostId, imageData);
+        store(diskCache, secondPostId, imageData);
+
+        // then
+        try (var images = Files.list(directory.resolve("images"))) {
+            assertEquals(1, images.count());
+        }
+        assertArrayEquals(imageData, readAll(diskCache.open(firstPostId).orElseThrow()));
+        assertArrayEquals(imageData, readAll(diskCache.open(secondPostId).orElseThrow()));
+    }
+
+    @Test
+    void createSink_VariantIsCommitted_VariantIsCachedSeparatelyAndSurvivesRebuild() throws IOException {
+
+        // given
+        var diskCache = new DiskImageCache(directory.toString(), 1024, CHUNK_SIZE, MAX_LINK_AGE);
+        ObjectId postId = ObjectId.get();
+        byte[] thumbData = "thumb-data".getBytes();
+
+        ImageSink sink = diskCache.createSink(postId, ImageVariant.THUMB);
+        sink.append(ByteBuffer.wrap(thumbData));
+        sink.commit(PostRedisCache.computeContentHash(thumbData));
+
+        // when
+        var rebuiltDiskCache = new DiskImageCache(directory.toString(), 1024, CHUNK_SIZE, MAX_LINK_AGE);
+
+        // then
+        assertTrue(rebuiltDiskCache.open(postId).isEmpty());
+        assertTrue(rebuiltDiskCache.open(postId, ImageVariant.MEDIUM).isEmpty());
+        assertArrayEquals(thumbData, readAll(rebuiltDiskCache.open(postId, ImageVariant.THUMB).orElseThrow()));
+    }
+
+    @Test
+    void createSink_TotalSizeExceedsMaxSize_LeastRecentlyUsedImageIsEvicted() throws IOException {
+
+        // given
+        var diskCache = new DiskImageCache(directory.toString(), 20, CHUNK_SIZE, MAX_LINK_AGE);
+        ObjectId firstPostId = ObjectId.get();
+        ObjectId secondPostId = ObjectId.get();
+        ObjectId thirdPostId = ObjectId.get();
+
+        store(diskCache, firstPostId, "first-img".getBytes());
+        store(diskCache, secondPostId, "second-im".getBytes());
+        // first image becomes the most recently used
+        readAll(diskCache.open(firstPostId).orElseThrow());
+
+        // when
+        store(diskCache, thirdPostId, "third-img".getBytes());
+
+        // then
+        assertTrue(diskCache.open(firstPostId).isPresent());
+        assertTrue(diskCache.open(secondPostId).isEmpty());
+        assertTrue(diskCache.findContentHash(secondPostId).isEmpty());
+        assertTrue(diskCache.open(thirdPostId).isPresent());
+    }
+
+    @Test
+    void createSink_ImageIsBiggerThanMaxSize_ImageIsNotCached() throws IOException {
+
+        // given
+        var diskCache = new DiskImageCache(directory.toString(), 4, CHUNK_SIZE, MAX_LINK_AGE);
+        ObjectId postId = ObjectId.get();
+
+        // when
+        store(diskCache, postId, "image-data".getBytes());
+
+        // then
+        assertTrue(diskCache.open(postId).isEmpty());
+    }
+
+    @Test
+    void constructor_DirectoryHasCachedImagesAndLeftovers_IndexIsRebuiltAndLeftoversAreRemoved() throws IOException {
+
+        // given
+        var diskCache = new DiskImageCache(directory.toString(), 1024, CHUNK_SIZE, MAX_LINK_AGE);
+        ObjectId postId = ObjectId.get();
+        byte[] imageData = "image-data".getBytes();
+        store(diskCache, postId, imageData);
+
+        // leftovers of writes interrupted by crash
+        Files.write(directory.resolve("tmp").resolve("interrupted.tmp"), "partial".getBytes());
+        String orphanedImageHash = PostRedisCache.computeContentHash("orphaned".getBytes());
+        Files.write(directory.resolve("images").resolve(orphanedImageHash), "orphaned".getBytes());
+        ObjectId danglingPostId = ObjectId.get();
+        Files.writeString(
+                directory.resolve("links").resolve(danglingPostId.toHexString()),
+                PostRedisCache.computeContentHash("missing".getBytes())
+        );
+
+        // when
+        var rebuiltDiskCache = new DiskImageCache(directory.toString(), 1024, CHUNK_SIZE, MAX_LINK_AGE);
+
+        // then
+        assertArrayEquals(imageData, readAll(rebuiltDiskCache.open(postId).orElseThrow()));
+        assertTrue(rebuiltDiskCache.open(danglingPostId).isEmpty());
+        assertFalse(Files.exists(directory.resolve("tmp").resolve("interrupted.tmp")));
+        assertFalse(Files.exists(directory.resolve("images").resolve(orphanedImageHash)));
+        assertFalse(Files.exists(directory.resolve("links").resolve(danglingPostId.toHexString())));
+    }
+
+    @Test
+    void remove_ImageIsCached_LinkAndImageFileAreDeleted() throws IOException {
+
+        // given
+        var diskCache = new DiskImageCache(directory.toString(), 1024, CHUNK_SIZE, MAX_LINK_AGE);
+        ObjectId postId = ObjectId.get();
+        byte[] imageData = "image-data".getBytes();
+        store(diskCache, postId, imageData);
+
+        // when
+        diskCache.remove(postId);
+
+        // then
+        assertTrue(diskCache.open(postId).isEmpty());
+        assertTrue(diskCache.findContentHash(postId).isEmpty());
+        assertFalse(Files.exists(directory.resolve("links").resolve(postId.toHexString())));
+        assertFalse(Files.exists(directory.resolve("images").resolve(PostRedisCache.computeContentHash(imageData))));
+    }
+
+    @Test
+    void remove_ImageIsSharedWithOtherPost_ImageIsKeptForOtherPost() throws IOException {
+
+        // given
+        var diskCache = new DiskImageCache(directory.toString(), 1024, CHUNK_SIZE, MAX_LINK_AGE);
+        ObjectId removedPostId = ObjectId.get();
+        ObjectId otherPostId = ObjectId.get();
+        byte[] imageData = "image-data".getBytes();
+        store(diskCache, removedPostId, imageData);
+        store(diskCache, otherPostId, imageData);
+
+        // when
+        diskCache.remove(removedPostId);
+
+        // then
+        assertTrue(diskCache.open(removedPostId).isEmpty());
+        assertArrayEquals(imageData, readAll(diskCache.open(otherPostId).orElseThrow()));
+    }
+
+    @Test
+    void open_ImageIsRemovedWhileBeingRead_ImageIsReadToTheEnd() throws IOException {
+
+        // given
+        var diskCache = new DiskImageCache(directory.toString(), 1024, CHUNK_SIZE, MAX_LINK_AGE);
+        ObjectId postId = ObjectId.get();
+        byte[] imageData = "image-data".getBytes();
+        store(diskCache, postId, imageData);
+
+        ImageStream image = diskCache.open(postId).orElseThrow();
+
+        // when
+        diskCache.remove(postId);
+
+        // then
+        assertArrayEquals(imageData, readAll(image));
+    }
+
+    @Test
+    void constructor_LinkIsOlderThanMaxLinkAge_ImageIsNotServed() throws IOException {
+
+        // given
+        var diskCache = new DiskImageCache(directory.toString(), 1024, CHUNK_SIZE, MAX_LINK_AGE);
+        ObjectId postId = ObjectId.get();
+        store(diskCache, postId, "image-data".getBytes());
+
+        Path link = directory.resolve("links").resolve(postId.toHexString());
+        Files.setLastModifiedTime(link, FileTime.from(Instant.now().minus(MAX_LINK_AGE).minusSeconds(1)));
+
+        // when
+        var rebuiltDiskCache = new DiskImageCache(directory.toString(), 1024, CHUNK_SIZE, MAX_LINK_AGE);
+
+        // then
+        assertTrue(rebuiltDiskCache.open(postId).isEmpty());
+        assertFalse(Files.exists(link));
+    }
+
+    @Test
+    void open_LinkIsOlderThanMaxLinkAge_EmptyOptional() throws IOException {
+
+        // given
+        var diskCache = new DiskImageCache(directory.toString(), 1024, CHUNK_SIZE, Duration.ZERO);
+        ObjectId postId = ObjectId.get();
+
+        // when
+        store(diskCache, postId, "image-data".getBytes());
+
+        // then
+        assertTrue(diskCache.findContentHash(postId).isEmpty());
+        assertTrue(diskCache.open(postId).isEmpty());
+    }
+
+    @Test
+    void remove_PostHasCachedVariants_VariantsAreRemovedToo() throws IOException {
+
+        // given
+        var diskCache = new DiskImageCache(directory.toString(), 1024, CHUNK_SIZE, MAX_LINK_AGE);
+        ObjectId postId = ObjectId.get();
+        store(diskCache, postId, "image-data".getBytes());
+        for (ImageVariant variant : new ImageVariant[]{ImageVariant.THUMB, ImageVariant.MEDIUM}) {
+            byte[] variantData = variant.name().getBytes();
+            ImageSink sink = diskCache.createSink(postId, variant);
+            sink.append(ByteBuffer.wrap(variantData));
+            sink.commit(PostRedisCache.computeContentHash(variantData));
+        }
+
+        // when
+        diskCache.remove(postId);
+
+        // then
+        for (ImageVariant variant : ImageVariant.values()) {
+            assertTrue(diskCache.open(postId, variant).isEmpty());
+            assertTrue(diskCache.findContentHash(postId, variant).isEmpty());
+        }
+        try (var links = Files.list(directory.resolve("links"))) {
+            assertEquals(0, links.count());
+        }
+        try (var images = Files.list(directory.resolve("images"))) {
+            assertEquals(0, images.count());
+        }
+    }
+
+}
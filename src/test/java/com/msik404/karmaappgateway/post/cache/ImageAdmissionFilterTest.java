@@ -0,0 +1,84 @@
+package com.msik404.karmaappgateway.post.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageAdmissionFilterTest {
+
+    private static final int MIN_REQUESTS = 2;
+    private static final int SKETCH_WIDTH = 1024;
+
+    @Test
+    void admit_ImageWasRequestedOnce_False() {
+
+        // given
+        var filter = new ImageAdmissionFilter(MIN_REQUESTS, SKETCH_WIDTH, new SimpleMeterRegistry());
+        ObjectId postId = ObjectId.get();
+
+        // when
+        filter.recordRequest(postId);
+
+        // then
+        assertFalse(filter.admit(postId));
+    }
+
+    @Test
+    void admit_ImageWasRequestedMinRequestsTimes_True() {
+
+        // given
+        var filter = new ImageAdmissionFilter(MIN_REQUESTS, SKETCH_WIDTH, new SimpleMeterRegistry());
+        ObjectId postId = ObjectId.get();
+
+        // when
+        for (int i = 0; i < MIN_REQUESTS; i++) {
+            filter.recordRequest(postId);
+        }
+
+        // then
+        assertTrue(filter.admit(postId));
+    }
+
+    @Test
+    void recordRequest_SampleSizeIsReached_CountersAreHalved() {
+
+        // given
+        var filter = new ImageAdmissionFilter(MIN_REQUESTS, SKETCH_WIDTH, new SimpleMeterRegistry());
+        ObjectId popularPostId = ObjectId.get();
+        for (int i = 0; i < 8; i++) {
+            filter.recordRequest(popularPostId);
+        }
+        int estimateBeforeAging = filter.estimateRequests(popularPostId);
+
+        // when
+        int sampleSize = 10 * SKETCH_WIDTH;
+        for (int i = 8; i < sampleSize; i++) {
+            filter.recordRequest(ObjectId.get());
+        }
+
+        // then
+        assertEquals(8, estimateBeforeAging);
+        assertTrue(filter.estimateRequests(popularPostId) < estimateBeforeAging);
+    }
+
+    @Test
+    void recordRequest_RequestReachesMinRequests_TrueOnlyForThatRequest() {
+
+        // given
+        var filter = new ImageAdmissionFilter(MIN_REQUESTS, SKETCH_WIDTH, new SimpleMeterRegistry());
+        ObjectId postId = ObjectId.get();
+
+        // when
+        boolean isReachedByFirstRequest = filter.recordRequest(postId);
+        boolean isReachedBySecondRequest = filter.recordRequest(postId);
+        boolean isReachedByThirdRequest = filter.recordRequest(postId);
+
+        // then
+        assertFalse(isReachedByFirstRequest);
+        assertTrue(isReachedBySecondRequest);
+        assertFalse(isReachedByThirdRequest);
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.msik404.karmaappgateway.post.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KarmaScoreChangeQueueTest {
+
+    private static final int CAPACITY = 2;
+
+    @Test
+    void take_ChangesOfDifferentPosts_ReturnedInOfferOrder() throws InterruptedException {
+
+        // given
+        var queue = new KarmaScoreChangeQueue(CAPACITY, new SimpleMeterRegistry());
+        ObjectId firstPostId = ObjectId.get();
+        ObjectId secondPostId = ObjectId.get();
+
+        // when
+        queue.offer(firstPostId, 1);
+        queue.offer(secondPostId, -1);
+
+        // then
+        assertEquals(firstPostId, queue.take().postId());
+        assertEquals(secondPostId, queue.take().postId());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void offer_PostIsAlreadyQueued_DeltasAreSummedUpAndPlaceIsKept() throws InterruptedException {
+
+        // given
+        var queue = new KarmaScoreChangeQueue(CAPACITY, new SimpleMeterRegistry());
+        ObjectId firstPostId = ObjectId.get();
+        ObjectId secondPostId = ObjectId.get();
+
+        queue.offer(firstPostId, 1);
+        queue.offer(secondPostId, 1);
+
+        // when
+        queue.offer(firstPostId, 2);
+
+        // then
+        assertEquals(2, queue.size());
+
+        KarmaScoreChangeQueue.KarmaScoreChange change = queue.take();
+
+        assertEquals(firstPostId, change.postId());
+        assertEquals(3, change.delta());
+    }
+
+    @Test
+    void offer_QueueIsFull_OldestChangeIsDropped() throws InterruptedException {
+
+        // given
+        var queue = new KarmaScoreChangeQueue(CAPACITY, new SimpleMeterRegistry());
+        ObjectId oldestPostId = ObjectId.get();
+        ObjectId secondPostId = ObjectId.get();
+        ObjectId newestPostId = ObjectId.get();
+
+        queue.offer(oldestPostId, 1);
+        queue.offer(secondPostId, 1);
+
+        // when
+        queue.offer(newestPostId, 1);
+
+        // then
+        assertEquals(CAPACITY, queue.size());
+        assertEquals(secondPostId, queue.take().postId());
+        assertEquals(newestPostId, queue.take().postId());
+    }
+
+    @Test
+    void offer_PostWasTaken_ChangeIsQueuedAgain() throws InterruptedException {
+
+        // given
+        var queue = new KarmaScoreChangeQueue(CAPACITY, new SimpleMeterRegistry());
+        ObjectId postId = ObjectId.get();
+
+        queue.offer(postId, 1);
+        queue.take();
+
+        // when
+        queue.offer(postId, -1);
+
+        // then
+        KarmaScoreChangeQueue.KarmaScoreChange change = queue.take();
+
+        assertEquals(postId, change.postId());
+        assertEquals(-1, change.delta());
+    }
+
+}
@@ -0,0 +1,173 @@
+package com.msik404.karmaappgateway.post.cache;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.util.concurrent.Futures;
+import com.msik404.karmaappgateway.grpc.client.GrpcFutures;
+import com.msik404.karmaappgateway.grpc.client.GrpcService;
+import com.msik404.karmaappgateway.grpc.client.exception.ServiceUnavailableException;
+import com.msik404.karmaappgateway.post.dto.PostDto;
+import com.msik404.karmaappgateway.post.dto.PostView;
+import com.msik404.karmaappgateway.post.dto.ScrollPosition;
+import com.msik404.karmaappgateway.post.dto.Visibility;
+import io.grpc.Status;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PostRedisCacheHandlerServiceTest {
+
+    private static final int SIZE = 10;
+    private static final List<Visibility> ACTIVE = List.of(Visibility.ACTIVE);
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Mock
+    private PostRedisCache cache;
+    @Mock
+    private GrpcService grpcService;
+
+    private PostRedisCacheHandlerService cacheHandler;
+
+    @BeforeEach
+    void setUp() {
+        cacheHandler = new PostRedisCacheHandlerService(cache, grpcService);
+    }
+
+    /**
+     * Future failed with status produced by grpc itself, for example when backend refuses connections. It is decoded
+     * the same way as futures returned by grpc service.
+     */
+    private static <T> CompletableFuture<T> failedWith(Status status) {
+        return GrpcFutures.toCompletableFuture(Futures.immediateFailedFuture(status.asRuntimeException()));
+    }
+
+    private static PostDto createPost() {
+        return new PostDto(new ObjectId(), new ObjectId(), "username", "headline", "text", 0L, Visibility.ACTIVE);
+    }
+
+    @Test
+    void findTopNHandler_BackendIsUnavailableAndCacheIsMissing_StalePostsAreReturned() throws Exception {
+
+        // given
+        List<PostDto> stalePosts = List.of(createPost());
+
+        when(cache.isFresh()).thenReturn(true);
+        when(cache.findTopNCached(SIZE)).thenReturn(Optional.empty());
+        when(grpcService.findTopNPosts(SIZE, ACTIVE)).thenReturn(failedWith(Status.UNAVAILABLE));
+        when(cache.findTopNStale(SIZE)).thenReturn(stalePosts);
+
+        // when
+        List<PostView> posts = cacheHandler.findTopNHandler(SIZE, ACTIVE).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        // then
+        assertEquals(stalePosts, posts);
+    }
+
+    @Test
+    void findNextNHandler_BackendIsUnavailableAndCacheIsMissing_StalePostsAreReturned() throws Exception {
+
+        // given
+        var position = new ScrollPosition(new ObjectId(), 5L);
+        List<PostDto> stalePosts = List.of(createPost());
+
+        when(cache.isFresh()).thenReturn(true);
+        when(cache.findNextNCached(SIZE, position)).thenReturn(Optional.empty());
+        when(grpcService.findNextNPosts(SIZE, ACTIVE, position)).thenReturn(failedWith(Status.UNAVAILABLE));
+        when(cache.findNextNStale(SIZE, position)).thenReturn(stalePosts);
+
+        // when
+        List<PostView> posts = cacheHandler.findNextNHandler(SIZE, ACTIVE, position)
+                .get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        // then
+        assertEquals(stalePosts, posts);
+    }
+
+    @Test
+    void findTopNHandler_BackendIsUnavailableAndNothingIsCached_ServiceUnavailableException() {
+
+        // given
+        when(cache.isFresh()).thenReturn(true);
+        when(cache.findTopNCached(SIZE)).thenReturn(Optional.empty());
+        when(grpcService.findTopNPosts(SIZE, ACTIVE)).thenReturn(failedWith(Status.UNAVAILABLE));
+        when(cache.findTopNStale(SIZE)).thenReturn(List.of());
+
+        // when
+        CompletableFuture<List<PostView>> postsFuture = cacheHandler.findTopNHandler(SIZE, ACTIVE);
+
+        // then
+        var ex = assertThrows(ExecutionException.class, () -> postsFuture.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertInstanceOf(ServiceUnavailableException.class, GrpcFutures.unwrap(ex.getCause()));
+    }
+
+    @Test
+    void findTopNHandler_BackendIsUnavailable_StaleCacheIsReadOffCallingThread() throws Exception {
+
+        // given
+        var readingThread = new AtomicReference<Thread>();
+
+        when(cache.isFresh()).thenReturn(true);
+        when(cache.findTopNCached(SIZE)).thenReturn(Optional.empty());
+        when(grpcService.findTopNPosts(SIZE, ACTIVE)).thenReturn(failedWith(Status.UNAVAILABLE));
+        when(cache.findTopNStale(SIZE)).thenAnswer(invocation -> {
+            readingThread.set(Thread.currentThread());
+            return List.of(createPost());
+        });
+
+        // when
+        cacheHandler.findTopNHandler(SIZE, ACTIVE).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        // then
+        assertNotNull(readingThread.get());
+        assertNotSame(Thread.currentThread(), readingThread.get());
+    }
+
+    @Test
+    void findTopNHandler_BackendIsUnavailableAndStaleCacheCanNotBeRead_ServiceUnavailableException() {
+
+        // given
+        when(cache.isFresh()).thenReturn(true);
+        when(cache.findTopNCached(SIZE)).thenReturn(Optional.empty());
+        when(grpcService.findTopNPosts(SIZE, ACTIVE)).thenReturn(failedWith(Status.UNAVAILABLE));
+        when(cache.findTopNStale(SIZE)).thenThrow(new RedisConnectionFailureException("redis is down"));
+
+        // when
+        CompletableFuture<List<PostView>> postsFuture = cacheHandler.findTopNHandler(SIZE, ACTIVE);
+
+        // then
+        var ex = assertThrows(ExecutionException.class, () -> postsFuture.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertInstanceOf(ServiceUnavailableException.class, GrpcFutures.unwrap(ex.getCause()));
+    }
+
+    @Test
+    void findTopNHandler_BackendErrorIsNotEncoded_StaleCacheIsNotRead() {
+
+        // given
+        when(cache.isFresh()).thenReturn(true);
+        when(cache.findTopNCached(SIZE)).thenReturn(Optional.empty());
+        when(grpcService.findTopNPosts(SIZE, ACTIVE)).thenReturn(failedWith(Status.INTERNAL));
+
+        // when
+        CompletableFuture<List<PostView>> postsFuture = cacheHandler.findTopNHandler(SIZE, ACTIVE);
+
+        // then
+        assertThrows(ExecutionException.class, () -> postsFuture.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        verify(cache, never()).findTopNStale(anyInt());
+    }
+
+}
@@ -1,13 +1,18 @@
 package com.msik404.karmaappgateway.post.cache;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.OptionalDouble;
+import java.util.OptionalLong;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.msik404.karmaappgateway.RedisConfiguration;
 import com.msik404.karmaappgateway.TestingDataGenerator;
+import com.msik404.karmaappgateway.post.dto.ImageEncoding;
+import com.msik404.karmaappgateway.post.dto.ImageMetadataDto;
 import com.msik404.karmaappgateway.post.dto.PostDto;
 import com.msik404.karmaappgateway.post.dto.ScrollPosition;
 import org.bson.types.ObjectId;
@@ -37,6 +42,10 @@ class PostRedisCacheTest {
     private static final TestingDataGenerator.CachedPostComparator TEST_COMPARATOR =
             new TestingDataGenerator.CachedPostComparator();
 
+    // keys which PostRedisCache keeps private, removed directly to simulate their expiry
+    private static final byte[] FRESH_MARKER_KEY = "posts-fresh".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FEED_VERSION_KEY = "posts-version".getBytes(StandardCharsets.UTF_8);
+
     public static final GenericContainer<?> REDIS_CONTAINER = new GenericContainer(
             DockerImageName.parse("redis:alpine")).withExposedPorts(6379);
 
@@ -112,6 +121,24 @@ class PostRedisCacheTest {
         assertTrue(isCacheEmpty);
     }
 
+    @Test
+    void isFresh_CacheWasReinitialized_True() {
+        assertTrue(redisCache.isFresh());
+    }
+
+    @Test
+    void isFresh_CacheIsEmpty_False() {
+
+        // given
+        redisConnectionFactory.getConnection().serverCommands().flushAll();
+
+        // when
+        boolean isCacheFresh = redisCache.isFresh();
+
+        // then
+        assertFalse(isCacheFresh);
+    }
+
     @Test
     void findTopNCached_AllCachedPosts_AllCachedPostsFound() {
 
@@ -233,6 +260,73 @@ class PostRedisCacheTest {
         assertTrue(optionalNextCachedPosts.isEmpty());
     }
 
+    @Test
+    void findTopNStale_MoreThanCached_AllCachedPostsFound() {
+
+        // given
+        int size = TEST_CACHED_POSTS.size() + 1;
+
+        // when
+        List<PostDto> cachedPosts = redisCache.findTopNStale(size);
+
+        // then
+        assertEquals(TEST_CACHED_POSTS.size(), cachedPosts.size());
+
+        for (int i = 0; i < cachedPosts.size(); i++) {
+            assertEquals(TEST_CACHED_POSTS.get(i), cachedPosts.get(i));
+        }
+    }
+
+    @Test
+    void findNextNStale_NextSizeIsFiveAndTopSizeIsThree_FiveAfterTopThreeFound() {
+
+        // given
+        int nextSize = 5;
+        int topSize = 3;
+
+        PostDto lastPost = TEST_CACHED_POSTS.get(topSize - 1);
+        var position = new ScrollPosition(lastPost.getId(), lastPost.getKarmaScore());
+
+        // when
+        List<PostDto> nextCachedPosts = redisCache.findNextNStale(nextSize, position);
+
+        // then
+        assertEquals(nextSize, nextCachedPosts.size());
+
+        List<PostDto> groundTruthNextPosts = TEST_CACHED_POSTS.subList(topSize, topSize + nextSize);
+
+        for (int i = 0; i < nextCachedPosts.size(); i++) {
+            assertEquals(groundTruthNextPosts.get(i), nextCachedPosts.get(i));
+        }
+    }
+
+    @Test
+    void findNextNStale_PositionPostIsNotCachedAndSizeIsMoreThanCached_PostsWithLowerScoreFound() {
+
+        // given
+        int size = TEST_CACHED_POSTS.size();
+        int topSize = 3;
+
+        PostDto lastPost = TEST_CACHED_POSTS.get(topSize - 1);
+        var position = new ScrollPosition(lastPost.getId(), lastPost.getKarmaScore());
+
+        redisCache.deletePostFromCache(lastPost.getId());
+
+        // when
+        List<PostDto> nextCachedPosts = redisCache.findNextNStale(size, position);
+
+        // then
+        List<PostDto> groundTruthNextPosts = TEST_CACHED_POSTS.stream()
+                .filter(post -> post.getKarmaScore() < lastPost.getKarmaScore())
+                .toList();
+
+        assertEquals(groundTruthNextPosts.size(), nextCachedPosts.size());
+
+        for (int i = 0; i < nextCachedPosts.size(); i++) {
+            assertEquals(groundTruthNextPosts.get(i), nextCachedPosts.get(i));
+        }
+    }
+
     @Test
     void cacheImage_PostIdIsTopAndDataIsTextAsBytes_GetCachedImage() {
 
@@ -250,6 +344,243 @@ class PostRedisCacheTest {
         assertArrayEquals(dummyImageData, cachedImageData.get());
     }
 
+    @Test
+    void cacheImage_PostIdIsTopAndDataIsTextAsBytes_HashIsCachedWithImage() {
+
+        // given
+        PostDto post = TEST_CACHED_POSTS.get(0);
+        byte[] dummyImageData = "imageData".getBytes();
+        String expectedHash = PostRedisCache.computeContentHash(dummyImageData);
+
+        // when
+        assertTrue(redisCache.cacheImage(post.getId(), dummyImageData));
+
+        Optional<String> cachedImageHash = redisCache.getCachedImageHash(post.getId());
+        Optional<ImageMetadataDto> cachedImageMetadata = redisCache.getCachedImageMetadata(post.getId());
+
+        // then
+        assertTrue(cachedImageHash.isPresent());
+        assertEquals(expectedHash, cachedImageHash.get());
+
+        assertTrue(cachedImageMetadata.isPresent());
+        assertEquals(dummyImageData.length, cachedImageMetadata.get().size());
+        assertEquals(expectedHash, cachedImageMetadata.get().contentHash());
+    }
+
+    @Test
+    void cacheImage_TwoPostsHaveTheSameImage_ImageIsSharedAndOutlivesDeletedPost() {
+
+        // given
+        PostDto firstPost = TEST_CACHED_POSTS.get(0);
+        PostDto secondPost = TEST_CACHED_POSTS.get(1);
+        byte[] dummyImageData = "imageData".getBytes();
+
+        // when
+        assertTrue(redisCache.cacheImage(firstPost.getId(), dummyImageData));
+        assertTrue(redisCache.cacheImage(secondPost.getId(), dummyImageData));
+
+        redisCache.deletePostFromCache(firstPost.getId());
+
+        // then
+        assertFalse(redisCache.getCachedImage(firstPost.getId()).isPresent());
+
+        Optional<byte[]> cachedImageData = redisCache.getCachedImage(secondPost.getId());
+        assertTrue(cachedImageData.isPresent());
+        assertArrayEquals(dummyImageData, cachedImageData.get());
+    }
+
+    @Test
+    void cacheImage_DataIsCompressible_ImageIsStoredDeflatedAndReadInflated() {
+
+        // given
+        PostDto post = TEST_CACHED_POSTS.get(0);
+        byte[] dummyImageData = "BM".concat("0".repeat(4096)).getBytes();
+
+        // when
+        assertTrue(redisCache.cacheImage(post.getId(), dummyImageData));
+
+        Optional<ImageMetadataDto> cachedImageMetadata = redisCache.getCachedImageMetadata(post.getId());
+        Optional<byte[]> cachedImageData = redisCache.getCachedImage(post.getId());
+
+        // then
+        assertTrue(cachedImageMetadata.isPresent());
+        ImageMetadataDto metadata = cachedImageMetadata.get();
+        assertEquals(ImageEncoding.DEFLATE, metadata.encoding());
+        assertEquals(dummyImageData.length, metadata.size());
+        assertTrue(metadata.storedSize() < metadata.size());
+
+        assertTrue(cachedImageData.isPresent());
+        assertArrayEquals(dummyImageData, cachedImageData.get());
+    }
+
+    @Test
+    void getCachedImageMetadata_PostIdIsTopAndDataIsNonExisting_EmptyOptional() {
+
+        // given
+        PostDto post = TEST_CACHED_POSTS.get(0);
+
+        // when
+        Optional<ImageMetadataDto> cachedImageMetadata = redisCache.getCachedImageMetadata(post.getId());
+
+        // then
+        assertFalse(cachedImageMetadata.isPresent());
+    }
+
+    @Test
+    void commitPartialImage_ImageIsAppendedInTwoChunks_ImageIsCachedAndReadableInRanges() {
+
+        // given
+        PostDto post = TEST_CACHED_POSTS.get(0);
+        byte[] firstChunk = "image".getBytes();
+        byte[] secondChunk = "Data".getBytes();
+        byte[] dummyImageData = "imageData".getBytes();
+        String partialImageKey = PostRedisCache.createPartialImageKey(post.getId());
+
+        // when
+        // chunks are read-only buffers, the way they are received from grpc
+        redisCache.appendToPartialImage(partialImageKey, ByteBuffer.wrap(firstChunk).asReadOnlyBuffer());
+        redisCache.appendToPartialImage(partialImageKey, ByteBuffer.wrap(secondChunk).asReadOnlyBuffer());
+
+        assertFalse(redisCache.getCachedImageMetadata(post.getId()).isPresent());
+
+        redisCache.commitPartialImage(
+                post.getId(),
+                partialImageKey,
+                PostRedisCache.computeContentHash(dummyImageData),
+                ImageEncoding.IDENTITY,
+                dummyImageData.length
+        );
+
+        // then
+        Optional<byte[]> cachedImageData = redisCache.getCachedImage(post.getId());
+        assertTrue(cachedImageData.isPresent());
+        assertArrayEquals(dummyImageData, cachedImageData.get());
+
+        Optional<ImageMetadataDto> cachedImageMetadata = redisCache.getCachedImageMetadata(post.getId());
+        assertTrue(cachedImageMetadata.isPresent());
+        ImageMetadataDto metadata = cachedImageMetadata.get();
+
+        assertArrayEquals(firstChunk, redisCache.getCachedImageRange(metadata, 0, firstChunk.length - 1));
+        assertArrayEquals(
+                secondChunk,
+                redisCache.getCachedImageRange(metadata, firstChunk.length, dummyImageData.length - 1)
+        );
+
+        Optional<String> cachedImageHash = redisCache.getCachedImageHash(post.getId());
+        assertTrue(cachedImageHash.isPresent());
+        assertEquals(PostRedisCache.computeContentHash(dummyImageData), cachedImageHash.get());
+    }
+
+    @Test
+    void findFeedVersion_TopPageIsCachedAndScoreIsUpdated_VersionChanges() {
+
+        // given
+        PostDto post = TEST_CACHED_POSTS.get(0);
+        int size = 2;
+
+        OptionalLong versionBeforeUpdate = redisCache.findFeedVersion(size, null);
+
+        // when
+        redisCache.updateKarmaScoreIfPresent(post.getId(), 1);
+
+        OptionalLong versionAfterUpdate = redisCache.findFeedVersion(size, null);
+
+        // then
+        assertTrue(versionBeforeUpdate.isPresent());
+        assertTrue(versionAfterUpdate.isPresent());
+        assertNotEquals(versionBeforeUpdate.getAsLong(), versionAfterUpdate.getAsLong());
+    }
+
+    @Test
+    void findFeedVersion_PageIsNotEntirelyCached_EmptyOptional() {
+
+        // given
+        PostDto lastPost = TEST_CACHED_POSTS.get(TEST_CACHED_POSTS.size() - 1);
+        var position = new ScrollPosition(lastPost.getId(), lastPost.getKarmaScore());
+
+        // when
+        OptionalLong topPageVersion = redisCache.findFeedVersion(TEST_CACHED_POSTS.size() + 1, null);
+        OptionalLong nextPageVersion = redisCache.findFeedVersion(1, position);
+
+        // then
+        assertFalse(topPageVersion.isPresent());
+        assertFalse(nextPageVersion.isPresent());
+    }
+
+    @Test
+    void findFeedVersion_PageEndsAtLastCachedPost_VersionIsPresent() {
+
+        // given
+        int positionIndex = 2;
+        PostDto positionPost = TEST_CACHED_POSTS.get(positionIndex);
+        var position = new ScrollPosition(positionPost.getId(), positionPost.getKarmaScore());
+        int size = TEST_CACHED_POSTS.size() - (positionIndex + 1);
+
+        // when
+        OptionalLong topPageVersion = redisCache.findFeedVersion(TEST_CACHED_POSTS.size(), null);
+        OptionalLong nextPageVersion = redisCache.findFeedVersion(size, position);
+
+        // then
+        assertTrue(topPageVersion.isPresent());
+        assertTrue(nextPageVersion.isPresent());
+        assertEquals(topPageVersion.getAsLong(), nextPageVersion.getAsLong());
+    }
+
+    @Test
+    void findFeedVersion_PageEndsOnePostAfterLastCachedPost_EmptyOptional() {
+
+        // given
+        int positionIndex = 2;
+        PostDto positionPost = TEST_CACHED_POSTS.get(positionIndex);
+        var position = new ScrollPosition(positionPost.getId(), positionPost.getKarmaScore());
+        int size = TEST_CACHED_POSTS.size() - positionIndex;
+
+        // when
+        OptionalLong nextPageVersion = redisCache.findFeedVersion(size, position);
+
+        // then
+        assertFalse(nextPageVersion.isPresent());
+    }
+
+    @Test
+    void findFeedVersion_PositionPostIsNotCached_EmptyOptional() {
+
+        // given
+        var position = new ScrollPosition(new ObjectId(), 0L);
+
+        // when
+        OptionalLong nextPageVersion = redisCache.findFeedVersion(1, position);
+
+        // then
+        assertFalse(nextPageVersion.isPresent());
+    }
+
+    @Test
+    void findFeedVersion_FreshMarkerIsMissing_EmptyOptional() {
+
+        // given
+        redisConnectionFactory.getConnection().keyCommands().del(FRESH_MARKER_KEY);
+
+        // when
+        OptionalLong topPageVersion = redisCache.findFeedVersion(1, null);
+
+        // then
+        assertFalse(topPageVersion.isPresent());
+    }
+
+    @Test
+    void findFeedVersion_VersionKeyIsMissing_EmptyOptional() {
+
+        // given
+        redisConnectionFactory.getConnection().keyCommands().del(FEED_VERSION_KEY);
+
+        // when
+        OptionalLong topPageVersion = redisCache.findFeedVersion(1, null);
+
+        // then
+        assertFalse(topPageVersion.isPresent());
+    }
+
     @Test
     void getCachedImage_PostIdIsTopAndDataIsNonExisting_EmptyOptional() {
 
@@ -494,4 +825,34 @@ class PostRedisCacheTest {
         assertEquals(TEST_CACHED_POSTS.size(), result);
     }
 
+    @Test
+    void markImageMissing_ImageIsMarked_ImageIsMarkedMissingAndPostIsNot() {
+
+        // given
+        ObjectId postId = TestingDataGenerator.getId(404);
+
+        // when
+        redisCache.markImageMissing(postId);
+
+        // then
+        assertTrue(redisCache.isImageMarkedMissing(postId));
+        assertFalse(redisCache.isPostMarkedMissing(postId));
+    }
+
+    @Test
+    void clearMissingMarks_PostAndImageAreMarked_NeitherIsMarkedMissing() {
+
+        // given
+        ObjectId postId = TestingDataGenerator.getId(404);
+        redisCache.markPostMissing(postId);
+        redisCache.markImageMissing(postId);
+
+        // when
+        redisCache.clearMissingMarks(postId);
+
+        // then
+        assertFalse(redisCache.isPostMarkedMissing(postId));
+        assertFalse(redisCache.isImageMarkedMissing(postId));
+    }
+
 }
\ No newline at end of file
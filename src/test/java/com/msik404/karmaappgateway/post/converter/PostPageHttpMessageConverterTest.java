@@ -0,0 +1,111 @@
+package com.msik404.karmaappgateway.post.converter;
+
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.msik404.karmaappgateway.post.PostResponseModelAssembler;
+import com.msik404.karmaappgateway.post.dto.PostDto;
+import com.msik404.karmaappgateway.post.dto.PostPage;
+import com.msik404.karmaappposts.grpc.PostVisibility;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.http.HttpMessageConverters;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.protobuf.ProtobufHttpMessageConverter;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class PostPageHttpMessageConverterTest {
+
+    private static AnnotationConfigApplicationContext context;
+    private static MockMvc mockMvc;
+
+    @RestController
+    static class PostPageController {
+
+        @GetMapping("posts")
+        PostPage findPosts() {
+
+            return new PostPage(List.of(new PostDto(
+                    ObjectId.get(),
+                    ObjectId.get(),
+                    "username",
+                    "headline",
+                    "text",
+                    1,
+                    PostVisibility.VIS_ACTIVE
+            )));
+        }
+
+    }
+
+    @BeforeAll
+    static void setUp() {
+
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(ObjectMapper.class);
+        context.registerBean(PostResponseModelAssembler.class);
+        // registered in reverse order, so that only @Order can put JSON converter first
+        context.registerBean(PostPageProtobufHttpMessageConverter.class);
+        context.registerBean(PostPageHttpMessageConverter.class);
+        context.refresh();
+
+        // converter beans are collected the same way as in HttpMessageConvertersAutoConfiguration
+        var converters = new HttpMessageConverters(context.getBeanProvider(HttpMessageConverter.class)
+                .orderedStream()
+                .<HttpMessageConverter<?>>map(converter -> converter)
+                .toList());
+
+        mockMvc = MockMvcBuilders.standaloneSetup(new PostPageController())
+                .setMessageConverters(converters.getConverters().toArray(HttpMessageConverter[]::new))
+                .build();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void findPosts_ClientAcceptsAnyMediaType_JsonIsWritten() throws Exception {
+
+        mockMvc.perform(get("/posts").accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    void findPosts_ClientSendsNoAcceptHeader_JsonIsWritten() throws Exception {
+
+        mockMvc.perform(get("/posts"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    void findPosts_ClientAcceptsProtobuf_ProtobufIsWritten() throws Exception {
+
+        mockMvc.perform(get("/posts").accept(ProtobufHttpMessageConverter.PROTOBUF))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(ProtobufHttpMessageConverter.PROTOBUF));
+    }
+
+    @Test
+    void findPosts_ClientAcceptsCbor_CborIsWritten() throws Exception {
+
+        mockMvc.perform(get("/posts").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_CBOR));
+    }
+
+}
@@ -0,0 +1,198 @@
+package com.msik404.karmaappgateway.post.creation;
+
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import com.msik404.karmaappgateway.RedisConfiguration;
+import com.msik404.karmaappgateway.post.dto.PostCreationRequest;
+import com.msik404.karmaappgateway.post.dto.PostCreationStatus;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@SpringBootTest(classes = {RedisConfiguration.class, PostCreationQueue.class})
+class PostCreationQueueTest {
+
+    private static final String CONSUMER = "test-consumer";
+
+    private static final PostCreationRequest REQUEST = new PostCreationRequest("headline", "text");
+
+    private final RedisConnectionFactory redisConnectionFactory;
+
+    private final PostCreationQueue queue;
+
+    public static final GenericContainer<?> REDIS_CONTAINER = new GenericContainer(
+            DockerImageName.parse("redis:alpine")).withExposedPorts(6379);
+
+    static {
+        REDIS_CONTAINER.start();
+    }
+
+    @DynamicPropertySource
+    private static void registerRedisProperties(DynamicPropertyRegistry registry) {
+
+        registry.add("spring.data.redis.host", REDIS_CONTAINER::getHost);
+        registry.add("spring.data.redis.port", () -> REDIS_CONTAINER.getMappedPort(6379).toString());
+    }
+
+    @Autowired
+    PostCreationQueueTest(RedisConnectionFactory redisConnectionFactory, PostCreationQueue queue) {
+
+        this.redisConnectionFactory = redisConnectionFactory;
+        this.queue = queue;
+    }
+
+    @BeforeEach
+    void setUp() {
+        queue.createGroupIfAbsent();
+    }
+
+    @AfterEach
+    void tearDown() {
+        redisConnectionFactory.getConnection().serverCommands().flushAll();
+    }
+
+    @Test
+    void enqueue_PostWithImage_TaskIsReadWithImageAndStatusIsPending() throws Exception {
+
+        // given
+        var userId = new ObjectId();
+        byte[] imageData = new byte[200_000];
+        imageData[0] = 1;
+        imageData[imageData.length - 1] = 2;
+
+        // when
+        ObjectId creationId = queue.enqueue(userId, REQUEST, new ByteArrayResource(imageData));
+
+        // then
+        List<PostCreationTask> tasks = queue.readNew(CONSUMER, 10);
+
+        assertEquals(1, tasks.size());
+
+        PostCreationTask task = tasks.get(0);
+
+        assertEquals(creationId, task.creationId());
+        assertEquals(userId, task.userId());
+        assertEquals(REQUEST, task.request());
+        assertTrue(task.hasImage());
+        assertEquals(1, task.deliveryCount());
+
+        InputStreamSource image = queue.findImage(creationId);
+        assertNotNull(image);
+        try (InputStream imageStream = image.getInputStream()) {
+            assertArrayEquals(imageData, imageStream.readAllBytes());
+        }
+        assertEquals(Optional.of(PostCreationStatus.PENDING), queue.findStatus(creationId, userId));
+    }
+
+    @Test
+    void findStatus_OtherUser_Empty() throws Exception {
+
+        // given
+        ObjectId creationId = queue.enqueue(new ObjectId(), REQUEST, null);
+
+        // when
+        Optional<PostCreationStatus> status = queue.findStatus(creationId, new ObjectId());
+
+        // then
+        assertTrue(status.isEmpty());
+    }
+
+    @Test
+    void readNew_TaskWasAlreadyRead_Empty() throws Exception {
+
+        // given
+        queue.enqueue(new ObjectId(), REQUEST, null);
+        queue.readNew(CONSUMER, 10);
+
+        // when
+        List<PostCreationTask> tasks = queue.readNew(CONSUMER, 10);
+
+        // then
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    void claimStalled_TaskIsPending_TaskIsClaimedWithIncrementedDeliveryCount() throws Exception {
+
+        // given
+        ObjectId creationId = queue.enqueue(new ObjectId(), REQUEST, null);
+        queue.readNew(CONSUMER, 10);
+
+        // when
+        List<PostCreationTask> tasks = queue.claimStalled("other-consumer", 10, Duration.ZERO);
+
+        // then
+        assertEquals(1, tasks.size());
+        assertEquals(creationId, tasks.get(0).creationId());
+        assertEquals(2, tasks.get(0).deliveryCount());
+    }
+
+    @Test
+    void claimStalled_TaskIsPendingShorterThanMinIdleTime_Empty() throws Exception {
+
+        // given
+        queue.enqueue(new ObjectId(), REQUEST, null);
+        queue.readNew(CONSUMER, 10);
+
+        // when
+        List<PostCreationTask> tasks = queue.claimStalled("other-consumer", 10, Duration.ofHours(1));
+
+        // then
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    void claimStalled_OldestTaskWasClaimedRecently_IdleTaskBehindItIsClaimed() throws Exception {
+
+        // given
+        queue.enqueue(new ObjectId(), REQUEST, null);
+        ObjectId secondCreationId = queue.enqueue(new ObjectId(), REQUEST, null);
+        queue.readNew(CONSUMER, 10);
+        Thread.sleep(200);
+
+        // oldest task is delivered again, so it is not idle anymore
+        assertEquals(1, queue.claimStalled("other-consumer", 1, Duration.ZERO).size());
+
+        // when
+        List<PostCreationTask> tasks = queue.claimStalled("third-consumer", 1, Duration.ofMillis(100));
+
+        // then
+        assertEquals(1, tasks.size());
+        assertEquals(secondCreationId, tasks.get(0).creationId());
+    }
+
+    @Test
+    void complete_TaskWasCreated_StatusIsCreatedAndTaskIsNotClaimedAgain() throws Exception {
+
+        // given
+        var userId = new ObjectId();
+        ObjectId creationId = queue.enqueue(userId, REQUEST, new ByteArrayResource(new byte[]{1, 2, 3}));
+        PostCreationTask task = queue.readNew(CONSUMER, 10).get(0);
+
+        // when
+        queue.complete(task, PostCreationStatus.CREATED);
+
+        // then
+        assertEquals(Optional.of(PostCreationStatus.CREATED), queue.findStatus(creationId, userId));
+        assertNull(queue.findImage(creationId));
+        assertTrue(queue.claimStalled(CONSUMER, 10, Duration.ZERO).isEmpty());
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.msik404.karmaappgateway.post.image;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.msik404.karmaappgateway.post.cache.PostRedisCache;
+import com.msik404.karmaappgateway.post.dto.ImageEncoding;
+import com.msik404.karmaappgateway.post.dto.ImageMetadataDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CachedImageStreamTest {
+
+    private static final int CHUNK_SIZE = 4;
+
+    private static final byte[] IMAGE_DATA = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+
+    private static final ImageMetadataDto METADATA = new ImageMetadataDto(
+            IMAGE_DATA.length,
+            PostRedisCache.computeContentHash(IMAGE_DATA),
+            ImageEncoding.IDENTITY,
+            IMAGE_DATA.length
+    );
+
+    @Mock
+    private PostRedisCache cache;
+
+    @BeforeEach
+    void setUp() {
+
+        // GETRANGE semantics, end is inclusive
+        lenient().when(cache.getCachedImageRange(eq(METADATA), anyLong(), anyLong())).thenAnswer(invocation -> {
+            long start = invocation.getArgument(1);
+            long end = invocation.getArgument(2);
+            return Arrays.copyOfRange(IMAGE_DATA, (int) start, (int) Math.min(end + 1, IMAGE_DATA.length));
+        });
+    }
+
+    private static byte[] readAll(ImageStream imageStream) throws IOException {
+
+        var outputStream = new ByteArrayOutputStream();
+        imageStream.transferTo(outputStream);
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    void nextChunk_WholeImage_ImageIsReadInChunks() throws IOException {
+
+        // given
+        var image = new CachedImageStream(cache, METADATA, CHUNK_SIZE);
+
+        // when
+        byte[] imageData = readAll(image);
+
+        // then
+        assertArrayEquals(IMAGE_DATA, imageData);
+        verify(cache).getCachedImageRange(METADATA, 0, 3);
+        verify(cache).getCachedImageRange(METADATA, 4, 7);
+        verify(cache).getCachedImageRange(METADATA, 8, 9);
+    }
+
+    @Test
+    void slice_RangeStartsAndEndsInsideChunks_OnlyRangeIsRead() throws IOException {
+
+        // given
+        var image = new CachedImageStream(cache, METADATA, CHUNK_SIZE);
+
+        // when
+        ImageStream slice = image.slice(2, 8);
+
+        // then
+        assertEquals(7, slice.contentLength());
+        assertEquals(METADATA.contentHash(), slice.contentHash());
+        assertArrayEquals(Arrays.copyOfRange(IMAGE_DATA, 2, 9), readAll(slice));
+        verify(cache).getCachedImageRange(METADATA, 2, 5);
+        verify(cache).getCachedImageRange(METADATA, 6, 8);
+        verifyNoMoreInteractions(cache);
+    }
+
+    @Test
+    void slice_SliceOfSlice_OffsetsAreRelativeToSlicedStream() throws IOException {
+
+        // given
+        ImageStream slice = new CachedImageStream(cache, METADATA, CHUNK_SIZE).slice(3, 9);
+
+        // when
+        ImageStream innerSlice = slice.slice(1, 2);
+
+        // then
+        assertArrayEquals(Arrays.copyOfRange(IMAGE_DATA, 4, 6), readAll(innerSlice));
+    }
+
+    @Test
+    void nextChunk_ImageWasRemovedWhileBeingRead_IOException() {
+
+        // given
+        when(cache.getCachedImageRange(eq(METADATA), anyLong(), anyLong())).thenReturn(new byte[0]);
+        ImageStream slice = new CachedImageStream(cache, METADATA, CHUNK_SIZE).slice(2, 5);
+
+        // then
+        assertThrows(IOException.class, slice::nextChunk);
+    }
+
+}
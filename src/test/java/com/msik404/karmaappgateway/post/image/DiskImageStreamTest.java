@@ -0,0 +1,125 @@
+package com.msik404.karmaappgateway.post.image;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiskImageStreamTest {
+
+    private static final int CHUNK_SIZE = 4;
+    private static final String CONTENT_HASH = "hash";
+
+    private static final byte[] IMAGE_DATA = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+
+    @TempDir
+    Path directory;
+
+    private Path imageFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        imageFile = Files.write(directory.resolve("image"), IMAGE_DATA);
+    }
+
+    private DiskImageStream open(long size) throws IOException {
+        return new DiskImageStream(FileChannel.open(imageFile, StandardOpenOption.READ), size, CONTENT_HASH, CHUNK_SIZE);
+    }
+
+    private static byte[] readAll(ImageStream imageStream) throws IOException {
+
+        var outputStream = new ByteArrayOutputStream();
+        imageStream.transferTo(outputStream);
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    void nextChunk_WholeImage_ImageIsReadInChunks() throws IOException {
+
+        // given
+        try (DiskImageStream image = open(IMAGE_DATA.length)) {
+
+            // when
+            int chunkCount = 0;
+            var outputStream = new ByteArrayOutputStream();
+            while (image.nextChunk() instanceof ByteBuffer chunk) {
+                assertTrue(chunk.remaining() <= CHUNK_SIZE);
+                outputStream.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+                chunkCount++;
+            }
+
+            // then
+            assertArrayEquals(IMAGE_DATA, outputStream.toByteArray());
+            assertEquals(3, chunkCount);
+        }
+    }
+
+    @Test
+    void slice_RangeStartsAndEndsInsideChunks_OnlyRangeIsRead() throws IOException {
+
+        // given
+        DiskImageStream image = open(IMAGE_DATA.length);
+
+        // when
+        try (ImageStream slice = image.slice(3, 8)) {
+
+            // then
+            assertEquals(6, slice.contentLength());
+            assertEquals(CONTENT_HASH, slice.contentHash());
+            assertArrayEquals(Arrays.copyOfRange(IMAGE_DATA, 3, 9), readAll(slice));
+        }
+    }
+
+    @Test
+    void slice_SliceOfSlice_OffsetsAreRelativeToSlicedStream() throws IOException {
+
+        // given
+        ImageStream slice = open(IMAGE_DATA.length).slice(2, 9);
+
+        // when
+        try (ImageStream innerSlice = slice.slice(5, 7)) {
+
+            // then
+            assertArrayEquals(Arrays.copyOfRange(IMAGE_DATA, 7, 10), readAll(innerSlice));
+        }
+    }
+
+    @Test
+    void close_SliceIsClosed_FileIsClosed() throws IOException {
+
+        // given
+        var channel = FileChannel.open(imageFile, StandardOpenOption.READ);
+        ImageStream slice = new DiskImageStream(channel, IMAGE_DATA.length, CONTENT_HASH, CHUNK_SIZE).slice(0, 1);
+
+        // when
+        slice.close();
+
+        // then
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    void nextChunk_FileIsShorterThanExpected_EOFException() throws IOException {
+
+        // given
+        try (DiskImageStream image = open(IMAGE_DATA.length + CHUNK_SIZE)) {
+            image.nextChunk();
+            image.nextChunk();
+
+            // then
+            assertThrows(EOFException.class, image::nextChunk);
+        }
+    }
+
+}
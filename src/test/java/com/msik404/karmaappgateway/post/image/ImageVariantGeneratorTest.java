@@ -0,0 +1,280 @@
+package com.msik404.karmaappgateway.post.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+import com.msik404.karmaappgateway.post.dto.ImageVariant;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageVariantGeneratorTest {
+
+    private static final int THREADS = 1;
+    private static final int QUEUE_CAPACITY = 1;
+    private static final long MAX_SOURCE_SIZE = 1024 * 1024;
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private static byte[] encodePng(int width, int height) throws IOException {
+
+        var outputStream = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static BufferedImage decode(byte[] imageData) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(imageData));
+    }
+
+    private static Optional<byte[]> await(CompletableFuture<Optional<byte[]>> future) throws Exception {
+        return future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Image streamed from backend, its length is known only after it is read.
+     */
+    private static class UnknownLengthImageStream implements ImageStream {
+
+        private final byte[] imageData;
+        private boolean isRead = false;
+
+        private UnknownLengthImageStream(byte[] imageData) {
+            this.imageData = imageData;
+        }
+
+        @Override
+        public long contentLength() {
+            return UNKNOWN_LENGTH;
+        }
+
+        @Nullable
+        @Override
+        public String contentHash() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public ByteBuffer nextChunk() {
+
+            if (isRead) {
+                return null;
+            }
+            isRead = true;
+            return ByteBuffer.wrap(imageData);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Source which blocks worker thread until it is released.
+     */
+    private static class BlockingImageSource implements ImageVariantGenerator.ImageSource {
+
+        private final byte[] imageData;
+        private final CountDownLatch opened = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final AtomicInteger openCount = new AtomicInteger();
+
+        private BlockingImageSource(byte[] imageData) {
+            this.imageData = imageData;
+        }
+
+        @NonNull
+        @Override
+        public ImageStream open() {
+
+            openCount.incrementAndGet();
+            opened.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return new ByteArrayImageStream(imageData);
+        }
+    }
+
+    @Test
+    void generate_ImageIsBiggerThanVariant_ImageIsDownscaledKeepingAspectRatio() throws Exception {
+
+        // given
+        var generator = new ImageVariantGenerator(THREADS, QUEUE_CAPACITY, MAX_SOURCE_SIZE);
+        byte[] imageData = encodePng(800, 400);
+        var generatedData = new AtomicReference<byte[]>();
+
+        // when
+        Optional<byte[]> variantData = await(generator.generate(
+                ObjectId.get(),
+                ImageVariant.THUMB,
+                () -> new ByteArrayImageStream(imageData),
+                generatedData::set
+        ));
+
+        // then
+        assertTrue(variantData.isPresent());
+        assertSame(variantData.get(), generatedData.get());
+
+        BufferedImage variant = decode(variantData.get());
+        assertEquals(ImageVariant.THUMB.getMaxDimension(), variant.getWidth());
+        assertEquals(ImageVariant.THUMB.getMaxDimension() / 2, variant.getHeight());
+    }
+
+    @Test
+    void generate_ImageIsNotBiggerThanVariant_ImageIsReturnedAsItIs() throws Exception {
+
+        // given
+        var generator = new ImageVariantGenerator(THREADS, QUEUE_CAPACITY, MAX_SOURCE_SIZE);
+        byte[] imageData = encodePng(100, 50);
+
+        // when
+        Optional<byte[]> variantData = await(generator.generate(
+                ObjectId.get(),
+                ImageVariant.THUMB,
+                () -> new ByteArrayImageStream(imageData),
+                generated -> {
+                }
+        ));
+
+        // then
+        assertTrue(variantData.isPresent());
+        assertArrayEquals(imageData, variantData.get());
+    }
+
+    @Test
+    void generate_ImageCanNotBeDecoded_ImageIsReturnedAsItIs() throws Exception {
+
+        // given
+        var generator = new ImageVariantGenerator(THREADS, QUEUE_CAPACITY, MAX_SOURCE_SIZE);
+        byte[] imageData = "not-an-image".getBytes();
+
+        // when
+        Optional<byte[]> variantData = await(generator.generate(
+                ObjectId.get(),
+                ImageVariant.MEDIUM,
+                () -> new ByteArrayImageStream(imageData),
+                generated -> {
+                }
+        ));
+
+        // then
+        assertTrue(variantData.isPresent());
+        assertArrayEquals(imageData, variantData.get());
+    }
+
+    @Test
+    void generate_ImageLengthExceedsMaxSourceSize_EmptyOptionalAndNothingIsGenerated() throws Exception {
+
+        // given
+        byte[] imageData = encodePng(800, 400);
+        var generator = new ImageVariantGenerator(THREADS, QUEUE_CAPACITY, imageData.length - 1);
+        var generatedData = new AtomicReference<byte[]>();
+
+        // when
+        Optional<byte[]> variantData = await(generator.generate(
+                ObjectId.get(),
+                ImageVariant.THUMB,
+                () -> new ByteArrayImageStream(imageData),
+                generatedData::set
+        ));
+
+        // then
+        assertTrue(variantData.isEmpty());
+        assertNull(generatedData.get());
+    }
+
+    @Test
+    void generate_ImageOfUnknownLengthTurnsOutBiggerThanMaxSourceSize_EmptyOptional() throws Exception {
+
+        // given
+        byte[] imageData = encodePng(800, 400);
+        var generator = new ImageVariantGenerator(THREADS, QUEUE_CAPACITY, imageData.length - 1);
+
+        // when
+        Optional<byte[]> variantData = await(generator.generate(
+                ObjectId.get(),
+                ImageVariant.THUMB,
+                () -> new UnknownLengthImageStream(imageData),
+                generated -> {
+                }
+        ));
+
+        // then
+        assertTrue(variantData.isEmpty());
+    }
+
+    @Test
+    void generate_SameVariantIsRequestedConcurrently_ImageIsGeneratedOnce() throws Exception {
+
+        // given
+        var generator = new ImageVariantGenerator(THREADS, QUEUE_CAPACITY, MAX_SOURCE_SIZE);
+        ObjectId postId = ObjectId.get();
+        var source = new BlockingImageSource(encodePng(800, 400));
+        var generatedCount = new AtomicInteger();
+
+        CompletableFuture<Optional<byte[]>> firstFuture = generator.generate(
+                postId, ImageVariant.THUMB, source, generated -> generatedCount.incrementAndGet());
+        assertTrue(source.opened.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // when
+        CompletableFuture<Optional<byte[]>> secondFuture = generator.generate(
+                postId, ImageVariant.THUMB, source, generated -> generatedCount.incrementAndGet());
+        source.released.countDown();
+
+        // then
+        assertSame(firstFuture, secondFuture);
+        assertTrue(await(firstFuture).isPresent());
+        assertEquals(1, source.openCount.get());
+        assertEquals(1, generatedCount.get());
+    }
+
+    @Test
+    void generate_QueueIsFull_EmptyOptionalWithoutWaiting() throws Exception {
+
+        // given
+        var generator = new ImageVariantGenerator(THREADS, QUEUE_CAPACITY, MAX_SOURCE_SIZE);
+        var blockingSource = new BlockingImageSource(encodePng(800, 400));
+
+        // occupies the only worker thread
+        CompletableFuture<Optional<byte[]>> runningFuture = generator.generate(
+                ObjectId.get(), ImageVariant.THUMB, blockingSource, generated -> {
+                });
+        assertTrue(blockingSource.opened.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // takes the only place in the queue
+        CompletableFuture<Optional<byte[]>> queuedFuture = generator.generate(
+                ObjectId.get(), ImageVariant.THUMB, blockingSource, generated -> {
+                });
+
+        // when
+        CompletableFuture<Optional<byte[]>> rejectedFuture = generator.generate(
+                ObjectId.get(), ImageVariant.THUMB, blockingSource, generated -> {
+                });
+
+        // then
+        assertTrue(rejectedFuture.isDone());
+        assertTrue(rejectedFuture.get().isEmpty());
+
+        blockingSource.released.countDown();
+        assertTrue(await(runningFuture).isPresent());
+        assertTrue(await(queuedFuture).isPresent());
+    }
+
+}
@@ -0,0 +1,230 @@
+package com.msik404.karmaappgateway.post.image;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlicedImageStreamTest {
+
+    private static final int CHUNK_SIZE = 4;
+
+    // 10 bytes, split into chunks 0-3, 4-7 and 8-9
+    private static final byte[] IMAGE_DATA = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+
+    /**
+     * Image of known length which is returned in chunks of CHUNK_SIZE bytes, as streamed images are.
+     */
+    private static class ChunkedImageStream implements ImageStream {
+
+        private final byte[] imageData;
+
+        private int offset = 0;
+        private int readCalls = 0;
+        private boolean isClosed = false;
+
+        private ChunkedImageStream(@NonNull byte[] imageData) {
+            this.imageData = imageData;
+        }
+
+        @Override
+        public long contentLength() {
+            return imageData.length;
+        }
+
+        @Nullable
+        @Override
+        public String contentHash() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public ByteBuffer nextChunk() {
+
+            readCalls++;
+            if (offset >= imageData.length) {
+                return null;
+            }
+            int length = Math.min(CHUNK_SIZE, imageData.length - offset);
+            ByteBuffer chunk = ByteBuffer.wrap(imageData, offset, length).slice();
+            offset += length;
+            return chunk;
+        }
+
+        @Override
+        public void close() {
+            isClosed = true;
+        }
+    }
+
+    private static class RecordingImageSink implements ImageSink {
+
+        private final List<byte[]> appendedChunks = new ArrayList<>();
+        private String committedHash;
+        private boolean isDiscarded = false;
+
+        @Override
+        public void append(@NonNull ByteBuffer chunk) {
+
+            byte[] chunkData = new byte[chunk.remaining()];
+            chunk.duplicate().get(chunkData);
+            appendedChunks.add(chunkData);
+        }
+
+        @Override
+        public void commit(@NonNull String contentHash) {
+            committedHash = contentHash;
+        }
+
+        @Override
+        public void discard() {
+            isDiscarded = true;
+        }
+    }
+
+    private static byte[] readAll(ImageStream imageStream) throws IOException {
+
+        var outputStream = new ByteArrayOutputStream();
+        imageStream.transferTo(outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] expectedRange(int start, int end) {
+        return Arrays.copyOfRange(IMAGE_DATA, start, end + 1);
+    }
+
+    @Test
+    void nextChunk_RangeStartsAndEndsInsideChunks_OnlyRangeIsReturned() throws IOException {
+
+        // given
+        var source = new ChunkedImageStream(IMAGE_DATA);
+
+        // when
+        ImageStream slice = new SlicedImageStream(source, 2, 5);
+
+        // then
+        assertEquals(4, slice.contentLength());
+        assertArrayEquals(expectedRange(2, 5), readAll(slice));
+    }
+
+    @Test
+    void nextChunk_RangeIsInsideSingleChunk_OnlyRangeIsReturned() throws IOException {
+
+        // given
+        var source = new ChunkedImageStream(IMAGE_DATA);
+
+        // when
+        ImageStream slice = new SlicedImageStream(source, 5, 6);
+
+        // then
+        assertArrayEquals(expectedRange(5, 6), readAll(slice));
+    }
+
+    @Test
+    void nextChunk_RangeStartsAtChunkBoundary_ChunksBeforeAreSkipped() throws IOException {
+
+        // given
+        var source = new ChunkedImageStream(IMAGE_DATA);
+
+        // when
+        ImageStream slice = new SlicedImageStream(source, 4, 7);
+
+        // then
+        assertArrayEquals(expectedRange(4, 7), readAll(slice));
+    }
+
+    @Test
+    void nextChunk_RangeEndsBeforeLastChunk_SourceIsNotReadBeyondRange() throws IOException {
+
+        // given
+        var source = new ChunkedImageStream(IMAGE_DATA);
+
+        // when
+        byte[] sliceData = readAll(new SlicedImageStream(source, 1, 4));
+
+        // then
+        assertArrayEquals(expectedRange(1, 4), sliceData);
+        // second chunk contains end of the range, third one is never requested
+        assertEquals(2, source.readCalls);
+    }
+
+    @Test
+    void nextChunk_RangeEndsAtLastByte_SourceIsReadOnceMoreToNoticeItsEnd() throws IOException {
+
+        // given
+        var source = new ChunkedImageStream(IMAGE_DATA);
+
+        // when
+        byte[] sliceData = readAll(new SlicedImageStream(source, 6, IMAGE_DATA.length - 1));
+
+        // then
+        assertArrayEquals(expectedRange(6, IMAGE_DATA.length - 1), sliceData);
+        assertEquals(4, source.readCalls);
+    }
+
+    @Test
+    void nextChunk_CachingSourceIsSlicedToItsEnd_ImageIsCommitted() throws IOException {
+
+        // given
+        var sink = new RecordingImageSink();
+        var source = new CachingImageStream(new ChunkedImageStream(IMAGE_DATA), List.of(sink));
+
+        // when
+        ImageStream slice = new SlicedImageStream(source, 3, IMAGE_DATA.length - 1);
+        byte[] sliceData = readAll(slice);
+        slice.close();
+
+        // then
+        assertArrayEquals(expectedRange(3, IMAGE_DATA.length - 1), sliceData);
+        assertNotNull(sink.committedHash);
+        assertFalse(sink.isDiscarded);
+
+        var outputStream = new ByteArrayOutputStream();
+        for (byte[] chunk : sink.appendedChunks) {
+            outputStream.write(chunk);
+        }
+        // whole image is cached, not only the served range
+        assertArrayEquals(IMAGE_DATA, outputStream.toByteArray());
+    }
+
+    @Test
+    void nextChunk_CachingSourceIsSlicedBeforeItsEnd_ImageIsDiscarded() throws IOException {
+
+        // given
+        var sink = new RecordingImageSink();
+        var source = new CachingImageStream(new ChunkedImageStream(IMAGE_DATA), List.of(sink));
+
+        // when
+        ImageStream slice = new SlicedImageStream(source, 0, 5);
+        readAll(slice);
+        slice.close();
+
+        // then
+        assertNull(sink.committedHash);
+        assertTrue(sink.isDiscarded);
+    }
+
+    @Test
+    void close_SliceIsClosed_SourceIsClosed() {
+
+        // given
+        var source = new ChunkedImageStream(IMAGE_DATA);
+        ImageStream slice = source.slice(0, 1);
+
+        // when
+        slice.close();
+
+        // then
+        assertTrue(source.isClosed);
+    }
+
+}